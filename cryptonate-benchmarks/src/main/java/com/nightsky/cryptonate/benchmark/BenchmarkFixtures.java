@@ -0,0 +1,139 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import com.nightsky.keycache.VersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.SecureRandom;
+import java.util.Collections;
+import javax.crypto.SecretKey;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Builds the listeners, persisters and entities used by the benchmarks from
+ * the fixtures of the cryptonate test suite, so that no key store or
+ * database is needed. Keys are plain in-memory objects rather than the
+ * suite's mocks; the cipher reads the key material on every initialization,
+ * and a call to a mock costs more than encrypting a small field.
+ *
+ * @author Chris
+ */
+public class BenchmarkFixtures {
+
+    public static final String[] SIMPLE_ENTITY_PROPERTIES = {
+        "emailAddress", "price", "streetNumber", "amount", "followers"
+    };
+
+    public static CryptoEventListener.Builder listenerBuilder() {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache(SecretKeyFactory.createAesKey(), 1));
+    }
+
+    /**
+     * @return a key cache holding a single key version, which is also the
+     * current one
+     */
+    public static VersionedSecretKeyCache keyCache(SecretKey key, int keyVersion) {
+        return new InMemoryKeyCache(new InMemoryKey(key, keyVersion));
+    }
+
+    public static EntityPersister persister(String... propertyNames) {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class, withSettings().stubOnly());
+        when(metamodel.getPropertyNames()).thenReturn(propertyNames);
+
+        EntityPersister persister = mock(EntityPersister.class, withSettings().stubOnly());
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+        return persister;
+    }
+
+    public static SimpleEntity simpleEntity(long id) {
+        return SimpleEntity.builder()
+            .withId(id)
+            .withEmailAddress("someone" + id + "@example.com")
+            .withFollowers(id * 31)
+            .withStreetNumber((int) (id % 10000))
+            .withAmount(12.5f)
+            .withPrice(1234.56)
+                .build();
+    }
+
+    public static Object[] stateOf(SimpleEntity entity) {
+        return new Object[] {
+            entity.getEmailAddress(),
+            entity.getPrice(),
+            entity.getStreetNumber(),
+            entity.getAmount(),
+            entity.getFollowers()
+        };
+    }
+
+    private static final class InMemoryKey extends VersionedSecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String algorithm;
+
+        private final String format;
+
+        private final byte[] encoded;
+
+        private final int version;
+
+        InMemoryKey(SecretKey key, int version) {
+            this.algorithm = key.getAlgorithm();
+            this.format = key.getFormat();
+            this.encoded = key.getEncoded();
+            this.version = version;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return format;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encoded.clone();
+        }
+
+    }
+
+    private static final class InMemoryKeyCache extends VersionedSecretKeyCache {
+
+        private final InMemoryKey key;
+
+        InMemoryKeyCache(InMemoryKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public VersionedSecretKey getKey(String keyName) {
+            return SecretKeyFactory.KEY_NAME.equals(keyName) ? key : null;
+        }
+
+        @Override
+        public VersionedSecretKey getKey(String keyName, int keyVersion) {
+            return keyVersion == key.getVersion() ? getKey(keyName) : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.nightsky.cryptonate.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link PayloadBenchmark} and {@link FieldCountBenchmark} with the GC
+ * profiler at 1, 2, 4 and so on threads, up to the number of processors, and
+ * writes the results of each thread count to
+ * <code>matrix-&lt;threads&gt;-threads.json</code>:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.nightsky.cryptonate.benchmark.BenchmarkMatrix [maximum threads] [benchmark regex]
+ * </pre>
+ *
+ * @author Chris
+ */
+public class BenchmarkMatrix {
+
+    public static void main(String[] args) throws RunnerException {
+        int maximumThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        String include = args.length > 1 ? args[1] : "(PayloadBenchmark|FieldCountBenchmark)";
+
+        for (int threads : threadCounts(maximumThreads)) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(String.format("matrix-%d-threads.json", threads));
+
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static List<Integer> threadCounts(int maximumThreads) {
+        if ( maximumThreads < 1 )
+            throw new IllegalArgumentException(String.format("Invalid thread count: %d", maximumThreads));
+
+        List<Integer> counts = new ArrayList<>();
+
+        for (int threads = 1; threads < maximumThreads; threads *= 2) {
+            counts.add(threads);
+        }
+
+        counts.add(maximumThreads);
+        return counts;
+    }
+
+}
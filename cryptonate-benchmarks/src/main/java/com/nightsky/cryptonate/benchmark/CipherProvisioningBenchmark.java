@@ -0,0 +1,95 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.crypto.CipherProvider;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares creating a <code>Cipher</code> per field, as
+ * <code>Cipher.getInstance</code> does, with the per-thread instances of
+ * {@link CipherProvider}, for an entity with several encrypted fields.
+ *
+ * @author Chris
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CipherProvisioningBenchmark {
+
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
+    @Param({ "5" })
+    public int encryptedFields;
+
+    @Param({ "" })
+    public String securityProviderName;
+
+    private SecretKey key;
+
+    private CipherProvider cipherProvider;
+
+    private byte[] plaintext;
+
+    private byte[] iv;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        key = SecretKeyFactory.createAesKey();
+        cipherProvider = new CipherProvider(CIPHER_ALGORITHM, providerName());
+        plaintext = "someone@example.com".getBytes(StandardCharsets.UTF_8);
+        iv = new byte[12];
+    }
+
+    @Benchmark
+    public void getInstancePerField(Blackhole blackhole) throws Exception {
+        String providerName = providerName();
+
+        for (int i = 0; i < encryptedFields; ++i) {
+            Cipher cipher = providerName == null
+                ? Cipher.getInstance(CIPHER_ALGORITHM)
+                : Cipher.getInstance(CIPHER_ALGORITHM, providerName);
+            blackhole.consume(encrypt(cipher));
+        }
+    }
+
+    @Benchmark
+    public void cipherProviderPerField(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < encryptedFields; ++i) {
+            blackhole.consume(encrypt(cipherProvider.get()));
+        }
+    }
+
+    private byte[] encrypt(Cipher cipher) throws Exception {
+        // A fresh IV for every operation; GCM ciphers refuse to reuse one
+        ByteBuffer.wrap(iv).putLong(4, ++counter);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(plaintext);
+    }
+
+    private String providerName() {
+        return securityProviderName == null || securityProviderName.isEmpty() ? null : securityProviderName;
+    }
+
+}
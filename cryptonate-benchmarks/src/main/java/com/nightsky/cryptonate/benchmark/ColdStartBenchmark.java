@@ -0,0 +1,78 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first insert and load of an entity in a fresh JVM, right after
+ * the listener is built and the plan of the entity prepared, with and without
+ * a warm-up. Building the listener, and so the warm-up, is not measured; every
+ * fork measures one cold call.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean warmUp;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private SimpleEntity entity;
+
+    @Setup
+    public void setUp() {
+        CryptoEventListener.Builder builder = BenchmarkFixtures.listenerBuilder();
+
+        if ( warmUp )
+            builder.withWarmUp(500);
+
+        listener = builder.build();
+
+        if ( warmUp )
+            System.out.printf("%n%s%n", listener.getWarmUpReport());
+        persister = BenchmarkFixtures.persister(BenchmarkFixtures.SIMPLE_ENTITY_PROPERTIES);
+        entity = BenchmarkFixtures.simpleEntity(1L);
+
+        // As the integrator does when the SessionFactory starts
+        listener.prepare(SimpleEntity.class, persister);
+    }
+
+    @Benchmark
+    public Object[] firstInsertAndLoad() {
+        Object[] state = BenchmarkFixtures.stateOf(entity);
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(entity)
+            .setId(entity.getId())
+            .setState(state)
+            .setPersister(persister);
+        listener.onPreLoad(event);
+        return state;
+    }
+
+}
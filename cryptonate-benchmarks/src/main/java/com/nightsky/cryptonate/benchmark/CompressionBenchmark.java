@@ -0,0 +1,113 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encryption and decryption of JSON-like free text with and without
+ * compression. The stored size of each envelope is printed during setup;
+ * compression pays off once the time it adds is below the time saved moving
+ * the bytes it removes, which depends on the link to the database.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String[] WORDS = {
+        "customer", "called", "about", "invoice", "order", "shipped", "refund", "requested",
+        "address", "updated", "payment", "declined", "ticket", "escalated", "resolved", "pending"
+    };
+
+    @Param({ "NONE", "DEFLATE" })
+    public Compression compression;
+
+    @Param({ "256", "2048", "8192", "40960" })
+    public int payloadSize;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private FreeTextEntity entity;
+
+    private Object[] plaintextState;
+
+    private Object[] encryptedState;
+
+    @Setup
+    public void setUp() {
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withEnvelopeReuse(false)
+                .build();
+        persister = BenchmarkFixtures.persister("plainText", "compressedText");
+        entity = new FreeTextEntity(12345L);
+
+        String text = freeText(payloadSize);
+        plaintextState = compression == Compression.NONE ? new Object[] { text, null } : new Object[] { null, text };
+
+        encryptedState = plaintextState.clone();
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), encryptedState, persister, null));
+
+        String envelope = (String) encryptedState[compression == Compression.NONE ? 0 : 1];
+        System.out.printf("%n%s, %d characters: %d Base64 characters stored%n", compression, text.length(), envelope.length());
+    }
+
+    @Benchmark
+    public Object[] encrypt() {
+        Object[] state = plaintextState.clone();
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+        return state;
+    }
+
+    @Benchmark
+    public Object[] decrypt() {
+        Object[] state = encryptedState.clone();
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(entity)
+            .setId(entity.getId())
+            .setState(state)
+            .setPersister(persister);
+        listener.onPreLoad(event);
+        return state;
+    }
+
+    private static String freeText(int length) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder("[");
+
+        while ( text.length() < length ) {
+            text.append("{\"id\":").append(random.nextInt(100000)).append(",\"note\":\"");
+
+            for (int i = 0; i < 8; ++i) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+
+            text.append("\"},");
+        }
+
+        return text.substring(0, length);
+    }
+
+}
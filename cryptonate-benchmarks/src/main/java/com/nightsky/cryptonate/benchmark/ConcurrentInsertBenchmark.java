@@ -0,0 +1,134 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.crypto.CounterIvGenerator;
+import com.nightsky.cryptonate.crypto.IvGenerator;
+import com.nightsky.cryptonate.crypto.RandomIvGenerator;
+import com.nightsky.cryptonate.crypto.ThreadLocalRandomIvGenerator;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>CryptoEventListener.onPreInsert</code> of an entity with five
+ * encrypted fields from 1 to 32 threads sharing one listener, with every
+ * {@link IvGenerator}. {@link IvGeneratorBenchmark} measures the generators
+ * alone; this one shows whether IV generation limits inserts once the
+ * threads also encrypt. Throughput is per benchmark, summed over its threads.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentInsertBenchmark {
+
+    @Param({ "shared-securerandom", "thread-local-securerandom", "counter" })
+    public String generator;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    @Setup
+    public void setUp() {
+        IvGenerator ivGenerator;
+
+        switch (generator) {
+            case "shared-securerandom":
+                ivGenerator = new RandomIvGenerator(new SecureRandom());
+                break;
+            case "thread-local-securerandom":
+                ivGenerator = new ThreadLocalRandomIvGenerator();
+                break;
+            case "counter":
+                ivGenerator = new CounterIvGenerator();
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown IV generator: %s", generator));
+        }
+
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withIvGenerator(ivGenerator)
+                .build();
+        persister = BenchmarkFixtures.persister(BenchmarkFixtures.SIMPLE_ENTITY_PROPERTIES);
+    }
+
+    /**
+     * Gives every thread an entity of its own.
+     */
+    @State(Scope.Thread)
+    public static class Entity {
+
+        private SimpleEntity entity;
+
+        @Setup
+        public void setUp(ConcurrentInsertBenchmark benchmark) {
+            entity = BenchmarkFixtures.simpleEntity(benchmark.nextId.getAndIncrement());
+        }
+
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object[] onPreInsert1Thread(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Object[] onPreInsert2Threads(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object[] onPreInsert4Threads(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object[] onPreInsert8Threads(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object[] onPreInsert16Threads(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object[] onPreInsert32Threads(Entity entity) {
+        return insert(entity.entity);
+    }
+
+    private Object[] insert(SimpleEntity entity) {
+        Object[] state = BenchmarkFixtures.stateOf(entity);
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+        return state;
+    }
+
+}
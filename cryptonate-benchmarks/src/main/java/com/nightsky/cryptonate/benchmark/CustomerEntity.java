@@ -0,0 +1,110 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.CachedDecryption;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A mapped entity for {@link HibernateBenchmark}, with the e-mail address
+ * and street number of <code>SimpleEntity</code> stored as envelopes in text
+ * columns, a binary document and a plain column. The text fields are cached
+ * when the listener has a plaintext cache.
+ *
+ * @author Chris
+ */
+@Entity
+@Table(name = "customer")
+public class CustomerEntity {
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false, length = 16)
+    private String region;
+
+    @Encrypted(aadFieldNames = { "id" })
+    @CachedDecryption
+    @Column(length = 256)
+    private String emailAddress;
+
+    @Encrypted
+    @CachedDecryption
+    @Column(length = 256)
+    private String fullName;
+
+    @Encrypted(aadFieldNames = { "id" })
+    @CachedDecryption
+    @Column(length = 128)
+    private String streetNumber;
+
+    @Encrypted(aadFieldNames = { "id" })
+    @Column(length = 1024)
+    private byte[] document;
+
+    public CustomerEntity() {  }
+
+    public CustomerEntity(long id) {
+        this.id = id;
+        this.region = "region-" + (id % 16);
+        this.emailAddress = "someone" + id + "@example.com";
+        this.fullName = "Someone Number " + id;
+        this.streetNumber = Long.toString(id % 10000);
+        this.document = new byte[512];
+
+        for (int i = 0; i < document.length; ++i) {
+            document[i] = (byte) (id * 31 + i);
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public void setEmailAddress(String emailAddress) {
+        this.emailAddress = emailAddress;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public void setFullName(String fullName) {
+        this.fullName = fullName;
+    }
+
+    public String getStreetNumber() {
+        return streetNumber;
+    }
+
+    public void setStreetNumber(String streetNumber) {
+        this.streetNumber = streetNumber;
+    }
+
+    public byte[] getDocument() {
+        return document;
+    }
+
+    public void setDocument(byte[] document) {
+        this.document = document;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import javax.persistence.Id;
+
+/**
+ * An entity with a single encrypted binary field, stored as the listener's
+ * envelope storage decides.
+ *
+ * @author Chris
+ */
+public class DocumentEntity {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private byte[] content;
+
+    public DocumentEntity() {  }
+
+    public DocumentEntity(long id, byte[] content) {
+        this.id = id;
+        this.content = content;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads encrypted rows from an in-memory H2 table, storing envelopes as
+ * Base64 text in a VARCHAR column or as raw bytes in a VARBINARY column, and
+ * decrypts them with <code>CryptoEventListener.onPreLoad</code>. The average
+ * stored envelope size of each format is printed once the table is filled.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvelopeStorageBenchmark {
+
+    private static final int ROW_COUNT = 1000;
+
+    @Param({ "BASE64", "BINARY" })
+    public EnvelopeStorage storage;
+
+    @Param({ "64", "1024" })
+    public int contentSize;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private Connection connection;
+
+    private PreparedStatement select;
+
+    @Setup
+    public void setUp() throws SQLException {
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withEnvelopeStorage(storage)
+                .build();
+        persister = BenchmarkFixtures.persister("content");
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:envelopes_" + storage + "_" + contentSize);
+
+        try (Statement statement = connection.createStatement()) {
+            String columnType = storage == EnvelopeStorage.BINARY ? "VARBINARY" : "VARCHAR";
+            statement.execute(String.format("CREATE TABLE document (id BIGINT PRIMARY KEY, content %s NOT NULL)", columnType));
+        }
+
+        insertRows();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT AVG(OCTET_LENGTH(content)) FROM document"))
+        {
+            rs.next();
+            System.out.printf("%n%s envelopes of %d byte values: %d bytes stored on average%n", storage, contentSize, rs.getLong(1));
+        }
+
+        select = connection.prepareStatement("SELECT id, content FROM document");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        select.close();
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public int loadRows() throws SQLException {
+        int loaded = 0;
+
+        try (ResultSet rs = select.executeQuery()) {
+            while ( rs.next() ) {
+                DocumentEntity entity = new DocumentEntity();
+                entity.setId(rs.getLong(1));
+
+                Object[] state = new Object[] { storage == EnvelopeStorage.BINARY ? rs.getBytes(2) : rs.getString(2) };
+                PreLoadEvent event = new PreLoadEvent(null)
+                    .setEntity(entity)
+                    .setId(entity.getId())
+                    .setState(state)
+                    .setPersister(persister);
+                listener.onPreLoad(event);
+                loaded += ((byte[]) state[0]).length;
+            }
+        }
+
+        return loaded;
+    }
+
+    private void insertRows() throws SQLException {
+        Random random = new Random(42);
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO document (id, content) VALUES (?, ?)")) {
+            for (long id = 1; id <= ROW_COUNT; ++id) {
+                byte[] content = new byte[contentSize];
+                random.nextBytes(content);
+
+                DocumentEntity entity = new DocumentEntity(id, content);
+                Object[] state = new Object[] { content };
+                listener.onPreInsert(new PreInsertEvent(entity, id, state, persister, null));
+
+                insert.setLong(1, id);
+
+                if ( storage == EnvelopeStorage.BINARY )
+                    insert.setBytes(2, (byte[]) state[0]);
+                else
+                    insert.setString(2, new String((byte[]) state[0], StandardCharsets.US_ASCII));
+
+                insert.addBatch();
+            }
+
+            insert.executeBatch();
+        }
+    }
+
+}
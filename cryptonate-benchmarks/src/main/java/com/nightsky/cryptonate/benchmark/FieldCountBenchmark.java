@@ -0,0 +1,96 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>onPreInsert</code> and <code>onPreLoad</code> of an entity
+ * with 1 to 10 encrypted fields of different types, all with AAD. The
+ * listener is shared by all benchmark threads; every thread encrypts and
+ * decrypts its own entity. See {@link BenchmarkMatrix} to run it at several
+ * thread counts with the GC profiler.
+ *
+ * @author Chris
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldCountBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        private CryptoEventListener listener;
+
+        private EntityPersister persister;
+
+        @Setup
+        public void setUp() {
+            // Envelopes are not reused, so every insert encrypts
+            listener = BenchmarkFixtures.listenerBuilder()
+                .withEnvelopeReuse(false)
+                    .build();
+            persister = BenchmarkFixtures.persister(WideEntity.PROPERTIES);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Fields {
+
+        @Param({ "1", "2", "5", "10" })
+        public int fields;
+
+        private WideEntity entity;
+
+        private Object[] plaintextState;
+
+        private Object[] encryptedState;
+
+        @Setup
+        public void setUp(Shared shared) {
+            entity = new WideEntity(Thread.currentThread().getId());
+            plaintextState = WideEntity.stateOf(entity.getId(), fields);
+
+            encryptedState = plaintextState.clone();
+            shared.listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), encryptedState, shared.persister, null));
+        }
+
+    }
+
+    @Benchmark
+    public Object[] onPreInsert(Shared shared, Fields fields) {
+        Object[] state = fields.plaintextState.clone();
+        shared.listener.onPreInsert(new PreInsertEvent(fields.entity, fields.entity.getId(), state, shared.persister, null));
+        return state;
+    }
+
+    @Benchmark
+    public Object[] onPreLoad(Shared shared, Fields fields) {
+        Object[] state = fields.encryptedState.clone();
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(fields.entity)
+            .setId(fields.entity.getId())
+            .setState(state)
+            .setPersister(shared.persister);
+        shared.listener.onPreLoad(event);
+        return state;
+    }
+
+}
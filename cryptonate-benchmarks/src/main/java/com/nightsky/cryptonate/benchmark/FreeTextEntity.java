@@ -0,0 +1,54 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import javax.persistence.Id;
+
+/**
+ * An entity with the same free-text value encrypted as is and compressed
+ * before encryption; benchmarks fill one field and leave the other null.
+ *
+ * @author Chris
+ */
+public class FreeTextEntity {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private String plainText;
+
+    @Encrypted(aadFieldNames = { "id" }, compress = Compression.DEFLATE, compressionThreshold = 0)
+    private String compressedText;
+
+    public FreeTextEntity() {  }
+
+    public FreeTextEntity(long id) {
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getPlainText() {
+        return plainText;
+    }
+
+    public void setPlainText(String plainText) {
+        this.plainText = plainText;
+    }
+
+    public String getCompressedText() {
+        return compressedText;
+    }
+
+    public void setCompressedText(String compressedText) {
+        this.compressedText = compressedText;
+    }
+
+}
@@ -0,0 +1,282 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.crypto.EnvelopeFormat;
+import com.nightsky.cryptonate.crypto.PlaintextCache;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.event.listener.ParallelFlushEncryption;
+import com.nightsky.cryptonate.integrator.CryptonateIntegrator;
+import com.nightsky.cryptonate.metrics.HistogramCryptoMetrics;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Boots a SessionFactory on an in-memory H2 database holding
+ * {@value #ROW_COUNT} rows of {@link CustomerEntity}, and measures inserts,
+ * updates, loads by id and a query of every row through Hibernate, with
+ * JDBC batching, flushes and the persistence context, without encryption
+ * and with each listener mode. Throughput and sampled latency percentiles
+ * are reported in milliseconds, and in seconds for the query; inserts and
+ * updates are per entity, in transactions of {@value #BATCH_SIZE} entities.
+ *
+ * @author Chris
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class HibernateBenchmark {
+
+    static final int ROW_COUNT = 10000;
+
+    static final int BATCH_SIZE = 100;
+
+    public enum EncryptionMode {
+
+        /** No listener registered */
+        NONE,
+
+        /** The listener with its default settings */
+        DEFAULT,
+
+        V2_ENVELOPES,
+
+        BINARY_STORAGE,
+
+        PLAINTEXT_CACHE,
+
+        PARALLEL_FLUSH,
+
+        METRICS
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Database {
+
+        @Param({ "NONE", "DEFAULT", "V2_ENVELOPES", "BINARY_STORAGE", "PLAINTEXT_CACHE", "PARALLEL_FLUSH", "METRICS" })
+        public EncryptionMode mode;
+
+        private final AtomicLong nextId = new AtomicLong(ROW_COUNT + 1);
+
+        private final AtomicInteger nextWorker = new AtomicInteger();
+
+        private ParallelFlushEncryption flushEncryption;
+
+        private SessionFactory sessionFactory;
+
+        @Setup
+        public void setUp() {
+            BootstrapServiceRegistryBuilder bootstrap = new BootstrapServiceRegistryBuilder();
+
+            if ( mode != EncryptionMode.NONE )
+                bootstrap.applyIntegrator(integrator());
+
+            StandardServiceRegistry registry = new StandardServiceRegistryBuilder(bootstrap.build())
+                .applySetting(AvailableSettings.URL, "jdbc:h2:mem:customers_" + mode + ";DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.USER, "sa")
+                .applySetting(AvailableSettings.PASS, "")
+                .applySetting(AvailableSettings.POOL_SIZE, "16")
+                .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, "50")
+                .applySetting(AvailableSettings.ORDER_INSERTS, "true")
+                .applySetting(AvailableSettings.ORDER_UPDATES, "true")
+                    .build();
+
+            sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(CustomerEntity.class)
+                    .buildMetadata()
+                    .buildSessionFactory();
+
+            for (long id = 1; id <= ROW_COUNT; id += BATCH_SIZE) {
+                insert(id);
+            }
+        }
+
+        /**
+         * Removes the rows inserted by the iteration, so that every
+         * iteration inserts into and queries a table of the same size.
+         */
+        @TearDown(Level.Iteration)
+        public void deleteInsertedRows() {
+            inTransaction(session -> session.createQuery("delete from CustomerEntity c where c.id > :rows")
+                .setParameter("rows", (long) ROW_COUNT)
+                    .executeUpdate());
+        }
+
+        @TearDown
+        public void tearDown() {
+            sessionFactory.close();
+
+            if ( flushEncryption != null )
+                flushEncryption.close();
+        }
+
+        private CryptonateIntegrator integrator() {
+            CryptoEventListener.Builder builder = BenchmarkFixtures.listenerBuilder();
+
+            switch ( mode ) {
+                case V2_ENVELOPES:
+                    builder.withEnvelopeFormat(EnvelopeFormat.V2);
+                    break;
+                case BINARY_STORAGE:
+                    builder.withEnvelopeStorage(EnvelopeStorage.BINARY);
+                    break;
+                case PLAINTEXT_CACHE:
+                    builder.withPlaintextCache(PlaintextCache.builder()
+                        .withMaximumSize(4L * ROW_COUNT)
+                            .build());
+                    break;
+                case METRICS:
+                    builder.withMetrics(new HistogramCryptoMetrics());
+                    break;
+                default:
+                    break;
+            }
+
+            CryptoEventListener listener = builder.build();
+
+            if ( mode != EncryptionMode.PARALLEL_FLUSH )
+                return new CryptonateIntegrator(listener);
+
+            flushEncryption = ParallelFlushEncryption.builder()
+                .withListener(listener)
+                .withParallelism(Runtime.getRuntime().availableProcessors())
+                    .build();
+            return new CryptonateIntegrator(listener, flushEncryption);
+        }
+
+        private int insert(long firstId) {
+            return inTransaction(session -> {
+                for (long id = firstId; id < firstId + BATCH_SIZE; ++id) {
+                    session.persist(new CustomerEntity(id));
+                }
+
+                return BATCH_SIZE;
+            });
+        }
+
+        private <T> T inTransaction(Function<Session, T> work) {
+            try (Session session = sessionFactory.openSession()) {
+                Transaction transaction = session.beginTransaction();
+
+                try {
+                    T result = work.apply(session);
+                    transaction.commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    transaction.rollback();
+                    throw e;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Gives every benchmark thread its own random ids to load and its own
+     * blocks of rows to update, so that updates do not wait for each other's
+     * row locks.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private Random random;
+
+        private int worker;
+
+        private int workers;
+
+        private int updates;
+
+        @Setup
+        public void setUp(Database database, BenchmarkParams params) {
+            worker = database.nextWorker.getAndIncrement();
+            workers = params.getThreads();
+            random = new Random(42 + worker);
+        }
+
+        private long nextUpdateBlock() {
+            int blocks = ROW_COUNT / BATCH_SIZE;
+            return (long) ((worker + workers * updates++) % blocks) * BATCH_SIZE + 1;
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int insert(Database database) {
+        return database.insert(database.nextId.getAndAdd(BATCH_SIZE));
+    }
+
+    /**
+     * Loads a block of rows and changes one encrypted field of each; the
+     * other fields keep their envelopes.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int update(Database database, Worker worker) {
+        long firstId = worker.nextUpdateBlock();
+        String suffix = "-" + worker.updates;
+
+        return database.inTransaction(session -> {
+            List<CustomerEntity> customers = session.createQuery(
+                "from CustomerEntity c where c.id >= :first and c.id < :last", CustomerEntity.class)
+                .setParameter("first", firstId)
+                .setParameter("last", firstId + BATCH_SIZE)
+                    .getResultList();
+
+            for (CustomerEntity customer : customers) {
+                customer.setFullName("Someone Number " + customer.getId() + suffix);
+            }
+
+            return customers.size();
+        });
+    }
+
+    @Benchmark
+    public CustomerEntity loadById(Database database, Worker worker) {
+        long id = 1 + worker.random.nextInt(ROW_COUNT);
+        return database.inTransaction(session -> session.get(CustomerEntity.class, id));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<CustomerEntity> queryAllRows(Database database) {
+        return database.inTransaction(session -> session.createQuery(
+            "from CustomerEntity c where c.id <= :rows", CustomerEntity.class)
+            .setParameter("rows", (long) ROW_COUNT)
+                .getResultList());
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.metrics.CryptoMetrics;
+import com.nightsky.cryptonate.metrics.HistogramCryptoMetrics;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>CryptoEventListener.onPreInsert</code> for an entity with
+ * five encrypted fields of different types, without metrics and with
+ * {@link HistogramCryptoMetrics}.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({ "none", "histogram" })
+    private String metrics;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private SimpleEntity entity;
+
+    @Setup
+    public void setUp() {
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withMetrics("histogram".equals(metrics) ? new HistogramCryptoMetrics() : CryptoMetrics.NONE)
+                .build();
+        persister = BenchmarkFixtures.persister(BenchmarkFixtures.SIMPLE_ENTITY_PROPERTIES);
+        entity = BenchmarkFixtures.simpleEntity(12345L);
+    }
+
+    @Benchmark
+    public Object[] onPreInsert() {
+        Object[] state = BenchmarkFixtures.stateOf(entity);
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+        return state;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.crypto.CounterIvGenerator;
+import com.nightsky.cryptonate.crypto.IvGenerator;
+import com.nightsky.cryptonate.crypto.RandomIvGenerator;
+import com.nightsky.cryptonate.crypto.ThreadLocalRandomIvGenerator;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures IV generation with every {@link IvGenerator}. The generator is
+ * shared by all benchmark threads, as it is shared by all sessions using a
+ * listener; run with <code>-t</code> to see how each one scales.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IvGeneratorBenchmark {
+
+    @Param({ "shared-securerandom", "thread-local-securerandom", "counter" })
+    public String generator;
+
+    private IvGenerator ivGenerator;
+
+    @Setup
+    public void setUp() {
+        switch (generator) {
+            case "shared-securerandom":
+                ivGenerator = new RandomIvGenerator(new SecureRandom());
+                break;
+            case "thread-local-securerandom":
+                ivGenerator = new ThreadLocalRandomIvGenerator();
+                break;
+            case "counter":
+                ivGenerator = new CounterIvGenerator();
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown IV generator: %s", generator));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final byte[] envelope = new byte[64];
+    }
+
+    @Benchmark
+    public byte[] generate(Buffer buffer) {
+        ivGenerator.generate(buffer.envelope, 8);
+        return buffer.envelope;
+    }
+
+}
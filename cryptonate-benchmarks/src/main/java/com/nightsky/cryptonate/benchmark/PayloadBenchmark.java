@@ -0,0 +1,124 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>onPreInsert</code> and <code>onPreLoad</code> of a single
+ * text or binary field, from 8 bytes to 1 MiB, with and without AAD. The
+ * listener is shared by all benchmark threads; every thread encrypts and
+ * decrypts its own entity. See {@link BenchmarkMatrix} to run it at several
+ * thread counts with the GC profiler.
+ *
+ * @author Chris
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        private CryptoEventListener listener;
+
+        private EntityPersister persister;
+
+        @Setup
+        public void setUp() {
+            // Envelopes are not reused, so every insert encrypts
+            listener = BenchmarkFixtures.listenerBuilder()
+                .withEnvelopeReuse(false)
+                    .build();
+            persister = BenchmarkFixtures.persister(PayloadEntity.PROPERTIES);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Payload {
+
+        @Param({ "text", "binary" })
+        public String type;
+
+        @Param({ "8", "256", "4096", "65536", "1048576" })
+        public int payloadSize;
+
+        @Param({ "false", "true" })
+        public boolean aad;
+
+        private PayloadEntity entity;
+
+        private Object[] plaintextState;
+
+        private Object[] encryptedState;
+
+        @Setup
+        public void setUp(Shared shared) {
+            entity = new PayloadEntity(Thread.currentThread().getId());
+
+            Random random = new Random(42);
+            int index = ("text".equals(type) ? 0 : 2) + (aad ? 1 : 0);
+
+            plaintextState = new Object[PayloadEntity.PROPERTIES.length];
+            plaintextState[index] = "text".equals(type) ? text(random, payloadSize) : bytes(random, payloadSize);
+
+            encryptedState = plaintextState.clone();
+            shared.listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), encryptedState, shared.persister, null));
+        }
+
+    }
+
+    @Benchmark
+    public Object[] onPreInsert(Shared shared, Payload payload) {
+        Object[] state = payload.plaintextState.clone();
+        shared.listener.onPreInsert(new PreInsertEvent(payload.entity, payload.entity.getId(), state, shared.persister, null));
+        return state;
+    }
+
+    @Benchmark
+    public Object[] onPreLoad(Shared shared, Payload payload) {
+        Object[] state = payload.encryptedState.clone();
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(payload.entity)
+            .setId(payload.entity.getId())
+            .setState(state)
+            .setPersister(shared.persister);
+        shared.listener.onPreLoad(event);
+        return state;
+    }
+
+    private static String text(Random random, int length) {
+        char[] text = new char[length];
+
+        for (int i = 0; i < length; ++i) {
+            text[i] = (char) ('a' + random.nextInt(26));
+        }
+
+        return new String(text);
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import javax.persistence.Id;
+
+/**
+ * An entity with a text and a binary field, each encrypted with and without
+ * AAD; benchmarks fill one field and leave the others null.
+ *
+ * @author Chris
+ */
+public class PayloadEntity {
+
+    public static final String[] PROPERTIES = { "text", "textWithAad", "content", "contentWithAad" };
+
+    @Id
+    private Long id;
+
+    @Encrypted
+    private String text;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private String textWithAad;
+
+    @Encrypted
+    private byte[] content;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private byte[] contentWithAad;
+
+    public PayloadEntity() {  }
+
+    public PayloadEntity(long id) {
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getTextWithAad() {
+        return textWithAad;
+    }
+
+    public void setTextWithAad(String textWithAad) {
+        this.textWithAad = textWithAad;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+
+    public byte[] getContentWithAad() {
+        return contentWithAad;
+    }
+
+    public void setContentWithAad(byte[] contentWithAad) {
+        this.contentWithAad = contentWithAad;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.crypto.PlaintextCache;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>CryptoEventListener.onPreLoad</code> for an entity whose
+ * envelopes are loaded over and over, without a plaintext cache and with the
+ * values cached on and off the heap.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaintextCacheBenchmark {
+
+    @Param({ "none", "on-heap", "off-heap" })
+    public String plaintextCache;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private ReferenceEntity entity;
+
+    private Object[] encryptedState;
+
+    @Setup
+    public void setUp() {
+        CryptoEventListener.Builder builder = BenchmarkFixtures.listenerBuilder();
+
+        if ( !"none".equals(plaintextCache) ) {
+            builder.withPlaintextCache(PlaintextCache.builder()
+                .withOffHeapStorage("off-heap".equals(plaintextCache))
+                    .build());
+        }
+
+        listener = builder.build();
+        persister = BenchmarkFixtures.persister(BenchmarkFixtures.SIMPLE_ENTITY_PROPERTIES);
+        entity = new ReferenceEntity(12345L);
+
+        encryptedState = entity.state();
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), encryptedState, persister, null));
+    }
+
+    @Benchmark
+    public Object[] onPreLoad() {
+        Object[] state = encryptedState.clone();
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(entity)
+            .setId(entity.getId())
+            .setState(state)
+            .setPersister(persister);
+        listener.onPreLoad(event);
+        return state;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.CachedDecryption;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import javax.persistence.Id;
+
+/**
+ * A read-mostly entity whose decrypted values may be cached; the fields match
+ * those of the test suite's <code>SimpleEntity</code>.
+ *
+ * @author Chris
+ */
+@CachedDecryption
+public class ReferenceEntity {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private String emailAddress;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Double price;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Integer streetNumber;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Float amount;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Long followers;
+
+    public ReferenceEntity() {  }
+
+    public ReferenceEntity(long id) {
+        this.id = id;
+        this.emailAddress = "someone" + id + "@example.com";
+        this.price = 1234.56;
+        this.streetNumber = (int) (id % 10000);
+        this.amount = 12.5f;
+        this.followers = id * 31;
+    }
+
+    public Object[] state() {
+        return new Object[] { emailAddress, price, streetNumber, amount, followers };
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public Integer getStreetNumber() {
+        return streetNumber;
+    }
+
+    public Float getAmount() {
+        return amount;
+    }
+
+    public Long getFollowers() {
+        return followers;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of encrypting and decrypting one multi-megabyte binary
+ * field as a single envelope and as a segmented envelope whose segments run
+ * on the common fork/join pool. The speed-up is bounded by the cores
+ * available to that pool.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentationBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean segmented;
+
+    @Param({ "1048576", "8388608" })
+    public int payloadSize;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private DocumentEntity entity;
+
+    private Object[] plaintextState;
+
+    private Object[] encryptedState;
+
+    @Setup
+    public void setUp() {
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withEnvelopeStorage(EnvelopeStorage.BINARY)
+            .withEnvelopeReuse(false)
+            .withSegmentationThreshold(segmented ? 64 * 1024 : 0)
+                .build();
+        persister = BenchmarkFixtures.persister("content");
+
+        byte[] content = new byte[payloadSize];
+        new Random(42).nextBytes(content);
+        entity = new DocumentEntity(12345L, content);
+
+        plaintextState = new Object[] { content };
+        encryptedState = plaintextState.clone();
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), encryptedState, persister, null));
+    }
+
+    @Benchmark
+    public Object[] encrypt() {
+        Object[] state = plaintextState.clone();
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+        return state;
+    }
+
+    @Benchmark
+    public Object[] decrypt() {
+        Object[] state = encryptedState.clone();
+        PreLoadEvent event = new PreLoadEvent(null)
+            .setEntity(entity)
+            .setId(entity.getId())
+            .setState(state)
+            .setPersister(persister);
+        listener.onPreLoad(event);
+        return state;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>CryptoEventListener.onPreUpdate</code> for an entity whose
+ * encrypted fields did not change, with and without envelope reuse.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean reuseEnvelopes;
+
+    private CryptoEventListener listener;
+
+    private EntityPersister persister;
+
+    private SimpleEntity entity;
+
+    private Object[] plaintextState;
+
+    @Setup
+    public void setUp() {
+        listener = BenchmarkFixtures.listenerBuilder()
+            .withEnvelopeReuse(reuseEnvelopes)
+                .build();
+        persister = BenchmarkFixtures.persister(BenchmarkFixtures.SIMPLE_ENTITY_PROPERTIES);
+        entity = BenchmarkFixtures.simpleEntity(12345L);
+
+        plaintextState = BenchmarkFixtures.stateOf(entity);
+        listener.onPreInsert(new PreInsertEvent(entity, entity.getId(), plaintextState.clone(), persister, null));
+    }
+
+    @Benchmark
+    public Object[] onPreUpdate() {
+        Object[] state = plaintextState.clone();
+        listener.onPreUpdate(new PreUpdateEvent(entity, entity.getId(), state, plaintextState, persister, null));
+        return state;
+    }
+
+}
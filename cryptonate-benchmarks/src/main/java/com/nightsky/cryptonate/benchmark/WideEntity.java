@@ -0,0 +1,96 @@
+package com.nightsky.cryptonate.benchmark;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import javax.persistence.Id;
+
+/**
+ * An entity with ten encrypted fields, one of each standard type but
+ * <code>byte[]</code>; benchmarks fill the first fields and leave the others
+ * null.
+ *
+ * @author Chris
+ */
+public class WideEntity {
+
+    public static final String[] PROPERTIES = {
+        "emailAddress", "followers", "streetNumber", "price", "amount",
+        "verified", "floor", "balance", "createdAt", "externalId"
+    };
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private String emailAddress;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Long followers;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Integer streetNumber;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Double price;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Float amount;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Boolean verified;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Short floor;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private BigDecimal balance;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Instant createdAt;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private UUID externalId;
+
+    public WideEntity() {  }
+
+    public WideEntity(long id) {
+        this.id = id;
+    }
+
+    /**
+     * @param id the ID
+     * @param fields the number of fields to fill, in the order of
+     * {@link #PROPERTIES}
+     * @return the state of an entity with the first fields filled
+     */
+    public static Object[] stateOf(long id, int fields) {
+        Object[] values = {
+            "someone" + id + "@example.com",
+            id * 31,
+            (int) (id % 10000),
+            1234.56,
+            12.5f,
+            Boolean.TRUE,
+            (short) 7,
+            new BigDecimal("98765.4321"),
+            Instant.ofEpochSecond(1700000000L, 123456789),
+            new UUID(id, id * 31)
+        };
+
+        Object[] state = new Object[values.length];
+        System.arraycopy(values, 0, state, 0, fields);
+        return state;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+}
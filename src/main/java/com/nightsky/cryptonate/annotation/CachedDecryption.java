@@ -0,0 +1,20 @@
+package com.nightsky.cryptonate.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the decrypted values of an <code>&#64;Encrypted</code> field, or of
+ * all <code>&#64;Encrypted</code> fields of an entity, in the plaintext cache
+ * of the <code>CryptoEventListener</code>. Without a configured cache, the
+ * annotation has no effect.
+ *
+ * @author Chris
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.TYPE, ElementType.FIELD })
+public @interface CachedDecryption {
+
+}
@@ -0,0 +1,23 @@
+package com.nightsky.cryptonate.annotation;
+
+/**
+ * How the value of an <code>&#64;Encrypted</code> field is compressed before
+ * it is encrypted.
+ *
+ * @author Chris
+ */
+public enum Compression {
+
+    /**
+     * The value is encrypted as is.
+     */
+    NONE,
+
+    /**
+     * Values of at least <code>compressionThreshold</code> bytes are
+     * compressed with raw DEFLATE, and kept compressed only if that makes
+     * them smaller. Compressed values are always stored in v2 envelopes.
+     */
+    DEFLATE
+
+}
@@ -0,0 +1,24 @@
+package com.nightsky.cryptonate.annotation;
+
+/**
+ * When the value of an <code>&#64;Encrypted</code> field is decrypted.
+ *
+ * @author Chris
+ */
+public enum DecryptionMode {
+
+    /**
+     * The field is decrypted when its entity is loaded.
+     */
+    EAGER,
+
+    /**
+     * The field keeps its envelope when its entity is loaded and is decrypted
+     * the first time it is read through
+     * {@link com.nightsky.cryptonate.event.listener.DeferredDecryption#resolve(Object, String, String)},
+     * called on the <code>DeferredDecryption</code> field of the entity. Only
+     * <code>String</code> fields can be decrypted on access.
+     */
+    ON_ACCESS
+
+}
@@ -15,4 +15,12 @@ public @interface Encrypted {
 
     public String[] aadFieldNames() default {};
 
+    public DecryptionMode decrypt() default DecryptionMode.EAGER;
+
+    public EnvelopeStorage storage() default EnvelopeStorage.DEFAULT;
+
+    public Compression compress() default Compression.NONE;
+
+    public int compressionThreshold() default 1024;
+
 }
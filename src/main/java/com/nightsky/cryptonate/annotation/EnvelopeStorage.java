@@ -0,0 +1,29 @@
+package com.nightsky.cryptonate.annotation;
+
+/**
+ * How the envelope of an <code>&#64;Encrypted</code> field is stored in its
+ * column.
+ *
+ * @author Chris
+ */
+public enum EnvelopeStorage {
+
+    /**
+     * <code>byte[]</code> fields use the storage configured on the
+     * <code>CryptoEventListener</code>; all other fields use {@link #BASE64}.
+     */
+    DEFAULT,
+
+    /**
+     * The envelope is Base64 encoded; <code>byte[]</code> fields store the
+     * encoded characters as ASCII bytes.
+     */
+    BASE64,
+
+    /**
+     * The raw envelope is stored; only <code>byte[]</code> fields, mapped to
+     * binary columns, can store raw envelopes.
+     */
+    BINARY
+
+}
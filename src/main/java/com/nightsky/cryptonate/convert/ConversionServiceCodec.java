@@ -0,0 +1,32 @@
+package com.nightsky.cryptonate.convert;
+
+import org.springframework.core.convert.ConversionService;
+
+/**
+ * Converts field values with a Spring <code>ConversionService</code>; used for
+ * types without a dedicated codec.
+ *
+ * @author Chris
+ */
+public class ConversionServiceCodec implements FieldCodec<Object> {
+
+    private final ConversionService conversionService;
+
+    private final Class<?> type;
+
+    public ConversionServiceCodec(ConversionService conversionService, Class<?> type) {
+        this.conversionService = conversionService;
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return conversionService.convert(value, byte[].class);
+    }
+
+    @Override
+    public Object decode(byte[] plaintext) {
+        return conversionService.convert(plaintext, type);
+    }
+
+}
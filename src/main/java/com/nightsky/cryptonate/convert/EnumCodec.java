@@ -0,0 +1,30 @@
+package com.nightsky.cryptonate.convert;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores enum constants by name, so that constants can be reordered or added
+ * without rewriting existing rows.
+ *
+ * @author Chris
+ * @param <E> the enum type
+ */
+public class EnumCodec<E extends Enum<E>> implements FieldCodec<E> {
+
+    private final Class<E> type;
+
+    public EnumCodec(Class<E> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(E value) {
+        return value.name().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public E decode(byte[] plaintext) {
+        return Enum.valueOf(type, new String(plaintext, StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.nightsky.cryptonate.convert;
+
+/**
+ * Converts the values of an encrypted field to the plaintext that is
+ * encrypted, and back. Codecs are shared by every field of their type and may
+ * be called from several threads at once.
+ *
+ * @author Chris
+ * @param <T> the type of the field
+ */
+public interface FieldCodec<T> {
+
+    /**
+     * @param value a non-null field value
+     * @return the plaintext of the value
+     */
+    byte[] encode(T value);
+
+    /**
+     * @param plaintext a plaintext written by {@link #encode(Object)}
+     * @return the field value
+     */
+    T decode(byte[] plaintext);
+
+}
@@ -0,0 +1,111 @@
+package com.nightsky.cryptonate.convert;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+/**
+ * The codecs of encrypted field types. A codec is looked up by the exact type
+ * of a field; primitive types use the codec of their wrapper, and enums
+ * without a registered codec are stored by name. Other types fall back to a
+ * private Spring <code>DefaultConversionService</code> holding the converters
+ * of {@link ConverterSupport}; the shared instance is left untouched.
+ *
+ * <p>
+ *   Fields resolve their codec once, so register custom codecs before the
+ *   listener handles the first entity.
+ * </p>
+ *
+ * @author Chris
+ */
+public class FieldCodecs {
+
+    private final ConcurrentMap<Class<?>, FieldCodec<?>> codecs;
+
+    private final DefaultConversionService conversionService;
+
+    /**
+     * Creates a registry holding the {@link StandardCodecs}.
+     */
+    public FieldCodecs() {
+        this.codecs = new ConcurrentHashMap<>();
+        this.conversionService = new DefaultConversionService();
+        ConverterSupport.addInternalConverters(conversionService);
+
+        register(byte[].class, StandardCodecs.BYTE_ARRAY);
+        register(String.class, StandardCodecs.STRING);
+        register(Boolean.class, StandardCodecs.BOOLEAN);
+        register(Short.class, StandardCodecs.SHORT);
+        register(Integer.class, StandardCodecs.INTEGER);
+        register(Long.class, StandardCodecs.LONG);
+        register(Float.class, StandardCodecs.FLOAT);
+        register(Double.class, StandardCodecs.DOUBLE);
+        register(BigDecimal.class, StandardCodecs.BIG_DECIMAL);
+        register(UUID.class, StandardCodecs.UUID);
+        register(Instant.class, StandardCodecs.INSTANT);
+        register(LocalDate.class, StandardCodecs.LOCAL_DATE);
+    }
+
+    /**
+     * Registers the codec of a type, replacing any codec it had. Changing the
+     * codec of a type makes the rows it encrypted unreadable.
+     *
+     * @param <T> the type
+     * @param type the type of the fields
+     * @param codec the codec
+     */
+    public <T> void register(Class<T> type, FieldCodec<T> codec) {
+        if ( type.isPrimitive() )
+            throw new RuntimeException(String.format("Register the codec of the wrapper type instead: %s", type.getName()));
+
+        codecs.put(type, codec);
+    }
+
+    /**
+     * @param type the type of a field
+     * @return the codec of the type, or null if the type is not supported
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public FieldCodec<Object> codecFor(Class<?> type) {
+        Class<?> boxed = wrapperOf(type);
+        FieldCodec<?> codec = codecs.get(boxed);
+
+        if ( codec == null ) {
+            if ( boxed.isEnum() )
+                codec = codecs.computeIfAbsent(boxed, t -> new EnumCodec(t));
+            else if ( conversionService.canConvert(type, byte[].class) && conversionService.canConvert(byte[].class, type) )
+                codec = new ConversionServiceCodec(conversionService, type);
+        }
+
+        return (FieldCodec<Object>) codec;
+    }
+
+    private static Class<?> wrapperOf(Class<?> type) {
+        if ( !type.isPrimitive() )
+            return type;
+
+        if ( type == boolean.class )
+            return Boolean.class;
+        if ( type == byte.class )
+            return Byte.class;
+        if ( type == char.class )
+            return Character.class;
+        if ( type == short.class )
+            return Short.class;
+        if ( type == int.class )
+            return Integer.class;
+        if ( type == long.class )
+            return Long.class;
+        if ( type == float.class )
+            return Float.class;
+        if ( type == double.class )
+            return Double.class;
+
+        return type;
+    }
+
+}
@@ -0,0 +1,291 @@
+package com.nightsky.cryptonate.convert;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The codecs registered by default in {@link FieldCodecs}. Numbers are
+ * big-endian and written straight into the plaintext array. Strings, integers,
+ * longs, floats and doubles are encoded as the Spring converters of
+ * {@link ConverterSupport} encode them, so existing rows still decrypt.
+ *
+ * <p>
+ *   <code>Short</code> and <code>BigDecimal</code> values used to go through
+ *   Spring's single element array conversion, which kept one byte of the
+ *   value; one byte plaintexts are still decoded that way.
+ * </p>
+ *
+ * @author Chris
+ */
+public final class StandardCodecs {
+
+    public static final FieldCodec<byte[]> BYTE_ARRAY = new ByteArrayCodec();
+
+    public static final FieldCodec<String> STRING = new StringCodec();
+
+    public static final FieldCodec<Boolean> BOOLEAN = new BooleanCodec();
+
+    public static final FieldCodec<Short> SHORT = new ShortCodec();
+
+    public static final FieldCodec<Integer> INTEGER = new IntegerCodec();
+
+    public static final FieldCodec<Long> LONG = new LongCodec();
+
+    public static final FieldCodec<Float> FLOAT = new FloatCodec();
+
+    public static final FieldCodec<Double> DOUBLE = new DoubleCodec();
+
+    public static final FieldCodec<BigDecimal> BIG_DECIMAL = new BigDecimalCodec();
+
+    public static final FieldCodec<UUID> UUID = new UuidCodec();
+
+    public static final FieldCodec<Instant> INSTANT = new InstantCodec();
+
+    public static final FieldCodec<LocalDate> LOCAL_DATE = new LocalDateCodec();
+
+    private StandardCodecs() {  }
+
+    static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    static int readInt(byte[] src, int offset) {
+        return ((src[offset] & 0xFF) << 24)
+            | ((src[offset + 1] & 0xFF) << 16)
+            | ((src[offset + 2] & 0xFF) << 8)
+            | (src[offset + 3] & 0xFF);
+    }
+
+    static void writeLong(byte[] dst, int offset, long value) {
+        writeInt(dst, offset, (int) (value >>> 32));
+        writeInt(dst, offset + 4, (int) value);
+    }
+
+    static long readLong(byte[] src, int offset) {
+        return ((long) readInt(src, offset) << 32) | (readInt(src, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static byte[] checkLength(byte[] plaintext, int length, String type) {
+        if ( plaintext.length != length )
+            throw new IllegalArgumentException(String.format("Invalid %s plaintext: %d bytes", type, plaintext.length));
+
+        return plaintext;
+    }
+
+    private static final class ByteArrayCodec implements FieldCodec<byte[]> {
+
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(byte[] plaintext) {
+            return plaintext;
+        }
+
+    }
+
+    private static final class StringCodec implements FieldCodec<String> {
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] plaintext) {
+            return new String(plaintext, StandardCharsets.UTF_8);
+        }
+
+    }
+
+    private static final class BooleanCodec implements FieldCodec<Boolean> {
+
+        @Override
+        public byte[] encode(Boolean value) {
+            return new byte[] { (byte) (value ? 1 : 0) };
+        }
+
+        @Override
+        public Boolean decode(byte[] plaintext) {
+            return checkLength(plaintext, 1, "Boolean")[0] != 0;
+        }
+
+    }
+
+    private static final class ShortCodec implements FieldCodec<Short> {
+
+        @Override
+        public byte[] encode(Short value) {
+            short s = value;
+            return new byte[] { (byte) (s >>> 8), (byte) s };
+        }
+
+        @Override
+        public Short decode(byte[] plaintext) {
+            if ( plaintext.length == 1 )
+                return (short) plaintext[0];
+
+            checkLength(plaintext, 2, "Short");
+            return (short) (((plaintext[0] & 0xFF) << 8) | (plaintext[1] & 0xFF));
+        }
+
+    }
+
+    private static final class IntegerCodec implements FieldCodec<Integer> {
+
+        @Override
+        public byte[] encode(Integer value) {
+            byte[] plaintext = new byte[4];
+            writeInt(plaintext, 0, value);
+            return plaintext;
+        }
+
+        @Override
+        public Integer decode(byte[] plaintext) {
+            return readInt(checkLength(plaintext, 4, "Integer"), 0);
+        }
+
+    }
+
+    private static final class LongCodec implements FieldCodec<Long> {
+
+        @Override
+        public byte[] encode(Long value) {
+            byte[] plaintext = new byte[8];
+            writeLong(plaintext, 0, value);
+            return plaintext;
+        }
+
+        @Override
+        public Long decode(byte[] plaintext) {
+            return readLong(checkLength(plaintext, 8, "Long"), 0);
+        }
+
+    }
+
+    private static final class FloatCodec implements FieldCodec<Float> {
+
+        @Override
+        public byte[] encode(Float value) {
+            byte[] plaintext = new byte[4];
+            writeInt(plaintext, 0, Float.floatToRawIntBits(value));
+            return plaintext;
+        }
+
+        @Override
+        public Float decode(byte[] plaintext) {
+            return Float.intBitsToFloat(readInt(checkLength(plaintext, 4, "Float"), 0));
+        }
+
+    }
+
+    private static final class DoubleCodec implements FieldCodec<Double> {
+
+        @Override
+        public byte[] encode(Double value) {
+            byte[] plaintext = new byte[8];
+            writeLong(plaintext, 0, Double.doubleToRawLongBits(value));
+            return plaintext;
+        }
+
+        @Override
+        public Double decode(byte[] plaintext) {
+            return Double.longBitsToDouble(readLong(checkLength(plaintext, 8, "Double"), 0));
+        }
+
+    }
+
+    /**
+     * | scale (4) | unscaled value, two's complement (1 or more) |
+     */
+    private static final class BigDecimalCodec implements FieldCodec<BigDecimal> {
+
+        @Override
+        public byte[] encode(BigDecimal value) {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            byte[] plaintext = new byte[4 + unscaled.length];
+            writeInt(plaintext, 0, value.scale());
+            System.arraycopy(unscaled, 0, plaintext, 4, unscaled.length);
+            return plaintext;
+        }
+
+        @Override
+        public BigDecimal decode(byte[] plaintext) {
+            if ( plaintext.length == 1 )
+                return BigDecimal.valueOf(plaintext[0]);
+
+            if ( plaintext.length < 5 )
+                throw new IllegalArgumentException(String.format("Invalid BigDecimal plaintext: %d bytes", plaintext.length));
+
+            BigInteger unscaled = new BigInteger(Arrays.copyOfRange(plaintext, 4, plaintext.length));
+            return new BigDecimal(unscaled, readInt(plaintext, 0));
+        }
+
+    }
+
+    private static final class UuidCodec implements FieldCodec<UUID> {
+
+        @Override
+        public byte[] encode(UUID value) {
+            byte[] plaintext = new byte[16];
+            writeLong(plaintext, 0, value.getMostSignificantBits());
+            writeLong(plaintext, 8, value.getLeastSignificantBits());
+            return plaintext;
+        }
+
+        @Override
+        public UUID decode(byte[] plaintext) {
+            checkLength(plaintext, 16, "UUID");
+            return new UUID(readLong(plaintext, 0), readLong(plaintext, 8));
+        }
+
+    }
+
+    /**
+     * | epoch second (8) | nano adjustment (4) |
+     */
+    private static final class InstantCodec implements FieldCodec<Instant> {
+
+        @Override
+        public byte[] encode(Instant value) {
+            byte[] plaintext = new byte[12];
+            writeLong(plaintext, 0, value.getEpochSecond());
+            writeInt(plaintext, 8, value.getNano());
+            return plaintext;
+        }
+
+        @Override
+        public Instant decode(byte[] plaintext) {
+            checkLength(plaintext, 12, "Instant");
+            return Instant.ofEpochSecond(readLong(plaintext, 0), readInt(plaintext, 8));
+        }
+
+    }
+
+    private static final class LocalDateCodec implements FieldCodec<LocalDate> {
+
+        @Override
+        public byte[] encode(LocalDate value) {
+            byte[] plaintext = new byte[8];
+            writeLong(plaintext, 0, value.toEpochDay());
+            return plaintext;
+        }
+
+        @Override
+        public LocalDate decode(byte[] plaintext) {
+            return LocalDate.ofEpochDay(readLong(checkLength(plaintext, 8, "LocalDate"), 0));
+        }
+
+    }
+
+}
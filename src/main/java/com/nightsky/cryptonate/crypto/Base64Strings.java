@@ -0,0 +1,115 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Decodes Base64 (RFC 4648, basic alphabet) directly from a String.
+ * <code>Base64.getDecoder().decode(String)</code> first copies the String
+ * into a byte array; this decoder reads the characters in place and only
+ * allocates the decoded result.
+ *
+ * @author Chris
+ */
+public final class Base64Strings {
+
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private Base64Strings() {  }
+
+    /**
+     * @param src Base64 encoded data, with or without padding
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if <code>src</code> is not valid Base64
+     */
+    public static byte[] decode(String src) {
+        int length = src.length();
+
+        // Padding characters do not produce output
+        int end = length;
+        while ( end > 0 && src.charAt(end - 1) == '=' && length - end < 2 )
+            --end;
+
+        if ( end % 4 == 1 || (end < length && length % 4 != 0) )
+            throw new IllegalArgumentException("Invalid Base64 length: " + length);
+
+        byte[] dst = new byte[(end / 4) * 3 + ((end % 4) == 0 ? 0 : (end % 4) - 1)];
+        int d = 0;
+        int s = 0;
+
+        while ( s + 4 <= end ) {
+            int bits = (sextet(src, s) << 18) | (sextet(src, s + 1) << 12) | (sextet(src, s + 2) << 6) | sextet(src, s + 3);
+            dst[d++] = (byte) (bits >> 16);
+            dst[d++] = (byte) (bits >> 8);
+            dst[d++] = (byte) bits;
+            s += 4;
+        }
+
+        int remaining = end - s;
+        if ( remaining == 2 ) {
+            int bits = (sextet(src, s) << 18) | (sextet(src, s + 1) << 12);
+            dst[d] = (byte) (bits >> 16);
+        } else if ( remaining == 3 ) {
+            int bits = (sextet(src, s) << 18) | (sextet(src, s + 1) << 12) | (sextet(src, s + 2) << 6);
+            dst[d++] = (byte) (bits >> 16);
+            dst[d] = (byte) (bits >> 8);
+        }
+
+        return dst;
+    }
+
+    /**
+     * Decodes the first bytes of Base64 encoded data without decoding the
+     * rest of it.
+     *
+     * @param src Base64 encoded data
+     * @param length the maximum number of bytes to decode
+     * @return the decoded bytes; shorter than <code>length</code> if
+     * <code>src</code> holds fewer bytes
+     */
+    public static byte[] decodePrefix(String src, int length) {
+        int available = (src.length() / 4) * 3;
+        byte[] dst = new byte[Math.min(length, available)];
+
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = byteAt(src, i);
+        }
+
+        return dst;
+    }
+
+    private static byte byteAt(String src, int index) {
+        // Every 4 characters encode 3 bytes
+        int s = (index / 3) * 4;
+
+        if ( s + 4 > src.length() )
+            throw new IllegalArgumentException(String.format("Base64 data too short for byte %d", index));
+
+        switch (index % 3) {
+            case 0:
+                return (byte) ((sextet(src, s) << 2) | (sextet(src, s + 1) >> 4));
+            case 1:
+                return (byte) ((sextet(src, s + 1) << 4) | (sextet(src, s + 2) >> 2));
+            default:
+                return (byte) ((sextet(src, s + 2) << 6) | sextet(src, s + 3));
+        }
+    }
+
+    private static int sextet(String src, int index) {
+        char c = src.charAt(index);
+        int value = c < 128 ? DECODE_TABLE[c] : -1;
+
+        if ( value < 0 )
+            throw new IllegalArgumentException(String.format("Illegal Base64 character at index %d", index));
+
+        return value;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Provides <code>Cipher</code> instances for a single transformation and
+ * security provider. Each thread gets its own instance, created on first use
+ * and re-initialized for every operation; so, the provider lookup and service
+ * instantiation done by <code>Cipher.getInstance</code> happen once per thread
+ * instead of once per field.
+ *
+ * <p>
+ *   Callers must not hand out the cipher, or call code that may use this
+ *   provider on the same thread, between <code>init</code> and
+ *   <code>doFinal</code>.
+ * </p>
+ *
+ * @author Chris
+ */
+public class CipherProvider {
+
+    private final String transformation;
+
+    private final String providerName;
+
+    private final ThreadLocal<Cipher> ciphers;
+
+    private volatile Provider provider;
+
+    /**
+     * @param transformation the cipher transformation
+     * @param providerName the name of the security provider, or null to let
+     * the JCA choose one
+     */
+    public CipherProvider(String transformation, String providerName) {
+        this.transformation = transformation;
+        this.providerName = providerName;
+        this.ciphers = new ThreadLocal<>();
+    }
+
+    /**
+     * @return the cipher of the calling thread
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchPaddingException
+     * @throws NoSuchProviderException
+     */
+    public Cipher get()
+        throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
+    {
+        Cipher cipher = ciphers.get();
+
+        if ( cipher == null ) {
+            cipher = newCipher();
+            ciphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+    private Cipher newCipher()
+        throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
+    {
+        if ( providerName == null )
+            return Cipher.getInstance(transformation);
+
+        return Cipher.getInstance(transformation, resolveProvider());
+    }
+
+    private Provider resolveProvider() throws NoSuchProviderException {
+        Provider resolved = provider;
+
+        if ( resolved == null ) {
+            resolved = Security.getProvider(providerName);
+
+            if ( resolved == null )
+                throw new NoSuchProviderException(String.format("No such provider: %s", providerName));
+
+            provider = resolved;
+        }
+
+        return resolved;
+    }
+
+    /**
+     * @return the cipher transformation
+     */
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * @return the name of the security provider, or null
+     */
+    public String getProviderName() {
+        return providerName;
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.nightsky.cryptonate.crypto;
+
+import com.nightsky.cryptonate.crypto.ProviderSelectionReport.Candidate;
+import com.nightsky.cryptonate.crypto.ProviderSelectionReport.Status;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Chooses the fastest installed security provider for an AES/GCM
+ * transformation. Every provider that implements the transformation, allowed
+ * or not, encrypts the same value with the same key, IV and AAD, and decrypts
+ * the envelope most providers produced; providers that disagree with the
+ * majority are rejected. The remaining allowed providers are warmed up until
+ * the JIT has compiled their cipher paths, then timed encrypting and
+ * decrypting values of {@value #SAMPLE_SIZE} bytes on the calling thread, in
+ * alternating rounds; each provider is rated by its best round.
+ *
+ * <p>
+ *   The providers encrypt known values under fixed IVs; so, every selection
+ *   generates a random key of its own, which is used for nothing else. Never
+ *   measure with a key that encrypts data.
+ * </p>
+ *
+ * @author Chris
+ */
+public class CipherProviderSelector {
+
+    public static final int SAMPLE_SIZE = 1024;
+
+    private static final int ROUNDS_PER_CHECK = 64;
+
+    /** Enough invocations for C2 to compile the cipher path of a provider */
+    private static final long WARM_UP_ROUND_TRIPS = 20000;
+
+    private static final int MEASUREMENT_ROUNDS = 3;
+
+    private static final byte[] AAD = "id=1".getBytes(StandardCharsets.UTF_8);
+
+    private final String transformation;
+
+    private final int keySize;
+
+    private final Set<String> allowedProviderNames;
+
+    private final Duration measurementTime;
+
+    /**
+     * @param transformation an AES/GCM transformation
+     * @param keySize the size, in bits, of the throwaway AES key to measure
+     * with
+     * @param allowedProviderNames the names of the providers to consider, or
+     * an empty set to consider every installed provider
+     * @param measurementTime the minimum time to warm each provider up, and
+     * the time to measure it
+     */
+    public CipherProviderSelector(String transformation, int keySize, Set<String> allowedProviderNames, Duration measurementTime) {
+        this.transformation = transformation;
+        this.keySize = keySize;
+        this.allowedProviderNames = allowedProviderNames == null ? Collections.emptySet() : allowedProviderNames;
+        this.measurementTime = measurementTime;
+    }
+
+    /**
+     * @return the providers considered and the one chosen, if any
+     */
+    public ProviderSelectionReport select() {
+        SecretKey key = throwawayKey();
+        byte[] plaintext = sample();
+        Provider[] providers = Security.getProviders();
+        Cipher[] ciphers = new Cipher[providers.length];
+        byte[][] envelopes = new byte[providers.length][];
+        Candidate[] candidates = new Candidate[providers.length];
+
+        for (int i = 0; i < providers.length; ++i) {
+            String name = providers[i].getName();
+
+            try {
+                ciphers[i] = Cipher.getInstance(transformation, providers[i]);
+            } catch (GeneralSecurityException e) {
+                candidates[i] = new Candidate(name, Status.UNSUPPORTED, null, 0, 0);
+                continue;
+            }
+
+            try {
+                envelopes[i] = seal(ciphers[i], key, plaintext, sampleIv());
+            } catch (GeneralSecurityException | RuntimeException e) {
+                ciphers[i] = null;
+                candidates[i] = new Candidate(name, Status.FAILED, e.toString(), 0, 0);
+            }
+        }
+
+        int reference = majorityOf(envelopes);
+
+        for (int i = 0; i < providers.length; ++i) {
+            if ( ciphers[i] == null )
+                continue;
+
+            String reason = checkCompliance(ciphers[i], key, envelopes[i], envelopes[reference], plaintext, providers[reference].getName());
+
+            if ( reason != null ) {
+                ciphers[i] = null;
+                candidates[i] = new Candidate(providers[i].getName(), Status.MISMATCH, reason, 0, 0);
+            } else if ( !allowedProviderNames.isEmpty() && !allowedProviderNames.contains(providers[i].getName()) ) {
+                ciphers[i] = null;
+                candidates[i] = new Candidate(providers[i].getName(), Status.NOT_ALLOWED, null, 0, 0);
+            }
+        }
+
+        // Warm every provider up before measuring any, so that the JIT treats them alike
+        long counter = 0;
+
+        for (Cipher cipher : ciphers) {
+            if ( cipher != null )
+                counter = measure(cipher, key, plaintext, counter, measurementTime.toNanos(), WARM_UP_ROUND_TRIPS)[1];
+        }
+
+        double[] rates = new double[providers.length];
+
+        for (int round = 0; round < MEASUREMENT_ROUNDS; ++round) {
+            for (int i = 0; i < providers.length; ++i) {
+                if ( ciphers[i] == null )
+                    continue;
+
+                long started = System.nanoTime();
+                long[] measured = measure(ciphers[i], key, plaintext, counter, measurementTime.toNanos() / MEASUREMENT_ROUNDS, 0);
+                double seconds = (System.nanoTime() - started) / 1e9;
+                counter = measured[1];
+                rates[i] = Math.max(rates[i], measured[0] / seconds);
+            }
+        }
+
+        String selected = null;
+        double fastest = 0;
+
+        for (int i = 0; i < providers.length; ++i) {
+            if ( ciphers[i] == null )
+                continue;
+
+            candidates[i] = new Candidate(providers[i].getName(), Status.COMPLIANT, null, rates[i], rates[i] * plaintext.length);
+
+            if ( rates[i] > fastest ) {
+                fastest = rates[i];
+                selected = providers[i].getName();
+            }
+        }
+
+        return new ProviderSelectionReport(transformation, plaintext.length, selected, Arrays.asList(candidates));
+    }
+
+    /**
+     * @return a reason to reject the provider, or null
+     */
+    private String checkCompliance(Cipher cipher, SecretKey key, byte[] envelope, byte[] expected, byte[] plaintext,
+        String expectedProviderName)
+    {
+        if ( !Arrays.equals(envelope, expected) )
+            return String.format("envelopes differ from those of %s", expectedProviderName);
+
+        try {
+            byte[] opened = open(cipher, key, expected, sampleIv());
+
+            if ( !Arrays.equals(opened, plaintext) )
+                return String.format("decrypts envelopes of %s to a different value", expectedProviderName);
+
+            return null;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return String.format("cannot decrypt envelopes of %s: %s", expectedProviderName, e);
+        }
+    }
+
+    /**
+     * Encrypts and decrypts the sample, with a new IV for every encryption,
+     * until both the time and the number of round trips have been reached.
+     *
+     * @param counter the IV counter to start from
+     * @return the number of round trips, and the next IV counter
+     */
+    private long[] measure(Cipher cipher, SecretKey key, byte[] plaintext, long counter, long nanos, long minimumRoundTrips) {
+        byte[] iv = new byte[Envelope.IV_LENGTH];
+        byte[] envelope = new byte[plaintext.length + Envelope.TAG_LENGTH];
+        byte[] opened = new byte[plaintext.length];
+        long deadline = System.nanoTime() + nanos;
+        long roundTrips = 0;
+
+        try {
+            do {
+                for (int i = 0; i < ROUNDS_PER_CHECK; ++i) {
+                    writeCounter(iv, ++counter);
+                    GCMParameterSpec parameters = new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, iv);
+
+                    cipher.init(Cipher.ENCRYPT_MODE, key, parameters);
+                    cipher.updateAAD(AAD);
+                    int length = cipher.doFinal(plaintext, 0, plaintext.length, envelope, 0);
+
+                    cipher.init(Cipher.DECRYPT_MODE, key, parameters);
+                    cipher.updateAAD(AAD);
+                    cipher.doFinal(envelope, 0, length, opened, 0);
+                }
+
+                roundTrips += ROUNDS_PER_CHECK;
+            } while ( System.nanoTime() < deadline || roundTrips < minimumRoundTrips );
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(String.format("Failed to measure security provider %s", cipher.getProvider().getName()), e);
+        }
+
+        return new long[] { roundTrips, counter };
+    }
+
+    private static byte[] seal(Cipher cipher, SecretKey key, byte[] plaintext, byte[] iv) throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, iv));
+        cipher.updateAAD(AAD);
+        return cipher.doFinal(plaintext);
+    }
+
+    private static byte[] open(Cipher cipher, SecretKey key, byte[] envelope, byte[] iv) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, iv));
+        cipher.updateAAD(AAD);
+        return cipher.doFinal(envelope);
+    }
+
+    /**
+     * @return the index of the envelope produced by the most providers, the
+     * first of them if several envelopes are tied
+     */
+    private static int majorityOf(byte[][] envelopes) {
+        int majority = -1;
+        int majorityCount = 0;
+
+        for (int i = 0; i < envelopes.length; ++i) {
+            if ( envelopes[i] == null )
+                continue;
+
+            int count = 0;
+
+            for (byte[] envelope : envelopes) {
+                if ( Arrays.equals(envelopes[i], envelope) )
+                    ++count;
+            }
+
+            if ( count > majorityCount ) {
+                majority = i;
+                majorityCount = count;
+            }
+        }
+
+        return majority;
+    }
+
+    private SecretKey throwawayKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(keySize, new SecureRandom());
+            return generator.generateKey();
+        } catch (NoSuchAlgorithmException | RuntimeException e) {
+            throw new RuntimeException(String.format("Failed to generate a %d bit AES key", keySize), e);
+        }
+    }
+
+    private static byte[] sample() {
+        byte[] sample = new byte[SAMPLE_SIZE];
+
+        for (int i = 0; i < sample.length; ++i) {
+            sample[i] = (byte) (i * 31 + 7);
+        }
+
+        return sample;
+    }
+
+    /**
+     * @return the IV of the compliance check, which no measurement IV
+     * repeats
+     */
+    private static byte[] sampleIv() {
+        byte[] iv = new byte[Envelope.IV_LENGTH];
+        Arrays.fill(iv, (byte) 0xA5);
+        return iv;
+    }
+
+    private static void writeCounter(byte[] iv, long counter) {
+        for (int i = 0; i < Long.BYTES; ++i) {
+            iv[iv.length - 1 - i] = (byte) (counter >>> (8 * i));
+        }
+    }
+
+}
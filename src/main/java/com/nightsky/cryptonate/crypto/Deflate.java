@@ -0,0 +1,101 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw DEFLATE compression of plaintexts ahead of encryption. A compressed
+ * payload starts with the length of the original plaintext as a varint, so
+ * that decompression allocates its output exactly once. The zlib header and
+ * checksum are left out; the GCM tag already protects the payload.
+ *
+ * <p>
+ *   Deflaters and inflaters hold native memory and are expensive to create,
+ *   so each thread reuses its own.
+ * </p>
+ *
+ * @author Chris
+ */
+public final class Deflate {
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private Deflate() {  }
+
+    /**
+     * @param plaintext the plaintext to compress
+     * @return the compressed payload, or null if it is not smaller than the
+     * plaintext
+     */
+    public static byte[] compress(byte[] plaintext) {
+        if ( plaintext.length <= Envelope.varintLength(plaintext.length) )
+            return null;
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(plaintext);
+        deflater.finish();
+
+        // Anything longer than the plaintext is of no use
+        byte[] buffer = new byte[plaintext.length];
+        int offset = Envelope.writeVarint(buffer, 0, plaintext.length);
+
+        while ( !deflater.finished() ) {
+            if ( offset == buffer.length )
+                return null;
+
+            offset += deflater.deflate(buffer, offset, buffer.length - offset);
+        }
+
+        byte[] payload = new byte[offset];
+        System.arraycopy(buffer, 0, payload, 0, offset);
+        return payload;
+    }
+
+    /**
+     * @param payload a compressed payload
+     * @return the original plaintext
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static byte[] decompress(byte[] payload) {
+        int length = Envelope.readVarint(payload, 0);
+        int offset = Envelope.varintLength(length);
+
+        if ( length < 0 )
+            throw new IllegalArgumentException(String.format("Invalid compressed length: %d", length));
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(payload, offset, payload.length - offset);
+
+        byte[] plaintext = new byte[length];
+
+        try {
+            int inflated = 0;
+
+            while ( inflated < length && !inflater.finished() ) {
+                int n = inflater.inflate(plaintext, inflated, length - inflated);
+
+                if ( n == 0 && (inflater.needsInput() || inflater.needsDictionary()) )
+                    break;
+
+                inflated += n;
+            }
+
+            // The end of the stream may not have been read once the output is full
+            if ( inflated == length && !inflater.finished() && inflater.inflate(new byte[1]) != 0 )
+                inflated = -1;
+
+            if ( inflated != length || !inflater.finished() )
+                throw new IllegalArgumentException(String.format("Compressed payload does not inflate to %d bytes", length));
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed payload", e);
+        }
+
+        return plaintext;
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.nightsky.cryptonate.crypto;
+
+/**
+ * Layout of the cipher envelopes stored in encrypted columns. Version 1
+ * envelopes have a fixed size header:
+ *
+ * <pre>
+ *   | key code (4) | key version (4) | IV (12) | ciphertext | auth tag (16) |
+ * </pre>
+ *
+ * Version 2 envelopes start with a marker byte and a flags byte, followed by
+ * the key code and version as unsigned LEB128 varints (1 to 5 bytes each):
+ *
+ * <pre>
+ *   | 0x82 | flags (1) | key code (1-5) | key version (1-5) | IV (12) | ciphertext | auth tag (16) |
+ * </pre>
+ *
+ * The header of a version 2 envelope is authenticated along with the AAD of
+ * its field. A version 1 envelope whose key code starts with the marker byte
+ * would be mistaken for a version 2 envelope, so such key codes are rejected.
+ *
+ * Integers are big-endian. The helpers read and write the envelope in place,
+ * so no intermediate buffers are needed.
+ *
+ * @author Chris
+ */
+public final class Envelope {
+
+    public static final int IV_LENGTH = 12;       // 96 bits (12 bytes) IV length
+
+    public static final int TAG_LENGTH = 16;      // 128 bits (16 bytes) auth tag length
+
+    public static final int KEY_CODE_OFFSET = 0;
+
+    public static final int KEY_VERSION_OFFSET = 4;
+
+    public static final int IV_OFFSET = 8;
+
+    public static final int CIPHERTEXT_OFFSET = IV_OFFSET + IV_LENGTH;
+
+    public static final int MINIMUM_LENGTH = CIPHERTEXT_OFFSET + TAG_LENGTH;
+
+    public static final byte V2_MARKER = (byte) 0x82;
+
+    public static final int V2_FLAGS_OFFSET = 1;
+
+    public static final int V2_KEY_CODE_OFFSET = 2;
+
+    public static final int V2_MINIMUM_LENGTH = V2_KEY_CODE_OFFSET + 1 + 1 + IV_LENGTH + TAG_LENGTH;
+
+    /**
+     * The longest header of any format: a version 2 header with two 5 byte
+     * varints.
+     */
+    public static final int MAXIMUM_HEADER_LENGTH = V2_KEY_CODE_OFFSET + 5 + 5;
+
+    /**
+     * The plaintext was compressed with {@link Deflate} before encryption.
+     */
+    public static final int FLAG_DEFLATE = 0x01;
+
+    /**
+     * The envelope is a {@link SegmentedEnvelope}.
+     */
+    public static final int FLAG_SEGMENTED = 0x02;
+
+    /**
+     * Flags understood by this version; envelopes with other flags set are
+     * rejected rather than misread.
+     */
+    public static final int SUPPORTED_FLAGS = FLAG_DEFLATE | FLAG_SEGMENTED;
+
+    private Envelope() {  }
+
+    public static int readInt(byte[] src, int offset) {
+        return ((src[offset] & 0xFF) << 24)
+            | ((src[offset + 1] & 0xFF) << 16)
+            | ((src[offset + 2] & 0xFF) << 8)
+            | (src[offset + 3] & 0xFF);
+    }
+
+    public static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    /**
+     * @param envelope an envelope, or a prefix of one
+     * @return the format of the envelope
+     */
+    public static EnvelopeFormat formatOf(byte[] envelope) {
+        return envelope.length > 0 && envelope[0] == V2_MARKER ? EnvelopeFormat.V2 : EnvelopeFormat.V1;
+    }
+
+    /**
+     * @param envelope an envelope, or a prefix of one
+     * @return the flags of a version 2 envelope; version 1 envelopes have none
+     */
+    public static int flagsOf(byte[] envelope) {
+        return formatOf(envelope) == EnvelopeFormat.V2 ? envelope[V2_FLAGS_OFFSET] & 0xFF : 0;
+    }
+
+    /**
+     * @param envelope an envelope, or a prefix of one
+     * @return the key code of the envelope
+     */
+    public static int keyCodeOf(byte[] envelope) {
+        if ( formatOf(envelope) == EnvelopeFormat.V1 )
+            return readInt(envelope, KEY_CODE_OFFSET);
+
+        return readVarint(envelope, V2_KEY_CODE_OFFSET);
+    }
+
+    /**
+     * @param envelope an envelope, or a prefix of one
+     * @return the key version of the envelope
+     */
+    public static int keyVersionOf(byte[] envelope) {
+        if ( formatOf(envelope) == EnvelopeFormat.V1 )
+            return readInt(envelope, KEY_VERSION_OFFSET);
+
+        return readVarint(envelope, skipVarint(envelope, V2_KEY_CODE_OFFSET));
+    }
+
+    /**
+     * @param envelope an envelope
+     * @return the offset of the IV, which is also the length of the header
+     */
+    public static int ivOffsetOf(byte[] envelope) {
+        if ( formatOf(envelope) == EnvelopeFormat.V1 )
+            return IV_OFFSET;
+
+        return skipVarint(envelope, skipVarint(envelope, V2_KEY_CODE_OFFSET));
+    }
+
+    /**
+     * @param format the format of the envelope
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @return the length of the header of an envelope
+     */
+    public static int headerLength(EnvelopeFormat format, int keyCode, int keyVersion) {
+        if ( format == EnvelopeFormat.V1 )
+            return IV_OFFSET;
+
+        return V2_KEY_CODE_OFFSET + varintLength(keyCode) + varintLength(keyVersion);
+    }
+
+    /**
+     * Writes the header of an envelope.
+     *
+     * @param dst the envelope
+     * @param format the format of the envelope
+     * @param flags the flags of a version 2 envelope
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @return the offset of the IV
+     */
+    public static int writeHeader(byte[] dst, EnvelopeFormat format, int flags, int keyCode, int keyVersion) {
+        if ( format == EnvelopeFormat.V1 ) {
+            writeInt(dst, KEY_CODE_OFFSET, keyCode);
+            writeInt(dst, KEY_VERSION_OFFSET, keyVersion);
+            return IV_OFFSET;
+        }
+
+        dst[0] = V2_MARKER;
+        dst[V2_FLAGS_OFFSET] = (byte) flags;
+        return writeVarint(dst, writeVarint(dst, V2_KEY_CODE_OFFSET, keyCode), keyVersion);
+    }
+
+    /**
+     * @param keyCode a key code
+     * @return true if version 1 envelopes of the key code would be mistaken
+     * for version 2 envelopes
+     */
+    public static boolean collidesWithV2Marker(int keyCode) {
+        return (byte) (keyCode >>> 24) == V2_MARKER;
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+
+        while ( (value & ~0x7F) != 0 ) {
+            value >>>= 7;
+            ++length;
+        }
+
+        return length;
+    }
+
+    static int writeVarint(byte[] dst, int offset, int value) {
+        while ( (value & ~0x7F) != 0 ) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    static int readVarint(byte[] src, int offset) {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte(src, offset++);
+            value |= (b & 0x7F) << shift;
+
+            if ( (b & 0x80) == 0 )
+                return value;
+        }
+
+        throw new IllegalArgumentException("Malformed envelope header: varint longer than 5 bytes");
+    }
+
+    private static int skipVarint(byte[] src, int offset) {
+        for (int i = 0; i < 5; ++i) {
+            if ( (readByte(src, offset++) & 0x80) == 0 )
+                return offset;
+        }
+
+        throw new IllegalArgumentException("Malformed envelope header: varint longer than 5 bytes");
+    }
+
+    private static byte readByte(byte[] src, int offset) {
+        if ( offset >= src.length )
+            throw new IllegalArgumentException("Malformed envelope header: truncated varint");
+
+        return src[offset];
+    }
+
+}
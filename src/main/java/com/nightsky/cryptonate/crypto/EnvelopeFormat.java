@@ -0,0 +1,22 @@
+package com.nightsky.cryptonate.crypto;
+
+/**
+ * The envelope formats described by {@link Envelope}. Both formats are always
+ * read; the format only selects how new envelopes are written.
+ *
+ * @author Chris
+ */
+public enum EnvelopeFormat {
+
+    /**
+     * Fixed 8 byte header; readable by every version of the library.
+     */
+    V1,
+
+    /**
+     * Marker, flags and varint key code and version; usually 4 bytes of
+     * header, authenticated with the AAD of the field.
+     */
+    V2
+
+}
@@ -0,0 +1,60 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HKDF with HMAC-SHA256 (RFC 5869), used to derive a key of its own for every
+ * {@link SegmentedEnvelope}.
+ *
+ * @author Chris
+ */
+final class Hkdf {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int HASH_LENGTH = 32;
+
+    private Hkdf() {  }
+
+    /**
+     * @param ikm the input keying material
+     * @param salt the salt
+     * @param info the context of the derived key
+     * @param length the length of the derived key, at most 255 * 32 bytes
+     * @return the derived key material
+     * @throws GeneralSecurityException if HMAC-SHA256 is unavailable
+     */
+    static byte[] derive(byte[] ikm, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        if ( length <= 0 || length > 255 * HASH_LENGTH )
+            throw new IllegalArgumentException(String.format("Invalid HKDF output length: %d", length));
+
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(salt, ALGORITHM));
+        byte[] prk = mac.doFinal(ikm);
+
+        byte[] okm = new byte[length];
+        byte[] block = new byte[0];
+
+        try {
+            mac.init(new SecretKeySpec(prk, ALGORITHM));
+
+            for (int i = 0, offset = 0; offset < length; ++i, offset += HASH_LENGTH) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) (i + 1));
+                Arrays.fill(block, (byte) 0);
+                block = mac.doFinal();
+                System.arraycopy(block, 0, okm, offset, Math.min(HASH_LENGTH, length - offset));
+            }
+        } finally {
+            Arrays.fill(prk, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+        }
+
+        return okm;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.nightsky.cryptonate.crypto;
+
+/**
+ * Generates the 96-bit IVs used for AES/GCM. Implementations must be safe
+ * for concurrent use and must never return the same IV twice for a key.
+ *
+ * <p>
+ *   The listener has IVs written straight into the envelope. Only
+ *   {@link CounterIvGenerator} writes them in place; the random generators
+ *   draw them into an array of their own and copy them, since a
+ *   <code>Random</code> cannot fill part of an array.
+ * </p>
+ *
+ * @author Chris
+ */
+public interface IvGenerator {
+
+    /**
+     * Writes a new IV of {@link Envelope#IV_LENGTH} bytes.
+     *
+     * @param dst the destination array
+     * @param offset the position of the IV in <code>dst</code>
+     */
+    public void generate(byte[] dst, int offset);
+
+}
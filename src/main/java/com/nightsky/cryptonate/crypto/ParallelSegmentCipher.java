@@ -0,0 +1,215 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts and decrypts whole values as {@link SegmentedEnvelope}s, sealing
+ * or opening their segments in parallel on a fork/join pool. Every segment is
+ * written straight into the envelope or the plaintext; each worker uses the
+ * cipher of its own thread. The segment key of an envelope is derived once,
+ * before its segments are handed out.
+ *
+ * @author Chris
+ */
+public class ParallelSegmentCipher {
+
+    private final CipherProvider cipherProvider;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param cipherProvider provides AES-GCM ciphers
+     * @param pool the pool segments are processed on
+     */
+    public ParallelSegmentCipher(CipherProvider cipherProvider, ForkJoinPool pool) {
+        this.cipherProvider = cipherProvider;
+        this.pool = pool;
+    }
+
+    /**
+     * @param plaintext the plaintext
+     * @param header the header of the envelope, from
+     * {@link SegmentedEnvelope#newHeader(int, int, int, int)}
+     * @param key the data key
+     * @param aad the AAD of the field, or null
+     * @return the envelope
+     * @throws GeneralSecurityException if a segment cannot be encrypted
+     */
+    public byte[] encrypt(byte[] plaintext, byte[] header, SecretKey key, byte[] aad) throws GeneralSecurityException {
+        int segmentSize = SegmentedEnvelope.segmentSizeOf(header);
+        long envelopeLength = SegmentedEnvelope.envelopeLength(plaintext.length, header.length, segmentSize);
+
+        if ( envelopeLength > Integer.MAX_VALUE )
+            throw new IllegalArgumentException(String.format("Value too large for an in-memory envelope: %d bytes", plaintext.length));
+
+        byte[] envelope = new byte[(int) envelopeLength];
+        System.arraycopy(header, 0, envelope, 0, header.length);
+
+        int segments = segmentCount(plaintext.length, segmentSize);
+        SecretKey segmentKey = SegmentedEnvelope.segmentKey(key, header);
+        run(new SegmentTask(Cipher.ENCRYPT_MODE, plaintext, envelope, header, segmentKey, aad, segmentSize, segments, 0, segments));
+
+        return envelope;
+    }
+
+    /**
+     * @param envelope the envelope
+     * @param key the data key
+     * @param aad the AAD of the field, or null
+     * @return the plaintext
+     * @throws GeneralSecurityException if a segment fails authentication
+     */
+    public byte[] decrypt(byte[] envelope, SecretKey key, byte[] aad) throws GeneralSecurityException {
+        int headerLength = SegmentedEnvelope.headerLengthOf(envelope);
+        int segmentSize = SegmentedEnvelope.segmentSizeOf(envelope);
+
+        byte[] header = new byte[headerLength];
+        System.arraycopy(envelope, 0, header, 0, headerLength);
+
+        byte[] plaintext = new byte[(int) SegmentedEnvelope.plaintextLength(envelope.length, headerLength, segmentSize)];
+
+        int segments = segmentCount(plaintext.length, segmentSize);
+        SecretKey segmentKey = SegmentedEnvelope.segmentKey(key, header);
+        run(new SegmentTask(Cipher.DECRYPT_MODE, plaintext, envelope, header, segmentKey, aad, segmentSize, segments, 0, segments));
+
+        return plaintext;
+    }
+
+    private void run(SegmentTask task) throws GeneralSecurityException {
+        // Handing a single segment, or a pool of one worker, the value only adds a thread switch
+        if ( task.segments == 1 || pool.getParallelism() <= 1 ) {
+            task.processAll();
+            return;
+        }
+
+        try {
+            // Workers of the pool, such as flush encryption tasks, join in rather than block
+            if ( ForkJoinTask.getPool() == pool )
+                task.invoke();
+            else
+                pool.invoke(task);
+        } catch (SegmentException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int segmentCount(int plaintextLength, int segmentSize) {
+        return Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+    }
+
+    private final class SegmentTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int mode;
+
+        private final byte[] plaintext;
+
+        private final byte[] envelope;
+
+        private final byte[] header;
+
+        private final SecretKey key;
+
+        private final byte[] aad;
+
+        private final int segmentSize;
+
+        private final int segments;
+
+        private final int from;
+
+        private final int to;
+
+        SegmentTask(int mode, byte[] plaintext, byte[] envelope, byte[] header, SecretKey key, byte[] aad,
+            int segmentSize, int segments, int from, int to)
+        {
+            this.mode = mode;
+            this.plaintext = plaintext;
+            this.envelope = envelope;
+            this.header = header;
+            this.key = key;
+            this.aad = aad;
+            this.segmentSize = segmentSize;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from > 1 ) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new SegmentTask(mode, plaintext, envelope, header, key, aad, segmentSize, segments, from, middle),
+                    new SegmentTask(mode, plaintext, envelope, header, key, aad, segmentSize, segments, middle, to));
+                return;
+            }
+
+            try {
+                process(from);
+            } catch (GeneralSecurityException e) {
+                throw new SegmentException(e);
+            }
+        }
+
+        void processAll() throws GeneralSecurityException {
+            for (int segment = from; segment < to; ++segment) {
+                process(segment);
+            }
+        }
+
+        private void process(int segment) throws GeneralSecurityException {
+            boolean last = segment == segments - 1;
+            int plaintextOffset = segment * segmentSize;
+            int plaintextLength = last ? plaintext.length - plaintextOffset : segmentSize;
+            int envelopeOffset = header.length + segment * (segmentSize + Envelope.TAG_LENGTH);
+
+            byte[] nonce = new byte[Envelope.IV_LENGTH];
+            SegmentedEnvelope.nonce(header, header.length, segment, last, nonce);
+
+            Cipher cipher = cipherProvider.get();
+            cipher.init(mode, key, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, nonce));
+            cipher.updateAAD(header);
+
+            if ( aad != null && aad.length > 0 )
+                cipher.updateAAD(aad);
+
+            if ( mode == Cipher.ENCRYPT_MODE ) {
+                cipher.doFinal(plaintext, plaintextOffset, plaintextLength, envelope, envelopeOffset);
+            } else {
+                try {
+                    cipher.doFinal(envelope, envelopeOffset, plaintextLength + Envelope.TAG_LENGTH, plaintext, plaintextOffset);
+                } catch (AEADBadTagException e) {
+                    AEADBadTagException failure = new AEADBadTagException(String.format("Segment %d of the envelope failed authentication", segment));
+                    failure.initCause(e);
+                    throw failure;
+                }
+            }
+        }
+
+    }
+
+    private static final class SegmentException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        SegmentException(GeneralSecurityException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized GeneralSecurityException getCause() {
+            return (GeneralSecurityException) super.getCause();
+        }
+
+    }
+
+}
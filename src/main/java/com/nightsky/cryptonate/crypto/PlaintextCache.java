@@ -0,0 +1,448 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size and time bounded cache of decrypted field values, keyed by the
+ * SHA-256 digest of an envelope and its AAD. A hit skips the Base64 decoding,
+ * the GCM decryption and, for values kept on the heap, the conversion of the
+ * field value.
+ *
+ * <p>
+ *   The cache is split into segments, each evicting its least recently used
+ *   entries once it is full. Values kept off the heap are stored as plaintext
+ *   bytes in direct buffers, converted on every hit and overwritten with zeros
+ *   when they are evicted, expire or are cleared. Values kept on the heap
+ *   cannot be wiped; they are released to the garbage collector.
+ * </p>
+ *
+ * <p>
+ *   Values kept on the heap are shared between entities; so, only values of
+ *   immutable types are kept on the heap as they are (see
+ *   {@link #canShare(Class)}), and byte arrays are copied when they are
+ *   stored and on every hit. Values of other types must be kept off the
+ *   heap, which converts them anew on every hit.
+ * </p>
+ *
+ * @author Chris
+ */
+public class PlaintextCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final byte SEPARATOR = 0;
+
+    private static final Set<Class<?>> SHAREABLE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+        Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Instant.class, LocalDate.class,
+        LocalDateTime.class, LocalTime.class, OffsetDateTime.class, OffsetTime.class, ZonedDateTime.class)));
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Segment[] segments;
+
+    private final long timeToLiveNanos;
+
+    private final boolean offHeap;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private final LongAdder evictions;
+
+    private PlaintextCache(long maximumSize, Duration timeToLive, boolean offHeap) {
+        int segmentCapacity = (int) Math.max(1, (maximumSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+
+        this.timeToLiveNanos = timeToLive == null || timeToLive.isZero() ? 0L : timeToLive.toNanos();
+        this.offHeap = offHeap;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param type the type of a field
+     * @return true if values of the type can be kept on the heap and shared
+     * between entities: immutable types, enums, and byte arrays, which are
+     * copied
+     */
+    public static boolean canShare(Class<?> type) {
+        return type == byte[].class || type.isEnum() || SHAREABLE_TYPES.contains(type);
+    }
+
+    /**
+     * @param encodedEnvelope the Base64 encoded envelope
+     * @param aad the AAD the envelope is decrypted with, or null
+     * @return the cache key of the envelope
+     */
+    public Key keyFor(String encodedEnvelope, byte[] aad) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(encodedEnvelope.getBytes(StandardCharsets.ISO_8859_1));
+
+        // Base64 never contains a zero byte; the separator keeps envelope and AAD apart
+        digest.update(SEPARATOR);
+
+        if ( aad != null )
+            digest.update(aad);
+
+        return new Key(digest.digest());
+    }
+
+    /**
+     * @param envelope the envelope, as stored in a binary column
+     * @param aad the AAD the envelope is decrypted with, or null
+     * @return the cache key of the envelope
+     */
+    public Key keyFor(byte[] envelope, byte[] aad) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(envelope);
+
+        // Length-prefix the AAD; raw envelopes may contain any byte
+        int aadLength = aad == null ? 0 : aad.length;
+        digest.update(new byte[] { (byte) (aadLength >>> 24), (byte) (aadLength >>> 16), (byte) (aadLength >>> 8), (byte) aadLength });
+
+        if ( aad != null )
+            digest.update(aad);
+
+        return new Key(digest.digest());
+    }
+
+    /**
+     * @param key the key of an envelope
+     * @param type the type of the field
+     * @param converter converts plaintext bytes to the type of the field
+     * @return the cached value, or null if the envelope is not cached
+     */
+    public Object get(Key key, Class<?> type, Function<byte[], Object> converter) {
+        Segment segment = segmentFor(key);
+        CacheEntry entry;
+
+        synchronized (segment) {
+            entry = segment.get(key);
+
+            if ( entry != null && entry.isExpired(System.nanoTime()) ) {
+                segment.remove(key);
+                entry.wipe();
+                entry = null;
+            }
+        }
+
+        Object value = entry == null ? null : entry.valueOf(type, converter);
+
+        if ( value == null )
+            misses.increment();
+        else
+            hits.increment();
+
+        return value;
+    }
+
+    /**
+     * @param key the key of an envelope
+     * @param plaintext the decrypted envelope
+     * @param value the decrypted envelope converted to the type of its field
+     */
+    public void put(Key key, byte[] plaintext, Object value) {
+        long expiresAt = timeToLiveNanos == 0L ? Long.MAX_VALUE : System.nanoTime() + timeToLiveNanos;
+        CacheEntry entry = offHeap ? new OffHeapEntry(plaintext, expiresAt) : new OnHeapEntry(copyOf(value), expiresAt);
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            CacheEntry previous = segment.put(key, entry);
+
+            if ( previous != null )
+                previous.wipe();
+        }
+    }
+
+    /**
+     * Removes, and wipes, all entries.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (CacheEntry entry : segment.values()) {
+                    entry.wipe();
+                }
+
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached values, expired ones included
+     */
+    public long size() {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that found no value
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of values evicted to make room for others
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return true if values are kept off the heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[key.hashCode() & (SEGMENT_COUNT - 1)];
+    }
+
+    private static Object copyOf(Object value) {
+        return value instanceof byte[] ? ((byte[]) value).clone() : value;
+    }
+
+    /**
+     * The digest of an envelope and its AAD.
+     */
+    public static final class Key {
+
+        private final byte[] digest;
+
+        private final int hash;
+
+        private Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16) | ((digest[2] & 0xff) << 8) | (digest[3] & 0xff);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && Arrays.equals(digest, ((Key) o).digest));
+        }
+
+    }
+
+    private class Segment extends LinkedHashMap<Key, CacheEntry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+            if ( size() <= capacity )
+                return false;
+
+            eldest.getValue().wipe();
+            evictions.increment();
+            return true;
+        }
+
+    }
+
+    private abstract static class CacheEntry {
+
+        private final long expiresAt;
+
+        CacheEntry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+
+        /**
+         * Called without the segment lock.
+         *
+         * @return the value, of a type no entity can change the cached copy
+         * through, or null if it is not of the requested type or has been
+         * wiped
+         */
+        abstract Object valueOf(Class<?> type, Function<byte[], Object> converter);
+
+        abstract void wipe();
+
+    }
+
+    private static final class OnHeapEntry extends CacheEntry {
+
+        private final Object value;
+
+        OnHeapEntry(Object value, long expiresAt) {
+            super(expiresAt);
+            this.value = value;
+        }
+
+        @Override
+        Object valueOf(Class<?> type, Function<byte[], Object> converter) {
+            return type.isInstance(value) ? copyOf(value) : null;
+        }
+
+        @Override
+        void wipe() {
+            // Heap values cannot be overwritten; they are left to the garbage collector
+        }
+
+    }
+
+    private static final class OffHeapEntry extends CacheEntry {
+
+        private final ByteBuffer buffer;
+
+        private boolean wiped;
+
+        OffHeapEntry(byte[] plaintext, long expiresAt) {
+            super(expiresAt);
+            this.buffer = ByteBuffer.allocateDirect(plaintext.length);
+            this.buffer.put(plaintext);
+        }
+
+        @Override
+        Object valueOf(Class<?> type, Function<byte[], Object> converter) {
+            byte[] plaintext = copyPlaintext();
+
+            if ( plaintext == null )
+                return null;
+
+            try {
+                return converter.apply(plaintext);
+            } finally {
+                Arrays.fill(plaintext, (byte) 0);
+            }
+        }
+
+        /**
+         * @return a copy of the plaintext, or null if the entry was wiped
+         * after it was looked up
+         */
+        private synchronized byte[] copyPlaintext() {
+            if ( wiped )
+                return null;
+
+            byte[] plaintext = new byte[buffer.capacity()];
+            ByteBuffer view = buffer.duplicate();
+            view.clear();
+            view.get(plaintext);
+            return plaintext;
+        }
+
+        @Override
+        synchronized void wipe() {
+            for (int i = 0; i < buffer.capacity(); ++i) {
+                buffer.put(i, (byte) 0);
+            }
+
+            wiped = true;
+        }
+
+    }
+
+    public static class Builder {
+
+        private long maximumSize;
+
+        private Duration timeToLive;
+
+        private boolean offHeap;
+
+        public Builder() {
+            maximumSize = 10000;
+        }
+
+        public Builder withMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder withTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        public Builder withOffHeapStorage(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        public PlaintextCache build() {
+            if ( maximumSize <= 0 )
+                throw new RuntimeException(String.format("Invalid maximum plaintext cache size: %d", maximumSize));
+
+            if ( timeToLive != null && timeToLive.isNegative() )
+                throw new RuntimeException(String.format("Invalid plaintext cache time to live: %s", timeToLive));
+
+            return new PlaintextCache(maximumSize, timeToLive, offHeap);
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The security providers a {@link CipherProviderSelector} considered, why it
+ * rejected some of them, how fast the others were, and which one it chose.
+ *
+ * @author Chris
+ */
+public class ProviderSelectionReport {
+
+    public enum Status {
+
+        /** Produced the expected envelopes, and was measured */
+        COMPLIANT,
+
+        /** Produced the expected envelopes, but is not in the allow-list */
+        NOT_ALLOWED,
+
+        /** Does not implement the transformation */
+        UNSUPPORTED,
+
+        /** Produced different envelopes, or could not decrypt the expected ones */
+        MISMATCH,
+
+        /** Failed to encrypt or decrypt with the key */
+        FAILED
+
+    }
+
+    private final String transformation;
+
+    private final int sampleSize;
+
+    private final String selectedProviderName;
+
+    private final List<Candidate> candidates;
+
+    ProviderSelectionReport(String transformation, int sampleSize, String selectedProviderName, List<Candidate> candidates) {
+        this.transformation = transformation;
+        this.sampleSize = sampleSize;
+        this.selectedProviderName = selectedProviderName;
+        this.candidates = Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @return the cipher transformation
+     */
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * @return the size, in bytes, of the values encrypted and decrypted to
+     * measure the providers
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return the name of the fastest allowed compliant provider, or null
+     * if no allowed provider is compliant
+     */
+    public String getSelectedProviderName() {
+        return selectedProviderName;
+    }
+
+    /**
+     * @return every installed provider, in preference order
+     */
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+
+        if ( selectedProviderName == null )
+            text.append(String.format("No compliant security provider for %s", transformation));
+        else
+            text.append(String.format("Selected security provider %s for %s", selectedProviderName, transformation));
+
+        text.append(String.format(" (%d byte values):", sampleSize));
+
+        // Most installed providers do not implement AES at all
+        for (Candidate candidate : candidates) {
+            if ( candidate.getStatus() != Status.UNSUPPORTED )
+                text.append(' ').append(candidate).append(';');
+        }
+
+        text.setLength(text.length() - 1);
+        return text.toString();
+    }
+
+    public static class Candidate {
+
+        private final String providerName;
+
+        private final Status status;
+
+        private final String reason;
+
+        private final double roundTripsPerSecond;
+
+        private final double bytesPerSecond;
+
+        Candidate(String providerName, Status status, String reason, double roundTripsPerSecond, double bytesPerSecond) {
+            this.providerName = providerName;
+            this.status = status;
+            this.reason = reason;
+            this.roundTripsPerSecond = roundTripsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * @return the name of the provider
+         */
+        public String getProviderName() {
+            return providerName;
+        }
+
+        /**
+         * @return whether the provider was measured, or why it was not
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return why the provider was rejected, or null
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return the measured encrypt/decrypt round trips per second, or 0
+         * if the provider was not measured
+         */
+        public double getRoundTripsPerSecond() {
+            return roundTripsPerSecond;
+        }
+
+        /**
+         * @return the measured plaintext bytes encrypted and decrypted per
+         * second, or 0 if the provider was not measured
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            if ( status == Status.COMPLIANT ) {
+                return String.format("%s %.0f round trips/s (%.1f MiB/s)",
+                    providerName, roundTripsPerSecond, bytesPerSecond / (1024 * 1024));
+            }
+
+            if ( reason == null )
+                return String.format("%s %s", providerName, status.name().toLowerCase().replace('_', ' '));
+
+            return String.format("%s %s: %s", providerName, status.name().toLowerCase().replace('_', ' '), reason);
+        }
+
+    }
+
+}
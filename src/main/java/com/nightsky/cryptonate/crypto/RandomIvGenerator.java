@@ -0,0 +1,49 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.Random;
+
+/**
+ * Generates IVs with a single shared random number generator. This is the
+ * generator used when only an RNG is configured. A <code>SecureRandom</code>
+ * synchronizes internally; so, threads encrypting at the same time contend
+ * for it.
+ *
+ * <p>
+ *   A <code>Random</code> only fills whole arrays; so, an IV that does not
+ *   span its destination is drawn into an array of the calling thread and
+ *   copied from there.
+ * </p>
+ *
+ * @author Chris
+ */
+public class RandomIvGenerator implements IvGenerator {
+
+    private final Random rng;
+
+    private final ThreadLocal<byte[]> scratch;
+
+    public RandomIvGenerator(Random rng) {
+        this.rng = rng;
+        this.scratch = ThreadLocal.withInitial(() -> new byte[Envelope.IV_LENGTH]);
+    }
+
+    @Override
+    public void generate(byte[] dst, int offset) {
+        if ( offset == 0 && dst.length == Envelope.IV_LENGTH ) {
+            rng.nextBytes(dst);
+            return;
+        }
+
+        byte[] iv = scratch.get();
+        rng.nextBytes(iv);
+        System.arraycopy(iv, 0, dst, offset, iv.length);
+    }
+
+    /**
+     * @return the random number generator
+     */
+    public Random getRng() {
+        return rng;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.nightsky.cryptonate.crypto;
+
+import com.nightsky.keycache.VersionedSecretKey;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Maps a (key code, key version) pair to the key it resolves to. Lookups
+ * read an immutable open-addressing snapshot without locking or boxing;
+ * additions copy the snapshot and publish it atomically. The table is meant
+ * for the handful of keys found in envelopes, not for large key sets.
+ *
+ * <p>
+ *   A key name and version always identify the same key material; so,
+ *   entries never go stale. The table only needs to be cleared when the
+ *   mapping of key codes to key names, or the key cache itself, changes.
+ * </p>
+ *
+ * @author Chris
+ */
+public class ResolvedKeyTable {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final AtomicReference<Snapshot> snapshot;
+
+    public ResolvedKeyTable() {
+        this.snapshot = new AtomicReference<>(new Snapshot(INITIAL_CAPACITY));
+    }
+
+    /**
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @return the resolved key, or null if it has not been resolved yet
+     */
+    public VersionedSecretKey get(int keyCode, int keyVersion) {
+        return snapshot.get().get(pack(keyCode, keyVersion));
+    }
+
+    /**
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @param key the key that the pair resolves to
+     */
+    public void put(int keyCode, int keyVersion, VersionedSecretKey key) {
+        long packed = pack(keyCode, keyVersion);
+
+        while ( true ) {
+            Snapshot current = snapshot.get();
+
+            if ( current.get(packed) != null )
+                return;
+
+            if ( snapshot.compareAndSet(current, current.with(packed, key)) )
+                return;
+        }
+    }
+
+    /**
+     * Removes all resolved keys.
+     */
+    public void clear() {
+        snapshot.set(new Snapshot(INITIAL_CAPACITY));
+    }
+
+    /**
+     * @return the number of resolved keys
+     */
+    public int size() {
+        return snapshot.get().size;
+    }
+
+    private static long pack(int keyCode, int keyVersion) {
+        return ((long) keyCode << 32) | (keyVersion & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long packed, int mask) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static final class Snapshot {
+
+        private final long[] keys;
+
+        private final VersionedSecretKey[] values;
+
+        private final int size;
+
+        private Snapshot(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new VersionedSecretKey[capacity];
+            this.size = 0;
+        }
+
+        private Snapshot(long[] keys, VersionedSecretKey[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        private VersionedSecretKey get(long packed) {
+            int mask = keys.length - 1;
+
+            for (int i = slot(packed, mask); values[i] != null; i = (i + 1) & mask) {
+                if ( keys[i] == packed )
+                    return values[i];
+            }
+
+            return null;
+        }
+
+        private Snapshot with(long packed, VersionedSecretKey key) {
+            // Keep the load factor at or below one half
+            int capacity = keys.length;
+            while ( (size + 1) * 2 > capacity )
+                capacity *= 2;
+
+            long[] newKeys = new long[capacity];
+            VersionedSecretKey[] newValues = new VersionedSecretKey[capacity];
+
+            for (int i = 0; i < keys.length; ++i) {
+                if ( values[i] != null )
+                    insert(newKeys, newValues, keys[i], values[i]);
+            }
+            insert(newKeys, newValues, packed, key);
+
+            return new Snapshot(newKeys, newValues, size + 1);
+        }
+
+        private static void insert(long[] keys, VersionedSecretKey[] values, long packed, VersionedSecretKey key) {
+            int mask = keys.length - 1;
+            int i = slot(packed, mask);
+
+            while ( values[i] != null )
+                i = (i + 1) & mask;
+
+            keys[i] = packed;
+            values[i] = key;
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Reads the plaintext of a {@link SegmentedEnvelope}. Segments are
+ * authenticated before any of their bytes are returned, one at a time, so
+ * memory use does not depend on the size of the envelope. A stream that ends
+ * before its last segment fails rather than returning a truncated plaintext.
+ *
+ * @author Chris
+ */
+public class SegmentDecryptingInputStream extends InputStream {
+
+    private final InputStream envelope;
+
+    private final CipherProvider cipherProvider;
+
+    private final SecretKey key;
+
+    private final byte[] header;
+
+    private final byte[] aad;
+
+    private final int segmentSize;
+
+    private final byte[] segmentBuffer;
+
+    private final byte[] plaintextBuffer;
+
+    private final byte[] nonce;
+
+    private SecretKey segmentKey;
+
+    private int buffered;
+
+    private int segment;
+
+    private int outputPosition;
+
+    private int outputLimit;
+
+    private boolean lastSegmentRead;
+
+    /**
+     * @param envelope the envelope, positioned after its header
+     * @param cipherProvider provides AES-GCM ciphers
+     * @param key the data key
+     * @param header the header of the envelope
+     * @param aad the AAD of the field, or null
+     */
+    public SegmentDecryptingInputStream(InputStream envelope, CipherProvider cipherProvider, SecretKey key, byte[] header, byte[] aad) {
+        this.envelope = envelope;
+        this.cipherProvider = cipherProvider;
+        this.key = key;
+        this.header = header;
+        this.aad = aad;
+        this.segmentSize = SegmentedEnvelope.segmentSizeOf(header);
+
+        // One byte of lookahead tells the last segment apart
+        this.segmentBuffer = new byte[segmentSize + Envelope.TAG_LENGTH + 1];
+        this.plaintextBuffer = new byte[segmentSize];
+        this.nonce = new byte[Envelope.IV_LENGTH];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ( len == 0 )
+            return 0;
+
+        // The last segment may be empty
+        while ( outputPosition == outputLimit ) {
+            if ( lastSegmentRead )
+                return -1;
+
+            nextSegment();
+        }
+
+        int n = Math.min(len, outputLimit - outputPosition);
+        System.arraycopy(plaintextBuffer, outputPosition, b, off, n);
+        outputPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(plaintextBuffer, (byte) 0);
+        envelope.close();
+    }
+
+    private void nextSegment() throws IOException {
+        while ( buffered < segmentBuffer.length ) {
+            int n = envelope.read(segmentBuffer, buffered, segmentBuffer.length - buffered);
+
+            if ( n < 0 )
+                break;
+
+            buffered += n;
+        }
+
+        boolean last = buffered < segmentBuffer.length;
+        int length = last ? buffered : segmentBuffer.length - 1;
+
+        if ( length < Envelope.TAG_LENGTH )
+            throw new IOException(String.format("Segmented envelope truncated in segment %d", segment));
+
+        if ( segment < 0 )
+            throw new IOException("Too many segments");
+
+        try {
+            if ( segmentKey == null )
+                segmentKey = SegmentedEnvelope.segmentKey(key, header);
+
+            SegmentedEnvelope.nonce(header, header.length, segment, last, nonce);
+
+            Cipher cipher = cipherProvider.get();
+            cipher.init(Cipher.DECRYPT_MODE, segmentKey, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, nonce));
+            cipher.updateAAD(header);
+
+            if ( aad != null && aad.length > 0 )
+                cipher.updateAAD(aad);
+
+            outputLimit = cipher.doFinal(segmentBuffer, 0, length, plaintextBuffer, 0);
+        } catch (AEADBadTagException e) {
+            throw new IOException(String.format("Segment %d of the envelope failed authentication", segment), e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(String.format("Failed to decrypt segment %d", segment), e);
+        }
+
+        outputPosition = 0;
+        ++segment;
+
+        if ( last ) {
+            lastSegmentRead = true;
+        } else {
+            segmentBuffer[0] = segmentBuffer[segmentBuffer.length - 1];
+            buffered = 1;
+        }
+    }
+
+}
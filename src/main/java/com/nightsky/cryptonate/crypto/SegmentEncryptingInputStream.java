@@ -0,0 +1,154 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Reads a plaintext stream as a {@link SegmentedEnvelope}. One segment is
+ * buffered at a time, so memory use does not depend on the size of the
+ * plaintext; the plaintext stream is read as the envelope is.
+ *
+ * @author Chris
+ */
+public class SegmentEncryptingInputStream extends InputStream {
+
+    private final InputStream plaintext;
+
+    private final CipherProvider cipherProvider;
+
+    private final SecretKey key;
+
+    private final byte[] header;
+
+    private final byte[] aad;
+
+    private final int segmentSize;
+
+    private final byte[] plaintextBuffer;
+
+    private final byte[] segmentBuffer;
+
+    private final byte[] nonce;
+
+    private SecretKey segmentKey;
+
+    private int buffered;
+
+    private int segment;
+
+    private byte[] output;
+
+    private int outputPosition;
+
+    private int outputLimit;
+
+    private boolean lastSegmentWritten;
+
+    /**
+     * @param plaintext the plaintext
+     * @param cipherProvider provides AES-GCM ciphers
+     * @param key the data key
+     * @param header the header of the envelope, from
+     * {@link SegmentedEnvelope#newHeader(int, int, int)}
+     * @param aad the AAD of the field, or null
+     */
+    public SegmentEncryptingInputStream(InputStream plaintext, CipherProvider cipherProvider, SecretKey key, byte[] header, byte[] aad) {
+        this.plaintext = plaintext;
+        this.cipherProvider = cipherProvider;
+        this.key = key;
+        this.header = header;
+        this.aad = aad;
+        this.segmentSize = SegmentedEnvelope.segmentSizeOf(header);
+
+        // One byte of lookahead tells the last segment apart
+        this.plaintextBuffer = new byte[segmentSize + 1];
+        this.segmentBuffer = new byte[segmentSize + Envelope.TAG_LENGTH];
+        this.nonce = new byte[Envelope.IV_LENGTH];
+
+        this.output = header;
+        this.outputLimit = header.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ( len == 0 )
+            return 0;
+
+        if ( outputPosition == outputLimit ) {
+            if ( lastSegmentWritten )
+                return -1;
+
+            nextSegment();
+        }
+
+        int n = Math.min(len, outputLimit - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, n);
+        outputPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(plaintextBuffer, (byte) 0);
+        plaintext.close();
+    }
+
+    private void nextSegment() throws IOException {
+        while ( buffered < plaintextBuffer.length ) {
+            int n = plaintext.read(plaintextBuffer, buffered, plaintextBuffer.length - buffered);
+
+            if ( n < 0 )
+                break;
+
+            buffered += n;
+        }
+
+        boolean last = buffered <= segmentSize;
+        int length = last ? buffered : segmentSize;
+
+        if ( segment < 0 )
+            throw new IOException("Too many segments");
+
+        try {
+            if ( segmentKey == null )
+                segmentKey = SegmentedEnvelope.segmentKey(key, header);
+
+            SegmentedEnvelope.nonce(header, header.length, segment, last, nonce);
+
+            Cipher cipher = cipherProvider.get();
+            cipher.init(Cipher.ENCRYPT_MODE, segmentKey, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, nonce));
+            cipher.updateAAD(header);
+
+            if ( aad != null && aad.length > 0 )
+                cipher.updateAAD(aad);
+
+            outputLimit = cipher.doFinal(plaintextBuffer, 0, length, segmentBuffer, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(String.format("Failed to encrypt segment %d", segment), e);
+        }
+
+        output = segmentBuffer;
+        outputPosition = 0;
+        ++segment;
+
+        if ( last ) {
+            lastSegmentWritten = true;
+            Arrays.fill(plaintextBuffer, (byte) 0);
+        } else {
+            plaintextBuffer[0] = plaintextBuffer[segmentSize];
+            buffered = 1;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Layout of segmented envelopes, used to encrypt and decrypt large values as
+ * streams, or in parallel. A segmented envelope is a v2 envelope with
+ * {@link Envelope#FLAG_SEGMENTED} set, whose header also holds the segment
+ * size, a random salt and a random nonce prefix:
+ *
+ * <pre>
+ *   | 0x82 | flags (1) | key code (1-5) | key version (1-5) | segment size (1-5) | salt (16) | nonce prefix (7) |
+ *   | segment 0: ciphertext (segment size) | auth tag (16) | ... | last segment: ciphertext (0 to segment size) | auth tag (16) |
+ * </pre>
+ *
+ * Segments are not encrypted under the data key, but under a key of the
+ * envelope, derived from the data key and the salt with HKDF-SHA256 (see
+ * {@link #segmentKey(SecretKey, byte[])}). Every segment is encrypted on its
+ * own with AES-GCM, under the nonce
+ * <code>nonce prefix (7) | segment index (4) | last segment (1)</code>, and
+ * authenticates the header along with the AAD of its field. Segments cannot
+ * be reordered, dropped or appended without failing authentication, and a
+ * value of <code>n</code> bytes has <code>max(1, ceil(n / segment size))</code>
+ * segments.
+ *
+ * <p>
+ *   Nonces only repeat if two envelopes share their salt: with 128 bit salts,
+ *   the odds stay below 2<sup>-32</sup> for up to about 2<sup>48</sup>
+ *   envelopes under one key version. Nonces of one envelope never repeat.
+ * </p>
+ *
+ * @author Chris
+ */
+public final class SegmentedEnvelope {
+
+    public static final int SALT_LENGTH = 16;
+
+    public static final int NONCE_PREFIX_LENGTH = 7;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    /**
+     * The longest header of a segmented envelope.
+     */
+    public static final int MAXIMUM_HEADER_LENGTH = Envelope.MAXIMUM_HEADER_LENGTH + 5 + SALT_LENGTH + NONCE_PREFIX_LENGTH;
+
+    private static final byte[] SEGMENT_KEY_INFO = "cryptonate segmented envelope".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SecureRandom SALTS = new SecureRandom();
+
+    private SegmentedEnvelope() {  }
+
+    /**
+     * Creates the header of a new segmented envelope, with a fresh salt and
+     * nonce prefix.
+     *
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @param segmentSize the plaintext size of every segment but the last
+     * @return the header
+     */
+    public static byte[] newHeader(int keyCode, int keyVersion, int segmentSize) {
+        return newHeader(keyCode, keyVersion, segmentSize, 0);
+    }
+
+    /**
+     * Creates the header of a new segmented envelope, with a fresh salt and
+     * nonce prefix.
+     *
+     * @param keyCode the key code
+     * @param keyVersion the key version
+     * @param segmentSize the plaintext size of every segment but the last
+     * @param flags flags to set besides {@link Envelope#FLAG_SEGMENTED}
+     * @return the header
+     */
+    public static byte[] newHeader(int keyCode, int keyVersion, int segmentSize, int flags) {
+        if ( segmentSize <= 0 )
+            throw new IllegalArgumentException(String.format("Invalid segment size: %d", segmentSize));
+
+        int segmentSizeOffset = Envelope.headerLength(EnvelopeFormat.V2, keyCode, keyVersion);
+        byte[] header = new byte[segmentSizeOffset + Envelope.varintLength(segmentSize) + SALT_LENGTH + NONCE_PREFIX_LENGTH];
+
+        Envelope.writeHeader(header, EnvelopeFormat.V2, flags | Envelope.FLAG_SEGMENTED, keyCode, keyVersion);
+        int saltOffset = Envelope.writeVarint(header, segmentSizeOffset, segmentSize);
+
+        byte[] random = new byte[SALT_LENGTH + NONCE_PREFIX_LENGTH];
+        SALTS.nextBytes(random);
+        System.arraycopy(random, 0, header, saltOffset, random.length);
+
+        return header;
+    }
+
+    /**
+     * @param envelope a segmented envelope, or a prefix of it holding its header
+     * @return true if the envelope is segmented
+     */
+    public static boolean isSegmented(byte[] envelope) {
+        return (Envelope.flagsOf(envelope) & Envelope.FLAG_SEGMENTED) != 0;
+    }
+
+    /**
+     * @param envelope a segmented envelope, or a prefix of it holding its header
+     * @return the plaintext size of every segment but the last
+     */
+    public static int segmentSizeOf(byte[] envelope) {
+        int segmentSize = Envelope.readVarint(envelope, Envelope.ivOffsetOf(envelope));
+
+        if ( segmentSize <= 0 )
+            throw new IllegalArgumentException(String.format("Invalid segment size: %d", segmentSize));
+
+        return segmentSize;
+    }
+
+    /**
+     * @param envelope a segmented envelope, or a prefix of it holding its header
+     * @return the length of the header
+     */
+    public static int headerLengthOf(byte[] envelope) {
+        int segmentSizeOffset = Envelope.ivOffsetOf(envelope);
+        return segmentSizeOffset + Envelope.varintLength(Envelope.readVarint(envelope, segmentSizeOffset)) + SALT_LENGTH + NONCE_PREFIX_LENGTH;
+    }
+
+    /**
+     * Derives the key the segments of an envelope are encrypted under.
+     *
+     * @param key the data key
+     * @param header the header of the envelope
+     * @return a key of the length of the data key, used by no other envelope
+     * @throws GeneralSecurityException if the data key does not expose its
+     * material, or HMAC-SHA256 is unavailable
+     */
+    public static SecretKey segmentKey(SecretKey key, byte[] header) throws GeneralSecurityException {
+        byte[] ikm = key.getEncoded();
+
+        if ( ikm == null )
+            throw new InvalidKeyException("Segmented envelopes need the key material of the data key");
+
+        byte[] salt = Arrays.copyOfRange(header, header.length - NONCE_PREFIX_LENGTH - SALT_LENGTH, header.length - NONCE_PREFIX_LENGTH);
+        byte[] derived = null;
+
+        try {
+            derived = Hkdf.derive(ikm, salt, SEGMENT_KEY_INFO, ikm.length);
+            return new SecretKeySpec(derived, "AES");
+        } finally {
+            Arrays.fill(ikm, (byte) 0);
+
+            if ( derived != null )
+                Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /**
+     * @param plaintextLength the length of the plaintext
+     * @param headerLength the length of the header
+     * @param segmentSize the segment size
+     * @return the length of the segmented envelope
+     */
+    public static long envelopeLength(long plaintextLength, int headerLength, int segmentSize) {
+        long segments = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+        return headerLength + plaintextLength + segments * Envelope.TAG_LENGTH;
+    }
+
+    /**
+     * @param envelopeLength the length of the segmented envelope
+     * @param headerLength the length of the header
+     * @param segmentSize the segment size
+     * @return the length of the plaintext
+     */
+    public static long plaintextLength(long envelopeLength, int headerLength, int segmentSize) {
+        long body = envelopeLength - headerLength;
+        long segments = (body + segmentSize + Envelope.TAG_LENGTH - 1) / (segmentSize + Envelope.TAG_LENGTH);
+
+        if ( body < Envelope.TAG_LENGTH || body - (segments - 1) * (segmentSize + Envelope.TAG_LENGTH) < Envelope.TAG_LENGTH )
+            throw new IllegalArgumentException(String.format("Malformed segmented envelope: %d bytes", envelopeLength));
+
+        return body - segments * Envelope.TAG_LENGTH;
+    }
+
+    /**
+     * Writes the nonce of a segment.
+     *
+     * @param header the header of the envelope
+     * @param headerLength the length of the header, which ends with the
+     * nonce prefix
+     * @param segment the index of the segment
+     * @param last true if the segment is the last one
+     * @param nonce the nonce, of {@link Envelope#IV_LENGTH} bytes
+     */
+    static void nonce(byte[] header, int headerLength, int segment, boolean last, byte[] nonce) {
+        System.arraycopy(header, headerLength - NONCE_PREFIX_LENGTH, nonce, 0, NONCE_PREFIX_LENGTH);
+        Envelope.writeInt(nonce, NONCE_PREFIX_LENGTH, segment);
+        nonce[Envelope.IV_LENGTH - 1] = (byte) (last ? 1 : 0);
+    }
+
+}
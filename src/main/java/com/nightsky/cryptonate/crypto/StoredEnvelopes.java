@@ -0,0 +1,91 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.Base64;
+
+/**
+ * Reads envelopes as they are stored in entity state: Base64 strings, raw
+ * bytes from binary columns, or Base64 text in binary columns, as left by
+ * migrating a column from text to binary.
+ *
+ * @author Chris
+ */
+public final class StoredEnvelopes {
+
+    private StoredEnvelopes() {  }
+
+    /**
+     * @param stored a stored envelope
+     * @return the raw envelope
+     * @throws IllegalArgumentException if <code>stored</code> is neither a
+     * String nor a byte array
+     */
+    public static byte[] decode(Object stored) {
+        if ( stored instanceof String )
+            return Base64Strings.decode((String) stored);
+
+        if ( stored instanceof byte[] ) {
+            byte[] bytes = (byte[]) stored;
+            return isBase64Text(bytes) ? Base64.getDecoder().decode(bytes) : bytes;
+        }
+
+        throw new IllegalArgumentException(String.format("Unsupported envelope type: %s", stored.getClass().getName()));
+    }
+
+    /**
+     * Reads the header of a stored envelope without decoding the rest of it,
+     * when possible.
+     *
+     * @param stored a stored envelope
+     * @return the envelope, or a prefix of it holding at least its header
+     */
+    public static byte[] header(Object stored) {
+        if ( stored instanceof String )
+            return Base64Strings.decodePrefix((String) stored, Envelope.MAXIMUM_HEADER_LENGTH);
+
+        return decode(stored);
+    }
+
+    /**
+     * @param stored a stored envelope
+     * @return true if the envelope is Base64 encoded
+     */
+    public static boolean isBase64(Object stored) {
+        return stored instanceof String || (stored instanceof byte[] && isBase64Text((byte[]) stored));
+    }
+
+    /**
+     * @param stored a stored envelope
+     * @return true if there is no envelope to decrypt
+     */
+    public static boolean isEmpty(Object stored) {
+        if ( stored == null )
+            return true;
+
+        if ( stored instanceof byte[] )
+            return ((byte[]) stored).length == 0;
+
+        return stored.toString() == null || stored.toString().isEmpty();
+    }
+
+    /**
+     * Tells Base64 text from a raw envelope. Raw envelopes are at least
+     * {@link Envelope#V2_MINIMUM_LENGTH} bytes long, and at least 28 of those
+     * bytes (IV and tag) are random; all of them falling into the 65 Base64
+     * characters is about as likely as guessing a 56-bit key.
+     */
+    static boolean isBase64Text(byte[] bytes) {
+        if ( bytes.length == 0 || bytes.length % 4 != 0 )
+            return false;
+
+        for (byte b : bytes) {
+            boolean base64 = (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                || b == '+' || b == '/' || b == '=';
+
+            if ( !base64 )
+                return false;
+        }
+
+        return true;
+    }
+
+}
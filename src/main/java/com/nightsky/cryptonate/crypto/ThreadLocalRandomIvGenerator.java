@@ -0,0 +1,81 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Generates random IVs with one random number generator per thread, so that
+ * encrypting threads never contend for a shared generator.
+ *
+ * <p>
+ *   The default factory creates a <code>DRBG</code> <code>SecureRandom</code>
+ *   (Java 9 and later) or a <code>SHA1PRNG</code> one (Java 8). Both keep their
+ *   state per instance, unlike <code>NativePRNG</code>, whose instances share
+ *   one synchronized source. Pass a factory to use another generator, such as
+ *   a FIPS-approved DRBG.
+ * </p>
+ *
+ * <p>
+ *   A <code>Random</code> only fills whole arrays; so, an IV that does not
+ *   span its destination is drawn into an array kept with the thread's
+ *   generator and copied from there.
+ * </p>
+ *
+ * @author Chris
+ */
+public class ThreadLocalRandomIvGenerator implements IvGenerator {
+
+    private final ThreadLocal<Generator> generators;
+
+    public ThreadLocalRandomIvGenerator() {
+        this(ThreadLocalRandomIvGenerator::newSecureRandom);
+    }
+
+    public ThreadLocalRandomIvGenerator(Supplier<? extends Random> factory) {
+        this.generators = ThreadLocal.withInitial(() -> new Generator(factory.get()));
+    }
+
+    @Override
+    public void generate(byte[] dst, int offset) {
+        Generator generator = generators.get();
+
+        if ( offset == 0 && dst.length == Envelope.IV_LENGTH ) {
+            generator.random.nextBytes(dst);
+            return;
+        }
+
+        generator.random.nextBytes(generator.scratch);
+        System.arraycopy(generator.scratch, 0, dst, offset, Envelope.IV_LENGTH);
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                return SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException("No per-instance SecureRandom algorithm available", ex);
+            }
+        }
+    }
+
+    /**
+     * The generator of a thread, and the array it draws IVs into.
+     */
+    private static final class Generator {
+
+        private final Random random;
+
+        private final byte[] scratch;
+
+        Generator(Random random) {
+            this.random = random;
+            this.scratch = new byte[Envelope.IV_LENGTH];
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.nightsky.cryptonate.event;
+
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * The state of a managed entity, as read by a flush before its insert or
+ * update actions are executed.
+ *
+ * @author Chris
+ */
+public class HibernateFlushEvent implements HibernateEvent {
+
+    private final EntityPersister persister;
+
+    private final Object[] state;
+
+    public HibernateFlushEvent(EntityPersister persister, Object[] state) {
+        this.persister = persister;
+        this.state = state;
+    }
+
+    @Override
+    public Object[] getState() {
+        return state;
+    }
+
+    @Override
+    public EntityPersister getPersister() {
+        return persister;
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.nightsky.cryptonate.event;
 
+import org.hibernate.event.spi.EventSource;
 import org.hibernate.event.spi.PreLoadEvent;
 import org.hibernate.persister.entity.EntityPersister;
 
@@ -25,4 +26,11 @@ public class HibernatePreLoadEvent implements HibernateEvent {
         return event.getPersister();
     }
 
+    /**
+     * @return the session loading the entity
+     */
+    public EventSource getSession() {
+        return event.getSession();
+    }
+
 }
@@ -1,37 +1,70 @@
 package com.nightsky.cryptonate.event.listener;
 
-import com.nightsky.cryptonate.annotation.Encrypted;
-import com.nightsky.cryptonate.convert.ConverterSupport;
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.convert.FieldCodec;
+import com.nightsky.cryptonate.convert.FieldCodecs;
+import com.nightsky.cryptonate.crypto.CipherProvider;
+import com.nightsky.cryptonate.crypto.CipherProviderSelector;
+import com.nightsky.cryptonate.crypto.Deflate;
+import com.nightsky.cryptonate.crypto.Envelope;
+import com.nightsky.cryptonate.crypto.EnvelopeFormat;
+import com.nightsky.cryptonate.crypto.IvGenerator;
+import com.nightsky.cryptonate.crypto.ParallelSegmentCipher;
+import com.nightsky.cryptonate.crypto.PlaintextCache;
+import com.nightsky.cryptonate.crypto.ProviderSelectionReport;
+import com.nightsky.cryptonate.crypto.RandomIvGenerator;
+import com.nightsky.cryptonate.crypto.ResolvedKeyTable;
+import com.nightsky.cryptonate.crypto.SegmentEncryptingInputStream;
+import com.nightsky.cryptonate.crypto.SegmentedEnvelope;
+import com.nightsky.cryptonate.crypto.StoredEnvelopes;
 import com.nightsky.cryptonate.event.Context;
+import com.nightsky.cryptonate.event.HibernateFlushEvent;
 import com.nightsky.cryptonate.event.HibernatePreInsertEvent;
 import com.nightsky.cryptonate.event.HibernatePreLoadEvent;
 import com.nightsky.cryptonate.event.HibernatePreUpdateEvent;
+import com.nightsky.cryptonate.metrics.CryptoMetrics;
+import com.nightsky.cryptonate.plan.AadProperty;
+import com.nightsky.cryptonate.plan.EncryptedField;
+import com.nightsky.cryptonate.plan.EncryptionPlan;
+import com.nightsky.cryptonate.plan.EncryptionPlanCache;
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.sql.Blob;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.persistence.Id;
-import org.apache.commons.beanutils.PropertyUtils;
-import org.apache.commons.lang3.ArrayUtils;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.jdbc.BlobProxy;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
 import org.hibernate.event.spi.PreInsertEvent;
 import org.hibernate.event.spi.PreInsertEventListener;
 import org.hibernate.event.spi.PreLoadEvent;
 import org.hibernate.event.spi.PreLoadEventListener;
 import org.hibernate.event.spi.PreUpdateEvent;
 import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.jboss.logging.Logger;
 import com.nightsky.keycache.VersionedSecretKey;
 import com.nightsky.keycache.VersionedSecretKeyCache;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import javax.crypto.NoSuchPaddingException;
-import org.springframework.core.convert.ConversionService;
-import org.springframework.core.convert.support.DefaultConversionService;
+import java.util.Set;
 
 /**
  * Encrypts model fields annotated with @Encrypted. I hate having to use a
@@ -77,35 +110,117 @@ import org.springframework.core.convert.support.DefaultConversionService;
  *
  * @author Chris
  */
-public class CryptoEventListener implements PreLoadEventListener, PreInsertEventListener, PreUpdateEventListener {
+public class CryptoEventListener implements PreLoadEventListener, PreInsertEventListener, PreUpdateEventListener,
+    PostInsertEventListener, PostUpdateEventListener
+{
+
+    private static final Logger LOG = Logger.getLogger(CryptoEventListener.class);
 
     private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
 
-    private static final int GCM_IV_LENGTH = 12;   // 96 bits (12 bytes) IV length
+    private static final int GCM_IV_LENGTH = Envelope.IV_LENGTH;
+
+    private static final int GCM_TAG_LENGTH = Envelope.TAG_LENGTH;
 
-    private static final int GCM_TAG_LENGTH = 16;  // 128 bits (16 bytes) auth tag length
+    private static final int DEFAULT_WARM_UP_ROUNDS = 500;
 
-    private static final int INT_SIZE = (Integer.SIZE / Byte.SIZE);
+    private static final Duration DEFAULT_PROVIDER_MEASUREMENT_TIME = Duration.ofMillis(100);
+
+    private static final int UNKNOWN_KEY_VERSION = -1;
 
     private Map<String, Integer> keyCodes;
 
-    private final Map<String, String> keyNames;
+    private final Map<Integer, String> keyNames;
+
+    private final ResolvedKeyTable resolvedKeys;
 
     private String encryptionKeyName;
 
+    private volatile int encryptionKeyVersion;
+
     private VersionedSecretKeyCache versionedSecretKeyCache;
 
     private String securityProviderName;
 
-    private final ConversionService conversionService;
+    private CipherProvider cipherProvider;
+
+    private FieldCodecs fieldCodecs;
+
+    private volatile EncryptionPlanCache encryptionPlans;
 
     private Random rng;
 
+    private IvGenerator ivGenerator;
+
+    private PlaintextCache plaintextCache;
+
+    private boolean reuseEnvelopes;
+
+    private boolean encryptedAadPropertiesAllowed;
+
+    private EnvelopeStorage envelopeStorage;
+
+    private EnvelopeFormat envelopeFormat;
+
+    private int segmentSize;
+
+    private int segmentationThreshold;
+
+    private ForkJoinPool segmentPool;
+
+    private boolean warmUpOnBuild;
+
+    private int warmUpRounds;
+
+    private int prefetchedKeyVersions;
+
+    private volatile WarmUpReport warmUpReport;
+
+    private boolean providerSelectionOnBuild;
+
+    private Set<String> allowedProviderNames;
+
+    private Duration providerMeasurementTime;
+
+    private volatile ProviderSelectionReport providerSelectionReport;
+
+    private CryptoMetrics metrics;
+
+    private boolean metricsEnabled;
+
+    private final WeakIdentityMap<Object, RecordedEnvelope[]> recordedEnvelopes;
+
+    private final ThreadLocal<WrittenState> writtenState;
+
+    private final AfterTransactionCompletionProcess writtenStateCleanup;
+
+    private final ThreadLocal<Map<Object, PrecomputedEnvelope[]>> precomputedEnvelopes;
+
+    private final DeferredDecryption deferredDecryption;
+
     public CryptoEventListener() {
         this.keyNames = new HashMap<>();
+        this.resolvedKeys = new ResolvedKeyTable();
+        this.encryptionKeyVersion = UNKNOWN_KEY_VERSION;
+        this.precomputedEnvelopes = new ThreadLocal<>();
+        this.deferredDecryption = new DeferredDecryption();
+        this.recordedEnvelopes = new WeakIdentityMap<>();
+        this.writtenState = new ThreadLocal<>();
+        this.writtenStateCleanup = (success, session) -> writtenState.remove();
+        this.reuseEnvelopes = false;
+        this.encryptedAadPropertiesAllowed = false;
+        this.envelopeStorage = EnvelopeStorage.BASE64;
+        this.envelopeFormat = EnvelopeFormat.V1;
+        this.segmentSize = SegmentedEnvelope.DEFAULT_SEGMENT_SIZE;
+        this.warmUpRounds = DEFAULT_WARM_UP_ROUNDS;
+        this.prefetchedKeyVersions = 1;
+        this.allowedProviderNames = Collections.emptySet();
+        this.providerMeasurementTime = DEFAULT_PROVIDER_MEASUREMENT_TIME;
+        this.metrics = CryptoMetrics.NONE;
         securityProviderName = null;
-        conversionService = DefaultConversionService.getSharedInstance();
-        ConverterSupport.addInternalConverters((DefaultConversionService)conversionService);
+        cipherProvider = new CipherProvider(CIPHER_ALGORITHM, null);
+        fieldCodecs = new FieldCodecs();
+        encryptionPlans = new EncryptionPlanCache(fieldCodecs);
     }
 
     public static Builder builder() {
@@ -144,130 +259,1055 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
         return false;
     }
 
+    /**
+     * Puts the plaintext values back into the state array of an inserted
+     * entity. Hibernate keeps that array as the loaded state of the entity;
+     * left encrypted, it would make the next flush see every encrypted field
+     * as dirty.
+     */
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        restorePlaintexts(event.getEntity(), event.getState(), event.getPersister());
+    }
+
+    /**
+     * Puts the plaintext values back into the state array of an updated
+     * entity, which Hibernate keeps as its loaded state.
+     */
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        restorePlaintexts(event.getEntity(), event.getState(), event.getPersister());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * Still abstract in Hibernate 5, which calls
+     * {@link #requiresPostCommitHandling(EntityPersister)} instead.
+     */
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    /**
+     * @return true if the calling thread holds the plaintexts of a write whose
+     * post-event has not run
+     */
+    boolean hasWrittenState() {
+        return writtenState.get() != null;
+    }
+
+    private void restorePlaintexts(Object entity, Object[] state, EntityPersister persister) {
+        WrittenState written = writtenState.get();
+
+        // Only the state array encrypted by the matching pre-insert or pre-update event is restored
+        if ( written == null || !written.isStateOf(entity, state) )
+            return;
+
+        writtenState.remove();
+
+        EncryptedField[] fields = encryptionPlans.get(entity.getClass(), persister).getFields();
+        Object[] plaintexts = written.getPlaintexts();
+
+        for (int i = 0; i < fields.length; ++i) {
+            int index = fields[i].getStateIndex();
+
+            if ( index >= 0 )
+                state[index] = plaintexts[i];
+        }
+    }
+
     private void decryptFields(Context context) {
-        for (Field field : context.getEntity().getClass().getDeclaredFields()) {
-            if ( field.isAnnotationPresent(Encrypted.class) ) {
-                decryptField(context, field);
+        EncryptedField[] fields = planFor(context).getFields();
+        PendingDecryption[] deferred = null;
+        RecordedEnvelope[] recorded = null;
+        boolean hasDeferredFields = false;
+
+        Object flightEvent = fields.length > 0 ? FlightRecorderEvents.beginDecryption() : null;
+        long envelopeBytes = flightEvent != null ? storedLength(context, fields) : 0;
+
+        for (int i = 0; i < fields.length; ++i) {
+            if ( fields[i].isDecryptedOnAccess() ) {
+                hasDeferredFields = true;
+                PendingDecryption pending = deferDecryption(context, fields[i]);
+
+                if ( pending != null ) {
+                    if ( deferred == null )
+                        deferred = new PendingDecryption[fields.length];
+
+                    deferred[i] = pending;
+                }
+            } else if ( fields[i].isStreamed() ) {
+                decryptStreamedField(context, fields[i]);
+            } else {
+                RecordedEnvelope envelope = decryptField(context, fields[i]);
+
+                if ( envelope != null ) {
+                    if ( recorded == null )
+                        recorded = new RecordedEnvelope[fields.length];
+
+                    recorded[i] = envelope;
+                }
             }
         }
+
+        if ( hasDeferredFields )
+            deferredDecryption.register(context.getEntity(), deferred);
+
+        if ( recorded != null )
+            recordedEnvelopes.put(context.getEntity(), recorded);
+
+        if ( flightEvent != null )
+            FlightRecorderEvents.commitDecryption(flightEvent, context.getEntity().getClass(), fields.length, envelopeBytes);
     }
 
     private void encryptFields(Context context) {
-        for (Field field : context.getEntity().getClass().getDeclaredFields()) {
-            if ( field.isAnnotationPresent(Encrypted.class) ) {
-                encryptField(context, field);
+        // A write that failed after its pre-event leaves its state behind; it must not outlive the next write
+        writtenState.remove();
+
+        EncryptedField[] fields = planFor(context).getFields();
+        PrecomputedEnvelope[] precomputed = takePrecomputedEnvelopes(context.getEntity());
+        RecordedEnvelope[] recorded = reuseEnvelopes ? recordedEnvelopes.get(context.getEntity()) : null;
+        RecordedEnvelope[] written = recorded;
+        Object[] plaintexts = new Object[fields.length];
+        Object flightEvent = fields.length > 0 ? FlightRecorderEvents.beginEncryption() : null;
+
+        for (int i = 0; i < fields.length; ++i) {
+            plaintexts[i] = getFieldValue(context, fields[i]);
+        }
+
+        for (int i = 0; i < fields.length; ++i) {
+            RecordedEnvelope envelope = encryptField(
+                context, fields[i], precomputed == null ? null : precomputed[i], recorded == null ? null : recorded[i]);
+
+            if ( envelope != null ) {
+                if ( written == null )
+                    written = new RecordedEnvelope[fields.length];
+
+                written[i] = envelope;
             }
         }
+
+        if ( written != recorded )
+            recordedEnvelopes.put(context.getEntity(), written);
+
+        if ( context.getEvent().getState() != null && fields.length > 0 ) {
+            writtenState.set(new WrittenState(context.getEntity(), context.getEvent().getState(), plaintexts));
+
+            // Without a post-event, a failed write leaves its state until the transaction ends
+            EventSource session = sessionOf(context);
+
+            if ( session != null )
+                session.getActionQueue().registerProcess(writtenStateCleanup);
+        }
+
+        if ( flightEvent != null )
+            FlightRecorderEvents.commitEncryption(flightEvent, context.getEntity().getClass(), fields.length, storedLength(context, fields));
+    }
+
+    /**
+     * @return the session writing the entity of the context, or null
+     */
+    private static EventSource sessionOf(Context context) {
+        if ( context.getEvent() instanceof HibernatePreInsertEvent )
+            return ((HibernatePreInsertEvent) context.getEvent()).getSession();
+
+        if ( context.getEvent() instanceof HibernatePreUpdateEvent )
+            return ((HibernatePreUpdateEvent) context.getEvent()).getSession();
+
+        return null;
+    }
+
+    /**
+     * @return the total size of the envelopes held by the fields, in bytes
+     * or Base64 characters; streamed blobs are not counted
+     */
+    private long storedLength(Context context, EncryptedField[] fields) {
+        long length = 0;
+
+        for (EncryptedField field : fields) {
+            Object value = getFieldValue(context, field);
+
+            if ( value instanceof String )
+                length += ((String) value).length();
+            else if ( value instanceof byte[] )
+                length += ((byte[]) value).length;
+        }
+
+        return length;
     }
 
-    private void decryptField(Context context, Field field) {
-        try {
-            Object fieldValue = getFieldValue(context, field);
+    private PrecomputedEnvelope[] takePrecomputedEnvelopes(Object entity) {
+        Map<Object, PrecomputedEnvelope[]> envelopes = precomputedEnvelopes.get();
+        return envelopes == null ? null : envelopes.remove(entity);
+    }
 
-            if ( fieldValue == null || fieldValue.toString() == null || fieldValue.toString().isEmpty() )
-                return;
+    /**
+     * @return true if the calling thread holds envelopes precomputed by a
+     * flush that has not released them
+     */
+    boolean hasPrecomputedEnvelopes() {
+        return precomputedEnvelopes.get() != null;
+    }
+
+    /**
+     * Makes envelopes encrypted ahead of a flush available to the inserts and
+     * updates executed by the current thread.
+     *
+     * @param envelopes the envelopes keyed by entity identity, or null to
+     * stop using precomputed envelopes
+     */
+    void usePrecomputedEnvelopes(Map<Object, PrecomputedEnvelope[]> envelopes) {
+        if ( envelopes == null )
+            precomputedEnvelopes.remove();
+        else
+            precomputedEnvelopes.set(envelopes);
+    }
+
+    /**
+     * @return the encrypted fields of an entity class, from its cached plan
+     */
+    EncryptedField[] encryptedFieldsOf(Class<?> entityClass, EntityPersister persister) {
+        return encryptionPlans.get(entityClass, persister).getFields();
+    }
+
+    /**
+     * Captures the values and the AAD of the encrypted fields of a managed
+     * entity, so that they can be encrypted on another thread. Runs on the
+     * flushing thread, since AAD readers may run entity code.
+     *
+     * @param state the state of the entity; encrypted properties left null
+     * are not captured
+     * @return one envelope per encrypted field (null where a field cannot be
+     * precomputed), or null if the entity has no encrypted fields
+     */
+    PrecomputedEnvelope[] capture(Object entity, Serializable id, EntityPersister persister, Object[] state) {
+        EncryptedField[] fields = encryptedFieldsOf(entity.getClass(), persister);
+
+        if ( fields.length == 0 )
+            return null;
+
+        Context context = Context.builder()
+            .withEntity(entity)
+            .withId(id)
+            .withEvent(new HibernateFlushEvent(persister, state))
+                .build();
+
+        PrecomputedEnvelope[] envelopes = new PrecomputedEnvelope[fields.length];
+
+        for (int i = 0; i < fields.length; ++i) {
+            Object fieldValue = getFieldValue(context, fields[i]);
+
+            // Streams are encrypted as JDBC reads them
+            if ( fieldValue == null || fields[i].isStreamed() )
+                continue;
+
+            // Unresolved envelopes are written back as they are
+            if ( fields[i].isDecryptedOnAccess() && deferredDecryption.pendingFor(entity, fields[i]) != null )
+                continue;
+
+            try {
+                envelopes[i] = new PrecomputedEnvelope(fields[i], fieldValue, aadFor(context, fields[i]), encryptionKeyName);
+            } catch (Exception e) {
+                // Not precomputed; the failure is reported when the entity is written
+            }
+        }
+
+        return envelopes;
+    }
+
+    /**
+     * Loads the keys named by the key codes, initializes a cipher with each,
+     * and runs encrypt/decrypt rounds for every standard field type, so that
+     * the first requests do not pay for it. Keys stay resolved in the
+     * listener.
+     *
+     * @return what the warm-up did and how long it took
+     */
+    public WarmUpReport warmUp() {
+        WarmUpReport report = new CryptoWarmUp(this, warmUpRounds, prefetchedKeyVersions).run();
+        warmUpReport = report;
+        return report;
+    }
+
+    /**
+     * Measures the allowed security providers that implement AES/GCM, and
+     * switches to the fastest of those that produce the same envelopes as the
+     * others. The measurement uses a throwaway key of the size of the current
+     * encryption key, never the key itself. The decision and the measured
+     * rates are logged.
+     *
+     * @return the providers considered and the one chosen
+     * @throws RuntimeException if no allowed provider is compliant
+     */
+    public ProviderSelectionReport selectProvider() {
+        VersionedSecretKey secretKey = versionedSecretKeyCache.getKey(encryptionKeyName);
+
+        if ( secretKey == null )
+            throw new RuntimeException(String.format("Encryption key not found: %s", encryptionKeyName));
+
+        ProviderSelectionReport report = new CipherProviderSelector(CIPHER_ALGORITHM, keySizeOf(secretKey), allowedProviderNames,
+            providerMeasurementTime).select();
+        providerSelectionReport = report;
+
+        if ( report.getSelectedProviderName() == null )
+            throw new RuntimeException(report.toString());
+
+        LOG.info(report);
+        setSecurityProviderName(report.getSelectedProviderName());
+        return report;
+    }
+
+    /**
+     * @return the size of a key in bits, or 256 if its material cannot be
+     * read (e.g. a key held by a hardware module)
+     */
+    private static int keySizeOf(VersionedSecretKey secretKey) {
+        byte[] encoded = secretKey.getEncoded();
 
-            String encodedEnvelope = (String) fieldValue;
-            byte[] envelope = Base64.getDecoder().decode(encodedEnvelope);
+        if ( encoded == null )
+            return 256;
+
+        int keySize = encoded.length * Byte.SIZE;
+        Arrays.fill(encoded, (byte) 0);
+        return keySize;
+    }
 
+    /**
+     * Loads a key version and keeps it resolved.
+     *
+     * @param keyVersion the version to load, or -1 for the current version
+     * @return the key, or null if the key cache does not have it
+     */
+    VersionedSecretKey prefetchKey(String keyName, int keyCode, int keyVersion) {
+        if ( keyVersion >= 0 )
+            return decryptionKeyFor(keyCode, keyVersion);
+
+        VersionedSecretKey secretKey = versionedSecretKeyCache.getKey(keyName);
+
+        if ( secretKey != null )
+            resolvedKeys.put(keyCode, secretKey.getVersion(), secretKey);
+
+        return secretKey;
+    }
+
+    /**
+     * Initializes the cipher of the current thread with a key, which also
+     * checks the key material.
+     */
+    void initializeCipher(VersionedSecretKey secretKey) {
+        try {
             byte[] iv = new byte[GCM_IV_LENGTH];
-            byte[] cipherInput = new byte[envelope.length - INT_SIZE - INT_SIZE - iv.length];
+            ivGenerator.generate(iv, 0);
+            cipherProvider.get().init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, iv));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(String.format("Failed to initialize a cipher with key version %d", secretKey.getVersion()), e);
+        }
+    }
 
-            ByteBuffer buf = ByteBuffer.wrap(envelope);
-            String keyCode = String.format("%d", buf.getInt());
-            int keyVersion = buf.getInt();
-            buf.get(iv);
-            buf.get(cipherInput);
+    /**
+     * Encrypts a value as a field of its type would be, and decrypts it back.
+     */
+    Object roundTrip(Object value, Compression compression, byte[] aad) {
+        try {
+            FieldCodec<Object> codec = fieldCodecs.codecFor(value.getClass());
+            byte[] envelope = encrypt(compression, 0, codec.encode(value), aad, encryptionKeyName);
+            return codec.decode(decrypt(Base64.getEncoder().encodeToString(envelope), aad));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(String.format("Warm-up round failed for %s", value.getClass().getName()), e);
+        }
+    }
 
-            String keyName = keyNames.get(keyCode);
-            GCMParameterSpec parameters = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, iv);
+    /**
+     * @return true if a stored envelope is encrypted with the current version
+     * of the encryption key
+     */
+    boolean isEncryptedWithCurrentKey(Object storedEnvelope) {
+        byte[] header = StoredEnvelopes.header(storedEnvelope);
+        VersionedSecretKey secretKey = versionedSecretKeyCache.getKey(encryptionKeyName);
+
+        return secretKey != null
+            && Envelope.keyCodeOf(header) == keyCodes.get(encryptionKeyName)
+            && Envelope.keyVersionOf(header) == secretKey.getVersion();
+    }
+
+    /**
+     * Decrypts a stored envelope and encrypts its plaintext again with the
+     * current version of the encryption key, in the storage of its field. The
+     * plaintext is not converted to the type of the field. Safe to call from
+     * any thread.
+     *
+     * @return the new stored envelope
+     */
+    Object reEncrypt(EncryptedField field, Object storedEnvelope, byte[] aad) throws GeneralSecurityException {
+        byte[] plaintext = decrypt(field, storedEnvelope, aad);
+        return encode(field, encrypt(field, plaintext, aad, encryptionKeyName));
+    }
+
+    /**
+     * Encrypts a captured field value. Safe to call from any thread.
+     */
+    void seal(PrecomputedEnvelope envelope) {
+        try {
+            byte[] rawFieldValue = codecOf(envelope.getField()).encode(envelope.getPlaintext());
+
+            if ( rawFieldValue == null || rawFieldValue.length == 0 ) {
+                envelope.seal(null, 0);
+            } else {
+                byte[] sealed = encrypt(envelope.getField(), rawFieldValue, envelope.getAad(), envelope.getKeyName());
+                envelope.seal(encode(envelope.getField(), sealed), Envelope.keyVersionOf(sealed));
+            }
+        } catch (Exception e) {
+            // Left unsealed; the field is encrypted again, and the failure reported, when the entity is written
+        }
+    }
+
+    /**
+     * Returns the encryption plan of the context's entity. Plans are cached
+     * per entity class and persister; a context without a persister gets an
+     * uncached plan that does not know the layout of the state array.
+     */
+    private EncryptionPlan planFor(Context context) {
+        Class<?> entityClass = context.getEntity().getClass();
+        EntityPersister persister = context.getEvent().getPersister();
+
+        if ( persister == null )
+            return EncryptionPlan.build(entityClass, null, fieldCodecs);
+
+        return encryptionPlans.get(entityClass, persister);
+    }
+
+    /**
+     * Builds, validates and caches the encryption plan of an entity class, so
+     * that misconfigured <code>&#64;Encrypted</code> fields are reported before
+     * the first load or flush instead of during it.
+     *
+     * @param entityClass the entity class
+     * @param persister the persister of the entity class
+     * @return the validated plan
+     * @throws RuntimeException if the plan cannot be used
+     */
+    public EncryptionPlan prepare(Class<?> entityClass, EntityPersister persister) {
+        EncryptionPlan plan = encryptionPlans.get(entityClass, persister);
+        List<String> problems = new ArrayList<>();
+
+        for (EncryptedField field : plan.getFields()) {
+            String fieldName = String.format("%s.%s", entityClass.getName(), field.getName());
+
+            if ( field.getStateIndex() < 0 )
+                problems.add(String.format("%s is not a persistent property", fieldName));
+
+            if ( field.getCompression() != Compression.NONE && field.getCompressionThreshold() < 0 )
+                problems.add(String.format("%s has a negative compression threshold: %d", fieldName, field.getCompressionThreshold()));
+
+            if ( field.isStreamed() && field.getCompression() != Compression.NONE )
+                problems.add(String.format("%s cannot compress streamed values", fieldName));
+
+            if ( field.getStorage() == EnvelopeStorage.BINARY && field.getType() != byte[].class && !field.isStreamed() )
+                problems.add(String.format("%s cannot store binary envelopes: %s", fieldName, field.getType().getName()));
+
+            if ( field.isDecryptedOnAccess() && field.getType() != String.class )
+                problems.add(String.format("%s cannot be decrypted on access: %s", fieldName, field.getType().getName()));
+
+            if ( field.isDecryptedOnAccess() && DeferredDecryption.holderFieldOf(entityClass) == null )
+                problems.add(String.format("%s is decrypted on access, but %s declares no DeferredDecryption field", fieldName, entityClass.getName()));
+
+            if ( field.isCached() && plaintextCache != null && !plaintextCache.isOffHeap() && !PlaintextCache.canShare(field.getType()) )
+                problems.add(String.format("%s cannot be cached on the heap: %s is mutable", fieldName, field.getType().getName()));
+
+            if ( !field.isStreamed() && fieldCodecs.codecFor(field.getType()) == null )
+                problems.add(String.format("%s has an unsupported type: %s", fieldName, field.getType().getName()));
+
+            for (AadProperty aadProperty : field.getAadProperties()) {
+                if ( !aadProperty.isIdentifier() && aadProperty.getStateIndex() < 0 )
+                    problems.add(String.format("%s uses unknown AAD property: %s", fieldName, aadProperty.getName()));
+
+                for (EncryptedField other : plan.getFields()) {
+                    if ( !other.getName().equals(aadProperty.getName()) )
+                        continue;
+
+                    if ( encryptedAadPropertiesAllowed )
+                        LOG.warnf("%s uses encrypted AAD property: %s", fieldName, aadProperty.getName());
+                    else
+                        problems.add(String.format("%s uses encrypted AAD property: %s", fieldName, aadProperty.getName()));
+                }
+            }
+        }
+
+        if ( !problems.isEmpty() )
+            throw new RuntimeException(String.format("Invalid encrypted fields: %s", String.join("; ", problems)));
+
+        return plan;
+    }
+
+    /**
+     * Checks that the key cache holds every key named in the key codes, so
+     * that envelopes written under earlier encryption keys can still be
+     * decrypted.
+     *
+     * @throws RuntimeException naming every key that cannot be loaded
+     */
+    public void validateDecryptionKeys() {
+        List<String> problems = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> keyCode : keyCodes.entrySet()) {
+            try {
+                if ( versionedSecretKeyCache.getKey(keyCode.getKey()) == null )
+                    problems.add(String.format("%s (key code %d) not found", keyCode.getKey(), keyCode.getValue()));
+            } catch (RuntimeException e) {
+                problems.add(String.format("%s (key code %d) failed to load: %s", keyCode.getKey(), keyCode.getValue(), e));
+            }
+        }
+
+        if ( !problems.isEmpty() )
+            throw new RuntimeException(String.format("Decryption keys unavailable: %s", String.join("; ", problems)));
+    }
+
+    /**
+     * Checks that the encryption key is defined in the key codes, that key
+     * codes are unique and cannot be mistaken for v2 envelopes, and that the encryption key can be loaded from the
+     * key cache.
+     *
+     * @throws RuntimeException if the listener cannot encrypt with its
+     * current configuration
+     */
+    public void validateConfiguration() {
+        if ( keyCodes == null || keyCodes.isEmpty() )
+            throw new RuntimeException("No key codes have been defined");
+
+        if ( keyNames.size() != keyCodes.size() )
+            throw new RuntimeException(String.format("Key codes are not unique: %s", keyCodes));
+
+        rejectMarkerCollisions();
+
+        if ( encryptionKeyName == null || !keyCodes.containsKey(encryptionKeyName) )
+            throw new RuntimeException(String.format("No key code defined for encryption key: %s", encryptionKeyName));
+
+        if ( versionedSecretKeyCache == null )
+            throw new RuntimeException("Versioned secret key cache not configured");
+
+        VersionedSecretKey secretKey;
+        try {
+            secretKey = versionedSecretKeyCache.getKey(encryptionKeyName);
+        } catch (RuntimeException e) {
+            throw new RuntimeException(String.format("Failed to load encryption key: %s", encryptionKeyName), e);
+        }
+
+        if ( secretKey == null )
+            throw new RuntimeException(String.format("Encryption key not found: %s", encryptionKeyName));
+    }
+
+    /**
+     * @return the envelope the field was decrypted from, if envelopes are
+     * reused, or null
+     */
+    private RecordedEnvelope decryptField(Context context, EncryptedField field) {
+        try {
+            Object fieldValue = getFieldValue(context, field);
 
-            Cipher cipher = getCipher();
-            cipher.init(Cipher.DECRYPT_MODE, versionedSecretKeyCache.getKey(keyName, keyVersion), parameters);
+            if ( StoredEnvelopes.isEmpty(fieldValue) )
+                return null;
 
+            // Generate the AAD before touching the cipher; property readers may run entity code
             byte[] aad = aadFor(context, field);
-            if ( aad != null && aad.length > 0 )
-                cipher.updateAAD(aad);
 
-            byte[] decrypted = cipher.doFinal(cipherInput);
+            PlaintextCache.Key cacheKey = null;
+
+            if ( plaintextCache != null && field.isCached() ) {
+                cacheKey = fieldValue instanceof byte[]
+                    ? plaintextCache.keyFor((byte[]) fieldValue, aad)
+                    : plaintextCache.keyFor((String) fieldValue, aad);
+                Object cachedFieldValue = plaintextCache.get(cacheKey, field.getType(), codecOf(field)::decode);
+
+                if ( cachedFieldValue != null ) {
+                    setFieldValue(context, field, cachedFieldValue);
+
+                    return reuseEnvelopes
+                        ? new RecordedEnvelope(fieldValue, codecOf(field).encode(cachedFieldValue), aad)
+                        : null;
+                }
+            }
+
+            byte[] decrypted = decrypt(field, fieldValue, aad);
 
             // Convert the decrypted data to the actual type of the field
-            Object convertedFieldValue = conversionService.convert(decrypted, field.getType());
+            Object convertedFieldValue = codecOf(field).decode(decrypted);
+
+            if ( cacheKey != null && convertedFieldValue != null )
+                plaintextCache.put(cacheKey, decrypted, convertedFieldValue);
 
-            setField(context, field, convertedFieldValue);
+            setFieldValue(context, field, convertedFieldValue);
+
+            return reuseEnvelopes ? new RecordedEnvelope(fieldValue, decrypted, aad) : null;
         } catch (Exception e) {
+            FlightRecorderEvents.failure(context.getEntity().getClass(), field.getName(), false, e);
             String msg = String.format("Failed to decrypt field: %s.%s", context.getEntity().getClass().getName(), field.getName());
             throw new RuntimeException(msg, e);
         }
     }
 
-    private void encryptField(Context context, Field field) {
+    /**
+     * Leaves the envelope of a field decrypted on access in place and captures
+     * what is needed to decrypt it later. The AAD must be generated now; the
+     * state it is generated from is only complete during the load.
+     */
+    private PendingDecryption deferDecryption(Context context, EncryptedField field) {
         try {
             Object fieldValue = getFieldValue(context, field);
 
-            if ( fieldValue == null )
+            if ( fieldValue == null || fieldValue.toString() == null || fieldValue.toString().isEmpty() )
+                return null;
+
+            EventSource session = context.getEvent() instanceof HibernatePreLoadEvent
+                ? ((HibernatePreLoadEvent) context.getEvent()).getSession()
+                : null;
+
+            return new PendingDecryption(this, field, (String) fieldValue, aadFor(context, field), session, context.getEvent().getState());
+        } catch (Exception e) {
+            FlightRecorderEvents.failure(context.getEntity().getClass(), field.getName(), false, e);
+            String msg = String.format("Failed to decrypt field: %s.%s", context.getEntity().getClass().getName(), field.getName());
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Decrypts the envelope of a field decrypted on access.
+     */
+    String decryptDeferred(PendingDecryption pending) {
+        EncryptedField field = pending.getField();
+
+        try {
+            byte[] decrypted = decrypt(field, pending.getEnvelope(), pending.getAad());
+            return (String) codecOf(field).decode(decrypted);
+        } catch (Exception e) {
+            FlightRecorderEvents.failure(field.getField().getDeclaringClass(), field.getName(), false, e);
+            String msg = String.format("Failed to decrypt field: %s.%s", field.getField().getDeclaringClass().getName(), field.getName());
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Decrypts a stored envelope. Base64 text is accepted from binary columns
+     * too, so that a column can move from text to binary storage without
+     * rewriting its rows first.
+     */
+    private byte[] decrypt(Object storedEnvelope, byte[] aad) throws GeneralSecurityException {
+        return decrypt(StoredEnvelopes.decode(storedEnvelope), aad);
+    }
+
+    /**
+     * Decrypts the stored envelope of a field, recording the decryption into
+     * the metrics.
+     */
+    private byte[] decrypt(EncryptedField field, Object storedEnvelope, byte[] aad) throws GeneralSecurityException {
+        if ( !metricsEnabled )
+            return decrypt(storedEnvelope, aad);
+
+        long start = System.nanoTime();
+
+        try {
+            byte[] envelope = StoredEnvelopes.decode(storedEnvelope);
+            byte[] plaintext = decrypt(envelope, aad);
+
+            metrics.recordDecryption(field.getField().getDeclaringClass(), field.getName(),
+                Envelope.keyCodeOf(envelope), Envelope.keyVersionOf(envelope), System.nanoTime() - start, plaintext.length, envelope.length);
+
+            return plaintext;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            metrics.recordDecryptionFailure(field.getField().getDeclaringClass(), field.getName());
+            throw e;
+        }
+    }
+
+    private byte[] decrypt(byte[] envelope, byte[] aad) throws GeneralSecurityException {
+        EnvelopeFormat format = Envelope.formatOf(envelope);
+        int minimumLength = format == EnvelopeFormat.V1 ? Envelope.MINIMUM_LENGTH : Envelope.V2_MINIMUM_LENGTH;
+
+        if ( envelope.length < minimumLength )
+            throw new RuntimeException(String.format("Envelope is too short: %d bytes", envelope.length));
+
+        int flags = Envelope.flagsOf(envelope);
+
+        if ( (flags & ~Envelope.SUPPORTED_FLAGS) != 0 )
+            throw new RuntimeException(String.format("Unsupported envelope flags: 0x%02x", flags));
+
+        // Large values are decrypted a segment per task; the segments authenticate the header
+        if ( (flags & Envelope.FLAG_SEGMENTED) != 0 ) {
+            VersionedSecretKey secretKey = decryptionKeyFor(Envelope.keyCodeOf(envelope), Envelope.keyVersionOf(envelope));
+            byte[] plaintext = segmentCipher().decrypt(envelope, secretKey, aad);
+            return (flags & Envelope.FLAG_DEFLATE) != 0 ? Deflate.decompress(plaintext) : plaintext;
+        }
+
+        // The header, IV and ciphertext are read in place; nothing is copied out of the envelope
+        int keyCode = Envelope.keyCodeOf(envelope);
+        int keyVersion = Envelope.keyVersionOf(envelope);
+        int ivOffset = Envelope.ivOffsetOf(envelope);
+        int ciphertextOffset = ivOffset + GCM_IV_LENGTH;
+
+        if ( envelope.length < ciphertextOffset + GCM_TAG_LENGTH )
+            throw new RuntimeException(String.format("Envelope is too short: %d bytes", envelope.length));
+
+        VersionedSecretKey secretKey = decryptionKeyFor(keyCode, keyVersion);
+        GCMParameterSpec parameters = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, envelope, ivOffset, GCM_IV_LENGTH);
+
+        Cipher cipher = cipherProvider.get();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, parameters);
+
+        // v2 headers are authenticated, so that flags cannot be altered
+        if ( format == EnvelopeFormat.V2 )
+            cipher.updateAAD(envelope, 0, ivOffset);
+
+        if ( aad != null && aad.length > 0 )
+            cipher.updateAAD(aad);
+
+        byte[] plaintext = cipher.doFinal(envelope, ciphertextOffset, envelope.length - ciphertextOffset);
+
+        return (flags & Envelope.FLAG_DEFLATE) != 0 ? Deflate.decompress(plaintext) : plaintext;
+    }
+
+    /**
+     * Wraps the stored blob of a streamed field into a blob that decrypts it
+     * as it is read. The stored blob is not read here.
+     */
+    private void decryptStreamedField(Context context, EncryptedField field) {
+        try {
+            Object fieldValue = getFieldValue(context, field);
+
+            if ( !(fieldValue instanceof Blob) || fieldValue instanceof DecryptedBlob )
                 return;
 
-            byte[] rawFieldValue = conversionService.convert(fieldValue, byte[].class);
+            setFieldValue(context, field, new DecryptedBlob(this, cipherProvider, (Blob) fieldValue, aadFor(context, field)));
+        } catch (Exception e) {
+            FlightRecorderEvents.failure(context.getEntity().getClass(), field.getName(), false, e);
+            String msg = String.format("Failed to decrypt field: %s.%s", context.getEntity().getClass().getName(), field.getName());
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Replaces the blob of a streamed field with one that encrypts it as JDBC
+     * reads it. A loaded blob whose envelope is still valid is stored as it is.
+     */
+    private void encryptStreamedField(Context context, EncryptedField field, Blob blob) throws Exception {
+        byte[] aad = aadFor(context, field);
+
+        VersionedSecretKey secretKey = currentKey(encryptionKeyName);
+        int keyCode = keyCodes.get(encryptionKeyName);
+
+        if ( blob instanceof DecryptedBlob && ((DecryptedBlob) blob).isEncryptedUnder(keyCode, secretKey.getVersion(), aad) ) {
+            setFieldValue(context, field, ((DecryptedBlob) blob).getSource());
+            return;
+        }
+
+        byte[] header = SegmentedEnvelope.newHeader(keyCode, secretKey.getVersion(), segmentSize);
+        long envelopeLength = SegmentedEnvelope.envelopeLength(blob.length(), header.length, segmentSize);
+        SegmentEncryptingInputStream envelope = new SegmentEncryptingInputStream(blob.getBinaryStream(), cipherProvider, secretKey, header, aad);
+
+        setFieldValue(context, field, BlobProxy.generateProxy(envelope, envelopeLength));
+    }
+
+    /**
+     * Resolves the key of an envelope. Resolved keys are kept in a table keyed
+     * by key code and version, so the key cache is consulted only the first
+     * time a pair is seen.
+     */
+    VersionedSecretKey decryptionKeyFor(int keyCode, int keyVersion) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        VersionedSecretKey secretKey = resolvedKeys.get(keyCode, keyVersion);
+        boolean resolved = secretKey != null;
+
+        if ( secretKey == null ) {
+            String keyName = keyNames.get(keyCode);
+
+            if ( keyName == null )
+                throw new RuntimeException(String.format("Unknown key code: %d", keyCode));
+
+            Object flightEvent = FlightRecorderEvents.beginKeyLookup();
+            secretKey = versionedSecretKeyCache.getKey(keyName, keyVersion);
+
+            if ( flightEvent != null )
+                FlightRecorderEvents.commitKeyLookup(flightEvent, keyName, keyVersion, secretKey);
+
+            if ( secretKey != null )
+                resolvedKeys.put(keyCode, keyVersion, secretKey);
+        }
+
+        if ( metricsEnabled )
+            metrics.recordKeyLookup(keyNames.get(keyCode), keyVersion, System.nanoTime() - start, resolved);
+
+        return secretKey;
+    }
+
+    /**
+     * Looks up the current version of a key in the key cache.
+     */
+    private VersionedSecretKey currentKey(String keyName) {
+        Object flightEvent = FlightRecorderEvents.beginKeyLookup();
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        VersionedSecretKey secretKey = versionedSecretKeyCache.getKey(keyName);
+
+        if ( metricsEnabled )
+            metrics.recordKeyLookup(keyName, CryptoMetrics.CURRENT_VERSION, System.nanoTime() - start, false);
+
+        if ( flightEvent != null )
+            FlightRecorderEvents.commitKeyLookup(flightEvent, keyName, CryptoMetrics.CURRENT_VERSION, secretKey);
+
+        if ( secretKey != null && keyName.equals(encryptionKeyName) && secretKey.getVersion() != encryptionKeyVersion )
+            encryptionKeyRotated(secretKey.getVersion());
+
+        return secretKey;
+    }
+
+    /**
+     * Clears the plaintext cache when the current version of the encryption
+     * key changes, so that values decrypted before a rotation are not served
+     * after it.
+     */
+    private void encryptionKeyRotated(int keyVersion) {
+        int previous = encryptionKeyVersion;
+        encryptionKeyVersion = keyVersion;
+
+        if ( previous != UNKNOWN_KEY_VERSION && plaintextCache != null )
+            plaintextCache.clear();
+    }
+
+    /**
+     * @return the envelope written into the state, if envelopes are reused
+     * and the state changed, or null
+     */
+    private RecordedEnvelope encryptField(Context context, EncryptedField field, PrecomputedEnvelope precomputed, RecordedEnvelope recorded) {
+        try {
+            Object fieldValue = getFieldValue(context, field);
+
+            if ( fieldValue == null )
+                return null;
+
+            if ( field.isStreamed() ) {
+                encryptStreamedField(context, field, (Blob) fieldValue);
+                return null;
+            }
+
+            byte[] aad = null;
+
+            if ( field.isDecryptedOnAccess() ) {
+                PendingDecryption pending = deferredDecryption.pendingFor(context.getEntity(), field);
+
+                if ( pending != null && pending.getEnvelope().equals(fieldValue) ) {
+                    // The field still holds the envelope it was loaded with, which stays valid
+                    // as long as its AAD does
+                    if ( Arrays.equals(aadFor(context, field), pending.getAad()) )
+                        return null;
+
+                    fieldValue = deferredDecryption.resolve(context.getEntity(), pending);
+                    precomputed = null;
+                }
+            }
+
+            if ( precomputed != null ) {
+                aad = aadFor(context, field);
+
+                VersionedSecretKey secretKey = currentKey(encryptionKeyName);
+
+                if ( secretKey != null && precomputed.matches(fieldValue, aad, encryptionKeyName, secretKey.getVersion()) ) {
+                    if ( precomputed.getEncodedEnvelope() == null )
+                        return null;
+
+                    setFieldValue(context, field, precomputed.getEncodedEnvelope());
+
+                    return reuseEnvelopes
+                        ? new RecordedEnvelope(precomputed.getEncodedEnvelope(), codecOf(field).encode(fieldValue), aad)
+                        : null;
+                }
+            }
+
+            byte[] rawFieldValue = codecOf(field).encode(fieldValue);
 
             if ( rawFieldValue == null || rawFieldValue.length == 0 )
-                return;
+                return null;
+
+            // Generate the AAD before touching the cipher; property readers may run entity code
+            if ( aad == null )
+                aad = aadFor(context, field);
+
+            if ( recorded != null && isReusable(recorded, rawFieldValue, aad) ) {
+                // Rows left in another storage format move to the configured one
+                if ( StoredEnvelopes.isBase64(recorded.getEnvelope()) == (storageOf(field) == EnvelopeStorage.BASE64) ) {
+                    setFieldValue(context, field, recorded.getEnvelope());
+                    return recorded;
+                }
+
+                Object storedEnvelope = encode(field, StoredEnvelopes.decode(recorded.getEnvelope()));
+                setFieldValue(context, field, storedEnvelope);
+                return new RecordedEnvelope(storedEnvelope, rawFieldValue, aad);
+            }
+
+            Object storedEnvelope = encode(field, encrypt(field, rawFieldValue, aad, encryptionKeyName));
 
-            // Load the encryption key from the cache
-            VersionedSecretKey secretKey = versionedSecretKeyCache.getKey(encryptionKeyName);
-            int keyCode = keyCodes.get(encryptionKeyName);
+            setFieldValue(context, field, storedEnvelope);
 
-            // Generate the IV
-            byte [] iv = new byte[GCM_IV_LENGTH];
-            rng.nextBytes(iv);
+            return reuseEnvelopes ? new RecordedEnvelope(storedEnvelope, rawFieldValue, aad) : null;
+        } catch (Exception e) {
+            FlightRecorderEvents.failure(context.getEntity().getClass(), field.getName(), true, e);
+            String msg = String.format("Failed to encrypt field: %s.%s", context.getEntity().getClass().getName(), field.getName());
+            throw new RuntimeException(msg, e);
+        }
+    }
 
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, iv);
+    /**
+     * An envelope can be written again if it encrypts the same plaintext,
+     * with the same AAD, under the current version of the encryption key, in
+     * the current envelope format.
+     */
+    private boolean isReusable(RecordedEnvelope recorded, byte[] rawFieldValue, byte[] aad) {
+        if ( !Arrays.equals(recorded.getPlaintext(), rawFieldValue) || !Arrays.equals(recorded.getAad(), aad) )
+            return false;
 
-            Cipher cipher = getCipher();
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, parameterSpec);
+        byte[] header = StoredEnvelopes.header(recorded.getEnvelope());
+        int keyCode = keyCodes.get(encryptionKeyName);
 
-            byte[] aad = aadFor(context, field);
-            if ( aad != null && aad.length > 0 )
-                cipher.updateAAD(aad);
+        // Compressed and segmented envelopes are v2 whatever the configured format
+        boolean flagged = (Envelope.flagsOf(header) & (Envelope.FLAG_DEFLATE | Envelope.FLAG_SEGMENTED)) != 0;
+
+        if ( (!flagged && Envelope.formatOf(header) != envelopeFormat) || Envelope.keyCodeOf(header) != keyCode )
+            return false;
+
+        VersionedSecretKey secretKey = currentKey(encryptionKeyName);
+        return secretKey != null && Envelope.keyVersionOf(header) == secretKey.getVersion();
+    }
+
+    /**
+     * Encrypts the raw value of a field, recording the encryption into the
+     * metrics.
+     */
+    private byte[] encrypt(EncryptedField field, byte[] rawFieldValue, byte[] aad, String keyName) throws GeneralSecurityException {
+        if ( !metricsEnabled )
+            return encrypt(field.getCompression(), field.getCompressionThreshold(), rawFieldValue, aad, keyName);
+
+        long start = System.nanoTime();
+
+        try {
+            byte[] envelope = encrypt(field.getCompression(), field.getCompressionThreshold(), rawFieldValue, aad, keyName);
+
+            metrics.recordEncryption(field.getField().getDeclaringClass(), field.getName(),
+                Envelope.keyCodeOf(envelope), Envelope.keyVersionOf(envelope), System.nanoTime() - start, rawFieldValue.length, envelope.length);
+
+            return envelope;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            metrics.recordEncryptionFailure(field.getField().getDeclaringClass(), field.getName());
+            throw e;
+        }
+    }
+
+    private byte[] encrypt(Compression compression, int compressionThreshold, byte[] rawFieldValue, byte[] aad, String keyName)
+        throws GeneralSecurityException
+    {
+        // Load the encryption key from the cache
+        VersionedSecretKey secretKey = currentKey(keyName);
+        int keyCode = keyCodes.get(keyName);
+
+        // Only v2 envelopes can flag a compressed plaintext
+        EnvelopeFormat format = envelopeFormat;
+        int flags = 0;
+
+        if ( compression == Compression.DEFLATE && rawFieldValue.length >= compressionThreshold ) {
+            byte[] compressed = Deflate.compress(rawFieldValue);
+
+            if ( compressed != null ) {
+                rawFieldValue = compressed;
+                format = EnvelopeFormat.V2;
+                flags = Envelope.FLAG_DEFLATE;
+            }
+        }
+
+        // Large values are split into segments that are encrypted in parallel
+        if ( segmentationThreshold > 0 && rawFieldValue.length >= segmentationThreshold ) {
+            byte[] header = SegmentedEnvelope.newHeader(keyCode, secretKey.getVersion(), segmentSize, flags);
+            return segmentCipher().encrypt(rawFieldValue, header, secretKey, aad);
+        }
+
+        // envelope size = header_length + iv_length + encrypted_data_length + auth_tag_length
+        //               = (8 for v1, 4 to 12 for v2) + 12 + encrypted_data.length + 16
+        int headerLength = Envelope.headerLength(format, keyCode, secretKey.getVersion());
+        int ciphertextOffset = headerLength + GCM_IV_LENGTH;
+        byte[] cipherEnvelope = new byte[ciphertextOffset + rawFieldValue.length + GCM_TAG_LENGTH];
+        Envelope.writeHeader(cipherEnvelope, format, flags, keyCode, secretKey.getVersion());
+
+        // Generate the IV straight into the envelope
+        ivGenerator.generate(cipherEnvelope, headerLength);
+
+        GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, cipherEnvelope, headerLength, GCM_IV_LENGTH);
+
+        Cipher cipher = cipherProvider.get();
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, parameterSpec);
+
+        if ( format == EnvelopeFormat.V2 )
+            cipher.updateAAD(cipherEnvelope, 0, headerLength);
+
+        if ( aad != null && aad.length > 0 )
+            cipher.updateAAD(aad);
+
+        // NOTE: cipher output contains the ciphered data and the auth tag (concatenated);
+        // it is written straight into the envelope
+        int outputLength = cipher.doFinal(rawFieldValue, 0, rawFieldValue.length, cipherEnvelope, ciphertextOffset);
+
+        if ( ciphertextOffset + outputLength != cipherEnvelope.length )
+            throw new RuntimeException("Unexpected cipher output length");
+
+        return cipherEnvelope;
+    }
+
+    /**
+     * @return the codec of a field, resolved when its plan was built or, for
+     * a type registered since, now
+     */
+    private FieldCodec<Object> codecOf(EncryptedField field) {
+        FieldCodec<Object> codec = field.getCodec();
+
+        if ( codec == null ) {
+            codec = fieldCodecs.codecFor(field.getType());
+
+            if ( codec == null )
+                throw new RuntimeException(String.format("Unsupported field type: %s", field.getType().getName()));
+        }
 
-            // NOTE: cipher output array contains the ciphered data and the auth tag (concatenated)
-            byte[] cipherOutput = cipher.doFinal(rawFieldValue);
+        return codec;
+    }
+
+    private ParallelSegmentCipher segmentCipher() {
+        return new ParallelSegmentCipher(cipherProvider, segmentPool != null ? segmentPool : ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return how the envelope of a field is stored
+     */
+    private EnvelopeStorage storageOf(EncryptedField field) {
+        if ( field.getStorage() != EnvelopeStorage.DEFAULT )
+            return field.getStorage();
 
-            // envelope size = 4 + 4 + iv_length + encrypted_data_length + auth_tag_length
-            //               = 4 + 4 + 12 + encrypted_data.length + 16
-            ByteBuffer buf = ByteBuffer.allocate(INT_SIZE + INT_SIZE + iv.length + cipherOutput.length)
-                .putInt(keyCode)
-                .putInt(secretKey.getVersion())
-                .put(iv)
-                .put(cipherOutput);
-            byte[] cipherEnvelope = buf.array();
+        return field.getType() == byte[].class ? envelopeStorage : EnvelopeStorage.BASE64;
+    }
 
-            String encodedCipherEnvelope = Base64.getEncoder().encodeToString(cipherEnvelope);
+    /**
+     * Encodes a raw envelope for the column of a field.
+     */
+    private Object encode(EncryptedField field, byte[] envelope) {
+        if ( field.getType() != byte[].class )
+            return Base64.getEncoder().encodeToString(envelope);
 
-            setField(context, field, encodedCipherEnvelope);
-        } catch (Exception e) {
-            String msg = String.format("Failed to encrypt field: %s.%s", context.getEntity().getClass().getName(), field.getName());
-            throw new RuntimeException(msg, e);
-        }
+        return storageOf(field) == EnvelopeStorage.BINARY ? envelope : Base64.getEncoder().encode(envelope);
     }
 
-    private Object getFieldValue(Context context, Field field) {
-        return getFieldValue(context, field.getName());
+    private Object getFieldValue(Context context, EncryptedField field) {
+        return getStateValue(context, field.getStateIndex());
     }
 
-    private Object getFieldValue(Context context, String fieldName) {
-        String[] propertyNames = context.getEvent().getPersister().getEntityMetamodel().getPropertyNames();
+    private Object getStateValue(Context context, int index) {
         Object[] currentState = context.getEvent().getState();
 
-        // If fieldName matches the name of the @Id field, return context.getId().
-        // propertyNames and currentState do not contain the name and value of the @Id field
-        for (Field field : context.getEntity().getClass().getDeclaredFields()) {
-            if ( field.isAnnotationPresent(Id.class) && field.getName().equals(fieldName) ) {
-                return context.getId();
-            }
-        }
-
-        int index = ArrayUtils.indexOf(propertyNames, fieldName);
         if ( currentState != null && index >= 0 ) {
             return currentState[index];
         }
@@ -275,11 +1315,10 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
         return null;
     }
 
-    private void setField(Context context, Field field, Object dbFieldValue) throws IllegalAccessException {
-        String[] propertyNames = context.getEvent().getPersister().getEntityMetamodel().getPropertyNames();
+    private void setFieldValue(Context context, EncryptedField field, Object dbFieldValue) {
         Object[] currentState = context.getEvent().getState();
+        int index = field.getStateIndex();
 
-        int index = ArrayUtils.indexOf(propertyNames, field.getName());
         if ( currentState != null && index >= 0 ) {
             currentState[index] = dbFieldValue;
         }
@@ -302,24 +1341,55 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
     public byte[] aadFor(Context context, Field field)
         throws IllegalAccessException, InvocationTargetException, NoSuchMethodException
     {
-        Encrypted annotation = field.getAnnotation(Encrypted.class);
-        String [] aadFieldNames = annotation.aadFieldNames();
+        EncryptedField encryptedField = planFor(context).getField(field);
+
+        if ( encryptedField == null )
+            throw new RuntimeException(String.format("Field is not encrypted: %s", field.getName()));
+
+        return aadFor(context, encryptedField);
+    }
+
+    private byte[] aadFor(Context context, EncryptedField field)
+        throws IllegalAccessException, InvocationTargetException, NoSuchMethodException
+    {
+        AadProperty[] aadProperties = field.getAadProperties();
 
-        if ( aadFieldNames == null || aadFieldNames.length == 0 )
+        if ( aadProperties.length == 0 )
             return null;
 
-        StringBuilder aadBuffer = new StringBuilder("");
-        int i = 0;
-        for (String aadFieldName : aadFieldNames) {
-            Object fieldValue;
+        Object[] values = new Object[aadProperties.length];
+
+        for (int i = 0; i < aadProperties.length; ++i) {
+            AadProperty aadProperty = aadProperties[i];
 
             if ( context.getEvent() instanceof HibernatePreLoadEvent ) {
-                // Not all entity fields are populated; so, get the field values from the session state
-                fieldValue = getFieldValue(context, aadFieldName);
+                // Not all entity fields are populated; so, get the field values from the session state.
+                // The state array does not contain the value of the @Id field
+                values[i] = aadProperty.isIdentifier() ? context.getId() : getStateValue(context, aadProperty.getStateIndex());
             } else {
                 // All of the entity fields should be populated; so, get the field values from the entity itself
-                fieldValue = PropertyUtils.getProperty(context.getEntity(), aadFieldName);
+                values[i] = aadProperty.getReader().read(context.getEntity());
             }
+        }
+
+        return aadOf(aadProperties, values);
+    }
+
+    /**
+     * Builds the AAD of a field from the values of its AAD properties.
+     *
+     * @param aadProperties the AAD properties of the field
+     * @param values the values of the properties, in the same order
+     * @return the AAD, or null if the field has no AAD properties
+     */
+    static byte[] aadOf(AadProperty[] aadProperties, Object[] values) {
+        if ( aadProperties.length == 0 )
+            return null;
+
+        StringBuilder aadBuffer = new StringBuilder("");
+
+        for (int i = 0; i < aadProperties.length; ++i) {
+            Object fieldValue = values[i];
 
             if ( fieldValue == null || fieldValue.toString() == null || fieldValue.toString().isEmpty() )
                 throw new RuntimeException("Field value cannot be null or empty");
@@ -327,31 +1397,28 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
             if ( i != 0 )
                 aadBuffer.append(",");
 
-            aadBuffer.append(aadFieldName);
+            aadBuffer.append(aadProperties[i].getName());
             aadBuffer.append("=");
             aadBuffer.append(fieldValue.toString());
-
-            ++i;
         }
 
         return aadBuffer.toString().getBytes(StandardCharsets.UTF_8);
     }
 
-    private Cipher getCipher()
-        throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
-    {
-        if ( securityProviderName == null )
-            return Cipher.getInstance(CIPHER_ALGORITHM);
-        else
-            return Cipher.getInstance(CIPHER_ALGORITHM, securityProviderName);
+    private void rejectMarkerCollisions() {
+        for (Map.Entry<String, Integer> keyCode : keyCodes.entrySet()) {
+            if ( Envelope.collidesWithV2Marker(keyCode.getValue()) )
+                throw new RuntimeException(String.format("Key code of %s collides with the v2 envelope marker: %d", keyCode.getKey(), keyCode.getValue()));
+        }
     }
 
     private void buildKeyNameDictionary() {
         keyNames.clear();
+        resolvedKeys.clear();
 
         for (String keyName : keyCodes.keySet()) {
             Integer code = keyCodes.get(keyName);
-            keyNames.put(String.format("%d", code), keyName);
+            keyNames.put(code, keyName);
         }
     }
 
@@ -382,6 +1449,7 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
      */
     public void setEncryptionKeyName(String encryptionKeyName) {
         this.encryptionKeyName = encryptionKeyName;
+        this.encryptionKeyVersion = UNKNOWN_KEY_VERSION;
     }
 
     /**
@@ -392,10 +1460,18 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
     }
 
     /**
+     * Replaces the key cache, and forgets the keys resolved and the values
+     * decrypted with the previous one.
+     *
      * @param versionedSecretKeyCache the versionedSecretKeyCache to set
      */
     public void setVersionedSecretKeyCache(VersionedSecretKeyCache versionedSecretKeyCache) {
         this.versionedSecretKeyCache = versionedSecretKeyCache;
+        this.resolvedKeys.clear();
+        this.encryptionKeyVersion = UNKNOWN_KEY_VERSION;
+
+        if ( plaintextCache != null )
+            plaintextCache.clear();
     }
 
     /**
@@ -406,10 +1482,351 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
     }
 
     /**
+     * Sets the random number generator. Unless another IV generator has been
+     * configured, IVs are generated with this RNG.
+     *
      * @param rng the rng to set
      */
     public void setRng(Random rng) {
         this.rng = rng;
+
+        if ( ivGenerator == null || ivGenerator instanceof RandomIvGenerator )
+            this.ivGenerator = rng == null ? null : new RandomIvGenerator(rng);
+    }
+
+    /**
+     * @return the plaintextCache
+     */
+    public PlaintextCache getPlaintextCache() {
+        return plaintextCache;
+    }
+
+    /**
+     * Sets the cache of decrypted values used for fields annotated with
+     * <code>&#64;CachedDecryption</code>. The cache is cleared when the key
+     * cache is replaced or the encryption key is rotated.
+     *
+     * @param plaintextCache the plaintextCache to set, or null to disable caching
+     */
+    public void setPlaintextCache(PlaintextCache plaintextCache) {
+        this.plaintextCache = plaintextCache;
+    }
+
+    /**
+     * @return the pending decryptions of the fields decrypted on access of
+     * the entities loaded by this listener
+     */
+    public DeferredDecryption getDeferredDecryption() {
+        return deferredDecryption;
+    }
+
+    /**
+     * @return true if unchanged fields keep their envelope on update
+     */
+    public boolean isReuseEnvelopes() {
+        return reuseEnvelopes;
+    }
+
+    /**
+     * Sets whether updates write the envelope a field was loaded from, or last
+     * written with, again when neither its plaintext, its AAD nor the
+     * encryption key changed, instead of encrypting it with a new IV. Off by
+     * default: to compare them, the listener keeps the envelope and the
+     * encoded plaintext of every field loaded or written, for as long as its
+     * entity is reachable. Turning reuse off forgets them.
+     *
+     * @param reuseEnvelopes the reuseEnvelopes to set
+     */
+    public void setReuseEnvelopes(boolean reuseEnvelopes) {
+        this.reuseEnvelopes = reuseEnvelopes;
+
+        if ( !reuseEnvelopes )
+            recordedEnvelopes.clear();
+    }
+
+    /**
+     * @return true if <code>prepare()</code> only warns about AAD properties
+     * that are themselves encrypted
+     */
+    public boolean isEncryptedAadPropertiesAllowed() {
+        return encryptedAadPropertiesAllowed;
+    }
+
+    /**
+     * Sets whether {@link #prepare(Class, EntityPersister)} accepts fields
+     * whose AAD includes another encrypted field, and logs a warning instead
+     * of failing. The AAD of such a field holds either the plaintext or the
+     * envelope of the other field, depending on the order the fields are
+     * encrypted and decrypted in; allow it only for mappings that already
+     * store data written that way.
+     *
+     * @param encryptedAadPropertiesAllowed the encryptedAadPropertiesAllowed to set
+     */
+    public void setEncryptedAadPropertiesAllowed(boolean encryptedAadPropertiesAllowed) {
+        this.encryptedAadPropertiesAllowed = encryptedAadPropertiesAllowed;
+    }
+
+    /**
+     * @return the envelopeStorage
+     */
+    public EnvelopeStorage getEnvelopeStorage() {
+        return envelopeStorage;
+    }
+
+    /**
+     * Sets how <code>byte[]</code> fields without an explicit storage store
+     * their envelopes. Other fields always store Base64 strings.
+     *
+     * @param envelopeStorage the envelopeStorage to set
+     */
+    public void setEnvelopeStorage(EnvelopeStorage envelopeStorage) {
+        this.envelopeStorage = envelopeStorage == EnvelopeStorage.DEFAULT ? EnvelopeStorage.BASE64 : envelopeStorage;
+    }
+
+    /**
+     * @return the envelopeFormat
+     */
+    public EnvelopeFormat getEnvelopeFormat() {
+        return envelopeFormat;
+    }
+
+    /**
+     * Sets the format of new envelopes. Envelopes of either format are always
+     * decrypted; only switch to {@link EnvelopeFormat#V2} once every reader
+     * of the database understands it.
+     *
+     * @param envelopeFormat the envelopeFormat to set
+     */
+    public void setEnvelopeFormat(EnvelopeFormat envelopeFormat) {
+        this.envelopeFormat = envelopeFormat;
+    }
+
+    /**
+     * @return the segmentSize
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the plaintext size of the segments that <code>Blob</code> fields
+     * are encrypted in. Each segment adds 16 bytes, and is held in memory
+     * while it is encrypted or decrypted.
+     *
+     * @param segmentSize the segmentSize to set
+     */
+    public void setSegmentSize(int segmentSize) {
+        if ( segmentSize <= 0 )
+            throw new RuntimeException(String.format("Invalid segment size: %d", segmentSize));
+
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the report of the last warm-up, or null
+     */
+    public WarmUpReport getWarmUpReport() {
+        return warmUpReport;
+    }
+
+    /**
+     * @return the report of the last provider selection, or null
+     */
+    public ProviderSelectionReport getProviderSelectionReport() {
+        return providerSelectionReport;
+    }
+
+    /**
+     * @return the providerSelectionOnBuild
+     */
+    public boolean isProviderSelectionOnBuild() {
+        return providerSelectionOnBuild;
+    }
+
+    /**
+     * @param providerSelectionOnBuild true to {@link #selectProvider()} when
+     * the builder builds
+     */
+    public void setProviderSelectionOnBuild(boolean providerSelectionOnBuild) {
+        this.providerSelectionOnBuild = providerSelectionOnBuild;
+    }
+
+    /**
+     * @return the names of the providers {@link #selectProvider()} may
+     * choose, or an empty set if it may choose any
+     */
+    public Set<String> getAllowedProviderNames() {
+        return allowedProviderNames;
+    }
+
+    /**
+     * @param allowedProviderNames the names of the providers
+     * {@link #selectProvider()} may choose, or null or an empty set to allow
+     * any
+     */
+    public void setAllowedProviderNames(Set<String> allowedProviderNames) {
+        this.allowedProviderNames = allowedProviderNames == null
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new LinkedHashSet<>(allowedProviderNames));
+    }
+
+    /**
+     * @return the providerMeasurementTime
+     */
+    public Duration getProviderMeasurementTime() {
+        return providerMeasurementTime;
+    }
+
+    /**
+     * @param providerMeasurementTime how long {@link #selectProvider()} warms
+     * each provider up, and then measures it
+     */
+    public void setProviderMeasurementTime(Duration providerMeasurementTime) {
+        if ( providerMeasurementTime == null || providerMeasurementTime.isNegative() || providerMeasurementTime.isZero() )
+            throw new RuntimeException(String.format("Invalid provider measurement time: %s", providerMeasurementTime));
+
+        this.providerMeasurementTime = providerMeasurementTime;
+    }
+
+    /**
+     * @return the metrics
+     */
+    public CryptoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics the metrics encryptions, decryptions and key lookups
+     * are recorded into, or null to record nothing
+     */
+    public void setMetrics(CryptoMetrics metrics) {
+        this.metrics = metrics != null ? metrics : CryptoMetrics.NONE;
+        this.metricsEnabled = this.metrics != CryptoMetrics.NONE;
+    }
+
+    /**
+     * @return the warmUpOnBuild
+     */
+    public boolean isWarmUpOnBuild() {
+        return warmUpOnBuild;
+    }
+
+    /**
+     * @param warmUpOnBuild true to {@link #warmUp()} when the builder builds
+     * the listener
+     */
+    public void setWarmUpOnBuild(boolean warmUpOnBuild) {
+        this.warmUpOnBuild = warmUpOnBuild;
+    }
+
+    /**
+     * @return the warmUpRounds
+     */
+    public int getWarmUpRounds() {
+        return warmUpRounds;
+    }
+
+    /**
+     * Sets the number of encrypt/decrypt rounds a warm-up runs per field
+     * type. The JIT compiles the cipher path after some thousands of calls.
+     *
+     * @param warmUpRounds the warmUpRounds to set
+     */
+    public void setWarmUpRounds(int warmUpRounds) {
+        if ( warmUpRounds < 0 )
+            throw new RuntimeException(String.format("Invalid number of warm-up rounds: %d", warmUpRounds));
+
+        this.warmUpRounds = warmUpRounds;
+    }
+
+    /**
+     * @return the prefetchedKeyVersions
+     */
+    public int getPrefetchedKeyVersions() {
+        return prefetchedKeyVersions;
+    }
+
+    /**
+     * Sets how many versions of each key a warm-up loads, counting back from
+     * the current version.
+     *
+     * @param prefetchedKeyVersions the prefetchedKeyVersions to set
+     */
+    public void setPrefetchedKeyVersions(int prefetchedKeyVersions) {
+        if ( prefetchedKeyVersions < 1 )
+            throw new RuntimeException(String.format("Invalid number of prefetched key versions: %d", prefetchedKeyVersions));
+
+        this.prefetchedKeyVersions = prefetchedKeyVersions;
+    }
+
+    /**
+     * @return the fieldCodecs
+     */
+    public FieldCodecs getFieldCodecs() {
+        return fieldCodecs;
+    }
+
+    /**
+     * Plans built with the previous codecs are discarded.
+     *
+     * @param fieldCodecs the fieldCodecs to set
+     */
+    public void setFieldCodecs(FieldCodecs fieldCodecs) {
+        this.fieldCodecs = fieldCodecs;
+        this.encryptionPlans = new EncryptionPlanCache(fieldCodecs);
+    }
+
+    /**
+     * @return the segmentationThreshold
+     */
+    public int getSegmentationThreshold() {
+        return segmentationThreshold;
+    }
+
+    /**
+     * Sets the plaintext size, after any compression, from which the values
+     * of non-<code>Blob</code> fields are encrypted as segmented envelopes,
+     * whose segments are encrypted and decrypted in parallel. Segmented
+     * envelopes are v2 envelopes; 0, the default, disables segmentation.
+     *
+     * @param segmentationThreshold the segmentationThreshold to set
+     */
+    public void setSegmentationThreshold(int segmentationThreshold) {
+        if ( segmentationThreshold < 0 )
+            throw new RuntimeException(String.format("Invalid segmentation threshold: %d", segmentationThreshold));
+
+        this.segmentationThreshold = segmentationThreshold;
+    }
+
+    /**
+     * @return the segmentPool
+     */
+    public ForkJoinPool getSegmentPool() {
+        return segmentPool;
+    }
+
+    /**
+     * Sets the pool that the segments of large values are encrypted and
+     * decrypted on; the common pool when null.
+     *
+     * @param segmentPool the segmentPool to set
+     */
+    public void setSegmentPool(ForkJoinPool segmentPool) {
+        this.segmentPool = segmentPool;
+    }
+
+    /**
+     * @return the ivGenerator
+     */
+    public IvGenerator getIvGenerator() {
+        return ivGenerator;
+    }
+
+    /**
+     * @param ivGenerator the ivGenerator to set
+     */
+    public void setIvGenerator(IvGenerator ivGenerator) {
+        this.ivGenerator = ivGenerator;
     }
 
     /**
@@ -424,6 +1841,7 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
      */
     public void setSecurityProviderName(String securityProviderName) {
         this.securityProviderName = securityProviderName;
+        this.cipherProvider = new CipherProvider(CIPHER_ALGORITHM, securityProviderName);
     }
 
     public static class Builder {
@@ -449,6 +1867,81 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
             return this;
         }
 
+        public Builder withIvGenerator(IvGenerator ivGenerator) {
+            target.setIvGenerator(ivGenerator);
+            return this;
+        }
+
+        public Builder withSegmentSize(int segmentSize) {
+            target.setSegmentSize(segmentSize);
+            return this;
+        }
+
+        /**
+         * Warms the listener up when it is built, with the given number of
+         * encrypt/decrypt rounds per field type.
+         */
+        public Builder withWarmUp(int rounds) {
+            target.setWarmUpOnBuild(true);
+            target.setWarmUpRounds(rounds);
+            return this;
+        }
+
+        public Builder withPrefetchedKeyVersions(int prefetchedKeyVersions) {
+            target.setPrefetchedKeyVersions(prefetchedKeyVersions);
+            return this;
+        }
+
+        public Builder withMetrics(CryptoMetrics metrics) {
+            target.setMetrics(metrics);
+            return this;
+        }
+
+        public Builder withFieldCodecs(FieldCodecs fieldCodecs) {
+            target.setFieldCodecs(fieldCodecs);
+            return this;
+        }
+
+        public <T> Builder withFieldCodec(Class<T> type, FieldCodec<T> codec) {
+            target.getFieldCodecs().register(type, codec);
+            return this;
+        }
+
+        public Builder withSegmentationThreshold(int segmentationThreshold) {
+            target.setSegmentationThreshold(segmentationThreshold);
+            return this;
+        }
+
+        public Builder withSegmentPool(ForkJoinPool segmentPool) {
+            target.setSegmentPool(segmentPool);
+            return this;
+        }
+
+        public Builder withEnvelopeFormat(EnvelopeFormat envelopeFormat) {
+            target.setEnvelopeFormat(envelopeFormat);
+            return this;
+        }
+
+        public Builder withEnvelopeStorage(EnvelopeStorage envelopeStorage) {
+            target.setEnvelopeStorage(envelopeStorage);
+            return this;
+        }
+
+        public Builder withEnvelopeReuse(boolean reuseEnvelopes) {
+            target.setReuseEnvelopes(reuseEnvelopes);
+            return this;
+        }
+
+        public Builder withEncryptedAadPropertiesAllowed(boolean encryptedAadPropertiesAllowed) {
+            target.setEncryptedAadPropertiesAllowed(encryptedAadPropertiesAllowed);
+            return this;
+        }
+
+        public Builder withPlaintextCache(PlaintextCache plaintextCache) {
+            target.setPlaintextCache(plaintextCache);
+            return this;
+        }
+
         public Builder withVersionedSecretKeyCache(VersionedSecretKeyCache cache) {
             target.setVersionedSecretKeyCache(cache);
             return this;
@@ -459,16 +1952,45 @@ public class CryptoEventListener implements PreLoadEventListener, PreInsertEvent
             return this;
         }
 
-        public CryptoEventListener build() {
-            Random rng = target.getRng();
+        /**
+         * Selects the fastest compliant security provider when the listener
+         * is built, among the named providers, or among all installed
+         * providers if none are named.
+         */
+        public Builder withProviderSelection(String... allowedProviderNames) {
+            target.setProviderSelectionOnBuild(true);
+            target.setAllowedProviderNames(new LinkedHashSet<>(Arrays.asList(allowedProviderNames)));
+            return this;
+        }
+
+        public Builder withProviderMeasurementTime(Duration providerMeasurementTime) {
+            target.setProviderMeasurementTime(providerMeasurementTime);
+            return this;
+        }
 
-            if ( rng == null )
+        public CryptoEventListener build() {
+            if ( target.getIvGenerator() == null )
                 throw new RuntimeException("Random number generator not configured");
 
             if ( target.getKeyCodes().isEmpty() )
                 throw new RuntimeException("No key codes have been defined");
 
+            if ( target.getEnvelopeFormat() == null )
+                throw new RuntimeException("Envelope format not configured");
+
             target.buildKeyNameDictionary();
+            target.rejectMarkerCollisions();
+
+            if ( target.isProviderSelectionOnBuild() ) {
+                target.validateConfiguration();
+                target.selectProvider();
+            }
+
+            // Warm up the selected provider
+            if ( target.isWarmUpOnBuild() ) {
+                target.validateConfiguration();
+                target.warmUp();
+            }
 
             return target;
         }
@@ -0,0 +1,174 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.keycache.VersionedSecretKey;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Warms a {@link CryptoEventListener} up before it serves requests: loads
+ * the keys of every key code in parallel, initializes a cipher with each, and
+ * runs encrypt/decrypt rounds through the codec and cipher paths of every
+ * standard field type, so that key stores, security providers and the JIT
+ * are not first exercised by a request.
+ *
+ * @author Chris
+ */
+class CryptoWarmUp {
+
+    private static final int MAXIMUM_PREFETCH_THREADS = 8;
+
+    private static final byte[] AAD = "id=1".getBytes(StandardCharsets.UTF_8);
+
+    private static final String LONG_TEXT;
+
+    static {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; text.length() < 2048; ++i) {
+            text.append("{\"id\":").append(i).append(",\"note\":\"customer asked about invoice ").append(i).append("\"},");
+        }
+
+        LONG_TEXT = text.toString();
+    }
+
+    private final CryptoEventListener listener;
+
+    private final int rounds;
+
+    private final int keyVersions;
+
+    CryptoWarmUp(CryptoEventListener listener, int rounds, int keyVersions) {
+        this.listener = listener;
+        this.rounds = rounds;
+        this.keyVersions = keyVersions;
+    }
+
+    WarmUpReport run() {
+        List<String> missingKeys = new ArrayList<>();
+
+        long started = System.nanoTime();
+        List<VersionedSecretKey> keys = prefetchKeys(missingKeys);
+        long prefetched = System.nanoTime();
+
+        for (VersionedSecretKey key : keys) {
+            listener.initializeCipher(key);
+        }
+
+        long initialized = System.nanoTime();
+
+        for (int i = 0; i < rounds; ++i) {
+            for (Object value : sampleValues()) {
+                listener.roundTrip(value, Compression.NONE, AAD);
+            }
+
+            // Long text also goes through compression
+            listener.roundTrip(LONG_TEXT, Compression.DEFLATE, AAD);
+        }
+
+        long finished = System.nanoTime();
+
+        return new WarmUpReport(keys.size(), missingKeys, Duration.ofNanos(prefetched - started),
+            Duration.ofNanos(initialized - prefetched), rounds, Duration.ofNanos(finished - initialized));
+    }
+
+    /**
+     * Loads the current version of every key, then up to
+     * <code>keyVersions - 1</code> earlier versions, each on its own thread.
+     */
+    private List<VersionedSecretKey> prefetchKeys(List<String> missingKeys) {
+        Map<String, Integer> keyCodes = listener.getKeyCodes();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(keyCodes.size() * keyVersions, MAXIMUM_PREFETCH_THREADS)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "cryptonate-key-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        try {
+            List<Future<VersionedSecretKey>> current = new ArrayList<>();
+
+            for (Map.Entry<String, Integer> keyCode : keyCodes.entrySet()) {
+                current.add(executor.submit(() -> listener.prefetchKey(keyCode.getKey(), keyCode.getValue(), -1)));
+            }
+
+            List<VersionedSecretKey> keys = new ArrayList<>();
+            List<Future<VersionedSecretKey>> earlier = new ArrayList<>();
+            List<String> earlierNames = new ArrayList<>();
+            int i = 0;
+
+            for (Map.Entry<String, Integer> keyCode : keyCodes.entrySet()) {
+                VersionedSecretKey key = get(current.get(i++), keyCode.getKey(), missingKeys);
+
+                if ( key == null )
+                    continue;
+
+                keys.add(key);
+
+                for (int version = key.getVersion() - 1; version > 0 && version > key.getVersion() - keyVersions; --version) {
+                    int keyVersion = version;
+                    earlier.add(executor.submit(() -> listener.prefetchKey(keyCode.getKey(), keyCode.getValue(), keyVersion)));
+                    earlierNames.add(keyCode.getKey() + ":" + keyVersion);
+                }
+            }
+
+            for (int j = 0; j < earlier.size(); ++j) {
+                VersionedSecretKey key = get(earlier.get(j), earlierNames.get(j), missingKeys);
+
+                if ( key != null )
+                    keys.add(key);
+            }
+
+            return keys;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static VersionedSecretKey get(Future<VersionedSecretKey> future, String keyName, List<String> missingKeys) {
+        try {
+            VersionedSecretKey key = future.get();
+
+            if ( key == null )
+                missingKeys.add(keyName);
+
+            return key;
+        } catch (ExecutionException e) {
+            missingKeys.add(keyName);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading keys", e);
+        }
+    }
+
+    private static Object[] sampleValues() {
+        return new Object[] {
+            "someone@example.com",
+            123456789,
+            1234567890123L,
+            1234.56d,
+            12.5f,
+            new BigDecimal("1234.56"),
+            UUID.nameUUIDFromBytes(AAD),
+            Instant.ofEpochSecond(1700000000L),
+            LocalDate.of(2000, 1, 1),
+            Boolean.TRUE,
+            (short) 1234,
+            new byte[256]
+        };
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.CipherProvider;
+import com.nightsky.cryptonate.crypto.Envelope;
+import com.nightsky.cryptonate.crypto.SegmentDecryptingInputStream;
+import com.nightsky.cryptonate.crypto.SegmentedEnvelope;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+
+/**
+ * A read-only view of the plaintext of a segmented envelope stored in a
+ * <code>Blob</code>. Nothing is read from the stored blob until the plaintext
+ * is; every stream decrypts the stored blob one segment at a time.
+ *
+ * @author Chris
+ */
+final class DecryptedBlob implements Blob {
+
+    private final CryptoEventListener listener;
+
+    private final CipherProvider cipherProvider;
+
+    private final Blob source;
+
+    private final byte[] aad;
+
+    private byte[] header;
+
+    DecryptedBlob(CryptoEventListener listener, CipherProvider cipherProvider, Blob source, byte[] aad) {
+        this.listener = listener;
+        this.cipherProvider = cipherProvider;
+        this.source = source;
+        this.aad = aad;
+    }
+
+    /**
+     * @return the blob holding the envelope
+     */
+    Blob getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if the envelope was encrypted with a key and AAD, and so
+     * can be stored again as it is
+     */
+    boolean isEncryptedUnder(int keyCode, int keyVersion, byte[] aad) throws SQLException {
+        byte[] h = header();
+        return Envelope.keyCodeOf(h) == keyCode && Envelope.keyVersionOf(h) == keyVersion && Arrays.equals(this.aad, aad);
+    }
+
+    @Override
+    public long length() throws SQLException {
+        byte[] h = header();
+        return SegmentedEnvelope.plaintextLength(source.length(), h.length, SegmentedEnvelope.segmentSizeOf(h));
+    }
+
+    @Override
+    public InputStream getBinaryStream() throws SQLException {
+        byte[] h = header();
+        InputStream envelope = source.getBinaryStream();
+
+        try {
+            skipFully(envelope, h.length);
+        } catch (IOException e) {
+            throw new SQLException("Failed to read the envelope header", e);
+        }
+
+        return new SegmentDecryptingInputStream(
+            envelope, cipherProvider, listener.decryptionKeyFor(Envelope.keyCodeOf(h), Envelope.keyVersionOf(h)), h, aad);
+    }
+
+    @Override
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        if ( pos < 1 || length < 0 )
+            throw new SQLException(String.format("Invalid position or length: %d, %d", pos, length));
+
+        try (InputStream plaintext = getBinaryStream()) {
+            skipFully(plaintext, pos - 1);
+
+            byte[] bytes = new byte[length];
+            int read = 0;
+
+            while ( read < length ) {
+                int n = plaintext.read(bytes, read, length - read);
+
+                if ( n < 0 )
+                    return Arrays.copyOf(bytes, read);
+
+                read += n;
+            }
+
+            return bytes;
+        } catch (EOFException e) {
+            return new byte[0];
+        } catch (IOException e) {
+            throw new SQLException("Failed to decrypt blob", e);
+        }
+    }
+
+    @Override
+    public InputStream getBinaryStream(long pos, long length) throws SQLException {
+        if ( length > Integer.MAX_VALUE )
+            throw new SQLFeatureNotSupportedException("Ranged streams are limited to 2 GB");
+
+        return new ByteArrayInputStream(getBytes(pos, (int) length));
+    }
+
+    @Override
+    public long position(byte[] pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Encrypted blobs cannot be searched");
+    }
+
+    @Override
+    public long position(Blob pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Encrypted blobs cannot be searched");
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Decrypted blobs are read-only");
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Decrypted blobs are read-only");
+    }
+
+    @Override
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Decrypted blobs are read-only");
+    }
+
+    @Override
+    public void truncate(long len) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Decrypted blobs are read-only");
+    }
+
+    @Override
+    public void free() throws SQLException {
+        source.free();
+    }
+
+    private byte[] header() throws SQLException {
+        if ( header == null ) {
+            byte[] prefix = source.getBytes(1, (int) Math.min(source.length(), SegmentedEnvelope.MAXIMUM_HEADER_LENGTH));
+
+            if ( !SegmentedEnvelope.isSegmented(prefix) )
+                throw new SQLException("Blob does not hold a segmented envelope");
+
+            header = Arrays.copyOf(prefix, SegmentedEnvelope.headerLengthOf(prefix));
+        }
+
+        return header;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while ( n > 0 ) {
+            long skipped = in.skip(n);
+
+            if ( skipped <= 0 ) {
+                if ( in.read() < 0 )
+                    throw new EOFException();
+
+                skipped = 1;
+            }
+
+            n -= skipped;
+        }
+    }
+
+}
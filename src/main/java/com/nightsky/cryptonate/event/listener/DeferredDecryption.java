@@ -0,0 +1,221 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.plan.EncryptedField;
+import java.lang.reflect.Field;
+
+/**
+ * Decrypts fields annotated with
+ * <code>&#64;Encrypted(decrypt = DecryptionMode.ON_ACCESS)</code>. Such
+ * fields hold their envelope after a load; the getter of the field resolves
+ * it the first time it is called, through a transient field of the entity
+ * that the listener sets when it loads the entity:
+ *
+ * <pre>
+ * private transient DeferredDecryption deferredDecryption;
+ *
+ * public String getEmailAddress() {
+ *     return deferredDecryption == null
+ *         ? emailAddress
+ *         : deferredDecryption.resolve(this, "emailAddress", emailAddress);
+ * }
+ * </pre>
+ *
+ * <p>
+ *   The envelope is decrypted with the AAD captured when the entity was
+ *   loaded, and the plaintext replaces the envelope in both the field and the
+ *   loaded state the session holds at that time, so resolving a field does
+ *   not make the entity dirty. Entities written while a field is unresolved
+ *   keep the stored envelope, unless one of its AAD properties changed.
+ *   Resolve deferred fields before detaching or serializing an entity.
+ * </p>
+ *
+ * <p>
+ *   Every listener owns one instance, which keeps the pending decryptions of
+ *   the entity instances the listener loaded until all of their fields have
+ *   been resolved or the entities are collected.
+ * </p>
+ *
+ * @author Chris
+ */
+public final class DeferredDecryption {
+
+    private static final ClassValue<Field> HOLDER_FIELDS = new ClassValue<Field>() {
+        @Override
+        protected Field computeValue(Class<?> entityClass) {
+            for (Class<?> c = entityClass; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if ( field.getType() == DeferredDecryption.class ) {
+                        field.setAccessible(true);
+                        return field;
+                    }
+                }
+            }
+
+            return null;
+        }
+    };
+
+    private final WeakIdentityMap<Object, PendingDecryption[]> pending;
+
+    DeferredDecryption() {
+        this.pending = new WeakIdentityMap<>();
+    }
+
+    /**
+     * Returns the plaintext of a field decrypted on access.
+     *
+     * @param entity the entity
+     * @param fieldName the name of the field
+     * @param value the current value of the field
+     * @return the decrypted value if the field still holds the envelope it was
+     * loaded with, or <code>value</code> otherwise
+     */
+    public String resolve(Object entity, String fieldName, String value) {
+        PendingDecryption[] decryptions = pending.get(entity);
+
+        if ( decryptions == null )
+            return value;
+
+        PendingDecryption decryption = null;
+
+        synchronized (decryptions) {
+            for (int i = 0; i < decryptions.length; ++i) {
+                if ( decryptions[i] != null && decryptions[i].getField().getName().equals(fieldName) ) {
+                    decryption = decryptions[i];
+                    decryptions[i] = null;
+                    break;
+                }
+            }
+
+            if ( decryption != null )
+                forgetIfResolved(entity, decryptions);
+        }
+
+        // Not pending, or assigned since the entity was loaded
+        if ( decryption == null || !decryption.getEnvelope().equals(value) )
+            return value;
+
+        return decryption.resolve(entity);
+    }
+
+    /**
+     * @param entity the entity
+     * @param fieldName the name of the field
+     * @return true if the field of the entity holds an envelope that has not
+     * been decrypted yet
+     */
+    public boolean isPending(Object entity, String fieldName) {
+        PendingDecryption[] decryptions = pending.get(entity);
+
+        if ( decryptions == null )
+            return false;
+
+        synchronized (decryptions) {
+            for (PendingDecryption decryption : decryptions) {
+                if ( decryption != null && decryption.getField().getName().equals(fieldName) )
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Registers the pending decryptions of a loaded entity, replacing those of
+     * a previous load, and hands this instance to the entity.
+     *
+     * @param decryptions the pending decryptions, or null if there are none
+     */
+    void register(Object entity, PendingDecryption[] decryptions) {
+        if ( decryptions == null ) {
+            pending.remove(entity);
+            return;
+        }
+
+        Field holder = holderFieldOf(entity.getClass());
+
+        if ( holder == null ) {
+            String msg = String.format("%s declares no DeferredDecryption field", entity.getClass().getName());
+            throw new RuntimeException(msg);
+        }
+
+        try {
+            holder.set(entity, this);
+        } catch (IllegalAccessException e) {
+            String msg = String.format("Failed to set field: %s.%s", entity.getClass().getName(), holder.getName());
+            throw new RuntimeException(msg, e);
+        }
+
+        pending.put(entity, decryptions);
+    }
+
+    /**
+     * @return the pending decryption of a field, or null if the field has been
+     * resolved or was not decrypted on access
+     */
+    PendingDecryption pendingFor(Object entity, EncryptedField field) {
+        PendingDecryption[] decryptions = pending.get(entity);
+
+        if ( decryptions == null )
+            return null;
+
+        synchronized (decryptions) {
+            for (PendingDecryption decryption : decryptions) {
+                if ( decryption != null && decryption.getField().getName().equals(field.getName()) )
+                    return decryption;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Resolves a pending decryption whose envelope must be encrypted again.
+     */
+    String resolve(Object entity, PendingDecryption decryption) {
+        PendingDecryption[] decryptions = pending.get(entity);
+
+        if ( decryptions != null ) {
+            synchronized (decryptions) {
+                for (int i = 0; i < decryptions.length; ++i) {
+                    if ( decryptions[i] == decryption )
+                        decryptions[i] = null;
+                }
+
+                forgetIfResolved(entity, decryptions);
+            }
+        }
+
+        return decryption.resolve(entity);
+    }
+
+    /**
+     * @return true if pending decryptions are kept for the entity
+     */
+    boolean isTracked(Object entity) {
+        return pending.get(entity) != null;
+    }
+
+    /**
+     * @return the field of an entity class that holds the
+     * <code>DeferredDecryption</code> of the listener that loaded the entity,
+     * or null if the class declares none
+     */
+    static Field holderFieldOf(Class<?> entityClass) {
+        return HOLDER_FIELDS.get(entityClass);
+    }
+
+    /**
+     * Drops the pending decryptions of an entity once none is left, unless a
+     * later load registered others. Called holding the lock of the array.
+     */
+    private void forgetIfResolved(Object entity, PendingDecryption[] decryptions) {
+        for (PendingDecryption decryption : decryptions) {
+            if ( decryption != null )
+                return;
+        }
+
+        pending.remove(entity, decryptions);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.keycache.VersionedSecretKey;
+
+/**
+ * Emits JDK Flight Recorder events for the work of a
+ * {@link CryptoEventListener}. This is the Java 8 version, which emits
+ * nothing: every <code>begin</code> method returns null, and the listener
+ * skips the rest. On Java 11 and later, the multi-release jar replaces it
+ * with a version that emits <code>jdk.jfr</code> events.
+ *
+ * @author Chris
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return an event to pass to {@link #commitEncryption}, or null if
+     * encryption events are not recorded
+     */
+    static Object beginEncryption() {
+        return null;
+    }
+
+    /**
+     * @param event the event from {@link #beginEncryption()}
+     * @param entityClass the class of the entity
+     * @param fields the number of fields encrypted
+     * @param envelopeBytes the size of the stored envelopes, in bytes or
+     * Base64 characters
+     */
+    static void commitEncryption(Object event, Class<?> entityClass, int fields, long envelopeBytes) {
+    }
+
+    /**
+     * @return an event to pass to {@link #commitDecryption}, or null if
+     * decryption events are not recorded
+     */
+    static Object beginDecryption() {
+        return null;
+    }
+
+    /**
+     * @param event the event from {@link #beginDecryption()}
+     * @param entityClass the class of the entity
+     * @param fields the number of fields decrypted, deferred or streamed
+     * @param envelopeBytes the size of the stored envelopes, in bytes or
+     * Base64 characters
+     */
+    static void commitDecryption(Object event, Class<?> entityClass, int fields, long envelopeBytes) {
+    }
+
+    /**
+     * @return an event to pass to {@link #commitKeyLookup}, or null if key
+     * lookups are not recorded
+     */
+    static Object beginKeyLookup() {
+        return null;
+    }
+
+    /**
+     * @param event the event from {@link #beginKeyLookup()}
+     * @param keyName the name of the key
+     * @param keyVersion the version looked up, or -1 for the current version
+     * @param secretKey the key found, or null
+     */
+    static void commitKeyLookup(Object event, String keyName, int keyVersion, VersionedSecretKey secretKey) {
+    }
+
+    /**
+     * @param entityClass the class of the entity, or the class declaring the
+     * field
+     * @param fieldName the name of the field
+     * @param encryption true if the field failed to encrypt, false if it
+     * failed to decrypt
+     * @param cause the failure
+     */
+    static void failure(Class<?> entityClass, String fieldName, boolean encryption, Throwable cause) {
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.nightsky.cryptonate.event.listener;
+
+import org.hibernate.event.internal.DefaultAutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+
+/**
+ * Hibernate's default auto-flush listener, with the envelopes of pending inserts
+ * and updates precomputed by a {@link ParallelFlushEncryption} before the
+ * actions are executed.
+ *
+ * @author Chris
+ */
+public class ParallelAutoFlushEventListener extends DefaultAutoFlushEventListener {
+
+    private final ParallelFlushEncryption flushEncryption;
+
+    public ParallelAutoFlushEventListener(ParallelFlushEncryption flushEncryption) {
+        this.flushEncryption = flushEncryption;
+    }
+
+    @Override
+    protected void performExecutions(EventSource session) {
+        try {
+            flushEncryption.precompute(session);
+            super.performExecutions(session);
+        } finally {
+            flushEncryption.release();
+        }
+    }
+
+}
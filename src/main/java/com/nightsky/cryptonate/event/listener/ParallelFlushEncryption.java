@@ -0,0 +1,281 @@
+package com.nightsky.cryptonate.event.listener;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import com.nightsky.cryptonate.plan.EncryptedField;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+
+/**
+ * Encrypts the <code>&#64;Encrypted</code> fields of all entities a flush is
+ * about to insert or update on a bounded <code>ForkJoinPool</code>, before
+ * the flush executes its actions. The insert and update events of the
+ * {@link CryptoEventListener} then copy the precomputed envelopes into the
+ * state arrays instead of encrypting one field at a time on the flushing
+ * thread.
+ *
+ * <p>
+ *   Pending inserts are the managed entities that do not exist in the
+ *   database yet; entities inserted when they are persisted (e.g.
+ *   <code>IDENTITY</code> ids) gain nothing. Entities without encrypted
+ *   fields are skipped before any of their properties are read. Of the
+ *   entities that exist in the database, only the encrypted properties that
+ *   differ from their loaded values are encrypted ahead. An envelope is used
+ *   only if the field value, its AAD and the encryption key version are
+ *   unchanged when the entity is written; otherwise the field is encrypted
+ *   as usual.
+ * </p>
+ *
+ * <p>
+ *   Enable it with {@link com.nightsky.cryptonate.integrator.CryptonateIntegrator},
+ *   which replaces Hibernate's flush and auto-flush listeners with
+ *   {@link ParallelFlushEventListener} and {@link ParallelAutoFlushEventListener}.
+ * </p>
+ *
+ * @author Chris
+ */
+public class ParallelFlushEncryption implements AutoCloseable {
+
+    private static final int DEFAULT_THRESHOLD = 64;
+
+    private static final int SEAL_BATCH_SIZE = 16;
+
+    private CryptoEventListener listener;
+
+    private ForkJoinPool pool;
+
+    private boolean ownsPool;
+
+    private int threshold;
+
+    public ParallelFlushEncryption() {
+        threshold = DEFAULT_THRESHOLD;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Precomputes the envelopes of the session's pending inserts and updates
+     * and makes them available to the current thread. Every call must be
+     * followed by a call to {@link #release()}.
+     *
+     * @param session the flushing session
+     */
+    public void precompute(EventSource session) {
+        Map<Object, PrecomputedEnvelope[]> envelopes = new IdentityHashMap<>();
+        List<PrecomputedEnvelope> pending = new ArrayList<>();
+
+        for (Map.Entry<Object, EntityEntry> me : session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            Object entity = me.getKey();
+            EntityEntry entry = me.getValue();
+
+            if ( entry.getStatus() != Status.MANAGED || entry.isReadOnly() )
+                continue;
+
+            EntityPersister persister = entry.getPersister();
+            EncryptedField[] fields = listener.encryptedFieldsOf(entity.getClass(), persister);
+
+            if ( fields.length == 0 )
+                continue;
+
+            Object[] state = encryptedState(session, entity, entry, fields);
+
+            if ( state == null )
+                continue;
+
+            PrecomputedEnvelope[] captured = listener.capture(entity, entry.getId(), persister, state);
+
+            if ( captured == null )
+                continue;
+
+            envelopes.put(entity, captured);
+
+            for (PrecomputedEnvelope envelope : captured) {
+                if ( envelope != null )
+                    pending.add(envelope);
+            }
+        }
+
+        // Small flushes are not worth a trip through the pool
+        if ( pending.size() < threshold )
+            return;
+
+        pool.invoke(new SealTask(pending, 0, pending.size()));
+        listener.usePrecomputedEnvelopes(envelopes);
+    }
+
+    /**
+     * Discards the envelopes precomputed by the current thread.
+     */
+    public void release() {
+        listener.usePrecomputedEnvelopes(null);
+    }
+
+    @Override
+    public void close() {
+        if ( ownsPool )
+            pool.shutdown();
+    }
+
+    /**
+     * Reads the encrypted properties of an entity into an otherwise empty
+     * state array, leaving out those of a persistent entity that still hold
+     * their loaded values.
+     *
+     * @return the state, or null if no encrypted property needs encrypting
+     */
+    private Object[] encryptedState(EventSource session, Object entity, EntityEntry entry, EncryptedField[] fields) {
+        Object[] loadedState = null;
+
+        if ( entry.isExistsInDatabase() ) {
+            loadedState = entry.getLoadedState();
+
+            if ( loadedState == null )
+                return null;
+        }
+
+        EntityPersister persister = entry.getPersister();
+        Type[] types = persister.getPropertyTypes();
+        Object[] state = new Object[types.length];
+        boolean found = false;
+
+        for (EncryptedField field : fields) {
+            int index = field.getStateIndex();
+
+            if ( index < 0 )
+                continue;
+
+            Object value = persister.getPropertyValue(entity, index);
+
+            if ( value == null || (loadedState != null && !types[index].isDirty(loadedState[index], value, session)) )
+                continue;
+
+            state[index] = value;
+            found = true;
+        }
+
+        return found ? state : null;
+    }
+
+    /**
+     * @return the listener
+     */
+    public CryptoEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener the listener to set
+     */
+    public void setListener(CryptoEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the pool
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the minimum number of fields a flush must encrypt to use the pool
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold the threshold to set
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    private class SealTask extends RecursiveAction {
+
+        private final List<PrecomputedEnvelope> envelopes;
+
+        private final int from;
+
+        private final int to;
+
+        SealTask(List<PrecomputedEnvelope> envelopes, int from, int to) {
+            this.envelopes = envelopes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from <= SEAL_BATCH_SIZE ) {
+                for (int i = from; i < to; ++i) {
+                    listener.seal(envelopes.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SealTask(envelopes, from, middle), new SealTask(envelopes, middle, to));
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        private final ParallelFlushEncryption target;
+
+        public Builder() {
+            target = new ParallelFlushEncryption();
+        }
+
+        public Builder withListener(CryptoEventListener listener) {
+            target.setListener(listener);
+            return this;
+        }
+
+        /**
+         * Encrypts on a pool owned by this instance and shut down by
+         * {@link ParallelFlushEncryption#close()}.
+         */
+        public Builder withParallelism(int parallelism) {
+            target.pool = new ForkJoinPool(parallelism);
+            target.ownsPool = true;
+            return this;
+        }
+
+        /**
+         * Encrypts on a pool managed by the caller.
+         */
+        public Builder withPool(ForkJoinPool pool) {
+            target.pool = pool;
+            target.ownsPool = false;
+            return this;
+        }
+
+        public Builder withThreshold(int threshold) {
+            target.setThreshold(threshold);
+            return this;
+        }
+
+        public ParallelFlushEncryption build() {
+            if ( target.getListener() == null )
+                throw new RuntimeException("Crypto event listener not configured");
+
+            if ( target.getPool() == null )
+                throw new RuntimeException("Flush encryption pool not configured");
+
+            return target;
+        }
+
+    }
+
+}
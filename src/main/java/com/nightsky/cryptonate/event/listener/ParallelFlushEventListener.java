@@ -0,0 +1,31 @@
+package com.nightsky.cryptonate.event.listener;
+
+import org.hibernate.event.internal.DefaultFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+
+/**
+ * Hibernate's default flush listener, with the envelopes of pending inserts
+ * and updates precomputed by a {@link ParallelFlushEncryption} before the
+ * actions are executed.
+ *
+ * @author Chris
+ */
+public class ParallelFlushEventListener extends DefaultFlushEventListener {
+
+    private final ParallelFlushEncryption flushEncryption;
+
+    public ParallelFlushEventListener(ParallelFlushEncryption flushEncryption) {
+        this.flushEncryption = flushEncryption;
+    }
+
+    @Override
+    protected void performExecutions(EventSource session) {
+        try {
+            flushEncryption.precompute(session);
+            super.performExecutions(session);
+        } finally {
+            flushEncryption.release();
+        }
+    }
+
+}
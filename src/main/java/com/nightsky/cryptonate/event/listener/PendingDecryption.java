@@ -0,0 +1,111 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.plan.EncryptedField;
+import java.lang.ref.WeakReference;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * The envelope of a field decrypted on access, with the AAD captured when
+ * its entity was loaded and the session that loaded it.
+ *
+ * @author Chris
+ */
+class PendingDecryption {
+
+    private final CryptoEventListener listener;
+
+    private final EncryptedField field;
+
+    private final String envelope;
+
+    private final byte[] aad;
+
+    private final WeakReference<SharedSessionContractImplementor> session;
+
+    private final Object[] stateAtLoad;
+
+    /**
+     * @param session the session that loaded the entity, or null if the load
+     * event has none
+     * @param stateAtLoad the loaded state, used only without a session
+     */
+    PendingDecryption(CryptoEventListener listener, EncryptedField field, String envelope, byte[] aad,
+        SharedSessionContractImplementor session, Object[] stateAtLoad)
+    {
+        this.listener = listener;
+        this.field = field;
+        this.envelope = envelope;
+        this.aad = aad;
+        this.session = session == null ? null : new WeakReference<>(session);
+        this.stateAtLoad = session == null ? stateAtLoad : null;
+    }
+
+    /**
+     * Decrypts the envelope and writes the plaintext into the entity and its
+     * current loaded state, so that resolving the field does not make it
+     * dirty.
+     *
+     * @param entity the entity the envelope was loaded into
+     * @return the plaintext
+     */
+    String resolve(Object entity) {
+        String plaintext = listener.decryptDeferred(this);
+
+        try {
+            field.getField().set(entity, plaintext);
+        } catch (IllegalAccessException e) {
+            String msg = String.format("Failed to set field: %s.%s", entity.getClass().getName(), field.getName());
+            throw new RuntimeException(msg, e);
+        }
+
+        Object[] loadedState = loadedStateOf(entity);
+
+        if ( loadedState != null && field.getStateIndex() >= 0 )
+            loadedState[field.getStateIndex()] = plaintext;
+
+        return plaintext;
+    }
+
+    /**
+     * Flushes replace the loaded state of an entity; so, it is looked up in
+     * the persistence context when the field is resolved.
+     *
+     * @return the loaded state of the entity, or null if the entity is no
+     * longer managed by the session that loaded it
+     */
+    private Object[] loadedStateOf(Object entity) {
+        if ( session == null )
+            return stateAtLoad;
+
+        SharedSessionContractImplementor loadingSession = session.get();
+
+        if ( loadingSession == null || loadingSession.isClosed() )
+            return null;
+
+        EntityEntry entry = loadingSession.getPersistenceContextInternal().getEntry(entity);
+        return entry == null ? null : entry.getLoadedState();
+    }
+
+    /**
+     * @return the field
+     */
+    EncryptedField getField() {
+        return field;
+    }
+
+    /**
+     * @return the envelope
+     */
+    String getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * @return the aad
+     */
+    byte[] getAad() {
+        return aad;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.plan.EncryptedField;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An envelope encrypted ahead of the insert or update of its entity. The
+ * envelope is used only if the field value, the AAD and the name and version
+ * of the encryption key are still the ones it was encrypted with when the
+ * entity is written.
+ *
+ * @author Chris
+ */
+class PrecomputedEnvelope {
+
+    private final EncryptedField field;
+
+    private final Object plaintext;
+
+    private final byte[] aad;
+
+    private final String keyName;
+
+    private boolean sealed;
+
+    private int keyVersion;
+
+    private Object encodedEnvelope;
+
+    PrecomputedEnvelope(EncryptedField field, Object plaintext, byte[] aad, String keyName) {
+        this.field = field;
+        this.plaintext = plaintext;
+        this.aad = aad;
+        this.keyName = keyName;
+    }
+
+    boolean matches(Object fieldValue, byte[] fieldAad, String encryptionKeyName, int encryptionKeyVersion) {
+        return sealed
+            && Objects.deepEquals(plaintext, fieldValue)
+            && Arrays.equals(aad, fieldAad)
+            && Objects.equals(keyName, encryptionKeyName)
+            && (encodedEnvelope == null || keyVersion == encryptionKeyVersion);
+    }
+
+    /**
+     * @param encodedEnvelope the envelope, or null if the value encrypts to
+     * nothing
+     * @param keyVersion the version of the key the envelope was encrypted
+     * with
+     */
+    void seal(Object encodedEnvelope, int keyVersion) {
+        this.encodedEnvelope = encodedEnvelope;
+        this.keyVersion = keyVersion;
+        this.sealed = true;
+    }
+
+    /**
+     * @return the field
+     */
+    EncryptedField getField() {
+        return field;
+    }
+
+    /**
+     * @return the plaintext
+     */
+    Object getPlaintext() {
+        return plaintext;
+    }
+
+    /**
+     * @return the aad
+     */
+    byte[] getAad() {
+        return aad;
+    }
+
+    /**
+     * @return the keyName
+     */
+    String getKeyName() {
+        return keyName;
+    }
+
+    /**
+     * @return the version of the key the envelope was encrypted with
+     */
+    int getKeyVersion() {
+        return keyVersion;
+    }
+
+    /**
+     * @return the encoded envelope, or null if the value encrypts to nothing
+     */
+    Object getEncodedEnvelope() {
+        return encodedEnvelope;
+    }
+
+}
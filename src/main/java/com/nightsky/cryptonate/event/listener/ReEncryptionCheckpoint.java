@@ -0,0 +1,24 @@
+package com.nightsky.cryptonate.event.listener;
+
+/**
+ * Stores how far a {@link ReEncryptionJob} got, so that a stopped or failed
+ * job resumes after the last page it committed.
+ *
+ * @author Chris
+ */
+public interface ReEncryptionCheckpoint {
+
+    /**
+     * @return the ID of the last row committed by the job, or null to start
+     * from the first row
+     */
+    Object load();
+
+    /**
+     * Called after each page is committed.
+     *
+     * @param lastId the ID of the last row of the page
+     */
+    void save(Object lastId);
+
+}
@@ -0,0 +1,488 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.StoredEnvelopes;
+import com.nightsky.cryptonate.plan.AadProperty;
+import com.nightsky.cryptonate.plan.EncryptedField;
+import com.nightsky.cryptonate.plan.EncryptionPlan;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Moves the envelopes of an entity table to the current version of the
+ * encryption key, without going through Hibernate. The table is read in pages
+ * of ascending IDs; only envelopes whose header names another key or key
+ * version are decrypted. Their plaintext is encrypted again on a fork/join
+ * pool, and written back in one JDBC batch per column and page, in one
+ * transaction per page.
+ *
+ * <p>
+ *   Every update is conditional on the column still holding the envelope
+ *   that was read, so values written by the application while the job runs
+ *   are left alone. AAD is built from the columns of the AAD properties of
+ *   each field, which must read back as values whose <code>toString()</code>
+ *   matches that of the entity property. <code>Blob</code> fields are not
+ *   re-encrypted.
+ * </p>
+ *
+ * <p>
+ *   Table and column names are written into the SQL as they are configured.
+ * </p>
+ *
+ * @author Chris
+ */
+public class ReEncryptionJob implements AutoCloseable {
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final int REENCRYPT_BATCH_SIZE = 16;
+
+    private CryptoEventListener listener;
+
+    private DataSource dataSource;
+
+    private Class<?> entityClass;
+
+    private String tableName;
+
+    private final Map<String, String> columnNames;
+
+    private int pageSize;
+
+    private double maximumRowsPerSecond;
+
+    private ReEncryptionCheckpoint checkpoint;
+
+    private ForkJoinPool pool;
+
+    private boolean ownsPool;
+
+    private final ReEncryptionProgress progress;
+
+    private volatile boolean stopRequested;
+
+    private EncryptedField[] fields;
+
+    private String idColumn;
+
+    private String[] selectedColumns;
+
+    private int[][] aadColumnIndexes;
+
+    public ReEncryptionJob() {
+        columnNames = new HashMap<>();
+        pageSize = DEFAULT_PAGE_SIZE;
+        progress = new ReEncryptionProgress();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Re-encrypts the table, starting after the ID saved by the checkpoint,
+     * until the last row or until {@link #stop()} is called.
+     *
+     * @return the progress of the job
+     * @throws SQLException if the table cannot be read or written; pages
+     * committed until then stay committed
+     */
+    public ReEncryptionProgress run() throws SQLException {
+        Object lastId = checkpoint == null ? null : checkpoint.load();
+        long started = System.nanoTime();
+        long scanned = 0;
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                while ( !stopRequested ) {
+                    List<Row> page = readPage(connection, lastId);
+
+                    if ( page.isEmpty() )
+                        break;
+
+                    pool.invoke(new ReEncryptTask(page, 0, page.size()));
+                    writePage(connection, page);
+                    connection.commit();
+
+                    lastId = page.get(page.size() - 1).id;
+                    progress.setLastId(lastId);
+                    progress.addRowsScanned(page.size());
+
+                    if ( checkpoint != null )
+                        checkpoint.save(lastId);
+
+                    if ( page.size() < pageSize )
+                        break;
+
+                    scanned += page.size();
+                    throttle(started, scanned);
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        return progress;
+    }
+
+    /**
+     * Stops a running job after the page it is working on.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    @Override
+    public void close() {
+        if ( ownsPool )
+            pool.shutdown();
+    }
+
+    private List<Row> readPage(Connection connection, Object lastId) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", selectedColumns))
+            .append(" FROM ").append(tableName);
+
+        if ( lastId != null )
+            sql.append(" WHERE ").append(idColumn).append(" > ?");
+
+        sql.append(" ORDER BY ").append(idColumn);
+
+        List<Row> page = new ArrayList<>(pageSize);
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setMaxRows(pageSize);
+            statement.setFetchSize(pageSize);
+
+            if ( lastId != null )
+                statement.setObject(1, lastId);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while ( rs.next() ) {
+                    Object[] values = new Object[selectedColumns.length];
+
+                    for (int i = 0; i < values.length; ++i) {
+                        Object value = rs.getObject(i + 1);
+                        values[i] = value instanceof Clob ? ((Clob) value).getSubString(1, (int) ((Clob) value).length()) : value;
+                    }
+
+                    page.add(new Row(values, fields.length));
+                }
+            }
+        }
+
+        return page;
+    }
+
+    private void writePage(Connection connection, List<Row> page) throws SQLException {
+        for (int f = 0; f < fields.length; ++f) {
+            String column = selectedColumns[f + 1];
+            String sql = String.format("UPDATE %s SET %s = ? WHERE %s = ? AND %s = ?", tableName, column, idColumn, column);
+            int batched = 0;
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Row row : page) {
+                    if ( row.replacements[f] == null )
+                        continue;
+
+                    statement.setObject(1, row.replacements[f]);
+                    statement.setObject(2, row.id);
+                    statement.setObject(3, row.values[f + 1]);
+                    statement.addBatch();
+                    ++batched;
+                }
+
+                if ( batched == 0 )
+                    continue;
+
+                int[] counts = statement.executeBatch();
+
+                for (int count : counts) {
+                    if ( count == 0 )
+                        progress.addEnvelopesSkipped(1);
+                    else
+                        progress.addEnvelopesReEncrypted(1);
+                }
+            }
+        }
+
+        for (Row row : page) {
+            progress.addEnvelopesFailed(row.failures);
+        }
+    }
+
+    private void reEncrypt(Row row) {
+        for (int f = 0; f < fields.length; ++f) {
+            Object envelope = row.values[f + 1];
+
+            if ( StoredEnvelopes.isEmpty(envelope) )
+                continue;
+
+            try {
+                // Only the header is read from envelopes under the current key
+                if ( listener.isEncryptedWithCurrentKey(envelope) )
+                    continue;
+
+                int[] indexes = aadColumnIndexes[f];
+                Object[] aadValues = new Object[indexes.length];
+
+                for (int i = 0; i < indexes.length; ++i) {
+                    aadValues[i] = row.values[indexes[i]];
+                }
+
+                byte[] aad = CryptoEventListener.aadOf(fields[f].getAadProperties(), aadValues);
+                row.replacements[f] = listener.reEncrypt(fields[f], envelope, aad);
+            } catch (Exception e) {
+                // Left as it is; the envelope may be corrupt or under a retired key
+                ++row.failures;
+            }
+        }
+    }
+
+    private void throttle(long started, long scanned) {
+        if ( maximumRowsPerSecond <= 0 )
+            return;
+
+        long due = started + (long) (scanned / maximumRowsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        long wait = due - System.nanoTime();
+
+        if ( wait <= 0 )
+            return;
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRequested = true;
+        }
+    }
+
+    private String columnOf(String propertyName) {
+        return columnNames.getOrDefault(propertyName, propertyName);
+    }
+
+    private void plan() {
+        EncryptionPlan plan = EncryptionPlan.build(entityClass, null, listener.getFieldCodecs());
+
+        if ( plan.getIdFieldName() == null )
+            throw new RuntimeException(String.format("%s has no @Id field", entityClass.getName()));
+
+        List<EncryptedField> reEncrypted = new ArrayList<>();
+
+        for (EncryptedField field : plan.getFields()) {
+            if ( !field.isStreamed() )
+                reEncrypted.add(field);
+        }
+
+        if ( reEncrypted.isEmpty() )
+            throw new RuntimeException(String.format("%s has no re-encryptable fields", entityClass.getName()));
+
+        fields = reEncrypted.toArray(new EncryptedField[0]);
+        idColumn = columnOf(plan.getIdFieldName());
+
+        // The ID, then the encrypted columns, then the other columns AAD is built from
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        columns.put(idColumn, 0);
+
+        for (EncryptedField field : fields) {
+            columns.put(columnOf(field.getName()), columns.size());
+        }
+
+        aadColumnIndexes = new int[fields.length][];
+
+        for (int f = 0; f < fields.length; ++f) {
+            AadProperty[] aadProperties = fields[f].getAadProperties();
+            aadColumnIndexes[f] = new int[aadProperties.length];
+
+            for (int i = 0; i < aadProperties.length; ++i) {
+                String column = aadProperties[i].isIdentifier() ? idColumn : columnOf(aadProperties[i].getName());
+                aadColumnIndexes[f][i] = columns.computeIfAbsent(column, c -> columns.size());
+            }
+        }
+
+        selectedColumns = columns.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @return the progress of the job
+     */
+    public ReEncryptionProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the listener
+     */
+    public CryptoEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the maximumRowsPerSecond
+     */
+    public double getMaximumRowsPerSecond() {
+        return maximumRowsPerSecond;
+    }
+
+    private static final class Row {
+
+        final Object id;
+
+        final Object[] values;
+
+        final Object[] replacements;
+
+        int failures;
+
+        Row(Object[] values, int fields) {
+            this.id = values[0];
+            this.values = values;
+            this.replacements = new Object[fields];
+        }
+
+    }
+
+    private class ReEncryptTask extends RecursiveAction {
+
+        private final List<Row> rows;
+
+        private final int from;
+
+        private final int to;
+
+        ReEncryptTask(List<Row> rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from <= REENCRYPT_BATCH_SIZE ) {
+                for (int i = from; i < to; ++i) {
+                    reEncrypt(rows.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ReEncryptTask(rows, from, middle), new ReEncryptTask(rows, middle, to));
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        private final ReEncryptionJob target;
+
+        public Builder() {
+            target = new ReEncryptionJob();
+        }
+
+        public Builder withListener(CryptoEventListener listener) {
+            target.listener = listener;
+            return this;
+        }
+
+        public Builder withDataSource(DataSource dataSource) {
+            target.dataSource = dataSource;
+            return this;
+        }
+
+        public Builder withEntityClass(Class<?> entityClass) {
+            target.entityClass = entityClass;
+            return this;
+        }
+
+        public Builder withTableName(String tableName) {
+            target.tableName = tableName;
+            return this;
+        }
+
+        /**
+         * Maps a property of the entity to its column; properties are mapped
+         * to columns of the same name by default.
+         */
+        public Builder withColumnName(String propertyName, String columnName) {
+            target.columnNames.put(propertyName, columnName);
+            return this;
+        }
+
+        public Builder withPageSize(int pageSize) {
+            if ( pageSize <= 0 )
+                throw new RuntimeException(String.format("Invalid page size: %d", pageSize));
+
+            target.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder withMaximumRowsPerSecond(double maximumRowsPerSecond) {
+            target.maximumRowsPerSecond = maximumRowsPerSecond;
+            return this;
+        }
+
+        public Builder withCheckpoint(ReEncryptionCheckpoint checkpoint) {
+            target.checkpoint = checkpoint;
+            return this;
+        }
+
+        public Builder withParallelism(int parallelism) {
+            target.pool = new ForkJoinPool(parallelism);
+            target.ownsPool = true;
+            return this;
+        }
+
+        public Builder withPool(ForkJoinPool pool) {
+            target.pool = pool;
+            target.ownsPool = false;
+            return this;
+        }
+
+        public ReEncryptionJob build() {
+            if ( target.listener == null )
+                throw new RuntimeException("Crypto event listener not configured");
+
+            if ( target.dataSource == null )
+                throw new RuntimeException("Data source not configured");
+
+            if ( target.entityClass == null )
+                throw new RuntimeException("Entity class not configured");
+
+            if ( target.tableName == null )
+                throw new RuntimeException("Table name not configured");
+
+            if ( target.pool == null ) {
+                target.pool = ForkJoinPool.commonPool();
+                target.ownsPool = false;
+            }
+
+            target.plan();
+
+            return target;
+        }
+
+    }
+
+}
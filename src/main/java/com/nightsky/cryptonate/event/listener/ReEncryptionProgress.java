@@ -0,0 +1,85 @@
+package com.nightsky.cryptonate.event.listener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link ReEncryptionJob}, safe to read while the job runs.
+ *
+ * @author Chris
+ */
+public class ReEncryptionProgress {
+
+    private final AtomicLong rowsScanned = new AtomicLong();
+
+    private final AtomicLong envelopesReEncrypted = new AtomicLong();
+
+    private final AtomicLong envelopesSkipped = new AtomicLong();
+
+    private final AtomicLong envelopesFailed = new AtomicLong();
+
+    private volatile Object lastId;
+
+    /**
+     * @return the number of rows read
+     */
+    public long getRowsScanned() {
+        return rowsScanned.get();
+    }
+
+    /**
+     * @return the number of envelopes written back under the current key
+     * version
+     */
+    public long getEnvelopesReEncrypted() {
+        return envelopesReEncrypted.get();
+    }
+
+    /**
+     * @return the number of envelopes that changed between their read and
+     * their write, and were left as the application wrote them
+     */
+    public long getEnvelopesSkipped() {
+        return envelopesSkipped.get();
+    }
+
+    /**
+     * @return the number of envelopes that could not be decrypted
+     */
+    public long getEnvelopesFailed() {
+        return envelopesFailed.get();
+    }
+
+    /**
+     * @return the ID of the last row committed, or null
+     */
+    public Object getLastId() {
+        return lastId;
+    }
+
+    void addRowsScanned(long rows) {
+        rowsScanned.addAndGet(rows);
+    }
+
+    void addEnvelopesReEncrypted(long envelopes) {
+        envelopesReEncrypted.addAndGet(envelopes);
+    }
+
+    void addEnvelopesSkipped(long envelopes) {
+        envelopesSkipped.addAndGet(envelopes);
+    }
+
+    void addEnvelopesFailed(long envelopes) {
+        envelopesFailed.addAndGet(envelopes);
+    }
+
+    void setLastId(Object lastId) {
+        this.lastId = lastId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows scanned, %d envelopes re-encrypted, %d skipped, %d failed, last ID %s",
+            getRowsScanned(), getEnvelopesReEncrypted(), getEnvelopesSkipped(), getEnvelopesFailed(), lastId);
+    }
+
+}
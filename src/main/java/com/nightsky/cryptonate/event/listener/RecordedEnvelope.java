@@ -0,0 +1,44 @@
+package com.nightsky.cryptonate.event.listener;
+
+/**
+ * The envelope an encrypted field was last loaded from or written with,
+ * along with the plaintext and the AAD it encrypts.
+ *
+ * @author Chris
+ */
+class RecordedEnvelope {
+
+    private final Object envelope;
+
+    private final byte[] plaintext;
+
+    private final byte[] aad;
+
+    RecordedEnvelope(Object envelope, byte[] plaintext, byte[] aad) {
+        this.envelope = envelope;
+        this.plaintext = plaintext;
+        this.aad = aad;
+    }
+
+    /**
+     * @return the envelope, as stored
+     */
+    Object getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * @return the plaintext, as converted for encryption
+     */
+    byte[] getPlaintext() {
+        return plaintext;
+    }
+
+    /**
+     * @return the aad
+     */
+    byte[] getAad() {
+        return aad;
+    }
+
+}
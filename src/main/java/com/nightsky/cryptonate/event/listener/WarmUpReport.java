@@ -0,0 +1,94 @@
+package com.nightsky.cryptonate.event.listener;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a warm-up of a {@link CryptoEventListener} did, and how long it took.
+ *
+ * @author Chris
+ */
+public class WarmUpReport {
+
+    private final int keysLoaded;
+
+    private final List<String> missingKeys;
+
+    private final Duration keyPrefetchTime;
+
+    private final Duration cipherInitializationTime;
+
+    private final int rounds;
+
+    private final Duration roundTime;
+
+    WarmUpReport(int keysLoaded, List<String> missingKeys, Duration keyPrefetchTime, Duration cipherInitializationTime,
+        int rounds, Duration roundTime)
+    {
+        this.keysLoaded = keysLoaded;
+        this.missingKeys = Collections.unmodifiableList(missingKeys);
+        this.keyPrefetchTime = keyPrefetchTime;
+        this.cipherInitializationTime = cipherInitializationTime;
+        this.rounds = rounds;
+        this.roundTime = roundTime;
+    }
+
+    /**
+     * @return the number of key versions loaded into the listener
+     */
+    public int getKeysLoaded() {
+        return keysLoaded;
+    }
+
+    /**
+     * @return the key versions, as <code>name:version</code> (or the name
+     * alone for current versions), that could not be loaded
+     */
+    public List<String> getMissingKeys() {
+        return missingKeys;
+    }
+
+    /**
+     * @return the time taken to load the keys
+     */
+    public Duration getKeyPrefetchTime() {
+        return keyPrefetchTime;
+    }
+
+    /**
+     * @return the time taken to initialize a cipher with every key
+     */
+    public Duration getCipherInitializationTime() {
+        return cipherInitializationTime;
+    }
+
+    /**
+     * @return the number of encrypt/decrypt rounds run per field type
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * @return the time taken by the rounds
+     */
+    public Duration getRoundTime() {
+        return roundTime;
+    }
+
+    /**
+     * @return the time taken by the whole warm-up
+     */
+    public Duration getTotalTime() {
+        return keyPrefetchTime.plus(cipherInitializationTime).plus(roundTime);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Warm-up took %d ms: %d keys loaded in %d ms (%d missing), ciphers initialized in %d ms, %d rounds in %d ms",
+            getTotalTime().toMillis(), keysLoaded, keyPrefetchTime.toMillis(), missingKeys.size(),
+            cipherInitializationTime.toMillis(), rounds, roundTime.toMillis());
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.nightsky.cryptonate.event.listener;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map with weakly referenced keys compared by identity. Entities
+ * are free to override <code>equals</code> and <code>hashCode</code>, and
+ * their hash codes may change once they get an id; so, they cannot be the
+ * keys of a <code>WeakHashMap</code>. Entries of collected keys are dropped
+ * by the next operation.
+ *
+ * @author Chris
+ */
+class WeakIdentityMap<K, V> {
+
+    private final ConcurrentHashMap<IdentityKey<K>, V> map;
+
+    private final ReferenceQueue<K> queue;
+
+    WeakIdentityMap() {
+        this.map = new ConcurrentHashMap<>();
+        this.queue = new ReferenceQueue<>();
+    }
+
+    V get(K key) {
+        expunge();
+        return map.get(new IdentityKey<>(key, null));
+    }
+
+    V put(K key, V value) {
+        expunge();
+        return map.put(new IdentityKey<>(key, queue), value);
+    }
+
+    V remove(K key) {
+        expunge();
+        return map.remove(new IdentityKey<>(key, null));
+    }
+
+    /**
+     * Removes the entry of a key only if it still maps to the given value.
+     */
+    boolean remove(K key, V value) {
+        expunge();
+        return map.remove(new IdentityKey<>(key, null), value);
+    }
+
+    int size() {
+        expunge();
+        return map.size();
+    }
+
+    void clear() {
+        map.clear();
+        expunge();
+    }
+
+    private void expunge() {
+        Reference<? extends K> reference;
+
+        while ( (reference = queue.poll()) != null ) {
+            map.remove(reference);
+        }
+    }
+
+    private static final class IdentityKey<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        IdentityKey(K referent, ReferenceQueue<? super K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( this == o )
+                return true;
+
+            if ( !(o instanceof IdentityKey) )
+                return false;
+
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey<?>) o).get();
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.nightsky.cryptonate.event.listener;
+
+/**
+ * The plaintext values of the encrypted fields of an entity, as they were
+ * before their envelopes replaced them in the state array being written.
+ *
+ * @author Chris
+ */
+class WrittenState {
+
+    private final Object entity;
+
+    private final Object[] state;
+
+    private final Object[] plaintexts;
+
+    WrittenState(Object entity, Object[] state, Object[] plaintexts) {
+        this.entity = entity;
+        this.state = state;
+        this.plaintexts = plaintexts;
+    }
+
+    /**
+     * @return true if this is the state array of the entity that was written
+     */
+    boolean isStateOf(Object entity, Object[] state) {
+        return this.entity == entity && this.state == state;
+    }
+
+    /**
+     * @return the plaintext values, in the order of the encrypted fields
+     */
+    Object[] getPlaintexts() {
+        return plaintexts;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.nightsky.cryptonate.integrator;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.event.listener.ParallelAutoFlushEventListener;
+import com.nightsky.cryptonate.event.listener.ParallelFlushEncryption;
+import com.nightsky.cryptonate.event.listener.ParallelFlushEventListener;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.DuplicationStrategy;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Registers a {@link CryptoEventListener} with Hibernate and prepares the
+ * encryption plans of all mapped entities while the SessionFactory is built.
+ * Configuration problems (unknown AAD properties, unsupported field types,
+ * missing encryption or decryption keys, etc.) make the SessionFactory fail
+ * to start instead of failing the first load or flush, and no request pays
+ * for building plans.
+ *
+ * <p>
+ *   The integrator needs a configured listener; so, it is not discovered
+ *   through <code>ServiceLoader</code>. Register it with
+ *   <code>BootstrapServiceRegistryBuilder.applyIntegrator(...)</code> or,
+ *   when bootstrapping through JPA, with the
+ *   <code>hibernate.integrator_provider</code> property.
+ * </p>
+ *
+ * <p>
+ *   Given a {@link ParallelFlushEncryption}, the integrator also replaces the
+ *   flush and auto-flush listeners, so that flushes encrypt their pending
+ *   inserts and updates in parallel.
+ * </p>
+ *
+ * @author Chris
+ */
+public class CryptonateIntegrator implements Integrator {
+
+    private final CryptoEventListener listener;
+
+    private final ParallelFlushEncryption flushEncryption;
+
+    public CryptonateIntegrator(CryptoEventListener listener) {
+        this(listener, null);
+    }
+
+    public CryptonateIntegrator(CryptoEventListener listener, ParallelFlushEncryption flushEncryption) {
+        this.listener = listener;
+        this.flushEncryption = flushEncryption;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        listener.validateConfiguration();
+
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+        appendListener(registry.getEventListenerGroup(EventType.PRE_INSERT));
+        appendListener(registry.getEventListenerGroup(EventType.PRE_UPDATE));
+        appendListener(registry.getEventListenerGroup(EventType.PRE_LOAD));
+        appendListener(registry.getEventListenerGroup(EventType.POST_INSERT));
+        appendListener(registry.getEventListenerGroup(EventType.POST_UPDATE));
+
+        if ( flushEncryption != null ) {
+            registry.setListeners(EventType.FLUSH, new ParallelFlushEventListener(flushEncryption));
+            registry.setListeners(EventType.AUTO_FLUSH, new ParallelAutoFlushEventListener(flushEncryption));
+        }
+
+        final Map<String, Class<?>> encryptedEntities = findEncryptedEntities(metadata);
+
+        // Rows of encrypted entities may hold envelopes of any key with a key code
+        if ( !encryptedEntities.isEmpty() )
+            listener.validateDecryptionKeys();
+
+        // Persisters do not exist yet; prepare the plans once the SessionFactory has been built
+        sessionFactory.addObserver(new SessionFactoryObserver() {
+            @Override
+            public void sessionFactoryCreated(SessionFactory factory) {
+                prepare((SessionFactoryImplementor) factory, encryptedEntities);
+            }
+        });
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        if ( flushEncryption != null )
+            flushEncryption.close();
+    }
+
+    private <T> void appendListener(EventListenerGroup<T> group) {
+        // Keep the first CryptoEventListener if one was also registered by hand
+        group.addDuplicationStrategy(new DuplicationStrategy() {
+            @Override
+            public boolean areMatch(Object listener, Object original) {
+                return listener instanceof CryptoEventListener && original instanceof CryptoEventListener;
+            }
+
+            @Override
+            public DuplicationStrategy.Action getAction() {
+                return DuplicationStrategy.Action.KEEP_ORIGINAL;
+            }
+        });
+
+        @SuppressWarnings("unchecked")
+        T typedListener = (T) listener;
+        group.appendListener(typedListener);
+    }
+
+    private Map<String, Class<?>> findEncryptedEntities(Metadata metadata) {
+        Map<String, Class<?>> encryptedEntities = new LinkedHashMap<>();
+
+        for (PersistentClass persistentClass : metadata.getEntityBindings()) {
+            Class<?> mappedClass = persistentClass.getMappedClass();
+
+            if ( mappedClass != null && hasEncryptedFields(mappedClass) )
+                encryptedEntities.put(persistentClass.getEntityName(), mappedClass);
+        }
+
+        return encryptedEntities;
+    }
+
+    private boolean hasEncryptedFields(Class<?> mappedClass) {
+        for (Field field : mappedClass.getDeclaredFields()) {
+            if ( field.isAnnotationPresent(Encrypted.class) )
+                return true;
+        }
+
+        return false;
+    }
+
+    private void prepare(SessionFactoryImplementor sessionFactory, Map<String, Class<?>> encryptedEntities) {
+        for (Map.Entry<String, Class<?>> entry : encryptedEntities.entrySet()) {
+            EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entry.getKey());
+            listener.prepare(entry.getValue(), persister);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.nightsky.cryptonate.metrics;
+
+/**
+ * Receives timings and sizes of the encryptions, decryptions and key lookups
+ * of a <code>CryptoEventListener</code>. Implementations are called from the
+ * threads that encrypt and decrypt, often several at once, and must be
+ * thread-safe and cheap.
+ *
+ * <p>
+ *   Fields are identified by the class that declares them and their name;
+ *   keys by their code and version, as written in envelope headers.
+ *   Values served from a plaintext cache, envelopes reused as they are and
+ *   streamed blobs are not recorded.
+ * </p>
+ *
+ * @author Chris
+ */
+public interface CryptoMetrics {
+
+    /**
+     * Records nothing. A listener with these metrics does not read the clock
+     * at all.
+     */
+    public static final CryptoMetrics NONE = new CryptoMetrics() {  };
+
+    /**
+     * The key version of lookups of the current version of a key.
+     */
+    public static final int CURRENT_VERSION = -1;
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName the name of the field
+     * @param keyCode the code of the encryption key
+     * @param keyVersion the version of the encryption key
+     * @param nanos the time taken to encrypt, including compression
+     * @param plaintextBytes the length of the plaintext, before compression
+     * @param envelopeBytes the length of the envelope, before Base64 encoding
+     */
+    public default void recordEncryption(Class<?> declaringClass, String fieldName, int keyCode, int keyVersion,
+        long nanos, int plaintextBytes, int envelopeBytes)
+    {
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName the name of the field
+     * @param keyCode the code of the decryption key
+     * @param keyVersion the version of the decryption key
+     * @param nanos the time taken to decrypt, including Base64 decoding and
+     * decompression
+     * @param plaintextBytes the length of the plaintext, after decompression
+     * @param envelopeBytes the length of the envelope, after Base64 decoding
+     */
+    public default void recordDecryption(Class<?> declaringClass, String fieldName, int keyCode, int keyVersion,
+        long nanos, int plaintextBytes, int envelopeBytes)
+    {
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName the name of the field
+     */
+    public default void recordEncryptionFailure(Class<?> declaringClass, String fieldName) {
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName the name of the field
+     */
+    public default void recordDecryptionFailure(Class<?> declaringClass, String fieldName) {
+    }
+
+    /**
+     * @param keyName the name of the key
+     * @param keyVersion the version looked up, or {@link #CURRENT_VERSION}
+     * @param nanos the time taken by the lookup
+     * @param resolved true if the key was already resolved by the listener,
+     * false if it was asked of the key cache
+     */
+    public default void recordKeyLookup(String keyName, int keyVersion, long nanos, boolean resolved) {
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.nightsky.cryptonate.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The metrics recorded by {@link HistogramCryptoMetrics} since it was
+ * created, for exporters to publish.
+ *
+ * @author Chris
+ */
+public class CryptoMetricsSnapshot {
+
+    private final List<FieldMetrics> fields;
+
+    private final List<KeyLookupMetrics> keyLookups;
+
+    CryptoMetricsSnapshot(List<FieldMetrics> fields, List<KeyLookupMetrics> keyLookups) {
+        this.fields = Collections.unmodifiableList(fields);
+        this.keyLookups = Collections.unmodifiableList(keyLookups);
+    }
+
+    /**
+     * @return the metrics of every field encrypted or decrypted
+     */
+    public List<FieldMetrics> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName the name of the field
+     * @return the metrics of the field, or null if it was never encrypted or
+     * decrypted
+     */
+    public FieldMetrics getField(Class<?> declaringClass, String fieldName) {
+        for (FieldMetrics field : fields) {
+            if ( field.getDeclaringClass() == declaringClass && field.getFieldName().equals(fieldName) )
+                return field;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the metrics of every key version looked up
+     */
+    public List<KeyLookupMetrics> getKeyLookups() {
+        return keyLookups;
+    }
+
+}
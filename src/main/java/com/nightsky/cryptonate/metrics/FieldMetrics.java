@@ -0,0 +1,67 @@
+package com.nightsky.cryptonate.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What was encrypted and decrypted for one field.
+ *
+ * @author Chris
+ */
+public class FieldMetrics {
+
+    private final Class<?> declaringClass;
+
+    private final String fieldName;
+
+    private final long encryptionFailures;
+
+    private final long decryptionFailures;
+
+    private final List<KeyMetrics> keys;
+
+    FieldMetrics(Class<?> declaringClass, String fieldName, long encryptionFailures, long decryptionFailures, List<KeyMetrics> keys) {
+        this.declaringClass = declaringClass;
+        this.fieldName = fieldName;
+        this.encryptionFailures = encryptionFailures;
+        this.decryptionFailures = decryptionFailures;
+        this.keys = Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * @return the class declaring the field
+     */
+    public Class<?> getDeclaringClass() {
+        return declaringClass;
+    }
+
+    /**
+     * @return the name of the field
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return the number of values that failed to encrypt
+     */
+    public long getEncryptionFailures() {
+        return encryptionFailures;
+    }
+
+    /**
+     * @return the number of envelopes that failed to decrypt
+     */
+    public long getDecryptionFailures() {
+        return decryptionFailures;
+    }
+
+    /**
+     * @return the metrics of every key version the field was encrypted or
+     * decrypted with
+     */
+    public List<KeyMetrics> getKeys() {
+        return keys;
+    }
+
+}
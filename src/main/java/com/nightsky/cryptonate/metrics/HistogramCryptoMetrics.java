@@ -0,0 +1,237 @@
+package com.nightsky.cryptonate.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps counters and {@link LatencyHistogram}s per field and key version,
+ * and per looked up key version. Recording takes no lock and, once a field
+ * and key version have been seen, allocates nothing; {@link #snapshot()}
+ * can be called at any time, from any thread.
+ *
+ * @author Chris
+ */
+public class HistogramCryptoMetrics implements CryptoMetrics {
+
+    private final Map<Class<?>, Map<String, FieldRecorder>> fields = new ConcurrentHashMap<>();
+
+    private final Map<String, Versions<LookupRecorder>> keyLookups = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordEncryption(Class<?> declaringClass, String fieldName, int keyCode, int keyVersion,
+        long nanos, int plaintextBytes, int envelopeBytes)
+    {
+        KeyRecorder key = fieldRecorder(declaringClass, fieldName).keys.get(keyCode, keyVersion);
+        key.encryptionLatency.record(nanos);
+        key.plaintextBytesEncrypted.add(plaintextBytes);
+        key.envelopeBytesWritten.add(envelopeBytes);
+    }
+
+    @Override
+    public void recordDecryption(Class<?> declaringClass, String fieldName, int keyCode, int keyVersion,
+        long nanos, int plaintextBytes, int envelopeBytes)
+    {
+        KeyRecorder key = fieldRecorder(declaringClass, fieldName).keys.get(keyCode, keyVersion);
+        key.decryptionLatency.record(nanos);
+        key.plaintextBytesDecrypted.add(plaintextBytes);
+        key.envelopeBytesRead.add(envelopeBytes);
+    }
+
+    @Override
+    public void recordEncryptionFailure(Class<?> declaringClass, String fieldName) {
+        fieldRecorder(declaringClass, fieldName).encryptionFailures.increment();
+    }
+
+    @Override
+    public void recordDecryptionFailure(Class<?> declaringClass, String fieldName) {
+        fieldRecorder(declaringClass, fieldName).decryptionFailures.increment();
+    }
+
+    @Override
+    public void recordKeyLookup(String keyName, int keyVersion, long nanos, boolean resolved) {
+        Versions<LookupRecorder> versions = keyLookups.get(keyName);
+
+        if ( versions == null )
+            versions = keyLookups.computeIfAbsent(keyName, name -> new Versions<>(LookupRecorder::new));
+
+        LookupRecorder lookup = versions.get(0, keyVersion);
+        lookup.latency.record(nanos);
+
+        if ( resolved )
+            lookup.resolvedLookups.increment();
+    }
+
+    /**
+     * @return the metrics recorded so far
+     */
+    public CryptoMetricsSnapshot snapshot() {
+        List<FieldMetrics> fieldMetrics = new ArrayList<>();
+
+        for (Map<String, FieldRecorder> classFields : fields.values()) {
+            for (FieldRecorder field : classFields.values()) {
+                List<KeyMetrics> keyMetrics = new ArrayList<>();
+
+                for (KeyRecorder key : field.keys.all()) {
+                    keyMetrics.add(new KeyMetrics(key.keyCode, key.keyVersion,
+                        key.encryptionLatency.snapshot(), key.decryptionLatency.snapshot(),
+                        key.plaintextBytesEncrypted.sum(), key.envelopeBytesWritten.sum(),
+                        key.plaintextBytesDecrypted.sum(), key.envelopeBytesRead.sum()));
+                }
+
+                fieldMetrics.add(new FieldMetrics(field.declaringClass, field.fieldName,
+                    field.encryptionFailures.sum(), field.decryptionFailures.sum(), keyMetrics));
+            }
+        }
+
+        List<KeyLookupMetrics> lookupMetrics = new ArrayList<>();
+
+        for (Map.Entry<String, Versions<LookupRecorder>> entry : keyLookups.entrySet()) {
+            for (LookupRecorder lookup : entry.getValue().all()) {
+                lookupMetrics.add(new KeyLookupMetrics(entry.getKey(), lookup.keyVersion, lookup.latency.snapshot(), lookup.resolvedLookups.sum()));
+            }
+        }
+
+        return new CryptoMetricsSnapshot(fieldMetrics, lookupMetrics);
+    }
+
+    private FieldRecorder fieldRecorder(Class<?> declaringClass, String fieldName) {
+        Map<String, FieldRecorder> classFields = fields.get(declaringClass);
+
+        if ( classFields == null )
+            classFields = fields.computeIfAbsent(declaringClass, type -> new ConcurrentHashMap<>());
+
+        FieldRecorder field = classFields.get(fieldName);
+
+        if ( field == null )
+            field = classFields.computeIfAbsent(fieldName, name -> new FieldRecorder(declaringClass, name));
+
+        return field;
+    }
+
+    private interface RecorderFactory<R> {
+
+        R create(int keyCode, int keyVersion);
+
+    }
+
+    /**
+     * Recorders of key versions. A field sees a handful of key versions over
+     * its life, so they are kept in a copy-on-write array searched in order.
+     */
+    private static final class Versions<R extends VersionRecorder> {
+
+        private final RecorderFactory<R> factory;
+
+        private volatile VersionRecorder[] recorders = new VersionRecorder[0];
+
+        Versions(RecorderFactory<R> factory) {
+            this.factory = factory;
+        }
+
+        @SuppressWarnings("unchecked")
+        R get(int keyCode, int keyVersion) {
+            for (VersionRecorder recorder : recorders) {
+                if ( recorder.keyVersion == keyVersion && recorder.keyCode == keyCode )
+                    return (R) recorder;
+            }
+
+            return add(keyCode, keyVersion);
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized R add(int keyCode, int keyVersion) {
+            for (VersionRecorder recorder : recorders) {
+                if ( recorder.keyVersion == keyVersion && recorder.keyCode == keyCode )
+                    return (R) recorder;
+            }
+
+            R recorder = factory.create(keyCode, keyVersion);
+            VersionRecorder[] grown = Arrays.copyOf(recorders, recorders.length + 1);
+            grown[recorders.length] = recorder;
+            recorders = grown;
+
+            return recorder;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> all() {
+            List<R> all = new ArrayList<>();
+
+            for (VersionRecorder recorder : recorders) {
+                all.add((R) recorder);
+            }
+
+            return all;
+        }
+
+    }
+
+    private static class VersionRecorder {
+
+        final int keyCode;
+
+        final int keyVersion;
+
+        VersionRecorder(int keyCode, int keyVersion) {
+            this.keyCode = keyCode;
+            this.keyVersion = keyVersion;
+        }
+
+    }
+
+    private static final class FieldRecorder {
+
+        final Class<?> declaringClass;
+
+        final String fieldName;
+
+        final LongAdder encryptionFailures = new LongAdder();
+
+        final LongAdder decryptionFailures = new LongAdder();
+
+        final Versions<KeyRecorder> keys = new Versions<>(KeyRecorder::new);
+
+        FieldRecorder(Class<?> declaringClass, String fieldName) {
+            this.declaringClass = declaringClass;
+            this.fieldName = fieldName;
+        }
+
+    }
+
+    private static final class KeyRecorder extends VersionRecorder {
+
+        final LatencyHistogram encryptionLatency = new LatencyHistogram();
+
+        final LatencyHistogram decryptionLatency = new LatencyHistogram();
+
+        final LongAdder plaintextBytesEncrypted = new LongAdder();
+
+        final LongAdder envelopeBytesWritten = new LongAdder();
+
+        final LongAdder plaintextBytesDecrypted = new LongAdder();
+
+        final LongAdder envelopeBytesRead = new LongAdder();
+
+        KeyRecorder(int keyCode, int keyVersion) {
+            super(keyCode, keyVersion);
+        }
+
+    }
+
+    private static final class LookupRecorder extends VersionRecorder {
+
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        final LongAdder resolvedLookups = new LongAdder();
+
+        LookupRecorder(int keyCode, int keyVersion) {
+            super(keyCode, keyVersion);
+        }
+
+    }
+
+}
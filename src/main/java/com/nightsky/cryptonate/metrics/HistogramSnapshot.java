@@ -0,0 +1,100 @@
+package com.nightsky.cryptonate.metrics;
+
+/**
+ * The state of a {@link LatencyHistogram} at some point in time.
+ *
+ * @author Chris
+ */
+public class HistogramSnapshot {
+
+    private final long[] buckets;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    HistogramSnapshot(long[] buckets, long sum, long max) {
+        long count = 0;
+
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+
+        this.buckets = buckets;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the values recorded
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the highest value recorded, or 0
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param bucket the index of a bucket, below {@link LatencyHistogram#BUCKETS}
+     * @return the number of values recorded in the bucket
+     * @see LatencyHistogram#lowerBoundOf(int)
+     * @see LatencyHistogram#upperBoundOf(int)
+     */
+    public long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound of the bucket holding the value at the
+     * percentile, capped by the highest value, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ( percentile < 0 || percentile > 100 )
+            throw new IllegalArgumentException(String.format("Invalid percentile: %s", percentile));
+
+        if ( count == 0 )
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < buckets.length; ++i) {
+            seen += buckets[i];
+
+            if ( seen >= rank )
+                return Math.min(LatencyHistogram.upperBoundOf(i), max);
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.0f, p50=%d, p99=%d, max=%d",
+            count, getMean(), getValueAtPercentile(50), getValueAtPercentile(99), max);
+    }
+
+}
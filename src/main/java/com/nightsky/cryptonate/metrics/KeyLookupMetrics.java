@@ -0,0 +1,62 @@
+package com.nightsky.cryptonate.metrics;
+
+/**
+ * The lookups of one version of a key.
+ *
+ * @author Chris
+ */
+public class KeyLookupMetrics {
+
+    private final String keyName;
+
+    private final int keyVersion;
+
+    private final HistogramSnapshot latency;
+
+    private final long resolvedLookups;
+
+    KeyLookupMetrics(String keyName, int keyVersion, HistogramSnapshot latency, long resolvedLookups) {
+        this.keyName = keyName;
+        this.keyVersion = keyVersion;
+        this.latency = latency;
+        this.resolvedLookups = resolvedLookups;
+    }
+
+    /**
+     * @return the key name
+     */
+    public String getKeyName() {
+        return keyName;
+    }
+
+    /**
+     * @return the key version, or {@link CryptoMetrics#CURRENT_VERSION} for
+     * lookups of the current version
+     */
+    public int getKeyVersion() {
+        return keyVersion;
+    }
+
+    /**
+     * @return the lookup latencies, in nanoseconds
+     */
+    public HistogramSnapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the number of lookups
+     */
+    public long getLookups() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return the number of lookups of keys already resolved by the
+     * listener, which did not reach the key cache
+     */
+    public long getResolvedLookups() {
+        return resolvedLookups;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.nightsky.cryptonate.metrics;
+
+/**
+ * What a field did with one version of a key.
+ *
+ * @author Chris
+ */
+public class KeyMetrics {
+
+    private final int keyCode;
+
+    private final int keyVersion;
+
+    private final HistogramSnapshot encryptionLatency;
+
+    private final HistogramSnapshot decryptionLatency;
+
+    private final long plaintextBytesEncrypted;
+
+    private final long envelopeBytesWritten;
+
+    private final long plaintextBytesDecrypted;
+
+    private final long envelopeBytesRead;
+
+    KeyMetrics(int keyCode, int keyVersion, HistogramSnapshot encryptionLatency, HistogramSnapshot decryptionLatency,
+        long plaintextBytesEncrypted, long envelopeBytesWritten, long plaintextBytesDecrypted, long envelopeBytesRead)
+    {
+        this.keyCode = keyCode;
+        this.keyVersion = keyVersion;
+        this.encryptionLatency = encryptionLatency;
+        this.decryptionLatency = decryptionLatency;
+        this.plaintextBytesEncrypted = plaintextBytesEncrypted;
+        this.envelopeBytesWritten = envelopeBytesWritten;
+        this.plaintextBytesDecrypted = plaintextBytesDecrypted;
+        this.envelopeBytesRead = envelopeBytesRead;
+    }
+
+    /**
+     * @return the key code
+     */
+    public int getKeyCode() {
+        return keyCode;
+    }
+
+    /**
+     * @return the key version
+     */
+    public int getKeyVersion() {
+        return keyVersion;
+    }
+
+    /**
+     * @return the encryption latencies, in nanoseconds
+     */
+    public HistogramSnapshot getEncryptionLatency() {
+        return encryptionLatency;
+    }
+
+    /**
+     * @return the decryption latencies, in nanoseconds
+     */
+    public HistogramSnapshot getDecryptionLatency() {
+        return decryptionLatency;
+    }
+
+    /**
+     * @return the number of plaintext bytes encrypted
+     */
+    public long getPlaintextBytesEncrypted() {
+        return plaintextBytesEncrypted;
+    }
+
+    /**
+     * @return the number of envelope bytes written
+     */
+    public long getEnvelopeBytesWritten() {
+        return envelopeBytesWritten;
+    }
+
+    /**
+     * @return the number of plaintext bytes decrypted
+     */
+    public long getPlaintextBytesDecrypted() {
+        return plaintextBytesDecrypted;
+    }
+
+    /**
+     * @return the number of envelope bytes read
+     */
+    public long getEnvelopeBytesRead() {
+        return envelopeBytesRead;
+    }
+
+}
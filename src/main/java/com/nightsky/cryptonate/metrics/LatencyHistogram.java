@@ -0,0 +1,99 @@
+package com.nightsky.cryptonate.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, such as latencies in
+ * nanoseconds, with log-linear buckets of fixed bounds: values below 8 have
+ * a bucket each, and every power of two above is split into 8 buckets of
+ * equal width. A value is off its bucket's bounds by at most 12.5%, and all
+ * of the <code>long</code> range fits into {@link #BUCKETS} buckets, so
+ * histograms of different sources can be added bucket by bucket.
+ *
+ * @author Chris
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    public static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param value the value to record; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if ( value < 0 )
+            value = 0;
+
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * The snapshot is not atomic; values recorded while it is taken may be
+     * missing from some of its statistics.
+     *
+     * @return the counts of the buckets and the statistics of the values
+     * recorded so far
+     */
+    public HistogramSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets[i] = counts.get(i);
+        }
+
+        return new HistogramSnapshot(buckets, sum.sum(), max.get());
+    }
+
+    /**
+     * @param value a non-negative value
+     * @return the index of the bucket of the value
+     */
+    public static int bucketOf(long value) {
+        if ( value < SUB_BUCKETS )
+            return (int) value;
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the lowest value of the bucket
+     */
+    public static long lowerBoundOf(int bucket) {
+        if ( bucket < 0 || bucket >= BUCKETS )
+            throw new IllegalArgumentException(String.format("Invalid bucket: %d", bucket));
+
+        if ( bucket < SUB_BUCKETS )
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the highest value of the bucket
+     */
+    public static long upperBoundOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBoundOf(bucket + 1) - 1;
+    }
+
+}
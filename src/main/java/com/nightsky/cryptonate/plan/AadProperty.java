@@ -0,0 +1,54 @@
+package com.nightsky.cryptonate.plan;
+
+/**
+ * An entity property whose value contributes to the AAD of an encrypted field.
+ *
+ * @author Chris
+ */
+public class AadProperty {
+
+    private final String name;
+
+    private final boolean identifier;
+
+    private final int stateIndex;
+
+    private final PropertyReader reader;
+
+    public AadProperty(String name, boolean identifier, int stateIndex, PropertyReader reader) {
+        this.name = name;
+        this.identifier = identifier;
+        this.stateIndex = stateIndex;
+        this.reader = reader;
+    }
+
+    /**
+     * @return the name of the property
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the property is the entity's <code>&#64;Id</code> field
+     */
+    public boolean isIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the index of the property in the Hibernate state array, or -1
+     * if the property is not part of the state array
+     */
+    public int getStateIndex() {
+        return stateIndex;
+    }
+
+    /**
+     * @return the reader used to get the property value from the entity
+     */
+    public PropertyReader getReader() {
+        return reader;
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.nightsky.cryptonate.plan;
+
+import com.nightsky.cryptonate.annotation.CachedDecryption;
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.cryptonate.annotation.DecryptionMode;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.convert.FieldCodec;
+import java.lang.reflect.Field;
+import java.sql.Blob;
+
+/**
+ * An entity field annotated with <code>&#64;Encrypted</code>, along with
+ * everything needed to encrypt or decrypt it without further reflection.
+ *
+ * @author Chris
+ */
+public class EncryptedField {
+
+    private final Field field;
+
+    private final Encrypted annotation;
+
+    private final int stateIndex;
+
+    private final AadProperty[] aadProperties;
+
+    private final boolean cached;
+
+    private final EnvelopeStorage storage;
+
+    private final FieldCodec<Object> codec;
+
+    /**
+     * @param codec the codec of the field, or null if the field is streamed
+     * or its type has no codec
+     */
+    public EncryptedField(Field field, int stateIndex, AadProperty[] aadProperties, FieldCodec<Object> codec) {
+        this.field = field;
+        this.annotation = field.getAnnotation(Encrypted.class);
+        this.stateIndex = stateIndex;
+        this.aadProperties = aadProperties;
+        this.cached = field.isAnnotationPresent(CachedDecryption.class)
+            || field.getDeclaringClass().isAnnotationPresent(CachedDecryption.class);
+        this.storage = annotation == null ? EnvelopeStorage.DEFAULT : annotation.storage();
+        this.codec = codec;
+
+        // Deferred decryption writes the plaintext straight into the field
+        if ( isDecryptedOnAccess() )
+            field.setAccessible(true);
+    }
+
+    /**
+     * @return the field name
+     */
+    public String getName() {
+        return field.getName();
+    }
+
+    /**
+     * @return the declared type of the field
+     */
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * @return the field
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return the <code>&#64;Encrypted</code> annotation of the field
+     */
+    public Encrypted getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * @return true if the field keeps its envelope until it is read
+     */
+    public boolean isDecryptedOnAccess() {
+        return annotation != null && annotation.decrypt() == DecryptionMode.ON_ACCESS;
+    }
+
+    /**
+     * @return true if the field is a <code>Blob</code>, encrypted and
+     * decrypted as a stream
+     */
+    public boolean isStreamed() {
+        return Blob.class.isAssignableFrom(field.getType());
+    }
+
+    /**
+     * @return the compression of the field
+     */
+    public Compression getCompression() {
+        return annotation == null ? Compression.NONE : annotation.compress();
+    }
+
+    /**
+     * @return the size, in bytes, from which values of the field are compressed
+     */
+    public int getCompressionThreshold() {
+        return annotation == null ? 0 : annotation.compressionThreshold();
+    }
+
+    /**
+     * @return the envelope storage requested by the field
+     */
+    public EnvelopeStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return true if decrypted values of the field may be cached
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return the codec of the field, or null if none was resolved when the
+     * plan was built
+     */
+    public FieldCodec<Object> getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the index of the field in the Hibernate state array, or -1 if
+     * the field is not part of the state array
+     */
+    public int getStateIndex() {
+        return stateIndex;
+    }
+
+    /**
+     * @return the properties used to generate AAD, in declaration order
+     */
+    public AadProperty[] getAadProperties() {
+        return aadProperties;
+    }
+
+}
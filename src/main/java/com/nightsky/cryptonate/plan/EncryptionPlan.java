@@ -0,0 +1,138 @@
+package com.nightsky.cryptonate.plan;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.convert.FieldCodec;
+import com.nightsky.cryptonate.convert.FieldCodecs;
+import java.lang.reflect.Field;
+import java.sql.Blob;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.Id;
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * The precomputed encryption metadata of an entity class: its encrypted
+ * fields, their positions in the Hibernate state array and the accessors of
+ * their AAD properties and their codecs. A plan is immutable and may be shared between threads.
+ *
+ * @author Chris
+ */
+public class EncryptionPlan {
+
+    private static final EncryptedField[] NO_FIELDS = new EncryptedField[0];
+
+    private final Class<?> entityClass;
+
+    private final String idFieldName;
+
+    private final EncryptedField[] fields;
+
+    private EncryptionPlan(Class<?> entityClass, String idFieldName, EncryptedField[] fields) {
+        this.entityClass = entityClass;
+        this.idFieldName = idFieldName;
+        this.fields = fields;
+    }
+
+    /**
+     * Builds the plan of an entity class.
+     *
+     * @param entityClass the entity class
+     * @param propertyNames the property names of the Hibernate state array, or
+     * null if the state array layout is unknown
+     * @param fieldCodecs the codecs to resolve the field codecs from, or null
+     * to leave them unresolved
+     * @return the plan
+     */
+    public static EncryptionPlan build(Class<?> entityClass, String[] propertyNames, FieldCodecs fieldCodecs) {
+        Field[] declaredFields = entityClass.getDeclaredFields();
+
+        // propertyNames and the state array do not contain the @Id field
+        String idFieldName = null;
+        for (Field field : declaredFields) {
+            if ( field.isAnnotationPresent(Id.class) ) {
+                idFieldName = field.getName();
+                break;
+            }
+        }
+
+        // Prefer the getters generated at compile time over reflection
+        PropertyReaders generatedReaders = GeneratedPropertyReaders.find(entityClass);
+
+        List<EncryptedField> fields = new ArrayList<>();
+        for (Field field : declaredFields) {
+            if ( field.isAnnotationPresent(Encrypted.class) ) {
+                String[] aadFieldNames = field.getAnnotation(Encrypted.class).aadFieldNames();
+                AadProperty[] aadProperties = new AadProperty[aadFieldNames == null ? 0 : aadFieldNames.length];
+
+                for (int i = 0; i < aadProperties.length; ++i) {
+                    String name = aadFieldNames[i];
+                    aadProperties[i] = new AadProperty(
+                        name,
+                        name.equals(idFieldName),
+                        indexOf(propertyNames, name),
+                        readerFor(entityClass, generatedReaders, name));
+                }
+
+                FieldCodec<Object> codec = fieldCodecs == null || Blob.class.isAssignableFrom(field.getType())
+                    ? null
+                    : fieldCodecs.codecFor(field.getType());
+
+                fields.add(new EncryptedField(field, indexOf(propertyNames, field.getName()), aadProperties, codec));
+            }
+        }
+
+        return new EncryptionPlan(entityClass, idFieldName, fields.isEmpty() ? NO_FIELDS : fields.toArray(NO_FIELDS));
+    }
+
+    private static PropertyReader readerFor(Class<?> entityClass, PropertyReaders generatedReaders, String name) {
+        PropertyReader reader = generatedReaders == null ? null : generatedReaders.forProperty(name);
+        return reader != null ? reader : ReflectivePropertyReaders.forProperty(entityClass, name);
+    }
+
+    private static int indexOf(String[] propertyNames, String name) {
+        return propertyNames == null ? -1 : ArrayUtils.indexOf(propertyNames, name);
+    }
+
+    /**
+     * @param field a field of the entity class
+     * @return the encrypted field of this plan that corresponds to the given
+     * field, or null if the field is not encrypted
+     */
+    public EncryptedField getField(Field field) {
+        for (EncryptedField encryptedField : fields) {
+            if ( encryptedField.getField().equals(field) )
+                return encryptedField;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the entity class
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the name of the <code>&#64;Id</code> field, or null if there is none
+     */
+    public String getIdFieldName() {
+        return idFieldName;
+    }
+
+    /**
+     * @return the encrypted fields, in declaration order
+     */
+    public EncryptedField[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if the entity class has no encrypted fields
+     */
+    public boolean isEmpty() {
+        return fields.length == 0;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.nightsky.cryptonate.plan;
+
+import com.nightsky.cryptonate.convert.FieldCodecs;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Caches one {@link EncryptionPlan} per entity class and entity persister.
+ * Plans are built on first use, with the codecs their fields resolve to, and
+ * reused by every subsequent event.
+ *
+ * @author Chris
+ */
+public class EncryptionPlanCache {
+
+    private final ConcurrentMap<PlanKey, EncryptionPlan> plans;
+
+    private final FieldCodecs fieldCodecs;
+
+    /**
+     * @param fieldCodecs the codecs to resolve the field codecs from
+     */
+    public EncryptionPlanCache(FieldCodecs fieldCodecs) {
+        this.plans = new ConcurrentHashMap<>();
+        this.fieldCodecs = fieldCodecs;
+    }
+
+    public EncryptionPlan get(Class<?> entityClass, EntityPersister persister) {
+        PlanKey key = new PlanKey(entityClass, persister);
+        EncryptionPlan plan = plans.get(key);
+
+        if ( plan == null ) {
+            plan = EncryptionPlan.build(entityClass, persister.getEntityMetamodel().getPropertyNames(), fieldCodecs);
+            EncryptionPlan existing = plans.putIfAbsent(key, plan);
+            if ( existing != null )
+                plan = existing;
+        }
+
+        return plan;
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    private static final class PlanKey {
+
+        private final Class<?> entityClass;
+
+        private final EntityPersister persister;
+
+        private PlanKey(Class<?> entityClass, EntityPersister persister) {
+            this.entityClass = entityClass;
+            this.persister = persister;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityClass.hashCode() + System.identityHashCode(persister);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( this == obj )
+                return true;
+
+            if ( !(obj instanceof PlanKey) )
+                return false;
+
+            PlanKey other = (PlanKey) obj;
+            return entityClass == other.entityClass && persister == other.persister;
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.nightsky.cryptonate.plan;
+
+/**
+ * Locates the {@link PropertyReaders} generated for an entity class by
+ * {@link com.nightsky.cryptonate.processor.EncryptedFieldProcessor}.
+ *
+ * @author Chris
+ */
+public class GeneratedPropertyReaders {
+
+    public static final String CLASS_NAME_SUFFIX = "_CryptonateReaders";
+
+    /**
+     * Returns the name of the class generated for an entity class. The
+     * generated class is a top-level class in the package of the entity;
+     * the names of enclosing classes are joined with underscores.
+     *
+     * @param binarySimpleName the binary name of the entity class without its
+     * package (<code>Outer$Inner</code> for nested classes)
+     * @return the simple name of the generated class
+     */
+    public static String simpleNameFor(String binarySimpleName) {
+        return binarySimpleName.replace('$', '_') + CLASS_NAME_SUFFIX;
+    }
+
+    /**
+     * @param entityClass the entity class
+     * @return the generated readers of the entity class, or null if the class
+     * was not compiled with the annotation processor
+     */
+    public static PropertyReaders find(Class<?> entityClass) {
+        String packageName = entityClass.getPackage() == null ? "" : entityClass.getPackage().getName();
+        String binarySimpleName = packageName.isEmpty()
+            ? entityClass.getName()
+            : entityClass.getName().substring(packageName.length() + 1);
+        String simpleName = simpleNameFor(binarySimpleName);
+        String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        try {
+            Class<?> readersClass = Class.forName(className, true, entityClass.getClassLoader());
+            return (PropertyReaders) readersClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            String msg = String.format("Failed to instantiate generated property readers: %s", className);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+}
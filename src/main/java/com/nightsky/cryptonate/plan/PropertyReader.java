@@ -0,0 +1,15 @@
+package com.nightsky.cryptonate.plan;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Reads a single property value from an entity instance.
+ *
+ * @author Chris
+ */
+public interface PropertyReader {
+
+    public Object read(Object entity)
+        throws IllegalAccessException, InvocationTargetException, NoSuchMethodException;
+
+}
@@ -0,0 +1,19 @@
+package com.nightsky.cryptonate.plan;
+
+/**
+ * Supplies {@link PropertyReader}s for the properties of one entity class.
+ * Implementations are generated at compile time by
+ * {@link com.nightsky.cryptonate.processor.EncryptedFieldProcessor} and read
+ * properties by calling their getters directly.
+ *
+ * @author Chris
+ */
+public interface PropertyReaders {
+
+    /**
+     * @param propertyName the name of a property
+     * @return a reader for the property, or null if none was generated
+     */
+    public PropertyReader forProperty(String propertyName);
+
+}
@@ -0,0 +1,37 @@
+package com.nightsky.cryptonate.plan;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * Creates {@link PropertyReader}s that use reflection. The getter of a simple
+ * property is resolved once, when the reader is created. Property names that
+ * cannot be resolved to a getter (nested or indexed names, for example) fall
+ * back to <code>PropertyUtils.getProperty</code>.
+ *
+ * @author Chris
+ */
+public class ReflectivePropertyReaders {
+
+    public static PropertyReader forProperty(Class<?> beanClass, String propertyName) {
+        final Method getter = findGetter(beanClass, propertyName);
+
+        if ( getter != null )
+            return (entity) -> getter.invoke(entity);
+
+        return (entity) -> PropertyUtils.getProperty(entity, propertyName);
+    }
+
+    private static Method findGetter(Class<?> beanClass, String propertyName) {
+        for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+            if ( descriptor.getName().equals(propertyName) && descriptor.getReadMethod() != null ) {
+                return MethodUtils.getAccessibleMethod(beanClass, descriptor.getReadMethod());
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.nightsky.cryptonate.processor;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.plan.GeneratedPropertyReaders;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@link com.nightsky.cryptonate.plan.PropertyReaders} class for
+ * every class with <code>&#64;Encrypted</code> fields. The generated class
+ * reads the properties named in <code>aadFieldNames</code> by calling their
+ * getters directly, so that AAD can be built without bean introspection.
+ *
+ * <p>
+ *   Properties without an accessible getter (private getters, nested
+ *   property names, etc.) are left out of the generated class; the
+ *   <code>CryptoEventListener</code> reads them reflectively, as it does for
+ *   classes that were not compiled with this processor.
+ * </p>
+ *
+ * @author Chris
+ */
+@SupportedAnnotationTypes("com.nightsky.cryptonate.annotation.Encrypted")
+public class EncryptedFieldProcessor extends AbstractProcessor {
+
+    private static final String READERS_INTERFACE = "com.nightsky.cryptonate.plan.PropertyReaders";
+
+    private static final String READER_INTERFACE = "com.nightsky.cryptonate.plan.PropertyReader";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, Set<String>> aadPropertiesByType = new LinkedHashMap<>();
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(Encrypted.class)) {
+            if ( element.getKind() != ElementKind.FIELD )
+                continue;
+
+            TypeElement type = (TypeElement) element.getEnclosingElement();
+            Set<String> aadProperties = aadPropertiesByType.get(type);
+
+            if ( aadProperties == null ) {
+                aadProperties = new LinkedHashSet<>();
+                aadPropertiesByType.put(type, aadProperties);
+            }
+
+            for (String name : element.getAnnotation(Encrypted.class).aadFieldNames()) {
+                aadProperties.add(name);
+            }
+        }
+
+        for (Map.Entry<TypeElement, Set<String>> entry : aadPropertiesByType.entrySet()) {
+            TypeElement type = entry.getKey();
+
+            if ( !isAccessibleFromPackage(type) ) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "Class is not accessible from its package; AAD properties will be read reflectively", type);
+                continue;
+            }
+
+            Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+            for (String name : entry.getValue()) {
+                ExecutableElement getter = findGetter(type, name);
+
+                if ( getter == null ) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        String.format("No accessible getter for AAD property '%s'; it will be read reflectively", name), type);
+                } else {
+                    getters.put(name, getter);
+                }
+            }
+
+            writeReaders(type, getters);
+        }
+
+        return false;
+    }
+
+    private boolean isAccessibleFromPackage(TypeElement type) {
+        Element element = type;
+
+        while ( element instanceof TypeElement ) {
+            if ( element.getModifiers().contains(Modifier.PRIVATE) )
+                return false;
+
+            if ( ((TypeElement) element).getNestingKind() == NestingKind.LOCAL
+                || ((TypeElement) element).getNestingKind() == NestingKind.ANONYMOUS )
+                return false;
+
+            element = element.getEnclosingElement();
+        }
+
+        return true;
+    }
+
+    private ExecutableElement findGetter(TypeElement type, String propertyName) {
+        if ( propertyName.isEmpty() || !SourceVersion.isIdentifier(propertyName) )
+            return null;
+
+        String suffix = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+        Set<String> candidates = new LinkedHashSet<>();
+        candidates.add("get" + suffix);
+        candidates.add("is" + suffix);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            String methodName = method.getSimpleName().toString();
+
+            if ( !candidates.contains(methodName) || !method.getParameters().isEmpty() )
+                continue;
+
+            if ( method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC) )
+                continue;
+
+            if ( method.getReturnType().getKind() == TypeKind.VOID )
+                continue;
+
+            if ( methodName.startsWith("is") && method.getReturnType().getKind() != TypeKind.BOOLEAN )
+                continue;
+
+            if ( !isAccessibleFrom(method, type) )
+                continue;
+
+            return method;
+        }
+
+        return null;
+    }
+
+    private boolean isAccessibleFrom(ExecutableElement method, TypeElement type) {
+        if ( method.getModifiers().contains(Modifier.PUBLIC) )
+            return true;
+
+        // Package-private and protected members are accessible from the generated class only
+        // when they are declared in the same package
+        PackageElement declaringPackage = processingEnv.getElementUtils().getPackageOf(method);
+        PackageElement typePackage = processingEnv.getElementUtils().getPackageOf(type);
+        return declaringPackage.getQualifiedName().contentEquals(typePackage.getQualifiedName());
+    }
+
+    private void writeReaders(TypeElement type, Map<String, ExecutableElement> getters) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String binarySimpleName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String simpleName = GeneratedPropertyReaders.simpleNameFor(binarySimpleName);
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        String entityType = type.getQualifiedName().toString();
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            PrintWriter out = new PrintWriter(writer);
+
+            if ( !packageName.isEmpty() ) {
+                out.printf("package %s;%n%n", packageName);
+            }
+
+            out.printf("/**%n");
+            out.printf(" * Reads the AAD properties of {@link %s}.%n", entityType);
+            out.printf(" * Generated by %s; do not edit.%n", EncryptedFieldProcessor.class.getName());
+            out.printf(" */%n");
+            out.printf("public final class %s implements %s {%n%n", simpleName, READERS_INTERFACE);
+            out.printf("    @Override%n");
+            out.printf("    public %s forProperty(String propertyName) {%n", READER_INTERFACE);
+            out.printf("        switch (propertyName) {%n");
+
+            for (Map.Entry<String, ExecutableElement> getter : getters.entrySet()) {
+                out.printf("            case \"%s\":%n", getter.getKey());
+                out.printf("                return (entity) -> ((%s) entity).%s();%n", entityType, getter.getValue().getSimpleName());
+            }
+
+            out.printf("            default:%n");
+            out.printf("                return null;%n");
+            out.printf("        }%n");
+            out.printf("    }%n%n");
+            out.printf("}%n");
+            out.flush();
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                String.format("Failed to generate %s: %s", qualifiedName, e.getMessage()), type);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.keycache.VersionedSecretKey;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Emits JDK Flight Recorder events for the work of a
+ * {@link CryptoEventListener}. This is the Java 11 version, packaged in the
+ * multi-release jar; it replaces the Java 8 version, which emits nothing.
+ *
+ * <p>
+ *   Encryption, decryption and key lookup events have a default threshold
+ *   of 1 ms, so that they can stay enabled in production; a JFR settings
+ *   file can lower it, for example
+ *   <code>com.nightsky.cryptonate.EntityEncryption#threshold=0 ms</code>.
+ *   When an event type is disabled, its <code>begin</code> method returns
+ *   null and the listener skips the rest.
+ * </p>
+ *
+ * @author Chris
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    static Object beginEncryption() {
+        EntityEncryption event = new EntityEncryption();
+
+        if ( !event.isEnabled() )
+            return null;
+
+        event.begin();
+        return event;
+    }
+
+    static void commitEncryption(Object event, Class<?> entityClass, int fields, long envelopeBytes) {
+        EntityEncryption encryption = (EntityEncryption) event;
+        encryption.end();
+
+        if ( encryption.shouldCommit() ) {
+            encryption.entityClass = entityClass;
+            encryption.fields = fields;
+            encryption.envelopeBytes = envelopeBytes;
+            encryption.commit();
+        }
+    }
+
+    static Object beginDecryption() {
+        EntityDecryption event = new EntityDecryption();
+
+        if ( !event.isEnabled() )
+            return null;
+
+        event.begin();
+        return event;
+    }
+
+    static void commitDecryption(Object event, Class<?> entityClass, int fields, long envelopeBytes) {
+        EntityDecryption decryption = (EntityDecryption) event;
+        decryption.end();
+
+        if ( decryption.shouldCommit() ) {
+            decryption.entityClass = entityClass;
+            decryption.fields = fields;
+            decryption.envelopeBytes = envelopeBytes;
+            decryption.commit();
+        }
+    }
+
+    static Object beginKeyLookup() {
+        KeyLookup event = new KeyLookup();
+
+        if ( !event.isEnabled() )
+            return null;
+
+        event.begin();
+        return event;
+    }
+
+    static void commitKeyLookup(Object event, String keyName, int keyVersion, VersionedSecretKey secretKey) {
+        KeyLookup lookup = (KeyLookup) event;
+        lookup.end();
+
+        if ( lookup.shouldCommit() ) {
+            lookup.keyName = keyName;
+            lookup.keyVersion = secretKey != null ? secretKey.getVersion() : keyVersion;
+            lookup.found = secretKey != null;
+            lookup.commit();
+        }
+    }
+
+    static void failure(Class<?> entityClass, String fieldName, boolean encryption, Throwable cause) {
+        CryptoFailure event = new CryptoFailure();
+
+        if ( !event.isEnabled() )
+            return;
+
+        event.entityClass = entityClass;
+        event.fieldName = fieldName;
+        event.operation = encryption ? "encrypt" : "decrypt";
+        event.cause = cause.getClass().getName();
+        event.message = cause.getMessage();
+        event.commit();
+    }
+
+    @Name("com.nightsky.cryptonate.EntityEncryption")
+    @Label("Entity Encryption")
+    @Description("Encryption of the fields of an entity before an insert or update")
+    @Category("Cryptonate")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class EntityEncryption extends Event {
+
+        @Label("Entity Class")
+        Class<?> entityClass;
+
+        @Label("Fields")
+        int fields;
+
+        @Label("Envelope Size")
+        @Description("Size of the stored envelopes, in bytes or Base64 characters")
+        @DataAmount
+        long envelopeBytes;
+
+    }
+
+    @Name("com.nightsky.cryptonate.EntityDecryption")
+    @Label("Entity Decryption")
+    @Description("Decryption of the fields of an entity when it is loaded")
+    @Category("Cryptonate")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class EntityDecryption extends Event {
+
+        @Label("Entity Class")
+        Class<?> entityClass;
+
+        @Label("Fields")
+        int fields;
+
+        @Label("Envelope Size")
+        @Description("Size of the stored envelopes, in bytes or Base64 characters")
+        @DataAmount
+        long envelopeBytes;
+
+    }
+
+    @Name("com.nightsky.cryptonate.KeyLookup")
+    @Label("Key Lookup")
+    @Description("Lookup of a key in the versioned secret key cache")
+    @Category("Cryptonate")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class KeyLookup extends Event {
+
+        @Label("Key Name")
+        String keyName;
+
+        @Label("Key Version")
+        int keyVersion;
+
+        @Label("Found")
+        boolean found;
+
+    }
+
+    @Name("com.nightsky.cryptonate.CryptoFailure")
+    @Label("Crypto Failure")
+    @Description("A field that failed to encrypt or decrypt")
+    @Category("Cryptonate")
+    static class CryptoFailure extends Event {
+
+        @Label("Entity Class")
+        Class<?> entityClass;
+
+        @Label("Field")
+        String fieldName;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Cause")
+        String cause;
+
+        @Label("Message")
+        String message;
+
+    }
+
+}
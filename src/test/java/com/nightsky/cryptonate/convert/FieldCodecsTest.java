@@ -0,0 +1,99 @@
+package com.nightsky.cryptonate.convert;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class FieldCodecsTest {
+
+    private final FieldCodecs subject = new FieldCodecs();
+
+    private enum Status { OPEN, CLOSED }
+
+    @Test
+    public void shouldRoundTripTheStandardTypes() {
+        Object[] values = {
+            "François", true, (short) -1234, 42, -7L, 1.5f, -2.25d,
+            new BigDecimal("-12345678901234567890.0042"), UUID.randomUUID(),
+            Instant.ofEpochSecond(1700000000L, 123456789), LocalDate.of(1999, 12, 31), Status.CLOSED
+        };
+
+        for (Object value : values) {
+            FieldCodec<Object> codec = subject.codecFor(value.getClass());
+            assertThat(codec.decode(codec.encode(value))).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void shouldEncodeLikeTheSpringConverters() {
+        DefaultConversionService spring = new DefaultConversionService();
+        ConverterSupport.addInternalConverters(spring);
+
+        for (Object value : new Object[] { "text", 42, -7L, 1.5f, -2.25d }) {
+            byte[] encoded = spring.convert(value, byte[].class);
+            assertThat(subject.codecFor(value.getClass()).encode(value)).isEqualTo(encoded);
+            assertThat(subject.codecFor(value.getClass()).decode(encoded)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void shouldDecodeSingleByteLegacyValues() {
+        assertThat(subject.codecFor(Short.class).decode(new byte[] { -3 })).isEqualTo((short) -3);
+        assertThat(subject.codecFor(BigDecimal.class).decode(new byte[] { 12 })).isEqualTo(BigDecimal.valueOf(12));
+    }
+
+    @Test
+    public void shouldUseWrapperCodecsForPrimitives() {
+        assertThat(subject.codecFor(int.class)).isSameAs(subject.codecFor(Integer.class));
+        assertThat(subject.codecFor(boolean.class)).isSameAs(subject.codecFor(Boolean.class));
+    }
+
+    @Test
+    public void shouldStoreEnumsByName() {
+        assertThat(subject.codecFor(Status.class).encode(Status.OPEN)).isEqualTo("OPEN".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldUseRegisteredCodecs() {
+        FieldCodec<StringBuilder> codec = new FieldCodec<StringBuilder>() {
+            @Override
+            public byte[] encode(StringBuilder value) {
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public StringBuilder decode(byte[] plaintext) {
+                return new StringBuilder(new String(plaintext, StandardCharsets.UTF_8));
+            }
+        };
+
+        subject.register(StringBuilder.class, codec);
+
+        assertThat(subject.codecFor(StringBuilder.class)).isSameAs(codec);
+    }
+
+    @Test
+    public void shouldRejectUnsupportedTypes() {
+        assertThat(subject.codecFor(Thread.class)).isNull();
+    }
+
+    @Test
+    public void shouldLeaveTheSharedConversionServiceAlone() {
+        new FieldCodecs();
+
+        assertThat(DefaultConversionService.getSharedInstance().convert(42, byte[].class)).isNotEqualTo(new byte[] { 0, 0, 0, 42 });
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class Base64StringsTest {
+
+    @Test
+    public void shouldDecodeLikeJdkDecoder() {
+        Random random = new Random(42);
+
+        for (int length = 0; length < 200; ++length) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            String padded = Base64.getEncoder().encodeToString(data);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(data);
+
+            assertThat(Base64Strings.decode(padded)).isEqualTo(data);
+            assertThat(Base64Strings.decode(unpadded)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidInput() {
+        assertThatThrownBy(() -> Base64Strings.decode("abc=d")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Strings.decode("ab=")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Strings.decode("a")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Strings.decode("ab-_")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base64Strings.decode("abcdéfgh")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldDecodePrefixWithoutDecodingEverything() {
+        Random random = new Random(42);
+        byte[] data = new byte[36];
+        random.nextBytes(data);
+        String encoded = Base64.getEncoder().encodeToString(data);
+
+        for (int length = 0; length <= data.length; ++length) {
+            assertThat(Base64Strings.decodePrefix(encoded, length)).isEqualTo(Arrays.copyOf(data, length));
+        }
+
+        assertThat(Base64Strings.decodePrefix(encoded, data.length + 1)).isEqualTo(data);
+        assertThatThrownBy(() -> Base64Strings.decodePrefix("-AAA", 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.nightsky.cryptonate.crypto;
+
+import com.nightsky.cryptonate.crypto.ProviderSelectionReport.Candidate;
+import com.nightsky.cryptonate.crypto.ProviderSelectionReport.Status;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.spec.AlgorithmParameterSpec;
+import java.time.Duration;
+import java.util.Collections;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class CipherProviderSelectorTest {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final Duration MEASUREMENT_TIME = Duration.ofMillis(20);
+
+    private String defaultProviderName;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        defaultProviderName = Cipher.getInstance(TRANSFORMATION).getProvider().getName();
+        Security.addProvider(new TamperingProvider());
+    }
+
+    @After
+    public void tearDown() {
+        Security.removeProvider(TamperingProvider.NAME);
+    }
+
+    @Test
+    public void shouldSelectCompliantProviderAndRejectTamperingOne() {
+        CipherProviderSelector subject = new CipherProviderSelector(TRANSFORMATION, 256, null, MEASUREMENT_TIME);
+
+        ProviderSelectionReport report = subject.select();
+
+        assertThat(report.getSelectedProviderName()).isEqualTo(defaultProviderName);
+        assertThat(report.getCandidates()).hasSize(Security.getProviders().length);
+
+        Candidate selected = candidate(report, defaultProviderName);
+        assertThat(selected.getStatus()).isEqualTo(Status.COMPLIANT);
+        assertThat(selected.getRoundTripsPerSecond()).isPositive();
+        assertThat(selected.getBytesPerSecond()).isEqualTo(selected.getRoundTripsPerSecond() * CipherProviderSelector.SAMPLE_SIZE);
+
+        Candidate tampering = candidate(report, TamperingProvider.NAME);
+        assertThat(tampering.getStatus()).isEqualTo(Status.MISMATCH);
+        assertThat(tampering.getReason()).contains(defaultProviderName);
+
+        assertThat(report.toString()).startsWith("Selected security provider " + defaultProviderName);
+    }
+
+    @Test
+    public void shouldOnlySelectAllowedProviders() {
+        CipherProviderSelector subject = new CipherProviderSelector(TRANSFORMATION, 256,
+            Collections.singleton(TamperingProvider.NAME), MEASUREMENT_TIME);
+
+        ProviderSelectionReport report = subject.select();
+
+        // The only allowed provider disagrees with the others
+        assertThat(report.getSelectedProviderName()).isNull();
+        assertThat(candidate(report, defaultProviderName).getStatus()).isEqualTo(Status.NOT_ALLOWED);
+        assertThat(candidate(report, TamperingProvider.NAME).getStatus()).isEqualTo(Status.MISMATCH);
+    }
+
+    private static Candidate candidate(ProviderSelectionReport report, String providerName) {
+        return report.getCandidates().stream()
+            .filter(c -> c.getProviderName().equals(providerName))
+                .findFirst()
+                .get();
+    }
+
+    public static class TamperingProvider extends Provider {
+
+        static final String NAME = "Tampering";
+
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("deprecation")
+        public TamperingProvider() {
+            super(NAME, 1.0, "AES/GCM that flips a bit of every tag");
+            put("Cipher." + TRANSFORMATION, TamperingCipher.class.getName());
+        }
+
+    }
+
+    /**
+     * Delegates to the AES/GCM cipher of SunJCE, and flips the last bit of
+     * every envelope it encrypts.
+     */
+    public static class TamperingCipher extends CipherSpi {
+
+        private final Cipher delegate;
+
+        private int mode;
+
+        public TamperingCipher() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+            delegate = Cipher.getInstance(TRANSFORMATION, "SunJCE");
+        }
+
+        @Override
+        protected void engineSetMode(String mode) {  }
+
+        @Override
+        protected void engineSetPadding(String padding) {  }
+
+        @Override
+        protected int engineGetBlockSize() {
+            return delegate.getBlockSize();
+        }
+
+        @Override
+        protected int engineGetOutputSize(int inputLen) {
+            return delegate.getOutputSize(inputLen);
+        }
+
+        @Override
+        protected byte[] engineGetIV() {
+            return delegate.getIV();
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+            mode = opmode;
+            delegate.init(opmode, key, random);
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException
+        {
+            mode = opmode;
+            delegate.init(opmode, key, params, random);
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException
+        {
+            mode = opmode;
+            delegate.init(opmode, key, params, random);
+        }
+
+        @Override
+        protected void engineUpdateAAD(byte[] src, int offset, int len) {
+            delegate.updateAAD(src, offset, len);
+        }
+
+        @Override
+        protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+            return delegate.update(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException
+        {
+            return delegate.update(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+            throws IllegalBlockSizeException, BadPaddingException
+        {
+            byte[] output = delegate.doFinal(input, inputOffset, inputLen);
+
+            if ( mode == Cipher.ENCRYPT_MODE )
+                output[output.length - 1] ^= 1;
+
+            return output;
+        }
+
+        @Override
+        protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException
+        {
+            int length = delegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+
+            if ( mode == Cipher.ENCRYPT_MODE )
+                output[outputOffset + length - 1] ^= 1;
+
+            return length;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class CounterIvGeneratorTest {
+
+    @Test
+    public void shouldWriteFixedFieldFollowedByCounter() {
+        CounterIvGenerator subject = new CounterIvGenerator(0x01020304);
+        byte[] buffer = new byte[20];
+
+        subject.generate(buffer, 4);
+        long first = ByteBuffer.wrap(buffer, 8, 8).getLong();
+        subject.generate(buffer, 4);
+
+        ByteBuffer iv = ByteBuffer.wrap(buffer, 4, Envelope.IV_LENGTH);
+        assertThat(iv.getInt()).isEqualTo(0x01020304);
+        assertThat(iv.getLong()).isEqualTo(first + 1);
+        assertThat(buffer[0]).isZero();
+        assertThat(buffer[16]).isZero();
+    }
+
+    @Test
+    public void shouldNotReplayCounterAfterRestart() {
+        byte[] before = new byte[Envelope.IV_LENGTH];
+        byte[] after = new byte[Envelope.IV_LENGTH];
+
+        new CounterIvGenerator(0x01020304).generate(before, 0);
+        new CounterIvGenerator(0x01020304).generate(after, 0);
+
+        assertThat(after).isNotEqualTo(before);
+    }
+
+    @Test
+    public void shouldNeverRepeatAnIv() {
+        CounterIvGenerator subject = new CounterIvGenerator();
+        Set<ByteBuffer> ivs = new HashSet<>();
+
+        for (int i = 0; i < 10000; ++i) {
+            byte[] iv = new byte[Envelope.IV_LENGTH];
+            subject.generate(iv, 0);
+            assertThat(ivs.add(ByteBuffer.wrap(iv))).isTrue();
+            assertThat(ByteBuffer.wrap(iv).getInt()).isEqualTo(subject.getFixedField());
+        }
+    }
+
+}
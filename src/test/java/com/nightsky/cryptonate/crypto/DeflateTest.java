@@ -0,0 +1,49 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class DeflateTest {
+
+    @Test
+    public void shouldRoundTripCompressiblePlaintexts() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            text.append("{\"line\":").append(i).append(",\"note\":\"called the customer back\"}");
+        }
+        byte[] plaintext = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] payload = Deflate.compress(plaintext);
+
+        assertThat(payload.length).isLessThan(plaintext.length / 4);
+        assertThat(Deflate.decompress(payload)).isEqualTo(plaintext);
+    }
+
+    @Test
+    public void shouldNotCompressIncompressiblePlaintexts() {
+        byte[] plaintext = new byte[4096];
+        new SecureRandom().nextBytes(plaintext);
+
+        assertThat(Deflate.compress(plaintext)).isNull();
+        assertThat(Deflate.compress(new byte[0])).isNull();
+    }
+
+    @Test
+    public void shouldRejectPayloadsOfTheWrongLength() {
+        byte[] payload = Deflate.compress(new byte[1000]);
+        payload[0] = (byte) 0xE9;   // varint 1001 starts 0xE9 0x07; 1000 is 0xE8 0x07
+
+        assertThatThrownBy(() -> Deflate.decompress(payload)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
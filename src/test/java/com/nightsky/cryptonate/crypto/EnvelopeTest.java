@@ -0,0 +1,69 @@
+package com.nightsky.cryptonate.crypto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EnvelopeTest {
+
+    @Test
+    public void shouldReadBackV2Headers() {
+        int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+
+        for (int keyCode : values) {
+            for (int keyVersion : values) {
+                byte[] envelope = new byte[Envelope.MAXIMUM_HEADER_LENGTH + Envelope.IV_LENGTH];
+                int ivOffset = Envelope.writeHeader(envelope, EnvelopeFormat.V2, 0, keyCode, keyVersion);
+
+                assertThat(ivOffset).isEqualTo(Envelope.headerLength(EnvelopeFormat.V2, keyCode, keyVersion));
+                assertThat(Envelope.formatOf(envelope)).isEqualTo(EnvelopeFormat.V2);
+                assertThat(Envelope.keyCodeOf(envelope)).isEqualTo(keyCode);
+                assertThat(Envelope.keyVersionOf(envelope)).isEqualTo(keyVersion);
+                assertThat(Envelope.ivOffsetOf(envelope)).isEqualTo(ivOffset);
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteFourByteHeadersForSmallKeyCodesAndVersions() {
+        assertThat(Envelope.headerLength(EnvelopeFormat.V2, 1, 127)).isEqualTo(4);
+        assertThat(Envelope.headerLength(EnvelopeFormat.V1, 1, 127)).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldReadV1Headers() {
+        byte[] envelope = new byte[Envelope.MINIMUM_LENGTH];
+        Envelope.writeHeader(envelope, EnvelopeFormat.V1, 0, 3, 7);
+
+        assertThat(Envelope.formatOf(envelope)).isEqualTo(EnvelopeFormat.V1);
+        assertThat(Envelope.flagsOf(envelope)).isZero();
+        assertThat(Envelope.keyCodeOf(envelope)).isEqualTo(3);
+        assertThat(Envelope.keyVersionOf(envelope)).isEqualTo(7);
+        assertThat(Envelope.ivOffsetOf(envelope)).isEqualTo(Envelope.IV_OFFSET);
+    }
+
+    @Test
+    public void shouldDetectKeyCodesCollidingWithTheV2Marker() {
+        assertThat(Envelope.collidesWithV2Marker(0x82000000)).isTrue();
+        assertThat(Envelope.collidesWithV2Marker(0x82FFFFFF)).isTrue();
+        assertThat(Envelope.collidesWithV2Marker(0x00000082)).isFalse();
+        assertThat(Envelope.collidesWithV2Marker(-1)).isFalse();
+    }
+
+    @Test
+    public void shouldRejectTruncatedV2Headers() {
+        byte[] envelope = { Envelope.V2_MARKER, 0, (byte) 0x80 };
+
+        assertThatThrownBy(() -> Envelope.keyCodeOf(envelope))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("truncated");
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.security.GeneralSecurityException;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class HkdfTest {
+
+    @Test
+    public void shouldMatchRfc5869TestCase1() throws GeneralSecurityException {
+        byte[] ikm = hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] salt = hex("000102030405060708090a0b0c");
+        byte[] info = hex("f0f1f2f3f4f5f6f7f8f9");
+
+        assertThat(Hkdf.derive(ikm, salt, info, 42)).isEqualTo(hex(
+            "3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865"));
+        assertThat(Hkdf.derive(ikm, salt, info, 16)).isEqualTo(hex("3cb25f25faacd57a90434f64d0362f2a"));
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        return bytes;
+    }
+
+}
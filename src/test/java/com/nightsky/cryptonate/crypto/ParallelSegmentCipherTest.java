@@ -0,0 +1,160 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class ParallelSegmentCipherTest {
+
+    private static final int SEGMENT_SIZE = 32;
+
+    private static final byte[] AAD = { 1, 2, 3 };
+
+    private final CipherProvider cipherProvider = new CipherProvider("AES/GCM/NoPadding", null);
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private final ParallelSegmentCipher subject = new ParallelSegmentCipher(cipherProvider, pool);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldRoundTripPlaintextsOfAnyLength() throws GeneralSecurityException {
+        for (int length : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 1000 }) {
+            byte[] plaintext = plaintext(length);
+            byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+            byte[] envelope = subject.encrypt(plaintext, header, key, AAD);
+
+            assertThat((long) envelope.length).isEqualTo(SegmentedEnvelope.envelopeLength(length, header.length, SEGMENT_SIZE));
+            assertThat(subject.decrypt(envelope, key, AAD)).isEqualTo(plaintext);
+        }
+    }
+
+    @Test
+    public void shouldMatchTheStreamedLayout() throws GeneralSecurityException, IOException {
+        byte[] plaintext = plaintext(1000);
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext, header, key, AAD);
+
+        InputStream body = new ByteArrayInputStream(envelope, header.length, envelope.length - header.length);
+        assertThat(readAll(new SegmentDecryptingInputStream(body, cipherProvider, key, header, AAD))).isEqualTo(plaintext);
+
+        byte[] streamed = readAll(new SegmentEncryptingInputStream(new ByteArrayInputStream(plaintext), cipherProvider, key, header, AAD));
+        assertThat(streamed).isEqualTo(envelope);
+    }
+
+    @Test
+    public void shouldRejectTruncatedEnvelopes() throws GeneralSecurityException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext(3 * SEGMENT_SIZE), header, key, AAD);
+
+        byte[] truncated = Arrays.copyOf(envelope, header.length + 2 * (SEGMENT_SIZE + Envelope.TAG_LENGTH));
+
+        assertThatThrownBy(() -> subject.decrypt(truncated, key, AAD))
+            .isInstanceOf(AEADBadTagException.class)
+            .hasMessageContaining("Segment 1");
+    }
+
+    @Test
+    public void shouldRejectReorderedSegments() throws GeneralSecurityException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext(3 * SEGMENT_SIZE), header, key, AAD);
+
+        int segmentLength = SEGMENT_SIZE + Envelope.TAG_LENGTH;
+        byte[] reordered = envelope.clone();
+        System.arraycopy(envelope, header.length, reordered, header.length + segmentLength, segmentLength);
+        System.arraycopy(envelope, header.length + segmentLength, reordered, header.length, segmentLength);
+
+        assertThatThrownBy(() -> subject.decrypt(reordered, key, AAD))
+            .isInstanceOf(AEADBadTagException.class)
+            .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    public void shouldEncryptSegmentsUnderAKeyOfTheEnvelope() throws GeneralSecurityException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext(SEGMENT_SIZE), header, key, AAD);
+        byte[] nonce = new byte[Envelope.IV_LENGTH];
+        SegmentedEnvelope.nonce(header, header.length, 0, true, nonce);
+
+        assertThatThrownBy(() -> openSegment(envelope, header, key, nonce)).isInstanceOf(AEADBadTagException.class);
+        assertThat(openSegment(envelope, header, SegmentedEnvelope.segmentKey(key, header), nonce)).isEqualTo(plaintext(SEGMENT_SIZE));
+
+        // Another salt derives another key
+        byte[] other = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        assertThat(SegmentedEnvelope.segmentKey(key, other).getEncoded()).isNotEqualTo(SegmentedEnvelope.segmentKey(key, header).getEncoded());
+    }
+
+    @Test
+    public void shouldRejectAnotherSalt() throws GeneralSecurityException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext(100), header, key, AAD);
+        envelope[header.length - SegmentedEnvelope.NONCE_PREFIX_LENGTH - 1] ^= 1;
+
+        assertThatThrownBy(() -> subject.decrypt(envelope, key, AAD))
+            .isInstanceOf(AEADBadTagException.class);
+    }
+
+    @Test
+    public void shouldRejectAnotherAad() throws GeneralSecurityException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = subject.encrypt(plaintext(100), header, key, AAD);
+
+        assertThatThrownBy(() -> subject.decrypt(envelope, key, new byte[] { 4 }))
+            .isInstanceOf(AEADBadTagException.class);
+    }
+
+    private byte[] openSegment(byte[] envelope, byte[] header, SecretKey segmentKey, byte[] nonce) throws GeneralSecurityException {
+        Cipher cipher = cipherProvider.get();
+        cipher.init(Cipher.DECRYPT_MODE, segmentKey, new GCMParameterSpec(Envelope.TAG_LENGTH * Byte.SIZE, nonce));
+        cipher.updateAAD(header);
+        cipher.updateAAD(AAD);
+        return cipher.doFinal(envelope, header.length, envelope.length - header.length);
+    }
+
+    private byte[] plaintext(int length) {
+        byte[] plaintext = new byte[length];
+        new Random(length).nextBytes(plaintext);
+        return plaintext;
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int n;
+
+        while ( (n = in.read(buffer)) >= 0 ) {
+            out.write(buffer, 0, n);
+        }
+
+        in.close();
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.function.Function;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class PlaintextCacheTest {
+
+    private static final Function<byte[], Object> TO_STRING = bytes -> new String(bytes, StandardCharsets.UTF_8);
+
+    @Test
+    public void shouldKeyByEnvelopeAndAad() {
+        PlaintextCache subject = PlaintextCache.builder().build();
+        byte[] aad = "id=1".getBytes(StandardCharsets.UTF_8);
+
+        subject.put(subject.keyFor("AAAA", aad), plaintext("secret"), "secret");
+
+        assertThat(subject.get(subject.keyFor("AAAA", aad), String.class, TO_STRING)).isEqualTo("secret");
+        assertThat(subject.get(subject.keyFor("AAAA", null), String.class, TO_STRING)).isNull();
+        assertThat(subject.get(subject.keyFor("AAAB", aad), String.class, TO_STRING)).isNull();
+        assertThat(subject.getHitCount()).isEqualTo(1);
+        assertThat(subject.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotReturnValuesOfAnotherType() {
+        PlaintextCache subject = PlaintextCache.builder().build();
+
+        subject.put(subject.keyFor("AAAA", null), plaintext("42"), "42");
+
+        assertThat(subject.get(subject.keyFor("AAAA", null), Integer.class, TO_STRING)).isNull();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedValues() {
+        PlaintextCache subject = PlaintextCache.builder()
+            .withMaximumSize(16)
+                .build();
+
+        for (int i = 0; i < 1000; ++i) {
+            subject.put(subject.keyFor("envelope" + i, null), plaintext("value" + i), "value" + i);
+        }
+
+        assertThat(subject.size()).isLessThanOrEqualTo(16);
+        assertThat(subject.getEvictionCount()).isEqualTo(1000 - subject.size());
+    }
+
+    @Test
+    public void shouldExpireValues() throws InterruptedException {
+        PlaintextCache subject = PlaintextCache.builder()
+            .withTimeToLive(Duration.ofMillis(1))
+                .build();
+
+        subject.put(subject.keyFor("AAAA", null), plaintext("secret"), "secret");
+        Thread.sleep(10);
+
+        assertThat(subject.get(subject.keyFor("AAAA", null), String.class, TO_STRING)).isNull();
+        assertThat(subject.size()).isZero();
+    }
+
+    @Test
+    public void shouldConvertValuesKeptOffHeap() {
+        PlaintextCache subject = PlaintextCache.builder()
+            .withOffHeapStorage(true)
+                .build();
+
+        subject.put(subject.keyFor("AAAA", null), plaintext("secret"), "secret");
+
+        Object value = subject.get(subject.keyFor("AAAA", null), String.class, TO_STRING);
+        assertThat(value).isEqualTo("secret").isNotSameAs("secret");
+
+        subject.clear();
+        assertThat(subject.get(subject.keyFor("AAAA", null), String.class, TO_STRING)).isNull();
+    }
+
+    @Test
+    public void shouldCopyByteArraysKeptOnHeap() {
+        PlaintextCache subject = PlaintextCache.builder().build();
+        byte[] value = plaintext("secret");
+
+        subject.put(subject.keyFor("AAAA", null), plaintext("secret"), value);
+        value[0] = 0;
+
+        byte[] first = (byte[]) subject.get(subject.keyFor("AAAA", null), byte[].class, bytes -> bytes);
+        first[1] = 0;
+
+        byte[] second = (byte[]) subject.get(subject.keyFor("AAAA", null), byte[].class, bytes -> bytes);
+        assertThat(second).isEqualTo(plaintext("secret")).isNotSameAs(first);
+    }
+
+    @Test
+    public void shouldOnlyShareImmutableTypes() {
+        assertThat(PlaintextCache.canShare(String.class)).isTrue();
+        assertThat(PlaintextCache.canShare(byte[].class)).isTrue();
+        assertThat(PlaintextCache.canShare(Date.class)).isFalse();
+        assertThat(PlaintextCache.canShare(StringBuilder.class)).isFalse();
+    }
+
+    private static byte[] plaintext(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
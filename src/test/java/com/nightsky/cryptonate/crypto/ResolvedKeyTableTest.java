@@ -0,0 +1,59 @@
+package com.nightsky.cryptonate.crypto;
+
+import static com.nightsky.cryptonate.factory.SecretKeyFactory.createAesKey;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyFactory.mockedVersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKey;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class ResolvedKeyTableTest {
+
+    private ResolvedKeyTable subject;
+
+    @Before
+    public void setUp() {
+        subject = new ResolvedKeyTable();
+    }
+
+    @Test
+    public void shouldResolveKeysByCodeAndVersion() {
+        VersionedSecretKey[][] keys = new VersionedSecretKey[10][5];
+
+        for (int code = 0; code < keys.length; ++code) {
+            for (int version = 0; version < keys[code].length; ++version) {
+                keys[code][version] = mockedVersionedSecretKey(createAesKey());
+                subject.put(code, version, keys[code][version]);
+            }
+        }
+
+        assertThat(subject.size()).isEqualTo(50);
+
+        for (int code = 0; code < keys.length; ++code) {
+            for (int version = 0; version < keys[code].length; ++version) {
+                assertThat(subject.get(code, version)).isSameAs(keys[code][version]);
+            }
+        }
+
+        assertThat(subject.get(10, 0)).isNull();
+        assertThat(subject.get(0, 5)).isNull();
+        assertThat(subject.get(-1, -1)).isNull();
+    }
+
+    @Test
+    public void shouldForgetKeysWhenCleared() {
+        subject.put(1, 1, mockedVersionedSecretKey(createAesKey()));
+        subject.clear();
+
+        assertThat(subject.get(1, 1)).isNull();
+        assertThat(subject.size()).isZero();
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.nightsky.cryptonate.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class SegmentedStreamTest {
+
+    private static final int SEGMENT_SIZE = 32;
+
+    private static final byte[] AAD = { 1, 2, 3 };
+
+    private final CipherProvider cipherProvider = new CipherProvider("AES/GCM/NoPadding", null);
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    public void shouldRoundTripPlaintextsOfAnyLength() throws IOException {
+        for (int length : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 1000 }) {
+            byte[] plaintext = plaintext(length);
+            byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+            byte[] envelope = encrypt(plaintext, header);
+
+            assertThat((long) envelope.length).isEqualTo(SegmentedEnvelope.envelopeLength(length, header.length, SEGMENT_SIZE));
+            assertThat(SegmentedEnvelope.plaintextLength(envelope.length, header.length, SEGMENT_SIZE)).isEqualTo(length);
+            assertThat(decrypt(envelope)).isEqualTo(plaintext);
+        }
+    }
+
+    @Test
+    public void shouldRejectTruncatedEnvelopes() throws IOException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = encrypt(plaintext(3 * SEGMENT_SIZE), header);
+
+        // Dropping the last segment leaves a valid, but not final, segment at the end
+        byte[] truncated = Arrays.copyOf(envelope, header.length + 2 * (SEGMENT_SIZE + Envelope.TAG_LENGTH));
+
+        assertThatThrownBy(() -> decrypt(truncated))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    public void shouldRejectReorderedSegments() throws IOException {
+        byte[] header = SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE);
+        byte[] envelope = encrypt(plaintext(3 * SEGMENT_SIZE), header);
+
+        int segmentLength = SEGMENT_SIZE + Envelope.TAG_LENGTH;
+        byte[] reordered = envelope.clone();
+        System.arraycopy(envelope, header.length, reordered, header.length + segmentLength, segmentLength);
+        System.arraycopy(envelope, header.length + segmentLength, reordered, header.length, segmentLength);
+
+        assertThatThrownBy(() -> decrypt(reordered))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Segment 0");
+    }
+
+    @Test
+    public void shouldSaltEveryEnvelope() throws IOException {
+        byte[] plaintext = plaintext(3 * SEGMENT_SIZE);
+        byte[] envelope = encrypt(plaintext, SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE));
+        byte[] other = encrypt(plaintext, SegmentedEnvelope.newHeader(1, 1, SEGMENT_SIZE));
+        int saltOffset = SegmentedEnvelope.headerLengthOf(envelope) - SegmentedEnvelope.NONCE_PREFIX_LENGTH - SegmentedEnvelope.SALT_LENGTH;
+
+        assertThat(Arrays.copyOfRange(envelope, saltOffset, saltOffset + SegmentedEnvelope.SALT_LENGTH))
+            .isNotEqualTo(Arrays.copyOfRange(other, saltOffset, saltOffset + SegmentedEnvelope.SALT_LENGTH));
+
+        // The salt selects the key of the envelope
+        envelope[saltOffset] ^= 1;
+
+        assertThatThrownBy(() -> decrypt(envelope))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Segment 0");
+    }
+
+    private byte[] plaintext(int length) {
+        byte[] plaintext = new byte[length];
+        new Random(length).nextBytes(plaintext);
+        return plaintext;
+    }
+
+    private byte[] encrypt(byte[] plaintext, byte[] header) throws IOException {
+        return readAll(new SegmentEncryptingInputStream(new ByteArrayInputStream(plaintext), cipherProvider, key, header, AAD));
+    }
+
+    private byte[] decrypt(byte[] envelope) throws IOException {
+        byte[] header = Arrays.copyOf(envelope, SegmentedEnvelope.headerLengthOf(envelope));
+        InputStream body = new ByteArrayInputStream(envelope, header.length, envelope.length - header.length);
+        return readAll(new SegmentDecryptingInputStream(body, cipherProvider, key, header, AAD));
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int n;
+
+        while ( (n = in.read(buffer)) >= 0 ) {
+            out.write(buffer, 0, n);
+        }
+
+        in.close();
+        return out.toByteArray();
+    }
+
+}
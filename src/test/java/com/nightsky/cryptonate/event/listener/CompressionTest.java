@@ -0,0 +1,103 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.Envelope;
+import com.nightsky.cryptonate.crypto.EnvelopeFormat;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.NoteEntity;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class CompressionTest {
+
+    private CryptoEventListener subject;
+
+    private EntityPersister persister;
+
+    @Before
+    public void setUp() {
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "text" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+    }
+
+    @Test
+    public void shouldCompressValuesAboveTheThreshold() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            text.append("Customer asked about invoice ").append(i).append(". ");
+        }
+
+        byte[] envelope = Base64.getDecoder().decode(insert(text.toString()));
+
+        assertThat(Envelope.formatOf(envelope)).isEqualTo(EnvelopeFormat.V2);
+        assertThat(Envelope.flagsOf(envelope)).isEqualTo(Envelope.FLAG_DEFLATE);
+        assertThat(envelope.length).isLessThan(text.length() / 2);
+        assertThat(load(Base64.getEncoder().encodeToString(envelope))).isEqualTo(text.toString());
+    }
+
+    @Test
+    public void shouldNotCompressValuesBelowTheThreshold() {
+        String text = "Call back on Monday";
+
+        byte[] envelope = Base64.getDecoder().decode(insert(text));
+
+        assertThat(Envelope.formatOf(envelope)).isEqualTo(EnvelopeFormat.V1);
+        assertThat(load(Base64.getEncoder().encodeToString(envelope))).isEqualTo(text);
+    }
+
+    private String insert(String text) {
+        NoteEntity entity = new NoteEntity(1L, text);
+        Object[] state = new Object[] { text };
+
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        subject.onPreInsert(event);
+
+        return (String) state[0];
+    }
+
+    private Object load(String envelope) {
+        NoteEntity entity = new NoteEntity(1L, null);
+        Object[] state = new Object[] { envelope };
+
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        subject.onPreLoad(event);
+
+        return state[0];
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.github.javafaker.Faker;
+import com.nightsky.cryptonate.annotation.DecryptionMode;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.DeferredEntity;
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.Collections;
+import javax.persistence.Id;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class DeferredDecryptionTest {
+
+    private final Faker faker;
+
+    private EntityPersister persister;
+
+    private CryptoEventListener subject;
+
+    public DeferredDecryptionTest() {
+        faker = new Faker();
+    }
+
+    @Before
+    public void setUp() {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "emailAddress" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+    }
+
+    @Test
+    public void shouldDecryptOnFirstAccess() {
+        Long id = faker.number().randomNumber();
+        String emailAddress = faker.internet().emailAddress();
+        String envelope = encrypt(new DeferredEntity(id, emailAddress));
+
+        // Load a new instance from the envelope
+        DeferredEntity entity = new DeferredEntity(id, null);
+        Object[] loadedState = load(entity, envelope);
+
+        assertThat(loadedState[0]).isEqualTo(envelope);
+        assertThat(subject.getDeferredDecryption().isPending(entity, "emailAddress")).isTrue();
+
+        assertThat(entity.getEmailAddress()).isEqualTo(emailAddress);
+        assertThat(loadedState[0]).isEqualTo(emailAddress);
+        assertThat(subject.getDeferredDecryption().isPending(entity, "emailAddress")).isFalse();
+
+        // Nothing is kept for an entity whose deferred fields have all been resolved
+        assertThat(subject.getDeferredDecryption().isTracked(entity)).isFalse();
+    }
+
+    @Test
+    public void shouldNotResolveEntitiesNotLoadedByListener() {
+        String emailAddress = faker.internet().emailAddress();
+        DeferredEntity entity = new DeferredEntity(faker.number().randomNumber(), emailAddress);
+
+        assertThat(entity.getEmailAddress()).isEqualTo(emailAddress);
+        assertThat(subject.getDeferredDecryption().isTracked(entity)).isFalse();
+    }
+
+    @Test
+    public void shouldRejectDeferredFieldWithoutDeferredDecryptionField() {
+        assertThatThrownBy(() -> subject.prepare(UndeclaredDeferredDecryptionEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("declares no DeferredDecryption field");
+    }
+
+    @Test
+    public void shouldResolveIntoCurrentLoadedState() {
+        Long id = faker.number().randomNumber();
+        String emailAddress = faker.internet().emailAddress();
+        String envelope = encrypt(new DeferredEntity(id, emailAddress));
+
+        DeferredEntity entity = new DeferredEntity(id, null);
+        EntityEntry entry = mock(EntityEntry.class);
+        PersistenceContext persistenceContext = mock(PersistenceContext.class);
+        when(persistenceContext.getEntry(entity)).thenReturn(entry);
+        EventSource session = mock(EventSource.class);
+        when(session.getPersistenceContextInternal()).thenReturn(persistenceContext);
+
+        Object[] stateAtLoad = load(entity, envelope, session);
+
+        // A flush replaced the loaded state since the load
+        Object[] flushedState = new Object[] { envelope };
+        when(entry.getLoadedState()).thenReturn(flushedState);
+
+        assertThat(entity.getEmailAddress()).isEqualTo(emailAddress);
+        assertThat(flushedState[0]).isEqualTo(emailAddress);
+        assertThat(stateAtLoad[0]).isEqualTo(envelope);
+    }
+
+    @Test
+    public void shouldKeepUnresolvedEnvelopeOnPreUpdate() {
+        Long id = faker.number().randomNumber();
+        String envelope = encrypt(new DeferredEntity(id, faker.internet().emailAddress()));
+
+        DeferredEntity entity = new DeferredEntity(id, null);
+        load(entity, envelope);
+
+        Object[] state = new Object[] { envelope };
+        PreUpdateEvent event = mock(PreUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(id);
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+
+        subject.onPreUpdate(event);
+
+        assertThat(state[0]).isSameAs(envelope);
+        assertThat(subject.getDeferredDecryption().isPending(entity, "emailAddress")).isTrue();
+    }
+
+    @Test
+    public void shouldEncryptAssignedValueOnPreUpdate() {
+        Long id = faker.number().randomNumber();
+        String envelope = encrypt(new DeferredEntity(id, faker.internet().emailAddress()));
+
+        DeferredEntity entity = new DeferredEntity(id, null);
+        load(entity, envelope);
+
+        String emailAddress = faker.internet().emailAddress();
+        entity.setEmailAddress(emailAddress);
+        assertThat(entity.getEmailAddress()).isEqualTo(emailAddress);
+
+        Object[] state = new Object[] { emailAddress };
+        PreUpdateEvent event = mock(PreUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(id);
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+
+        subject.onPreUpdate(event);
+
+        assertThat((String) state[0]).isBase64().isNotEqualTo(envelope);
+        assertThat(subject.getDeferredDecryption().isTracked(entity)).isFalse();
+    }
+
+    private String encrypt(DeferredEntity entity) {
+        Object[] state = new Object[] { entity.getEmailAddress() };
+
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+
+        subject.onPreInsert(event);
+
+        return (String) state[0];
+    }
+
+    private Object[] load(DeferredEntity entity, String envelope) {
+        return load(entity, envelope, null);
+    }
+
+    private Object[] load(DeferredEntity entity, String envelope, EventSource session) {
+        Object[] state = new Object[] { envelope };
+
+        PreLoadEvent event = new PreLoadEvent(session)
+            .setEntity(entity)
+            .setId(entity.getId())
+            .setState(state)
+            .setPersister(persister);
+
+        subject.onPreLoad(event);
+
+        // Hibernate hydrates the entity from the state after the pre-load event
+        entity.setEmailAddress((String) state[0]);
+
+        return state;
+    }
+
+    public static class UndeclaredDeferredDecryptionEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @Encrypted(aadFieldNames = { "id" }, decrypt = DecryptionMode.ON_ACCESS)
+        private String emailAddress;
+
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.annotation.CachedDecryption;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.crypto.PlaintextCache;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import com.nightsky.cryptonate.plan.EncryptionPlan;
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.Id;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EncryptionPlanValidationTest {
+
+    private CryptoEventListener subject;
+
+    @Before
+    public void setUp() {
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+    }
+
+    @Test
+    public void shouldPrepareValidPlan() {
+        EntityPersister persister = persisterOf("emailAddress", "price", "streetNumber", "amount", "followers");
+
+        EncryptionPlan plan = subject.prepare(SimpleEntity.class, persister);
+
+        assertThat(plan.getFields()).hasSize(5);
+    }
+
+    @Test
+    public void shouldRejectUnknownAadProperty() {
+        EntityPersister persister = persisterOf("secret");
+
+        assertThatThrownBy(() -> subject.prepare(UnknownAadPropertyEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("unknown AAD property: missing");
+    }
+
+    @Test
+    public void shouldRejectEncryptedAadProperty() {
+        EntityPersister persister = persisterOf("secret", "otherSecret");
+
+        assertThatThrownBy(() -> subject.prepare(EncryptedAadPropertyEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("secret uses encrypted AAD property: otherSecret");
+    }
+
+    @Test
+    public void shouldPrepareEncryptedAadPropertyWhenAllowed() {
+        EntityPersister persister = persisterOf("secret", "otherSecret");
+        subject.setEncryptedAadPropertiesAllowed(true);
+
+        EncryptionPlan plan = subject.prepare(EncryptedAadPropertyEntity.class, persister);
+
+        assertThat(plan.getFields()).hasSize(2);
+    }
+
+    @Test
+    public void shouldRejectUnmappedEncryptedField() {
+        EntityPersister persister = persisterOf("emailAddress", "price", "streetNumber", "amount");
+
+        assertThatThrownBy(() -> subject.prepare(SimpleEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("followers is not a persistent property");
+    }
+
+    @Test
+    public void shouldRejectUnsupportedFieldType() {
+        EntityPersister persister = persisterOf("secret");
+
+        assertThatThrownBy(() -> subject.prepare(UnsupportedTypeEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("unsupported type");
+    }
+
+    @Test
+    public void shouldRejectMutableTypeCachedOnHeap() {
+        EntityPersister persister = persisterOf("secret");
+        subject.setPlaintextCache(PlaintextCache.builder().build());
+
+        assertThatThrownBy(() -> subject.prepare(MutableCachedEntity.class, persister))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("secret cannot be cached on the heap: java.util.Date is mutable");
+    }
+
+    @Test
+    public void shouldRejectEncryptionKeyWithoutKeyCode() {
+        Map<String, Integer> keyCodes = new HashMap<>();
+        keyCodes.put("some-other-key", 2);
+        subject.setKeyCodes(keyCodes);
+
+        assertThatThrownBy(() -> subject.validateConfiguration())
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("No key code defined for encryption key");
+    }
+
+    @Test
+    public void shouldRejectDecryptionKeyMissingFromKeyCache() {
+        Map<String, Integer> keyCodes = new HashMap<>();
+        keyCodes.put(SecretKeyFactory.KEY_NAME, 1);
+        keyCodes.put("retired-key", 2);
+        subject.setKeyCodes(keyCodes);
+
+        subject.validateConfiguration();
+
+        assertThatThrownBy(() -> subject.validateDecryptionKeys())
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("retired-key (key code 2) not found")
+            .satisfies(e -> assertThat(e.getMessage()).doesNotContain(SecretKeyFactory.KEY_NAME));
+    }
+
+    private EntityPersister persisterOf(String... propertyNames) {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(propertyNames);
+
+        EntityPersister persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+        return persister;
+    }
+
+    public static class UnknownAadPropertyEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @Encrypted(aadFieldNames = { "id", "missing" })
+        private String secret;
+
+    }
+
+    public static class EncryptedAadPropertyEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @Encrypted(aadFieldNames = { "id", "otherSecret" })
+        private String secret;
+
+        @Encrypted(aadFieldNames = { "id" })
+        private String otherSecret;
+
+    }
+
+    public static class UnsupportedTypeEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @Encrypted(aadFieldNames = { "id" })
+        private Thread secret;
+
+    }
+
+    public static class MutableCachedEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @CachedDecryption
+        @Encrypted(aadFieldNames = { "id" })
+        private Date secret;
+
+    }
+
+}
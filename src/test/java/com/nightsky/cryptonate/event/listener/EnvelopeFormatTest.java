@@ -0,0 +1,148 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.Envelope;
+import com.nightsky.cryptonate.crypto.EnvelopeFormat;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EnvelopeFormatTest {
+
+    private static final String EMAIL_ADDRESS = "someone@example.com";
+
+    private EntityPersister persister;
+
+    private VersionedSecretKeyCache keyCache;
+
+    @Before
+    public void setUp() {
+        keyCache = mockedVersionedSecretKeyCache();
+
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "emailAddress" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+    }
+
+    @Test
+    public void shouldWriteShorterV2Envelopes() {
+        byte[] v1 = Base64.getDecoder().decode(insert(listener(EnvelopeFormat.V1)));
+        byte[] v2 = Base64.getDecoder().decode(insert(listener(EnvelopeFormat.V2)));
+
+        assertThat(Envelope.formatOf(v1)).isEqualTo(EnvelopeFormat.V1);
+        assertThat(Envelope.formatOf(v2)).isEqualTo(EnvelopeFormat.V2);
+        assertThat(v1.length - v2.length).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldDecryptBothFormats() {
+        CryptoEventListener subject = listener(EnvelopeFormat.V2);
+
+        assertThat(load(subject, insert(listener(EnvelopeFormat.V1)))).isEqualTo(EMAIL_ADDRESS);
+        assertThat(load(subject, insert(subject))).isEqualTo(EMAIL_ADDRESS);
+        assertThat(load(listener(EnvelopeFormat.V1), insert(subject))).isEqualTo(EMAIL_ADDRESS);
+    }
+
+    @Test
+    public void shouldAuthenticateV2Headers() {
+        CryptoEventListener subject = listener(EnvelopeFormat.V2);
+        byte[] envelope = Base64.getDecoder().decode(insert(subject));
+        assertThat(envelope[Envelope.V2_KEY_CODE_OFFSET]).isEqualTo((byte) 1);
+
+        // Re-encode key code 1 as a two byte varint; the header still parses to the same key
+        byte[] tampered = new byte[envelope.length + 1];
+        System.arraycopy(envelope, 0, tampered, 0, Envelope.V2_KEY_CODE_OFFSET);
+        tampered[Envelope.V2_KEY_CODE_OFFSET] = (byte) 0x81;
+        tampered[Envelope.V2_KEY_CODE_OFFSET + 1] = 0;
+        System.arraycopy(envelope, Envelope.V2_KEY_CODE_OFFSET + 1, tampered, Envelope.V2_KEY_CODE_OFFSET + 2, envelope.length - Envelope.V2_KEY_CODE_OFFSET - 1);
+        assertThat(Envelope.keyCodeOf(tampered)).isEqualTo(1);
+
+        String encoded = Base64.getEncoder().encodeToString(tampered);
+        assertThatThrownBy(() -> load(subject, encoded)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    public void shouldRejectUnsupportedFlags() {
+        CryptoEventListener subject = listener(EnvelopeFormat.V2);
+        byte[] envelope = Base64.getDecoder().decode(insert(subject));
+        envelope[Envelope.V2_FLAGS_OFFSET] = (byte) 0x80;
+        String encoded = Base64.getEncoder().encodeToString(envelope);
+
+        assertThatThrownBy(() -> load(subject, encoded))
+            .isInstanceOf(RuntimeException.class)
+            .hasRootCauseMessage("Unsupported envelope flags: 0x80");
+    }
+
+    @Test
+    public void shouldRejectKeyCodesCollidingWithTheV2Marker() {
+        assertThatThrownBy(() -> CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 0x82000001))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache)
+                .build())
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("v2 envelope marker");
+    }
+
+    private String insert(CryptoEventListener listener) {
+        SimpleEntity entity = new SimpleEntity(1L, EMAIL_ADDRESS);
+        Object[] state = new Object[] { entity.getEmailAddress() };
+
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        listener.onPreInsert(event);
+
+        return (String) state[0];
+    }
+
+    private Object load(CryptoEventListener listener, String envelope) {
+        SimpleEntity entity = new SimpleEntity(1L);
+        Object[] state = new Object[] { envelope };
+
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        listener.onPreLoad(event);
+
+        return state[0];
+    }
+
+    private CryptoEventListener listener(EnvelopeFormat envelopeFormat) {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache)
+            .withEnvelopeFormat(envelopeFormat)
+                .build();
+    }
+
+}
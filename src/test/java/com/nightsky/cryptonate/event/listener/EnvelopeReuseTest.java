@@ -0,0 +1,203 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.github.javafaker.Faker;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.security.SecureRandom;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EnvelopeReuseTest {
+
+    private final Faker faker;
+
+    private EntityPersister persister;
+
+    public EnvelopeReuseTest() {
+        faker = new Faker();
+    }
+
+    @Before
+    public void setUp() {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] {
+            "emailAddress", "followers", "streetNumber", "amount", "price"
+        });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+    }
+
+    @Test
+    public void shouldReuseEnvelopesOfUnchangedFieldsOnPreUpdate() {
+        CryptoEventListener subject = listener(true);
+        SimpleEntity entity = createEntity();
+
+        Object[] inserted = stateOf(entity);
+        subject.onPreInsert(preInsertEvent(entity, inserted));
+
+        // Only the email address changed
+        entity.setEmailAddress(faker.internet().emailAddress());
+        Object[] updated = stateOf(entity);
+        subject.onPreUpdate(preUpdateEvent(entity, updated));
+
+        assertThat(updated[0]).isNotEqualTo(inserted[0]);
+
+        for (int i = 1; i < updated.length; ++i) {
+            assertThat(updated[i]).isEqualTo(inserted[i]);
+        }
+    }
+
+    @Test
+    public void shouldReuseLoadedEnvelopesOnPreUpdate() {
+        CryptoEventListener subject = listener(true);
+        SimpleEntity entity = createEntity();
+
+        Object[] stored = stateOf(entity);
+        subject.onPreInsert(preInsertEvent(entity, stored));
+
+        // Load the stored envelopes into a new instance
+        SimpleEntity loaded = SimpleEntity.builder().withId(entity.getId()).build();
+        Object[] loadedState = stored.clone();
+        subject.onPreLoad(preLoadEvent(loaded, loadedState));
+        assertThat(loadedState[0]).isEqualTo(entity.getEmailAddress());
+
+        Object[] updated = loadedState.clone();
+        subject.onPreUpdate(preUpdateEvent(loaded, updated));
+
+        assertThat(updated).isEqualTo(stored);
+    }
+
+    @Test
+    public void shouldEncryptAgainWhenReuseIsDisabled() {
+        CryptoEventListener subject = listener(false);
+        SimpleEntity entity = createEntity();
+
+        Object[] inserted = stateOf(entity);
+        subject.onPreInsert(preInsertEvent(entity, inserted));
+
+        Object[] updated = stateOf(entity);
+        subject.onPreUpdate(preUpdateEvent(entity, updated));
+
+        for (int i = 0; i < updated.length; ++i) {
+            assertThat(updated[i]).isNotEqualTo(inserted[i]);
+        }
+    }
+
+    @Test
+    public void shouldNotReuseEnvelopesByDefault() {
+        CryptoEventListener subject = builder().build();
+        SimpleEntity entity = createEntity();
+
+        Object[] inserted = stateOf(entity);
+        subject.onPreInsert(preInsertEvent(entity, inserted));
+
+        Object[] updated = stateOf(entity);
+        subject.onPreUpdate(preUpdateEvent(entity, updated));
+
+        assertThat(subject.isReuseEnvelopes()).isFalse();
+
+        for (int i = 0; i < updated.length; ++i) {
+            assertThat(updated[i]).isNotEqualTo(inserted[i]);
+        }
+    }
+
+    @Test
+    public void shouldForgetRecordedEnvelopesWhenReuseIsDisabled() {
+        CryptoEventListener subject = listener(true);
+        SimpleEntity entity = createEntity();
+
+        Object[] inserted = stateOf(entity);
+        subject.onPreInsert(preInsertEvent(entity, inserted));
+
+        subject.setReuseEnvelopes(false);
+        subject.setReuseEnvelopes(true);
+
+        Object[] updated = stateOf(entity);
+        subject.onPreUpdate(preUpdateEvent(entity, updated));
+
+        for (int i = 0; i < updated.length; ++i) {
+            assertThat(updated[i]).isNotEqualTo(inserted[i]);
+        }
+    }
+
+    private CryptoEventListener listener(boolean reuseEnvelopes) {
+        return builder()
+            .withEnvelopeReuse(reuseEnvelopes)
+                .build();
+    }
+
+    private CryptoEventListener.Builder builder() {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache());
+    }
+
+    private SimpleEntity createEntity() {
+        return SimpleEntity.builder()
+            .withId(faker.number().randomNumber())
+            .withEmailAddress(faker.internet().emailAddress())
+            .withFollowers(faker.number().randomNumber())
+            .withStreetNumber(faker.number().numberBetween(1, Integer.MAX_VALUE))
+            .withAmount(Double.valueOf(faker.number().randomDouble(2, 10, 1000)).floatValue())
+            .withPrice(faker.number().randomDouble(2, 10, 1000))
+                .build();
+    }
+
+    private Object[] stateOf(SimpleEntity entity) {
+        return new Object[] {
+            entity.getEmailAddress(),
+            entity.getFollowers(),
+            entity.getStreetNumber(),
+            entity.getAmount(),
+            entity.getPrice()
+        };
+    }
+
+    private PreInsertEvent preInsertEvent(SimpleEntity entity, Object[] state) {
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreUpdateEvent preUpdateEvent(SimpleEntity entity, Object[] state) {
+        PreUpdateEvent event = mock(PreUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreLoadEvent preLoadEvent(SimpleEntity entity, Object[] state) {
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+}
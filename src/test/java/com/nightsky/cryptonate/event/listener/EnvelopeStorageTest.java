@@ -0,0 +1,137 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.BinaryEntity;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EnvelopeStorageTest {
+
+    private static final byte[] DOCUMENT = "%PDF-1.7 document".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] THUMBNAIL = "thumbnail".getBytes(StandardCharsets.UTF_8);
+
+    private EntityPersister persister;
+
+    private VersionedSecretKeyCache keyCache;
+
+    @Before
+    public void setUp() {
+        keyCache = mockedVersionedSecretKeyCache();
+
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "document", "thumbnail" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+    }
+
+    @Test
+    public void shouldStoreRawEnvelopesInBinaryFields() {
+        CryptoEventListener subject = listener(EnvelopeStorage.BASE64);
+        BinaryEntity entity = new BinaryEntity(42L, DOCUMENT.clone(), THUMBNAIL.clone());
+
+        Object[] state = new Object[] { entity.getDocument(), entity.getThumbnail() };
+        subject.onPreInsert(preInsertEvent(entity, state));
+
+        // The document is stored raw, the thumbnail follows the global Base64 default
+        byte[] document = (byte[]) state[0];
+        byte[] thumbnail = (byte[]) state[1];
+        assertThat(document).hasSize(DOCUMENT.length + 36);
+        assertThat(Base64.getDecoder().decode(thumbnail)).hasSize(THUMBNAIL.length + 36);
+
+        BinaryEntity loaded = new BinaryEntity();
+        loaded.setId(42L);
+        Object[] loadedState = new Object[] { document, thumbnail };
+        subject.onPreLoad(preLoadEvent(loaded, loadedState));
+
+        assertThat(loadedState).containsExactly(DOCUMENT, THUMBNAIL);
+    }
+
+    @Test
+    public void shouldDecryptLegacyBase64EnvelopesFromBinaryFields() {
+        BinaryEntity entity = new BinaryEntity(7L, DOCUMENT.clone(), THUMBNAIL.clone());
+
+        Object[] state = new Object[] { entity.getDocument(), entity.getThumbnail() };
+        listener(EnvelopeStorage.BASE64).onPreInsert(preInsertEvent(entity, state));
+
+        // Rows written before the document column moved to binary storage
+        byte[] legacyDocument = Base64.getEncoder().encode((byte[]) state[0]);
+
+        CryptoEventListener subject = listener(EnvelopeStorage.BINARY);
+        subject.setReuseEnvelopes(true);
+        BinaryEntity loaded = new BinaryEntity();
+        loaded.setId(7L);
+        Object[] loadedState = new Object[] { legacyDocument, state[1] };
+        subject.onPreLoad(preLoadEvent(loaded, loadedState));
+
+        assertThat(loadedState).containsExactly(DOCUMENT, THUMBNAIL);
+
+        // With envelope reuse, unchanged values move to binary storage without being encrypted again
+        Object[] updated = loadedState.clone();
+        subject.onPreUpdate(preUpdateEvent(loaded, updated));
+
+        assertThat(updated[0]).isEqualTo(state[0]);
+        assertThat(updated[1]).isEqualTo(Base64.getDecoder().decode((byte[]) state[1]));
+    }
+
+    private CryptoEventListener listener(EnvelopeStorage envelopeStorage) {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache)
+            .withEnvelopeStorage(envelopeStorage)
+                .build();
+    }
+
+    private PreInsertEvent preInsertEvent(BinaryEntity entity, Object[] state) {
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreUpdateEvent preUpdateEvent(BinaryEntity entity, Object[] state) {
+        PreUpdateEvent event = mock(PreUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreLoadEvent preLoadEvent(BinaryEntity entity, Object[] state) {
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+}
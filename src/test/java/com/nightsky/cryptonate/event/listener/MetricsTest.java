@@ -0,0 +1,144 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SecretKeyFactory.createAesKey;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyFactory.mockedVersionedSecretKey;
+import com.nightsky.cryptonate.metrics.CryptoMetrics;
+import com.nightsky.cryptonate.metrics.CryptoMetricsSnapshot;
+import com.nightsky.cryptonate.metrics.FieldMetrics;
+import com.nightsky.cryptonate.metrics.HistogramCryptoMetrics;
+import com.nightsky.cryptonate.metrics.KeyLookupMetrics;
+import com.nightsky.cryptonate.metrics.KeyMetrics;
+import com.nightsky.cryptonate.model.NoteEntity;
+import com.nightsky.keycache.VersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.SecureRandom;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class MetricsTest {
+
+    private EntityPersister persister;
+
+    private HistogramCryptoMetrics metrics;
+
+    private CryptoEventListener subject;
+
+    @Before
+    public void setUp() {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "text" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+
+        VersionedSecretKey key = mockedVersionedSecretKey(createAesKey(), 3);
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(3))).thenReturn(key);
+
+        metrics = new HistogramCryptoMetrics();
+
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache)
+            .withMetrics(metrics)
+                .build();
+    }
+
+    @Test
+    public void shouldRecordEncryptionsDecryptionsAndKeyLookups() {
+        String envelope = insert(1, "a note");
+        insert(2, "another note");
+        load(1, envelope);
+
+        CryptoMetricsSnapshot snapshot = metrics.snapshot();
+        FieldMetrics field = snapshot.getField(NoteEntity.class, "text");
+
+        assertThat(field.getEncryptionFailures()).isZero();
+        assertThat(field.getDecryptionFailures()).isZero();
+        assertThat(field.getKeys()).hasSize(1);
+
+        KeyMetrics key = field.getKeys().get(0);
+
+        assertThat(key.getKeyCode()).isEqualTo(1);
+        assertThat(key.getKeyVersion()).isEqualTo(3);
+        assertThat(key.getEncryptionLatency().getCount()).isEqualTo(2);
+        assertThat(key.getDecryptionLatency().getCount()).isEqualTo(1);
+        assertThat(key.getPlaintextBytesEncrypted()).isEqualTo("a note".length() + "another note".length());
+        assertThat(key.getPlaintextBytesDecrypted()).isEqualTo("a note".length());
+        assertThat(key.getEnvelopeBytesWritten()).isGreaterThan(key.getPlaintextBytesEncrypted());
+
+        // Both envelopes carry the same overhead
+        long overhead = (key.getEnvelopeBytesWritten() - key.getPlaintextBytesEncrypted()) / 2;
+        assertThat(key.getEnvelopeBytesRead()).isEqualTo("a note".length() + overhead);
+
+        // Two lookups of the current key, and one of version 3 for the load
+        assertThat(snapshot.getKeyLookups())
+            .extracting(KeyLookupMetrics::getKeyName, KeyLookupMetrics::getKeyVersion, KeyLookupMetrics::getLookups, KeyLookupMetrics::getResolvedLookups)
+            .containsExactlyInAnyOrder(
+                tuple(SecretKeyFactory.KEY_NAME, CryptoMetrics.CURRENT_VERSION, 2L, 0L),
+                tuple(SecretKeyFactory.KEY_NAME, 3, 1L, 0L));
+    }
+
+    @Test
+    public void shouldRecordDecryptionFailures() {
+        String envelope = insert(1, "a note");
+
+        assertThatThrownBy(() -> load(2, envelope)).isInstanceOf(RuntimeException.class);
+
+        FieldMetrics field = metrics.snapshot().getField(NoteEntity.class, "text");
+
+        assertThat(field.getDecryptionFailures()).isEqualTo(1);
+        assertThat(field.getKeys().get(0).getDecryptionLatency().getCount()).isZero();
+    }
+
+    private String insert(long id, String text) {
+        NoteEntity entity = new NoteEntity(id, text);
+        Object[] state = new Object[] { text };
+
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        subject.onPreInsert(event);
+
+        return (String) state[0];
+    }
+
+    private Object load(long id, String envelope) {
+        NoteEntity entity = new NoteEntity(id, null);
+        Object[] state = new Object[] { envelope };
+
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        subject.onPreLoad(event);
+
+        return state[0];
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.github.javafaker.Faker;
+import com.nightsky.cryptonate.crypto.IvGenerator;
+import com.nightsky.cryptonate.crypto.RandomIvGenerator;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SecretKeyFactory.createAesKey;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyFactory.mockedVersionedSecretKey;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import com.nightsky.keycache.VersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.SecureRandom;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.hibernate.type.DoubleType;
+import org.hibernate.type.FloatType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.Type;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class ParallelFlushEncryptionTest {
+
+    private final Faker faker;
+
+    private EntityPersister persister;
+
+    private AtomicInteger generatedIvs;
+
+    private VersionedSecretKeyCache keyCache;
+
+    private CryptoEventListener listener;
+
+    private ParallelFlushEncryption subject;
+
+    public ParallelFlushEncryptionTest() {
+        faker = new Faker();
+    }
+
+    @Before
+    public void setUp() {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] {
+            "emailAddress", "followers", "streetNumber", "amount", "price"
+        });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+        when(persister.getPropertyTypes()).thenReturn(new Type[] {
+            StringType.INSTANCE, LongType.INSTANCE, IntegerType.INSTANCE, FloatType.INSTANCE, DoubleType.INSTANCE
+        });
+
+        // Count the encryptions through the IVs they draw
+        generatedIvs = new AtomicInteger();
+        IvGenerator random = new RandomIvGenerator(new SecureRandom());
+        IvGenerator counting = (dst, offset) -> {
+            generatedIvs.incrementAndGet();
+            random.generate(dst, offset);
+        };
+
+        keyCache = mockedVersionedSecretKeyCache();
+
+        listener = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withIvGenerator(counting)
+            .withVersionedSecretKeyCache(keyCache)
+                .build();
+
+        subject = ParallelFlushEncryption.builder()
+            .withListener(listener)
+            .withParallelism(2)
+            .withThreshold(1)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        subject.close();
+    }
+
+    @Test
+    public void shouldUsePrecomputedEnvelopesOnPreInsert() {
+        SimpleEntity entity = createEntity();
+        Object[] state = stateOf(entity);
+
+        subject.precompute(session(entity, state, null));
+        assertThat(generatedIvs.get()).isEqualTo(5);
+
+        try {
+            listener.onPreInsert(preInsertEvent(entity, state));
+        } finally {
+            subject.release();
+        }
+
+        // No field was encrypted again
+        assertThat(generatedIvs.get()).isEqualTo(5);
+        assertThat((String) state[0]).isBase64();
+
+        // The precomputed envelopes decrypt like any other
+        listener.onPreLoad(preLoadEvent(entity, state));
+        assertThat(state[0]).isEqualTo(entity.getEmailAddress());
+        assertThat(state[4]).isEqualTo(entity.getPrice());
+    }
+
+    @Test
+    public void shouldEncryptChangedFieldsAgainOnPreInsert() {
+        SimpleEntity entity = createEntity();
+
+        subject.precompute(session(entity, stateOf(entity), null));
+
+        // The value written differs from the value precomputed
+        Object[] state = stateOf(entity);
+        state[0] = faker.internet().emailAddress();
+
+        try {
+            listener.onPreInsert(preInsertEvent(entity, state));
+        } finally {
+            subject.release();
+        }
+
+        // Only the changed field was encrypted again
+        assertThat(generatedIvs.get()).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldEncryptAgainAfterKeyRotation() {
+        SimpleEntity entity = createEntity();
+        Object[] state = stateOf(entity);
+
+        subject.precompute(session(entity, state, null));
+
+        VersionedSecretKey rotated = mockedVersionedSecretKey(createAesKey());
+        when(rotated.getVersion()).thenReturn(2);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(rotated);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(2))).thenReturn(rotated);
+
+        try {
+            listener.onPreInsert(preInsertEvent(entity, state));
+        } finally {
+            subject.release();
+        }
+
+        // Every field was encrypted again, under the new version
+        assertThat(generatedIvs.get()).isEqualTo(10);
+        listener.onPreLoad(preLoadEvent(entity, state));
+        assertThat(state[0]).isEqualTo(entity.getEmailAddress());
+    }
+
+    @Test
+    public void shouldOnlyPrecomputeChangedFieldsOfPendingUpdates() {
+        SimpleEntity entity = createEntity();
+        Object[] loadedState = stateOf(entity);
+        loadedState[0] = faker.internet().emailAddress();
+
+        subject.precompute(session(entity, stateOf(entity), loadedState));
+        subject.release();
+
+        assertThat(generatedIvs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSkipEntitiesWithoutChangedEncryptedFields() {
+        SimpleEntity entity = createEntity();
+
+        subject.precompute(session(entity, stateOf(entity), stateOf(entity)));
+        subject.release();
+
+        assertThat(generatedIvs.get()).isZero();
+    }
+
+    private SimpleEntity createEntity() {
+        return SimpleEntity.builder()
+            .withId(faker.number().randomNumber())
+            .withEmailAddress(faker.internet().emailAddress())
+            .withFollowers(faker.number().randomNumber())
+            .withStreetNumber(faker.number().numberBetween(1, Integer.MAX_VALUE))
+            .withAmount(Double.valueOf(faker.number().randomDouble(2, 10, 1000)).floatValue())
+            .withPrice(faker.number().randomDouble(2, 10, 1000))
+                .build();
+    }
+
+    private Object[] stateOf(SimpleEntity entity) {
+        return new Object[] {
+            entity.getEmailAddress(),
+            entity.getFollowers(),
+            entity.getStreetNumber(),
+            entity.getAmount(),
+            entity.getPrice()
+        };
+    }
+
+    /**
+     * @param loadedState the state the entity was loaded with, or null if
+     * the entity is a pending insert
+     */
+    @SuppressWarnings("unchecked")
+    private EventSource session(SimpleEntity entity, Object[] state, Object[] loadedState) {
+        for (int i = 0; i < state.length; ++i) {
+            when(persister.getPropertyValue(entity, i)).thenReturn(state[i]);
+        }
+
+        EntityEntry entry = mock(EntityEntry.class);
+        when(entry.getStatus()).thenReturn(Status.MANAGED);
+        when(entry.isExistsInDatabase()).thenReturn(loadedState != null);
+        when(entry.getLoadedState()).thenReturn(loadedState);
+        when(entry.getId()).thenReturn(entity.getId());
+        when(entry.getPersister()).thenReturn(persister);
+
+        PersistenceContext persistenceContext = mock(PersistenceContext.class);
+        when(persistenceContext.reentrantSafeEntityEntries()).thenReturn(new Map.Entry[] {
+            new AbstractMap.SimpleEntry<>(entity, entry)
+        });
+
+        EventSource session = mock(EventSource.class);
+        when(session.getPersistenceContextInternal()).thenReturn(persistenceContext);
+
+        return session;
+    }
+
+    private PreInsertEvent preInsertEvent(SimpleEntity entity, Object[] state) {
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreLoadEvent preLoadEvent(SimpleEntity entity, Object[] state) {
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.IvGenerator;
+import com.nightsky.cryptonate.crypto.RandomIvGenerator;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SessionFactoryFactory.h2SessionFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.integrator.CryptonateIntegrator;
+import com.nightsky.cryptonate.model.AccountEntity;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Flushes inserts and updates through a SessionFactory whose flush listeners
+ * precompute envelopes with a {@link ParallelFlushEncryption}.
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class ParallelFlushSessionTest {
+
+    private Set<Thread> encryptingThreads;
+
+    private AtomicBoolean failEncryption;
+
+    private CryptoEventListener listener;
+
+    private ParallelFlushEncryption flushEncryption;
+
+    private SessionFactory sessionFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        // Record the threads that draw IVs, and fail them on demand
+        encryptingThreads = ConcurrentHashMap.newKeySet();
+        failEncryption = new AtomicBoolean();
+        IvGenerator random = new RandomIvGenerator(new SecureRandom());
+        IvGenerator recording = (dst, offset) -> {
+            if ( failEncryption.get() )
+                throw new IllegalStateException("Encryption failed");
+
+            encryptingThreads.add(Thread.currentThread());
+            random.generate(dst, offset);
+        };
+
+        listener = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withIvGenerator(recording)
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+
+        flushEncryption = ParallelFlushEncryption.builder()
+            .withListener(listener)
+            .withParallelism(2)
+            .withThreshold(1)
+                .build();
+
+        sessionFactory = h2SessionFactory("parallelflush", new CryptonateIntegrator(listener, flushEncryption), AccountEntity.class);
+        statistics = sessionFactory.getStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+        flushEncryption.close();
+    }
+
+    @Test
+    public void shouldFlushInsertsAndUpdatesWithPrecomputedEnvelopes() {
+        insert(new AccountEntity(1L, "eu", "first@example.com", "first note"),
+               new AccountEntity(2L, "eu", "second@example.com", "second note"));
+        statistics.clear();
+        encryptingThreads.clear();
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+
+            session.get(AccountEntity.class, 1L).setNote("first note, changed");
+            session.get(AccountEntity.class, 2L).setEmailAddress("second@example.org");
+            session.persist(new AccountEntity(3L, "us", "third@example.com", "third note"));
+            session.persist(new AccountEntity(4L, "us", "fourth@example.com", null));
+
+            transaction.commit();
+        }
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2);
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(2);
+
+        // The envelopes were sealed on the pool, not only by the flushing thread
+        assertThat(encryptingThreads).anyMatch(thread -> thread != Thread.currentThread());
+
+        try (Session session = sessionFactory.openSession()) {
+            List<Object[]> rows = session.createNativeQuery("SELECT emailAddress, note FROM account ORDER BY id").getResultList();
+
+            assertThat(rows).hasSize(4);
+            assertThat(rows).allSatisfy(row -> {
+                assertThat((String) row[0]).isBase64().doesNotContain("@");
+            });
+            assertThat((String) rows.get(0)[1]).isBase64().doesNotContain("note");
+            assertThat(rows.get(3)[1]).isNull();
+
+            assertAccount(session, 1L, "first@example.com", "first note, changed");
+            assertAccount(session, 2L, "second@example.org", "second note");
+            assertAccount(session, 3L, "third@example.com", "third note");
+            assertAccount(session, 4L, "fourth@example.com", null);
+        }
+    }
+
+    @Test
+    public void shouldLeaveTheSessionConsistentWhenEncryptionFails() {
+        insert(new AccountEntity(5L, "eu", "fifth@example.com", "fifth note"));
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            AccountEntity updated = session.get(AccountEntity.class, 5L);
+            AccountEntity inserted = new AccountEntity(6L, "us", "sixth@example.com", "sixth note");
+
+            updated.setNote("fifth note, changed");
+            session.persist(inserted);
+
+            failEncryption.set(true);
+            assertThatThrownBy(session::flush).hasRootCauseInstanceOf(IllegalStateException.class);
+            transaction.rollback();
+
+            // Only the state arrays held envelopes; the entities keep their plaintexts
+            assertThat(updated.getNote()).isEqualTo("fifth note, changed");
+            assertThat(inserted.getEmailAddress()).isEqualTo("sixth@example.com");
+        }
+
+        // Nothing of the failed flush is left on the thread
+        assertThat(listener.hasPrecomputedEnvelopes()).isFalse();
+        assertThat(listener.hasWrittenState()).isFalse();
+
+        failEncryption.set(false);
+
+        try (Session session = sessionFactory.openSession()) {
+            assertAccount(session, 5L, "fifth@example.com", "fifth note");
+            assertThat(session.get(AccountEntity.class, 6L)).isNull();
+        }
+
+        // The listener keeps working after the failure
+        insert(new AccountEntity(6L, "us", "sixth@example.com", "sixth note"));
+
+        try (Session session = sessionFactory.openSession()) {
+            assertAccount(session, 6L, "sixth@example.com", "sixth note");
+        }
+    }
+
+    private void insert(AccountEntity... accounts) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+
+            for (AccountEntity account : accounts) {
+                session.persist(account);
+            }
+
+            transaction.commit();
+        }
+    }
+
+    private void assertAccount(Session session, long id, String emailAddress, String note) {
+        AccountEntity account = session.get(AccountEntity.class, id);
+
+        assertThat(account.getEmailAddress()).isEqualTo(emailAddress);
+        assertThat(account.getNote()).isEqualTo(note);
+    }
+
+}
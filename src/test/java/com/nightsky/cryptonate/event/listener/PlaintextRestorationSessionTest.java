@@ -0,0 +1,139 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SessionFactoryFactory.h2SessionFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.integrator.CryptonateIntegrator;
+import com.nightsky.cryptonate.model.AccountEntity;
+import java.security.SecureRandom;
+import java.util.Collections;
+import javax.persistence.PersistenceException;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Flushes entities through a SessionFactory, and checks that the plaintexts
+ * put back into their loaded state keep the next flush from updating them.
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class PlaintextRestorationSessionTest {
+
+    private CryptoEventListener listener;
+
+    private SessionFactory sessionFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        listener = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+
+        sessionFactory = h2SessionFactory("restoration", new CryptonateIntegrator(listener), AccountEntity.class);
+        statistics = sessionFactory.getStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void shouldNotUpdateInsertedEntitiesOnTheNextFlush() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            AccountEntity account = new AccountEntity(1L, "eu", "someone@example.com", "a note");
+
+            session.persist(account);
+            session.flush();
+            session.flush();
+
+            assertThat(statistics.getEntityInsertCount()).isEqualTo(1);
+            assertThat(statistics.getEntityUpdateCount()).isZero();
+            assertThat(account.getEmailAddress()).isEqualTo("someone@example.com");
+            assertThat(storedEmailAddress(session, 1L)).isNotEqualTo("someone@example.com");
+
+            transaction.commit();
+        }
+
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(listener.hasWrittenState()).isFalse();
+    }
+
+    @Test
+    public void shouldNotUpdateUpdatedEntitiesOnTheNextFlush() {
+        insert(new AccountEntity(2L, "eu", "someone@example.com", "a note"));
+
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            AccountEntity account = session.get(AccountEntity.class, 2L);
+
+            session.flush();
+            assertThat(statistics.getEntityUpdateCount()).isZero();
+
+            account.setNote("another note");
+            session.flush();
+            session.flush();
+
+            assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+            assertThat(account.getNote()).isEqualTo("another note");
+
+            transaction.commit();
+        }
+
+        try (Session session = sessionFactory.openSession()) {
+            AccountEntity account = session.get(AccountEntity.class, 2L);
+
+            assertThat(account.getEmailAddress()).isEqualTo("someone@example.com");
+            assertThat(account.getNote()).isEqualTo("another note");
+        }
+    }
+
+    @Test
+    public void shouldForgetTheStateOfFailedWrites() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+
+            // The region does not fit its column; the insert fails after its pre-event
+            session.persist(new AccountEntity(3L, "a region too long for its column", "someone@example.com", "a note"));
+
+            assertThatThrownBy(session::flush).isInstanceOf(PersistenceException.class);
+            transaction.rollback();
+        }
+
+        assertThat(listener.hasWrittenState()).isFalse();
+
+        insert(new AccountEntity(3L, "eu", "someone@example.com", "a note"));
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+    }
+
+    private void insert(AccountEntity account) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.persist(account);
+            transaction.commit();
+        }
+    }
+
+    private String storedEmailAddress(Session session, long id) {
+        return (String) session.createNativeQuery("SELECT emailAddress FROM account WHERE id = :id")
+            .setParameter("id", id)
+                .getSingleResult();
+    }
+
+}
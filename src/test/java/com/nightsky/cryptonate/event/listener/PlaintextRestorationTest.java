@@ -0,0 +1,119 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.github.javafaker.Faker;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import java.security.SecureRandom;
+import java.util.Collections;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class PlaintextRestorationTest {
+
+    private final Faker faker;
+
+    private EntityPersister persister;
+
+    private CryptoEventListener subject;
+
+    public PlaintextRestorationTest() {
+        faker = new Faker();
+    }
+
+    @Before
+    public void setUp() {
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] {
+            "emailAddress", "followers", "streetNumber", "amount", "price"
+        });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build();
+    }
+
+    @Test
+    public void shouldRestorePlaintextOnPostInsert() {
+        SimpleEntity entity = createEntity();
+        Object[] plaintexts = stateOf(entity);
+        Object[] state = plaintexts.clone();
+
+        subject.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+        assertThat((String) state[0]).isBase64();
+
+        subject.onPostInsert(new PostInsertEvent(entity, entity.getId(), state, persister, null));
+        assertThat(state).isEqualTo(plaintexts);
+    }
+
+    @Test
+    public void shouldRestorePlaintextOnPostUpdate() {
+        SimpleEntity entity = createEntity();
+        Object[] plaintexts = stateOf(entity);
+        Object[] state = plaintexts.clone();
+
+        subject.onPreUpdate(new PreUpdateEvent(entity, entity.getId(), state, plaintexts, persister, null));
+        assertThat((String) state[0]).isBase64();
+
+        subject.onPostUpdate(new PostUpdateEvent(entity, entity.getId(), state, plaintexts, null, persister, null));
+        assertThat(state).isEqualTo(plaintexts);
+    }
+
+    @Test
+    public void shouldOnlyRestoreTheStateThatWasEncrypted() {
+        SimpleEntity entity = createEntity();
+        Object[] state = stateOf(entity);
+
+        subject.onPreInsert(new PreInsertEvent(entity, entity.getId(), state, persister, null));
+
+        Object[] otherState = state.clone();
+        subject.onPostInsert(new PostInsertEvent(entity, entity.getId(), otherState, persister, null));
+
+        assertThat(otherState).isEqualTo(state);
+        assertThat((String) otherState[0]).isBase64();
+    }
+
+    private SimpleEntity createEntity() {
+        return SimpleEntity.builder()
+            .withId(faker.number().randomNumber())
+            .withEmailAddress(faker.internet().emailAddress())
+            .withFollowers(faker.number().randomNumber())
+            .withStreetNumber(faker.number().numberBetween(1, Integer.MAX_VALUE))
+            .withAmount(Double.valueOf(faker.number().randomDouble(2, 10, 1000)).floatValue())
+            .withPrice(faker.number().randomDouble(2, 10, 1000))
+                .build();
+    }
+
+    private Object[] stateOf(SimpleEntity entity) {
+        return new Object[] {
+            entity.getEmailAddress(),
+            entity.getFollowers(),
+            entity.getStreetNumber(),
+            entity.getAmount(),
+            entity.getPrice()
+        };
+    }
+
+}
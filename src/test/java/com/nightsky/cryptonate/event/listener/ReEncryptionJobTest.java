@@ -0,0 +1,250 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.crypto.Envelope;
+import com.nightsky.cryptonate.crypto.StoredEnvelopes;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SecretKeyFactory.createAesKey;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyFactory.mockedVersionedSecretKey;
+import com.nightsky.cryptonate.model.NoteEntity;
+import com.nightsky.keycache.VersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class ReEncryptionJobTest {
+
+    private static final int ROWS = 25;
+
+    private JdbcDataSource dataSource;
+
+    private Connection connection;
+
+    private EntityPersister persister;
+
+    private CryptoEventListener oldListener;
+
+    private CryptoEventListener listener;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:reencryption;DB_CLOSE_DELAY=-1");
+
+        connection = dataSource.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE note (id BIGINT PRIMARY KEY, text VARCHAR(4000))");
+        }
+
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "text" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+
+        VersionedSecretKey version1 = mockedVersionedSecretKey(createAesKey(), 1);
+        VersionedSecretKey version2 = mockedVersionedSecretKey(createAesKey(), 2);
+
+        oldListener = listener(keyCache(version1, version1, version2));
+        listener = listener(keyCache(version2, version1, version2));
+
+        // Rows 1 to 20 are on the old key version, the others on the current one
+        for (long id = 1; id <= ROWS; ++id) {
+            insert(id, encrypt(id <= 20 ? oldListener : listener, id, "note " + id));
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE note");
+        }
+
+        connection.close();
+    }
+
+    @Test
+    public void shouldReEncryptRowsOnOldKeyVersions() throws SQLException {
+        String current = select(21);
+
+        try (ReEncryptionJob job = job(null)) {
+            ReEncryptionProgress progress = job.run();
+
+            assertThat(progress.getRowsScanned()).isEqualTo(ROWS);
+            assertThat(progress.getEnvelopesReEncrypted()).isEqualTo(20);
+            assertThat(progress.getEnvelopesSkipped()).isZero();
+            assertThat(progress.getEnvelopesFailed()).isZero();
+            assertThat(progress.getLastId()).isEqualTo((long) ROWS);
+        }
+
+        for (long id = 1; id <= ROWS; ++id) {
+            String envelope = select(id);
+            assertThat(Envelope.keyVersionOf(StoredEnvelopes.header(envelope))).isEqualTo(2);
+            assertThat(load(id, envelope)).isEqualTo("note " + id);
+        }
+
+        assertThat(select(21)).isEqualTo(current);
+    }
+
+    @Test
+    public void shouldResumeAfterTheCheckpoint() throws SQLException {
+        List<Object> saved = new ArrayList<>();
+
+        ReEncryptionCheckpoint checkpoint = new ReEncryptionCheckpoint() {
+            @Override
+            public Object load() {
+                return 10L;
+            }
+
+            @Override
+            public void save(Object lastId) {
+                saved.add(lastId);
+            }
+        };
+
+        try (ReEncryptionJob job = job(checkpoint)) {
+            ReEncryptionProgress progress = job.run();
+
+            assertThat(progress.getRowsScanned()).isEqualTo(ROWS - 10);
+            assertThat(progress.getEnvelopesReEncrypted()).isEqualTo(10);
+            assertThat(progress.getEnvelopesSkipped()).isZero();
+            assertThat(progress.getEnvelopesFailed()).isZero();
+        }
+
+        assertThat(saved).containsExactly(17L, 24L, 25L);
+        assertThat(Envelope.keyVersionOf(StoredEnvelopes.header(select(10)))).isEqualTo(1);
+        assertThat(Envelope.keyVersionOf(StoredEnvelopes.header(select(11)))).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldLeaveEnvelopesThatFailToDecrypt() throws SQLException {
+        // Encrypted with the AAD of another row
+        String misplaced = encrypt(oldListener, 99, "note 99");
+        update(5, misplaced);
+
+        try (ReEncryptionJob job = job(null)) {
+            ReEncryptionProgress progress = job.run();
+
+            assertThat(progress.getRowsScanned()).isEqualTo(ROWS);
+            assertThat(progress.getEnvelopesReEncrypted()).isEqualTo(19);
+            assertThat(progress.getEnvelopesSkipped()).isZero();
+            assertThat(progress.getEnvelopesFailed()).isEqualTo(1);
+        }
+
+        assertThat(select(5)).isEqualTo(misplaced);
+    }
+
+    private ReEncryptionJob job(ReEncryptionCheckpoint checkpoint) {
+        return ReEncryptionJob.builder()
+            .withListener(listener)
+            .withDataSource(dataSource)
+            .withEntityClass(NoteEntity.class)
+            .withTableName("note")
+            .withPageSize(7)
+            .withParallelism(2)
+            .withCheckpoint(checkpoint)
+                .build();
+    }
+
+    private CryptoEventListener listener(VersionedSecretKeyCache keyCache) {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache)
+                .build();
+    }
+
+    private VersionedSecretKeyCache keyCache(VersionedSecretKey current, VersionedSecretKey... versions) {
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(current);
+
+        for (VersionedSecretKey version : versions) {
+            int keyVersion = version.getVersion();
+            when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(keyVersion))).thenReturn(version);
+        }
+
+        return keyCache;
+    }
+
+    private String encrypt(CryptoEventListener subject, long id, String text) {
+        NoteEntity entity = new NoteEntity(id, text);
+        Object[] state = new Object[] { text };
+
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        subject.onPreInsert(event);
+
+        return (String) state[0];
+    }
+
+    private Object load(long id, String envelope) {
+        NoteEntity entity = new NoteEntity(id, null);
+        Object[] state = new Object[] { envelope };
+
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        listener.onPreLoad(event);
+
+        return state[0];
+    }
+
+    private void insert(long id, String envelope) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO note (id, text) VALUES (?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, envelope);
+            statement.executeUpdate();
+        }
+    }
+
+    private void update(long id, String envelope) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE note SET text = ? WHERE id = ?")) {
+            statement.setString(1, envelope);
+            statement.setLong(2, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private String select(long id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT text FROM note WHERE id = ?")) {
+            statement.setLong(1, id);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+}
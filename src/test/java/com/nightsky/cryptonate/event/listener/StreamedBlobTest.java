@@ -0,0 +1,125 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.AttachmentEntity;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.sql.Blob;
+import java.util.Collections;
+import java.util.Random;
+import javax.sql.rowset.serial.SerialBlob;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class StreamedBlobTest {
+
+    private CryptoEventListener subject;
+
+    private EntityPersister persister;
+
+    @Before
+    public void setUp() {
+        subject = CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+            .withSegmentSize(1024)
+                .build();
+
+        EntityMetamodel metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] { "content" });
+
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+    }
+
+    @Test
+    public void shouldStreamBlobsThroughSegmentedEnvelopes() throws Exception {
+        byte[] content = new byte[10 * 1024 + 7];
+        new Random(42).nextBytes(content);
+
+        AttachmentEntity entity = new AttachmentEntity(5L, new SerialBlob(content));
+        Object[] state = new Object[] { entity.getContent() };
+        subject.onPreInsert(preInsertEvent(entity, state));
+
+        // What JDBC would write to the column
+        Blob encrypted = (Blob) state[0];
+        byte[] stored = readAll(encrypted.getBinaryStream());
+        assertThat((long) stored.length).isEqualTo(encrypted.length());
+        assertThat(stored.length).isGreaterThan(content.length);
+
+        AttachmentEntity loaded = new AttachmentEntity(5L, null);
+        Blob storedBlob = new SerialBlob(stored);
+        Object[] loadedState = new Object[] { storedBlob };
+        subject.onPreLoad(preLoadEvent(loaded, loadedState));
+
+        Blob decrypted = (Blob) loadedState[0];
+        assertThat(decrypted.length()).isEqualTo(content.length);
+        assertThat(readAll(decrypted.getBinaryStream())).isEqualTo(content);
+        assertThat(decrypted.getBytes(1025, 3)).containsExactly(content[1024], content[1025], content[1026]);
+
+        // An unchanged blob is written back without being encrypted again
+        Object[] updated = new Object[] { decrypted };
+        subject.onPreUpdate(preUpdateEvent(loaded, updated));
+        assertThat(updated[0]).isSameAs(storedBlob);
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+
+        while ( (n = in.read(buffer)) >= 0 ) {
+            out.write(buffer, 0, n);
+        }
+
+        return out.toByteArray();
+    }
+
+    private PreInsertEvent preInsertEvent(AttachmentEntity entity, Object[] state) {
+        PreInsertEvent event = mock(PreInsertEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreUpdateEvent preUpdateEvent(AttachmentEntity entity, Object[] state) {
+        PreUpdateEvent event = mock(PreUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+    private PreLoadEvent preLoadEvent(AttachmentEntity entity, Object[] state) {
+        PreLoadEvent event = mock(PreLoadEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        when(event.getId()).thenReturn(entity.getId());
+        when(event.getState()).thenReturn(state);
+        when(event.getPersister()).thenReturn(persister);
+        return event;
+    }
+
+}
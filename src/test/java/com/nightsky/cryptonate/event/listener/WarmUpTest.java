@@ -0,0 +1,147 @@
+package com.nightsky.cryptonate.event.listener;
+
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SecretKeyFactory.createAesKey;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyFactory.mockedVersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKey;
+import com.nightsky.keycache.VersionedSecretKeyCache;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class WarmUpTest {
+
+    @Test
+    public void shouldWarmUpWhenBuilt() {
+        VersionedSecretKey key = mockedVersionedSecretKey(createAesKey(), 1);
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
+
+        CryptoEventListener subject = builder(keyCache)
+            .withWarmUp(5)
+                .build();
+
+        WarmUpReport report = subject.getWarmUpReport();
+
+        assertThat(report.getKeysLoaded()).isEqualTo(1);
+        assertThat(report.getMissingKeys()).isEmpty();
+        assertThat(report.getRounds()).isEqualTo(5);
+        assertThat(report.getTotalTime()).isEqualTo(report.getKeyPrefetchTime().plus(report.getCipherInitializationTime()).plus(report.getRoundTime()));
+
+        // The warm-up rounds decrypted with the prefetched key
+        verify(keyCache, never()).getKey(anyString(), anyInt());
+    }
+
+    @Test
+    public void shouldPrefetchEarlierKeyVersions() {
+        VersionedSecretKey version2 = mockedVersionedSecretKey(createAesKey(), 2);
+        VersionedSecretKey version3 = mockedVersionedSecretKey(createAesKey(), 3);
+
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(version3);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(2))).thenReturn(version2);
+
+        CryptoEventListener subject = builder(keyCache)
+            .withPrefetchedKeyVersions(3)
+                .build();
+
+        WarmUpReport report = subject.warmUp();
+
+        assertThat(report.getKeysLoaded()).isEqualTo(2);
+        assertThat(report.getMissingKeys()).containsExactly(SecretKeyFactory.KEY_NAME + ":1");
+        assertThat(subject.decryptionKeyFor(1, 2)).isSameAs(version2);
+    }
+
+    @Test
+    public void shouldSelectProviderWhenBuilt() throws GeneralSecurityException {
+        VersionedSecretKey key = inMemoryKey(createAesKey(), 1);
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
+
+        CryptoEventListener subject = builder(keyCache)
+            .withProviderSelection()
+            .withProviderMeasurementTime(Duration.ofMillis(20))
+            .withWarmUp(5)
+                .build();
+
+        String defaultProviderName = Cipher.getInstance("AES/GCM/NoPadding").getProvider().getName();
+        assertThat(subject.getProviderSelectionReport().getSelectedProviderName()).isEqualTo(defaultProviderName);
+        assertThat(subject.getSecurityProviderName()).isEqualTo(defaultProviderName);
+    }
+
+    @Test
+    public void shouldFailWithoutAllowedProvider() {
+        VersionedSecretKey key = inMemoryKey(createAesKey(), 1);
+        VersionedSecretKeyCache keyCache = mock(VersionedSecretKeyCache.class);
+        when(keyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
+
+        CryptoEventListener.Builder builder = builder(keyCache)
+            .withProviderSelection("NoSuchProvider")
+            .withProviderMeasurementTime(Duration.ofMillis(20));
+
+        assertThatThrownBy(builder::build)
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageStartingWith("No compliant security provider for AES/GCM/NoPadding");
+    }
+
+    private CryptoEventListener.Builder builder(VersionedSecretKeyCache keyCache) {
+        return CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(keyCache);
+    }
+
+    /**
+     * Provider selection runs thousands of rounds, each reading the key
+     * material, which a mock makes slow.
+     */
+    private VersionedSecretKey inMemoryKey(SecretKey key, int version) {
+        return new VersionedSecretKey() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getAlgorithm() {
+                return key.getAlgorithm();
+            }
+
+            @Override
+            public String getFormat() {
+                return key.getFormat();
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                return key.getEncoded();
+            }
+
+        };
+    }
+
+}
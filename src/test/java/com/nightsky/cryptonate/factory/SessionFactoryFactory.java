@@ -0,0 +1,52 @@
+package com.nightsky.cryptonate.factory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.integrator.spi.Integrator;
+
+/**
+ *
+ * @author Chris
+ */
+public class SessionFactoryFactory {
+
+    /**
+     * Builds a SessionFactory on a new in-memory H2 database, with statistics
+     * enabled and the schema of the annotated classes.
+     */
+    public static SessionFactory h2SessionFactory(String databaseName, Integrator integrator, Class<?>... annotatedClasses) {
+        BootstrapServiceRegistryBuilder bootstrap = new BootstrapServiceRegistryBuilder();
+
+        if ( integrator != null )
+            bootstrap.applyIntegrator(integrator);
+
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder(bootstrap.build())
+            .applySetting(AvailableSettings.URL, "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1")
+            .applySetting(AvailableSettings.USER, "sa")
+            .applySetting(AvailableSettings.PASS, "")
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+            .applySetting(AvailableSettings.GENERATE_STATISTICS, "true")
+            .applySetting(AvailableSettings.LOG_SESSION_METRICS, "false")
+                .build();
+
+        MetadataSources sources = new MetadataSources(registry);
+
+        for (Class<?> annotatedClass : annotatedClasses) {
+            sources.addAnnotatedClass(annotatedClass);
+        }
+
+        try {
+            return sources.buildMetadata().buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+}
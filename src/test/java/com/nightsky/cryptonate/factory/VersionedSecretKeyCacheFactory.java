@@ -7,6 +7,7 @@ import com.nightsky.keycache.VersionedSecretKeyCache;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
  *
@@ -18,7 +19,7 @@ public class VersionedSecretKeyCacheFactory {
         VersionedSecretKey key = mockedVersionedSecretKey(createAesKey());
         int keyVersion = key.getVersion();
 
-        VersionedSecretKeyCache secretKeyCache = mock(VersionedSecretKeyCache.class);
+        VersionedSecretKeyCache secretKeyCache = mock(VersionedSecretKeyCache.class, withSettings().stubOnly());
         when(secretKeyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
         when(secretKeyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(keyVersion))).thenReturn(key);
         return secretKeyCache;
@@ -27,7 +28,7 @@ public class VersionedSecretKeyCacheFactory {
     public static VersionedSecretKeyCache mockedVersionedSecretKeyCache(VersionedSecretKey key) {
         int keyVersion = key.getVersion();
 
-        VersionedSecretKeyCache secretKeyCache = mock(VersionedSecretKeyCache.class);
+        VersionedSecretKeyCache secretKeyCache = mock(VersionedSecretKeyCache.class, withSettings().stubOnly());
         when(secretKeyCache.getKey(eq(SecretKeyFactory.KEY_NAME))).thenReturn(key);
         when(secretKeyCache.getKey(eq(SecretKeyFactory.KEY_NAME), eq(keyVersion))).thenReturn(key);
         return secretKeyCache;
@@ -4,6 +4,7 @@ import com.nightsky.keycache.VersionedSecretKey;
 import javax.crypto.SecretKey;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
  *
@@ -12,11 +13,15 @@ import static org.mockito.Mockito.when;
 public class VersionedSecretKeyFactory {
 
     public static VersionedSecretKey mockedVersionedSecretKey(SecretKey key) {
-        VersionedSecretKey versionedKey = mock(VersionedSecretKey.class);
+        return mockedVersionedSecretKey(key, 1);
+    }
+
+    public static VersionedSecretKey mockedVersionedSecretKey(SecretKey key, int version) {
+        VersionedSecretKey versionedKey = mock(VersionedSecretKey.class, withSettings().stubOnly());
         when(versionedKey.getAlgorithm()).thenReturn(key.getAlgorithm());
-        when(versionedKey.getEncoded()).thenReturn(key.getEncoded());
+        when(versionedKey.getEncoded()).thenAnswer(i -> key.getEncoded().clone());
         when(versionedKey.getFormat()).thenReturn(key.getFormat());
-        when(versionedKey.getVersion()).thenReturn(1);
+        when(versionedKey.getVersion()).thenReturn(version);
         return versionedKey;
     }
 
@@ -0,0 +1,143 @@
+package com.nightsky.cryptonate.integrator;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.event.listener.CryptoEventListener;
+import com.nightsky.cryptonate.event.listener.ParallelAutoFlushEventListener;
+import com.nightsky.cryptonate.event.listener.ParallelFlushEncryption;
+import com.nightsky.cryptonate.event.listener.ParallelFlushEventListener;
+import com.nightsky.cryptonate.factory.SecretKeyFactory;
+import static com.nightsky.cryptonate.factory.SessionFactoryFactory.h2SessionFactory;
+import static com.nightsky.cryptonate.factory.VersionedSecretKeyCacheFactory.mockedVersionedSecretKeyCache;
+import com.nightsky.cryptonate.model.AccountEntity;
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.internal.DefaultAutoFlushEventListener;
+import org.hibernate.event.internal.DefaultFlushEventListener;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Builds H2 SessionFactories with a {@link CryptonateIntegrator}.
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class CryptonateIntegratorTest {
+
+    private CryptoEventListener listener;
+
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void setUp() {
+        listener = spy(CryptoEventListener.builder()
+            .withEncryptionKeyName(SecretKeyFactory.KEY_NAME)
+            .withKeyCodes(Collections.singletonMap(SecretKeyFactory.KEY_NAME, 1))
+            .withRNG(new SecureRandom())
+            .withVersionedSecretKeyCache(mockedVersionedSecretKeyCache())
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        if ( sessionFactory != null )
+            sessionFactory.close();
+    }
+
+    @Test
+    public void shouldRegisterListener() {
+        sessionFactory = h2SessionFactory("integrator", new CryptonateIntegrator(listener), AccountEntity.class);
+
+        assertThat(listenersOf(EventType.PRE_INSERT)).containsOnlyOnce(listener);
+        assertThat(listenersOf(EventType.PRE_UPDATE)).containsOnlyOnce(listener);
+        assertThat(listenersOf(EventType.PRE_LOAD)).containsOnlyOnce(listener);
+        assertThat(listenersOf(EventType.POST_INSERT)).containsOnlyOnce(listener);
+        assertThat(listenersOf(EventType.POST_UPDATE)).containsOnlyOnce(listener);
+
+        // Hibernate keeps its own flush listeners
+        assertThat(listenersOf(EventType.FLUSH)).singleElement().isExactlyInstanceOf(DefaultFlushEventListener.class);
+        assertThat(listenersOf(EventType.AUTO_FLUSH)).singleElement().isExactlyInstanceOf(DefaultAutoFlushEventListener.class);
+    }
+
+    @Test
+    public void shouldReplaceFlushListeners() {
+        try (ParallelFlushEncryption flushEncryption = ParallelFlushEncryption.builder().withListener(listener).withParallelism(1).build()) {
+            sessionFactory = h2SessionFactory("integrator", new CryptonateIntegrator(listener, flushEncryption), AccountEntity.class);
+
+            assertThat(listenersOf(EventType.FLUSH)).singleElement().isExactlyInstanceOf(ParallelFlushEventListener.class);
+            assertThat(listenersOf(EventType.AUTO_FLUSH)).singleElement().isExactlyInstanceOf(ParallelAutoFlushEventListener.class);
+            assertThat(listenersOf(EventType.PRE_INSERT)).containsOnlyOnce(listener);
+        }
+    }
+
+    @Test
+    public void shouldPreparePlansWhenSessionFactoryIsCreated() {
+        sessionFactory = h2SessionFactory("integrator", new CryptonateIntegrator(listener), AccountEntity.class);
+
+        verify(listener).validateConfiguration();
+        verify(listener).validateDecryptionKeys();
+        verify(listener).prepare(eq(AccountEntity.class), any(EntityPersister.class));
+    }
+
+    @Test
+    public void shouldFailToStartWithEncryptedAadProperty() {
+        assertThatThrownBy(() -> h2SessionFactory("integrator", new CryptonateIntegrator(listener), EncryptedAadPropertyEntity.class))
+            .isInstanceOf(RuntimeException.class)
+            .hasStackTraceContaining("secret uses encrypted AAD property: otherSecret");
+    }
+
+    @Test
+    public void shouldStartWithEncryptedAadPropertyWhenAllowed() {
+        listener.setEncryptedAadPropertiesAllowed(true);
+
+        sessionFactory = h2SessionFactory("integrator", new CryptonateIntegrator(listener), EncryptedAadPropertyEntity.class);
+
+        verify(listener).prepare(eq(EncryptedAadPropertyEntity.class), any(EntityPersister.class));
+    }
+
+    private List<Object> listenersOf(EventType<?> eventType) {
+        EventListenerRegistry registry = sessionFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        List<Object> listeners = new ArrayList<>();
+        registry.getEventListenerGroup(eventType).listeners().forEach(listeners::add);
+        return listeners;
+    }
+
+    @Entity
+    @Table(name = "encrypted_aad")
+    public static class EncryptedAadPropertyEntity implements Serializable {
+
+        @Id
+        private Long id;
+
+        @Encrypted(aadFieldNames = { "id", "otherSecret" })
+        private String secret;
+
+        @Encrypted(aadFieldNames = { "id" })
+        private String otherSecret;
+
+    }
+
+}
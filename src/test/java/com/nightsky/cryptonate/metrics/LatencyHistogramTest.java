@@ -0,0 +1,52 @@
+package com.nightsky.cryptonate.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldCoverTheLongRangeWithContiguousBuckets() {
+        assertThat(LatencyHistogram.lowerBoundOf(0)).isZero();
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; ++bucket) {
+            long lower = LatencyHistogram.lowerBoundOf(bucket);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+
+            assertThat(LatencyHistogram.bucketOf(lower)).isEqualTo(bucket);
+            assertThat(LatencyHistogram.bucketOf(upper)).isEqualTo(bucket);
+
+            // Buckets are at most 12.5% wide
+            assertThat(upper - lower).isLessThanOrEqualTo(Math.max(0, lower / 8));
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinTheBucketError() {
+        LatencyHistogram subject = new LatencyHistogram();
+
+        for (long value = 1; value <= 1000; ++value) {
+            subject.record(value * 1000);
+        }
+
+        subject.record(-5);
+
+        HistogramSnapshot snapshot = subject.snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(1001);
+        assertThat(snapshot.getMax()).isEqualTo(1000000);
+        assertThat(snapshot.getBucketCount(0)).isEqualTo(1);
+        assertThat(snapshot.getValueAtPercentile(50)).isBetween(500000L, 562500L);
+        assertThat(snapshot.getValueAtPercentile(99)).isBetween(990000L, 1000000L);
+        assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(1000000);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.nightsky.cryptonate.model;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ *
+ * @author Chris
+ */
+@Entity
+@Table(name = "account")
+public class AccountEntity implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Column(length = 16)
+    private String region;
+
+    @Encrypted(aadFieldNames = { "id" })
+    @Column(length = 512)
+    private String emailAddress;
+
+    @Encrypted(aadFieldNames = { "id" })
+    @Column(length = 512)
+    private String note;
+
+    public AccountEntity() {  }
+
+    public AccountEntity(Long id, String region, String emailAddress, String note) {
+        this.id = id;
+        this.region = region;
+        this.emailAddress = emailAddress;
+        this.note = note;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public void setEmailAddress(String emailAddress) {
+        this.emailAddress = emailAddress;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.nightsky.cryptonate.model;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import java.io.Serializable;
+import java.sql.Blob;
+import javax.persistence.Id;
+
+/**
+ *
+ * @author Chris
+ */
+public class AttachmentEntity implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private Blob content;
+
+    public AttachmentEntity() {  }
+
+    public AttachmentEntity(Long id, Blob content) {
+        this.id = id;
+        this.content = content;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Blob getContent() {
+        return content;
+    }
+
+    public void setContent(Blob content) {
+        this.content = content;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.nightsky.cryptonate.model;
+
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.annotation.EnvelopeStorage;
+import java.io.Serializable;
+import javax.persistence.Id;
+
+/**
+ *
+ * @author Chris
+ */
+public class BinaryEntity implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" }, storage = EnvelopeStorage.BINARY)
+    private byte[] document;
+
+    @Encrypted(aadFieldNames = { "id" })
+    private byte[] thumbnail;
+
+    public BinaryEntity() {  }
+
+    public BinaryEntity(Long id, byte[] document, byte[] thumbnail) {
+        this.id = id;
+        this.document = document;
+        this.thumbnail = thumbnail;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public byte[] getDocument() {
+        return document;
+    }
+
+    public void setDocument(byte[] document) {
+        this.document = document;
+    }
+
+    public byte[] getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(byte[] thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.nightsky.cryptonate.model;
+
+import com.nightsky.cryptonate.annotation.DecryptionMode;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import com.nightsky.cryptonate.event.listener.DeferredDecryption;
+import java.io.Serializable;
+import javax.persistence.Id;
+
+/**
+ *
+ * @author Chris
+ */
+public class DeferredEntity implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" }, decrypt = DecryptionMode.ON_ACCESS)
+    private String emailAddress;
+
+    private transient DeferredDecryption deferredDecryption;
+
+    public DeferredEntity() {  }
+
+    public DeferredEntity(Long id, String emailAddress) {
+        this.id = id;
+        this.emailAddress = emailAddress;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getEmailAddress() {
+        return deferredDecryption == null
+            ? emailAddress
+            : deferredDecryption.resolve(this, "emailAddress", emailAddress);
+    }
+
+    public void setEmailAddress(String emailAddress) {
+        this.emailAddress = emailAddress;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.nightsky.cryptonate.model;
+
+import com.nightsky.cryptonate.annotation.Compression;
+import com.nightsky.cryptonate.annotation.Encrypted;
+import java.io.Serializable;
+import javax.persistence.Id;
+
+/**
+ *
+ * @author Chris
+ */
+public class NoteEntity implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Encrypted(aadFieldNames = { "id" }, compress = Compression.DEFLATE, compressionThreshold = 64)
+    private String text;
+
+    public NoteEntity() {  }
+
+    public NoteEntity(Long id, String text) {
+        this.id = id;
+        this.text = text;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+}
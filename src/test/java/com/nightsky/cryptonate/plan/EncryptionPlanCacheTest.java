@@ -0,0 +1,102 @@
+package com.nightsky.cryptonate.plan;
+
+import com.nightsky.cryptonate.convert.FieldCodecs;
+import com.nightsky.cryptonate.model.SimpleEntity;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class EncryptionPlanCacheTest {
+
+    private EntityMetamodel metamodel;
+
+    private EntityPersister persister;
+
+    private FieldCodecs fieldCodecs;
+
+    private EncryptionPlanCache subject;
+
+    @Before
+    public void setUp() {
+        // Mock Hibernate EntityMetamodel:
+        metamodel = mock(EntityMetamodel.class);
+        when(metamodel.getPropertyNames()).thenReturn(new String[] {
+            "amount", "emailAddress", "followers", "price", "streetNumber"
+        });
+
+        // Mock Hibernate EntityPersister:
+        persister = mock(EntityPersister.class);
+        when(persister.getEntityMetamodel()).thenReturn(metamodel);
+
+        fieldCodecs = new FieldCodecs();
+        subject = new EncryptionPlanCache(fieldCodecs);
+    }
+
+    @Test
+    public void shouldResolveStateIndexesOfEncryptedFields() {
+        EncryptionPlan plan = subject.get(SimpleEntity.class, persister);
+
+        assertThat(plan.getEntityClass()).isEqualTo(SimpleEntity.class);
+        assertThat(plan.getIdFieldName()).isEqualTo("id");
+        assertThat(plan.getFields()).hasSize(5);
+
+        for (EncryptedField field : plan.getFields()) {
+            switch (field.getName()) {
+                case "amount":       assertThat(field.getStateIndex()).isEqualTo(0); break;
+                case "emailAddress": assertThat(field.getStateIndex()).isEqualTo(1); break;
+                case "followers":    assertThat(field.getStateIndex()).isEqualTo(2); break;
+                case "price":        assertThat(field.getStateIndex()).isEqualTo(3); break;
+                case "streetNumber": assertThat(field.getStateIndex()).isEqualTo(4); break;
+                default:             throw new AssertionError(field.getName());
+            }
+
+            assertThat(field.getAadProperties()).hasSize(1);
+            assertThat(field.getAadProperties()[0].getName()).isEqualTo("id");
+            assertThat(field.getAadProperties()[0].isIdentifier()).isTrue();
+            assertThat(field.getAadProperties()[0].getStateIndex()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void shouldResolveCodecsOfEncryptedFields() {
+        EncryptionPlan plan = subject.get(SimpleEntity.class, persister);
+
+        for (EncryptedField field : plan.getFields()) {
+            assertThat(field.getCodec()).isSameAs(fieldCodecs.codecFor(field.getType()));
+            assertThat(field.getCodec()).isNotNull();
+        }
+    }
+
+    @Test
+    public void shouldBuildPlanOnlyOnce() {
+        EncryptionPlan first = subject.get(SimpleEntity.class, persister);
+        EncryptionPlan second = subject.get(SimpleEntity.class, persister);
+
+        assertThat(second).isSameAs(first);
+        assertThat(subject.size()).isEqualTo(1);
+        verify(persister, times(1)).getEntityMetamodel();
+    }
+
+    @Test
+    public void shouldReadAadPropertiesWithGetters() throws Exception {
+        SimpleEntity entity = new SimpleEntity(42L, "someone@example.com");
+        EncryptionPlan plan = subject.get(SimpleEntity.class, persister);
+
+        AadProperty id = plan.getFields()[0].getAadProperties()[0];
+        assertThat(id.getReader().read(entity)).isEqualTo(42L);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.nightsky.cryptonate.plan;
+
+import com.nightsky.cryptonate.model.SimpleEntity;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ *
+ * @author Chris
+ */
+@RunWith(JUnit4.class)
+public class GeneratedPropertyReadersTest {
+
+    @Test
+    public void shouldFindReadersGeneratedForEntity() throws Exception {
+        PropertyReaders readers = GeneratedPropertyReaders.find(SimpleEntity.class);
+
+        assertThat(readers).isNotNull();
+        assertThat(readers.getClass().getName()).isEqualTo("com.nightsky.cryptonate.model.SimpleEntity_CryptonateReaders");
+        assertThat(readers.forProperty("id").read(new SimpleEntity(7L))).isEqualTo(7L);
+        assertThat(readers.forProperty("emailAddress")).isNull();
+    }
+
+    @Test
+    public void shouldReturnNullForClassWithoutEncryptedFields() {
+        assertThat(GeneratedPropertyReaders.find(String.class)).isNull();
+    }
+
+}